@@ -7,7 +7,9 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -63,6 +65,27 @@ public class EmailConfig {
         private int scheduleAgentCount;
         private int bufferingSize;
         private List<String> retryExcludeCode;
+        // Retry rules keyed by basic and/or enhanced status code ("421", "[4.7.1]", "452 4.2.2"); the most specific match wins
+        // and rules take precedence over retryExcludeCode
+        private Map<String, RetryRule> retryRules = new LinkedHashMap<>();
+        // Per-domain retry rules (domain -> rules), checked before retryRules
+        private Map<String, Map<String, RetryRule>> domainRetryRules = new HashMap<>();
+        // Retry greylisting replies just after the MX's learned minimum delay instead of the exponential schedule
+        private boolean greylistRetryEnabled = true;
+        private long greylistDefaultDelayMs = 300_000L;
+        private long greylistRetryMarginMs = 15_000L;
+        private long greylistMaxDelayMs = 3_600_000L;
+        // Skip recipients that hard-bounced before; fingerprints are kept under <spoolDir>/suppression
+        private boolean bounceSuppressionEnabled;
+        // Enhanced codes of a 5xx reply that suppress the recipient (5xx replies without one count if they name an unknown user)
+        private List<String> bounceSuppressionEnhancedCodes = List.of("5.1.1");
+        private long bounceSuppressionExpectedEntries = 10_000_000L;
+        private double bounceSuppressionFalsePositiveRate = 0.01d;
+        // Journal entries merged into the sorted fingerprint file at once
+        private int bounceSuppressionCompactThreshold = 100_000;
+        // Complete batches of a domain without dispatching them while it is unresolvable (NXDOMAIN, no MX/A) or blocked
+        private boolean domainVerdictEnabled = true;
+        private long domainVerdictDnsFailureTtlMs = 600_000L;
         private List<String> dnsServer;
         private List<String> excludedDomain;
         private Map<String, String> fixedIpOfDomain;
@@ -86,6 +109,37 @@ public class EmailConfig {
         private List<Integer> bindIpCooldownTriggerCodes = List.of(421, 451);
         private Map<Integer, Integer> bindIpCooldownCodeThresholds = new HashMap<>(Map.of(421, 1, 451, 2));
 
+        // Adaptive per-domain session limit (AIMD) driven by domain send metrics
+        private boolean adaptiveConcurrencyEnabled;
+        private List<Integer> adaptiveConcurrencyThrottleCodes = List.of(421, 451);
+        private int adaptiveConcurrencyMinLimit = 1;
+        // Upper bound as a percentage of the static domain session limit
+        private int adaptiveConcurrencyMaxPercent = 200;
+        private int adaptiveConcurrencyThrottleRatePercent = 5;
+        private int adaptiveConcurrencyDecreasePercent = 50;
+        // 0 means response time is not used as a throttle signal
+        private long adaptiveConcurrencySlowResponseMs;
+        private long adaptiveConcurrencyMinSamples = 20;
+        private long adaptiveConcurrencyIntervalMs = 60_000L;
+
+        // Per-domain message rate limits (EmailDomain.messagesPerMinute / messagesPerMinutePerIp)
+        // Bucket capacity in seconds of the configured rate
+        private int sendRateBurstSeconds = 1;
+        // Longest pause between messages of a batch; beyond it the rest of the batch is deferred to retry
+        private long sendRateMaxPacingWaitMs = 30_000L;
+
+        // MX-group routing: queue, bind IP session limits and cooldowns are keyed by receiving MX group instead of domain
+        private boolean mxGroupRoutingEnabled;
+        // Group name -> MX host suffixes (e.g. google: [google.com, googlemail.com]); limits come from the domain entry named after the group
+        private Map<String, List<String>> mxGroups = new HashMap<>();
+        // Group unconfigured domains by the registrable domain of their primary MX host
+        private boolean mxGroupDeriveFromMxHost = true;
+        // Let recipients of different domains in one configured group share an SMTP session
+        private boolean mxGroupSharedSessions;
+        private long mxGroupCacheTtlMs = 3_600_000L;
+        // Most domains kept in the MX group cache
+        private int mxGroupCacheMaxEntries = 100_000;
+
 
         private boolean simulatorEnabled;
         private String simulatorServer;
@@ -96,6 +150,50 @@ public class EmailConfig {
         private long batchInitialRetryDelayMs = DEFAULT_BATCH_INITIAL_RETRY_DELAY_MS;
         private long batchMaxRetryDelayMs = DEFAULT_BATCH_MAX_RETRY_DELAY_MS;
         private double batchRetryBackoffMultiplier = DEFAULT_BATCH_RETRY_BACKOFF_MULTIPLIER;
+        // Hand the unprocessed tail of a batch back to the queue when one message exceeds
+        // max(minLatencyMs, domain average response time x multiplier), e.g. a tarpitting server
+        private boolean sessionDegradationHandoffEnabled = true;
+        private int sessionDegradationLatencyMultiplier = 5;
+        private long sessionDegradationMinLatencyMs = 10_000L;
+        private int sessionDegradationMinRemaining = 1;
+        private int sessionDegradationBaselineSeconds = 300;
+        // Reopen a session that broke mid-batch on the next MX address before deferring the rest to retry. The bind IP is kept,
+        // as it belongs to the batch's lease; the retry lane moves to another one. The budget also caps each reopen's timeouts
+        private int sessionFailoverMaxAttempts = 2;
+        private long sessionFailoverBudgetMs = 30_000L;
+        // Messages of a batch composed and DKIM-signed ahead of the SMTP exchange (0 composes inline)
+        private int mimeComposeLookahead = 4;
+        // Threads of the shared compose pool (0 means available processors)
+        private int mimeComposeParallelism = 0;
+        // Streaming runner: targets buffered until their batch fills, and submitted batches not completed yet
+        private int streamingMaxBufferedTargets = 50_000;
+        private int streamingMaxInFlightBatches = 500;
+        // Keep planned-but-unsent targets in memory-mapped files under <spoolDir>/recipients instead of the heap
+        private boolean recipientStoreEnabled;
+        // AsyncResultWriter: queued results, results per group commit, max commit delay, and producer wait when the queue is full
+        private int resultWriterQueueCapacity = 8_192;
+        private int resultWriterMaxBatchSize = 512;
+        private long resultWriterFlushIntervalMs = 20L;
+        private long resultWriterEnqueueTimeoutMs = 30_000L;
+        // Write-ahead journal of queued batches under <spoolDir>/queue, replayed by EmailSendEngine.recover after a crash
+        private boolean queueJournalEnabled;
+        // Interval at which journaled events are forced to disk, and journal size that triggers a rewrite of the live batches
+        private long queueJournalSyncIntervalMs = 200L;
+        private long queueJournalCompactBytes = 256L << 20;
+        // Window during which due retry batches of the same domain/runner are merged up to sendCountPerSession (0 disables)
+        private long batchRetryCoalesceWindowMs = 200L;
+        // Window during which EmailSendEngine.submitRealtime messages of the same domain/context share a batch up to sendCountPerSession (0 disables)
+        private long realtimeMicroBatchWindowMs = 10L;
+        // Pre-opened sessions kept per (domain, bindIp) for the top realtime domains by send volume, for the REALTIME_FRESH lane (0 disables).
+        // They count against the domain's per-IP session limit, leaving at least one slot for dispatch
+        private int realtimeStandbySessionsPerDomain = 0;
+        private int realtimeStandbyTopDomains = 10;
+        private int realtimeStandbyVolumeWindowSeconds = 300;
+        // Idle time after which a standby session is checked with NOOP, and age after which it is closed and reopened
+        private long realtimeStandbyKeepaliveMs = 30_000L;
+        private long realtimeStandbyMaxAgeMs = 300_000L;
+        // Time before its delivery deadline from which a realtime batch is served earliest-deadline-first ahead of fair queuing
+        private long deadlineRiskWindowMs = 60_000L;
         private long batchHoldMaxMs;
         private int batchReleasePercentPerCycle = 20;
         private int realtimeRetryMaxPercent = 35;
@@ -103,6 +201,8 @@ public class EmailConfig {
         private int retryAgingRelaxPercent = 70;
         private long retryAgingRelaxThresholdMs = 3_000L;
         private int freshReserveMin = 1;
+        // Additional dispatch lanes evaluated together with the built-in REALTIME/BATCH lanes
+        private List<LaneConfig> dispatchLanes = new ArrayList<>();
         private int attachmentMaxInFlight = 0;
 
         // Per-mode override (0 means use global value)
@@ -150,6 +250,41 @@ public class EmailConfig {
 
             return tlsApplyDomain.contains(domain.toLowerCase());
         }
+
+        /**
+         * Retry handling of one status code class (see {@code retryRules}).
+         */
+        @Data
+        public static class RetryRule {
+            private boolean retry = true;
+            // Negative value means the exponential retry schedule
+            private long delayMs = -1L;
+            // Null means bindIpCooldownTriggerCodes decides
+            private Boolean coolBindIp;
+        }
+
+        /**
+         * Additional dispatch lane definition. A retry lane named {@code <name>_RETRY} is created alongside.
+         * Priority 0/10/20/30 correspond to the built-in REALTIME_FRESH/REALTIME_RETRY/BATCH_FRESH/BATCH_RETRY lanes.
+         */
+        @Data
+        public static class LaneConfig {
+            private String name;
+            private String executionMode = "BATCH";
+            private List<String> messageTypes = new ArrayList<>();
+            private int priority = 20;
+            // Negative value means the priority of the built-in retry lane of the same mode
+            private int retryPriority = -1;
+            private int weight = 1;
+            private int reservedSlots;
+            // Negative value means the built-in value of the same mode
+            private int retryMaxPercent = -1;
+            // Null means REALTIME lanes preempt and BATCH lanes are held
+            private Boolean preemptsHold;
+            private Boolean holdable;
+            private long holdMaxMs;
+            private int releasePercentPerCycle = -1;
+        }
     }
 
 }
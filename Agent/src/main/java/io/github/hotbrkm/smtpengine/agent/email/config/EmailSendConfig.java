@@ -6,6 +6,7 @@ import io.github.hotbrkm.smtpengine.agent.email.send.engine.EmailSendEngineFacto
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendRunnerFactory;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManagerFactory;
 import io.github.hotbrkm.smtpengine.agent.email.send.worker.EmailBatchSenderFactory;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.MxGroupResolver;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.RoutingService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -26,6 +27,11 @@ public class EmailSendConfig {
         return new RoutingService(emailConfig);
     }
 
+    @Bean
+    public MxGroupResolver mxGroupResolver(EmailConfig emailConfig, RoutingService routingService) {
+        return new MxGroupResolver(routingService, emailConfig.getSend());
+    }
+
     @Bean
     public SmtpSessionManagerFactory smtpSessionManagerFactory(EmailConfig emailConfig, EmailDomainManager emailDomainManager,
                                                                RoutingService routingService) {
@@ -43,8 +49,8 @@ public class EmailSendConfig {
      */
     @Bean(initMethod = "start", destroyMethod = "shutdown")
     public EmailSendEngine emailSendEngine(EmailConfig emailConfig, EmailBatchSenderFactory emailBatchSenderFactory,
-                                           EmailDomainManager emailDomainManager) {
-        return EmailSendEngineFactory.create(emailConfig.getSend(), emailDomainManager, emailBatchSenderFactory);
+                                           EmailDomainManager emailDomainManager, MxGroupResolver mxGroupResolver) {
+        return EmailSendEngineFactory.create(emailConfig.getSend(), emailDomainManager, emailBatchSenderFactory, mxGroupResolver);
     }
 
     @Bean
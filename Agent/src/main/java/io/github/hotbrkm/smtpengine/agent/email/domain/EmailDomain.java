@@ -15,9 +15,11 @@ public class EmailDomain {
     private final int connectTimeout;
     private final int readTimeout;
     private final LocalDateTime blockEndTime;
+    private final int messagesPerMinute;
+    private final int messagesPerMinutePerIp;
 
     /**
-     * EmailDomain constructor.
+     * EmailDomain constructor without message rate limits.
      *
      * @param domainName          Domain name
      * @param sessionCount        Session count
@@ -27,12 +29,31 @@ public class EmailDomain {
      * @param blockEndTime        Block end time string (yyyyMMddHHmmss format or empty string)
      */
     public EmailDomain(String domainName, int sessionCount, int sendCountPerSession, int connectTimeout, int readTimeout, String blockEndTime) {
+        this(domainName, sessionCount, sendCountPerSession, connectTimeout, readTimeout, blockEndTime, 0, 0);
+    }
+
+    /**
+     * EmailDomain constructor.
+     *
+     * @param domainName             Domain name
+     * @param sessionCount           Session count
+     * @param sendCountPerSession    Send count per session
+     * @param connectTimeout         Connection timeout (in milliseconds)
+     * @param readTimeout            Read timeout (in milliseconds)
+     * @param blockEndTime           Block end time string (yyyyMMddHHmmss format or empty string)
+     * @param messagesPerMinute      Message rate limit for the whole domain (0 or less means unlimited)
+     * @param messagesPerMinutePerIp Message rate limit per sending bind IP (0 or less means unlimited)
+     */
+    public EmailDomain(String domainName, int sessionCount, int sendCountPerSession, int connectTimeout, int readTimeout, String blockEndTime,
+                       int messagesPerMinute, int messagesPerMinutePerIp) {
         this.domainName = domainName;
         this.sessionCount = sessionCount;
         this.sendCountPerSession = sendCountPerSession;
         this.connectTimeout = connectTimeout;
         this.readTimeout = readTimeout;
         this.blockEndTime = parseBlockEndTime(blockEndTime);
+        this.messagesPerMinute = Math.max(0, messagesPerMinute);
+        this.messagesPerMinutePerIp = Math.max(0, messagesPerMinutePerIp);
     }
 
     /**
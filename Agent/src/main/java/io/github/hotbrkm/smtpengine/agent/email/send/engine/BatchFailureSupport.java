@@ -20,16 +20,12 @@ final class BatchFailureSupport {
      */
     static int resolveFinalStatusCode(DomainBatchTask task, int fallbackCode) {
         for (EmailSendTarget target : task.getBatch()) {
-            String code = target.getSendCode();
+            int code = target.getSendCodeValue();
             // Excludes unset codes, unprocessed targets, and successful sends (250) from failure code candidates.
-            if (code == null || target.isUnprocessed() || "250".equals(code)) {
+            if (code < 0 || target.isUnprocessed() || code == 250) {
                 continue;
             }
-            try {
-                return Integer.parseInt(code);
-            } catch (Exception ignore) {
-                // ignore and fallback
-            }
+            return code;
         }
         return fallbackCode;
     }
@@ -45,11 +41,7 @@ final class BatchFailureSupport {
             return timeoutMessage;
         }
         for (EmailSendTarget target : task.getBatch()) {
-            String code = target.getSendCode();
-            if (code == null) {
-                continue;
-            }
-            if (String.valueOf(statusCode).equals(code)) {
+            if (target.getSendCodeValue() == statusCode) {
                 String error = target.getErrorMessage();
                 if (error != null && !error.isBlank()) {
                     return error;
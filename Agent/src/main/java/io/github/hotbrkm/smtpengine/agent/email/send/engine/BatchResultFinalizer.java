@@ -1,23 +1,45 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.engine;
 
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.function.Consumer;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
 
 /**
  * Reflects batch completion/failure results and updates the engine aggregation state.
+ * Coalesced retry tasks are finalized per member so every original batch receives its own result.
+ * Parts of a batch split by a session handoff complete their own futures without being counted; the batch they were
+ * split from is counted once through {@link #completeHandedOff(DomainBatchTask, EmailBatchResult)}.
+ * <p>
+ * Every terminal path (completion, execution failure, abort, cancel, timeout) passes through here, so a batch that ends
+ * after its delivery deadline is recorded as a deadline miss exactly once, whichever way it ends. It is also where the
+ * task's result writer is flushed before the batch future completes, so results applied outside the sender (no-slot
+ * exhaustion, domain verdicts, aborts) are committed by the time the batch is reported; a batch whose results fail to
+ * commit is reported as failed.
  */
 @Slf4j
 final class BatchResultFinalizer {
 
     private final EngineRuntimeState runtimeState;
     private final Consumer<DomainBatchTask> waitTrackingRemover;
+    private final DomainSendMetrics domainSendMetrics;
 
     BatchResultFinalizer(EngineRuntimeState runtimeState, Consumer<DomainBatchTask> waitTrackingRemover) {
+        this(runtimeState, waitTrackingRemover, null);
+    }
+
+    /**
+     * @param domainSendMetrics Receives deadline misses (null does not record them)
+     */
+    BatchResultFinalizer(EngineRuntimeState runtimeState, Consumer<DomainBatchTask> waitTrackingRemover,
+                         DomainSendMetrics domainSendMetrics) {
         this.runtimeState = runtimeState;
         this.waitTrackingRemover = waitTrackingRemover;
+        this.domainSendMetrics = domainSendMetrics;
     }
 
     /**
@@ -27,10 +49,19 @@ final class BatchResultFinalizer {
         if (task == null || task.getResultFuture() == null) {
             return;
         }
+        if (task.isCoalesced()) {
+            task.getCoalescedTasks().forEach(member -> completeTaskAsFailure(member, cause, reason));
+            completeCoalesced(task, EmailBatchResult.failure(task.getBatchId(), task.getDomain(), task.getSize(), cause));
+            return;
+        }
+        flushResults(task);
         Exception effectiveCause = cause != null ? cause : new IllegalStateException("Task aborted: " + reason);
         EmailBatchResult result = EmailBatchResult.failure(task.getBatchId(), task.getDomain(), task.getSize(), effectiveCause);
         if (task.getResultFuture().complete(result)) {
-            runtimeState.incrementFailedBatches();
+            if (!task.isHandoffPart()) {
+                runtimeState.incrementFailedBatches();
+                recordDeadlineMiss(task);
+            }
             waitTrackingRemover.accept(task);
             log.warn("Batch [{}] completed as failure due to {}", task.getBatchId(), reason);
         }
@@ -40,12 +71,29 @@ final class BatchResultFinalizer {
      * Records the successful batch results and updates the completion counter.
      */
     void handleBatchCompletion(DomainBatchTask task, Integer successCount, int retryTargetCount) {
+        if (task.isCoalesced()) {
+            for (DomainBatchTask member : task.getCoalescedTasks()) {
+                int memberSuccess = countSucceeded(member);
+                handleBatchCompletion(member, memberSuccess, retryTargetCount > 0 ? member.getSize() - memberSuccess : 0);
+            }
+            completeCoalesced(task, EmailBatchResult.success(task.getBatchId(), task.getDomain(), task.getSize(),
+                    successCount != null ? successCount : 0));
+            return;
+        }
+        Exception persistenceFailure = flushResults(task);
+        if (persistenceFailure != null) {
+            failBatch(task, persistenceFailure);
+            return;
+        }
         String domain = task.getDomain();
         String batchId = task.getBatchId();
         int totalTargets = task.getSize();
 
         waitTrackingRemover.accept(task);
-        runtimeState.incrementCompletedBatches();
+        if (!task.isHandoffPart()) {
+            runtimeState.incrementCompletedBatches();
+            recordDeadlineMiss(task);
+        }
 
         if (retryTargetCount > 0) {
             log.info("Batch [{}] completed for domain: {}. Success: {}/{}, Retry exhausted: {}",
@@ -65,12 +113,25 @@ final class BatchResultFinalizer {
      * Records the batch that encountered an exception during execution as a failure.
      */
     void handleBatchFailure(DomainBatchTask task, Exception exception) {
+        if (task.isCoalesced()) {
+            task.getCoalescedTasks().forEach(member -> handleBatchFailure(member, exception));
+            completeCoalesced(task, EmailBatchResult.failure(task.getBatchId(), task.getDomain(), task.getSize(), exception));
+            return;
+        }
+        flushResults(task);
+        failBatch(task, exception);
+    }
+
+    private void failBatch(DomainBatchTask task, Exception exception) {
         String domain = task.getDomain();
         String batchId = task.getBatchId();
         int totalTargets = task.getSize();
 
         waitTrackingRemover.accept(task);
-        runtimeState.incrementFailedBatches();
+        if (!task.isHandoffPart()) {
+            runtimeState.incrementFailedBatches();
+            recordDeadlineMiss(task);
+        }
         log.error("Batch [{}] failed for domain: {}", batchId, domain, exception);
 
         if (task.getResultFuture() != null) {
@@ -78,4 +139,77 @@ final class BatchResultFinalizer {
             task.getResultFuture().complete(result);
         }
     }
+
+    /**
+     * Completes a batch whose tail was handed off with the combined result of its parts and counts it once.
+     * A batch that is itself a handoff part is left to be counted with the batch it was split from.
+     */
+    void completeHandedOff(DomainBatchTask task, EmailBatchResult result) {
+        if (task.getResultFuture() != null && !task.getResultFuture().complete(result)) {
+            return;
+        }
+        waitTrackingRemover.accept(task);
+        if (task.isHandoffPart()) {
+            return;
+        }
+        if (result.success()) {
+            runtimeState.incrementCompletedBatches();
+        } else {
+            runtimeState.incrementFailedBatches();
+        }
+        recordDeadlineMiss(task);
+    }
+
+    /**
+     * Returns the number of member targets whose last send succeeded.
+     */
+    static int countSucceeded(DomainBatchTask task) {
+        int count = 0;
+        for (EmailSendTarget target : task.getBatch()) {
+            if ("SUCCESS".equals(target.getSendStatus())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Waits until the results written for the task are committed (asynchronous writers commit in groups).
+     *
+     * @return The commit failure, or null if the results are persisted
+     */
+    private Exception flushResults(DomainBatchTask task) {
+        EmailBatchResultWriter resultWriter = task.getResultWriter();
+        if (resultWriter == null) {
+            return null;
+        }
+        try {
+            resultWriter.flush();
+            return null;
+        } catch (RuntimeException e) {
+            log.error("Failed to persist results of batch [{}] for domain: {}", task.getBatchId(), task.getDomain(), e);
+            return e;
+        }
+    }
+
+    /**
+     * Records a deadline miss when a batch carrying a delivery deadline ends after it.
+     */
+    private void recordDeadlineMiss(DomainBatchTask task) {
+        long now = System.currentTimeMillis();
+        if (domainSendMetrics == null || !task.isPastDeadline(now)) {
+            return;
+        }
+        domainSendMetrics.recordDeadlineMiss(task.getDomain(), task.getSize());
+        log.warn("Batch [{}] for domain: {} ended after its delivery deadline (late by {} ms)",
+                task.getBatchId(), task.getDomain(), now - task.getDeadlineMillis());
+    }
+
+    /**
+     * Completes the merged task itself; members were already counted, so engine counters are not touched.
+     */
+    private void completeCoalesced(DomainBatchTask task, EmailBatchResult result) {
+        waitTrackingRemover.accept(task);
+        task.getResultFuture().complete(result);
+    }
 }
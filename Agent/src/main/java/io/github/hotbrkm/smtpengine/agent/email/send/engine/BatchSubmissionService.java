@@ -4,8 +4,13 @@ import io.github.hotbrkm.smtpengine.agent.email.domain.EmailAddressUtil;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
 import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchSpec;
+import io.github.hotbrkm.smtpengine.agent.email.send.recipient.StoredTargetRange;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.MxGroupResolver;
 import io.github.hotbrkm.smtpengine.agent.email.send.worker.InvalidDomainResultHandler;
+import io.github.hotbrkm.smtpengine.agent.email.send.worker.ResultApplier;
+import io.github.hotbrkm.smtpengine.agent.email.send.worker.SuppressedTargetResultHandler;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
@@ -14,6 +19,7 @@ import java.util.concurrent.CompletableFuture;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchQueue;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.QueueJournal;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
 
 /**
@@ -23,19 +29,42 @@ import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMe
 final class BatchSubmissionService {
 
     private final InvalidDomainResultHandler invalidDomainResultHandler;
+    private final SuppressedTargetResultHandler suppressedTargetResultHandler;
     private final RunnerExecutionGuard runnerExecutionGuard;
     private final DomainBatchQueue batchQueue;
+    private final DispatchLanePlan lanePlan;
+    private final MxGroupResolver mxGroupResolver;
+    private final DomainSendMetrics domainSendMetrics;
+    private final DomainVerdictCache domainVerdictCache;
+    private final QueueJournal queueJournal;
 
-    BatchSubmissionService(RunnerExecutionGuard runnerExecutionGuard, DomainBatchQueue batchQueue, DomainSendMetrics domainSendMetrics) {
+    BatchSubmissionService(RunnerExecutionGuard runnerExecutionGuard, DomainBatchQueue batchQueue, DomainSendMetrics domainSendMetrics,
+                           DispatchLanePlan lanePlan, MxGroupResolver mxGroupResolver, DomainVerdictCache domainVerdictCache,
+                           QueueJournal queueJournal) {
         this.runnerExecutionGuard = runnerExecutionGuard;
         this.batchQueue = batchQueue;
+        this.lanePlan = lanePlan;
+        this.mxGroupResolver = mxGroupResolver;
+        this.domainSendMetrics = domainSendMetrics;
+        this.domainVerdictCache = domainVerdictCache;
+        this.queueJournal = queueJournal;
         this.invalidDomainResultHandler = new InvalidDomainResultHandler(domainSendMetrics);
+        this.suppressedTargetResultHandler = new SuppressedTargetResultHandler(domainSendMetrics);
     }
 
     /**
      * Validates the externally provided batch spec and returns queue registration or immediate failure result.
      */
     CompletableFuture<EmailBatchResult> submitBatchAsync(EmailBatchSpec emailBatchSpec) {
+        CompletableFuture<EmailBatchResult> resultFuture = submitOrResolve(emailBatchSpec);
+        if (emailBatchSpec != null && emailBatchSpec.getEmailSendTargetList() instanceof StoredTargetRange range) {
+            // Every terminal path (sent, failed, cancelled, timed out, rejected) completes the future
+            resultFuture.whenComplete((result, error) -> range.release());
+        }
+        return resultFuture;
+    }
+
+    private CompletableFuture<EmailBatchResult> submitOrResolve(EmailBatchSpec emailBatchSpec) {
         try {
             Objects.requireNonNull(emailBatchSpec, "emailBatchSpec must not be null");
             List<EmailSendTarget> emailSendTargetList = emailBatchSpec.getEmailSendTargetList();
@@ -54,6 +83,24 @@ final class BatchSubmissionService {
                 return CompletableFuture.completedFuture(invalidResult);
             }
 
+            if (BounceSuppressionStore.SUPPRESSED_DOMAIN.equals(emailBatchSpec.getDomain())) {
+                // Recipients that hard-bounced before are not queued; returns a suppressed result immediately.
+                log.info("Batch [{}] submitted with suppressed recipients. Marking {} targets as suppressed.",
+                        emailBatchSpec.getBatchId(), emailSendTargetList.size());
+                return CompletableFuture.completedFuture(suppressedTargetResultHandler.handle(emailBatchSpec));
+            }
+
+            DomainVerdictCache.DomainVerdict verdict = domainVerdictCache.find(emailBatchSpec.getDomain());
+            if (verdict != null) {
+                // Unresolvable or blocked domains are not queued; completes with the domain's verdict immediately.
+                log.info("Batch [{}] submitted for domain: {} with an active verdict. Marking {} targets with code {}.",
+                        emailBatchSpec.getBatchId(), emailBatchSpec.getDomain(), emailSendTargetList.size(), verdict.statusCode());
+                ResultApplier applier = new ResultApplier(emailBatchSpec.getRunnerId(), emailBatchSpec.getResultWriter(), domainSendMetrics);
+                DomainVerdictCache.applyTo(emailSendTargetList, applier, verdict);
+                return CompletableFuture.completedFuture(EmailBatchResult.success(emailBatchSpec.getBatchId(),
+                        emailBatchSpec.getDomain(), emailSendTargetList.size(), 0));
+            }
+
             return submitRequestsInternal(emailBatchSpec);
         } catch (Exception e) {
             String batchId = emailBatchSpec != null ? emailBatchSpec.getBatchId() : "unknown";
@@ -71,15 +118,17 @@ final class BatchSubmissionService {
     CompletableFuture<EmailBatchResult> submitRequestsInternal(EmailBatchSpec emailBatchSpec) {
         CompletableFuture<EmailBatchResult> resultFuture = new CompletableFuture<>();
         ExecutionMode executionMode = resolveExecutionMode(emailBatchSpec);
-        DispatchLane lane = DispatchLane.forFresh(executionMode);
+        DispatchLane lane = lanePlan.freshLaneFor(executionMode, emailBatchSpec.getEmailSendContext().messageType());
         if (emailBatchSpec.getRunnerId() != null && !emailBatchSpec.getRunnerId().isBlank() && emailBatchSpec.getResultWriter() != null) {
             runnerExecutionGuard.trackRunnerTokenIfAbsent(emailBatchSpec.getRunnerId(), emailBatchSpec.getResultWriter());
         }
-        DomainBatchTask domainBatchTask = new DomainBatchTask(emailBatchSpec.getEmailSendTargetList(), emailBatchSpec.getDomain(), emailBatchSpec.getBatchId(),
-                resultFuture, 0, emailBatchSpec.getRunnerId(), emailBatchSpec.getResultWriter(), emailBatchSpec.getEmailSendContext(), executionMode, lane);
+        String mxGroup = mxGroupResolver.resolveGroup(emailBatchSpec.getDomain());
+        DomainBatchTask domainBatchTask = new DomainBatchTask(emailBatchSpec.getEmailSendTargetList(), emailBatchSpec.getDomain(), mxGroup,
+                emailBatchSpec.getBatchId(), resultFuture, 0, emailBatchSpec.getRunnerId(), emailBatchSpec.getResultWriter(), emailBatchSpec.getEmailSendContext(), executionMode, lane);
+        queueJournal.recordSubmitted(domainBatchTask);
         batchQueue.offer(domainBatchTask);
-        log.info("Batch [{}] submitted for domain: {} with {} targets",
-                emailBatchSpec.getBatchId(), emailBatchSpec.getDomain(), emailBatchSpec.getEmailSendTargetList().size());
+        log.info("Batch [{}] submitted for domain: {} (mxGroup: {}) with {} targets",
+                emailBatchSpec.getBatchId(), emailBatchSpec.getDomain(), mxGroup, emailBatchSpec.getEmailSendTargetList().size());
         return resultFuture;
     }
 
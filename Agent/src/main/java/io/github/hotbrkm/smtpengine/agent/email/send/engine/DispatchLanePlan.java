@@ -0,0 +1,218 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLaneProfile;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Configured set of dispatch lanes and their scheduling profiles.
+ * <p>
+ * The built-in lanes carry the policy of the legacy settings ({@code batchHoldMaxMs}, {@code batchReleasePercentPerCycle},
+ * {@code realtimeRetryMaxPercent}, {@code batchRetryMaxPercent}, {@code retryAgingRelax*}, {@code freshReserveMin}).
+ * Additional lanes are declared with {@link EmailConfig.Send#getDispatchLanes()}.
+ */
+final class DispatchLanePlan {
+
+    static final int REALTIME_FRESH_PRIORITY = 0;
+    static final int REALTIME_RETRY_PRIORITY = 10;
+    static final int BATCH_FRESH_PRIORITY = 20;
+    static final int BATCH_RETRY_PRIORITY = 30;
+
+    private final Map<DispatchLane, DispatchLaneProfile> profiles;
+    private final List<List<DispatchLaneProfile>> tiers;
+    private final List<DispatchLaneProfile> reservingProfiles;
+    private final Map<String, DispatchLaneProfile> freshProfileByMessageType;
+
+    private DispatchLanePlan(List<DispatchLaneProfile> profileList) {
+        List<DispatchLaneProfile> sorted = new ArrayList<>(profileList);
+        sorted.sort(Comparator.comparingInt(DispatchLaneProfile::priority));
+
+        Map<DispatchLane, DispatchLaneProfile> byLane = new LinkedHashMap<>();
+        Map<String, DispatchLaneProfile> byMessageType = new HashMap<>();
+        List<List<DispatchLaneProfile>> tierList = new ArrayList<>();
+        List<DispatchLaneProfile> reserving = new ArrayList<>();
+        List<DispatchLaneProfile> currentTier = null;
+        for (DispatchLaneProfile profile : sorted) {
+            if (byLane.putIfAbsent(profile.lane(), profile) != null) {
+                throw new IllegalArgumentException("Duplicate dispatch lane: " + profile.lane());
+            }
+            for (String messageType : profile.messageTypes()) {
+                if (byMessageType.putIfAbsent(messageType, profile) != null) {
+                    throw new IllegalArgumentException("Message type " + messageType + " is mapped to more than one lane");
+                }
+            }
+            if (currentTier == null || currentTier.getFirst().priority() != profile.priority()) {
+                currentTier = new ArrayList<>();
+                tierList.add(currentTier);
+            }
+            currentTier.add(profile);
+            if (profile.reservedSlots() > 0) {
+                reserving.add(profile);
+            }
+        }
+
+        this.profiles = Collections.unmodifiableMap(byLane);
+        this.tiers = tierList.stream().map(List::copyOf).toList();
+        this.reservingProfiles = List.copyOf(reserving);
+        this.freshProfileByMessageType = Map.copyOf(byMessageType);
+    }
+
+    /**
+     * Builds the lane plan from send configuration.
+     *
+     * @throws IllegalArgumentException if an additional lane definition is invalid
+     */
+    static DispatchLanePlan fromSendConfig(EmailConfig.Send sendConfig) {
+        Objects.requireNonNull(sendConfig, "sendConfig must not be null");
+        List<DispatchLaneProfile> profileList = new ArrayList<>(builtInProfiles(sendConfig));
+        if (sendConfig.getDispatchLanes() != null) {
+            for (EmailConfig.Send.LaneConfig laneConfig : sendConfig.getDispatchLanes()) {
+                if (laneConfig != null) {
+                    profileList.addAll(configuredProfiles(sendConfig, laneConfig));
+                }
+            }
+        }
+        return new DispatchLanePlan(profileList);
+    }
+
+    /**
+     * Returns profiles grouped by priority tier, in ascending priority.
+     */
+    List<List<DispatchLaneProfile>> tiers() {
+        return tiers;
+    }
+
+    Collection<DispatchLaneProfile> profiles() {
+        return profiles.values();
+    }
+
+    /**
+     * Returns all lanes in ascending priority; lanes of the same tier keep their declaration order.
+     */
+    List<DispatchLane> laneOrder() {
+        return List.copyOf(profiles.keySet());
+    }
+
+    /**
+     * Returns profiles that reserve worker slots.
+     */
+    List<DispatchLaneProfile> reservingProfiles() {
+        return reservingProfiles;
+    }
+
+    /**
+     * Returns the profile of the lane. Unknown lanes fall back to the built-in lane of the same mode and kind.
+     */
+    DispatchLaneProfile profile(DispatchLane lane) {
+        DispatchLaneProfile profile = profiles.get(lane);
+        if (profile != null) {
+            return profile;
+        }
+        ExecutionMode mode = lane != null ? lane.getExecutionMode() : ExecutionMode.BATCH;
+        boolean retry = lane != null && lane.isRetry();
+        return profiles.get(retry ? DispatchLane.forRetry(mode) : DispatchLane.forFresh(mode));
+    }
+
+    /**
+     * Resolves the lane for a fresh submission. A lane mapped by message type is used only when its mode matches.
+     */
+    DispatchLane freshLaneFor(ExecutionMode mode, String messageType) {
+        if (messageType != null) {
+            DispatchLaneProfile profile = freshProfileByMessageType.get(messageType);
+            if (profile != null && profile.lane().getExecutionMode() == mode) {
+                return profile.lane();
+            }
+        }
+        return DispatchLane.forFresh(mode);
+    }
+
+    /**
+     * Resolves the lane for retries of a batch originally dispatched on {@code lane}.
+     */
+    DispatchLane retryLaneFor(DispatchLane lane, ExecutionMode mode) {
+        if (lane != null) {
+            if (lane.isRetry() && profiles.containsKey(lane)) {
+                return lane;
+            }
+            DispatchLaneProfile profile = profiles.get(lane);
+            if (profile != null && profile.retryLane() != null) {
+                return profile.retryLane();
+            }
+        }
+        return DispatchLane.forRetry(mode);
+    }
+
+    private static List<DispatchLaneProfile> builtInProfiles(EmailConfig.Send sendConfig) {
+        int freshReserveMin = Math.max(0, sendConfig.getFreshReserveMin());
+        int relaxPercent = sendConfig.getRetryAgingRelaxPercent();
+        long relaxThresholdMs = sendConfig.getRetryAgingRelaxThresholdMs();
+        long holdMaxMs = sendConfig.getBatchHoldMaxMs();
+        int releasePercent = sendConfig.getBatchReleasePercentPerCycle();
+        return List.of(
+                new DispatchLaneProfile(DispatchLane.REALTIME_FRESH, REALTIME_FRESH_PRIORITY, 1, 0, 100, 100, 0L, 0,
+                        true, false, 0L, 100, Set.of(), DispatchLane.REALTIME_RETRY),
+                new DispatchLaneProfile(DispatchLane.REALTIME_RETRY, REALTIME_RETRY_PRIORITY, 1, 0,
+                        sendConfig.getRealtimeRetryMaxPercent(), relaxPercent, relaxThresholdMs, freshReserveMin,
+                        false, false, 0L, 100, Set.of(), null),
+                new DispatchLaneProfile(DispatchLane.BATCH_FRESH, BATCH_FRESH_PRIORITY, 1, 0, 100, 100, 0L, 0,
+                        false, true, holdMaxMs, releasePercent, Set.of(), DispatchLane.BATCH_RETRY),
+                new DispatchLaneProfile(DispatchLane.BATCH_RETRY, BATCH_RETRY_PRIORITY, 1, 0,
+                        sendConfig.getBatchRetryMaxPercent(), relaxPercent, relaxThresholdMs, freshReserveMin,
+                        false, true, holdMaxMs, releasePercent, Set.of(), null)
+        );
+    }
+
+    private static List<DispatchLaneProfile> configuredProfiles(EmailConfig.Send sendConfig, EmailConfig.Send.LaneConfig laneConfig) {
+        ExecutionMode mode = parseExecutionMode(laneConfig);
+        DispatchLane freshLane = DispatchLane.of(laneConfig.getName(), mode, false);
+        if (freshLane.isBuiltIn()) {
+            throw new IllegalArgumentException("Dispatch lane " + freshLane + " is built-in and cannot be redefined");
+        }
+        DispatchLane retryLane = DispatchLane.of(freshLane.name() + "_RETRY", mode, true);
+
+        boolean realtime = mode == ExecutionMode.REALTIME;
+        int retryPriority = laneConfig.getRetryPriority() >= 0
+                ? laneConfig.getRetryPriority()
+                : (realtime ? REALTIME_RETRY_PRIORITY : BATCH_RETRY_PRIORITY);
+        int retryMaxPercent = laneConfig.getRetryMaxPercent() >= 0
+                ? laneConfig.getRetryMaxPercent()
+                : (realtime ? sendConfig.getRealtimeRetryMaxPercent() : sendConfig.getBatchRetryMaxPercent());
+        boolean preemptsHold = laneConfig.getPreemptsHold() != null ? laneConfig.getPreemptsHold() : realtime;
+        boolean holdable = laneConfig.getHoldable() != null ? laneConfig.getHoldable() : !realtime;
+        long holdMaxMs = laneConfig.getHoldMaxMs() > 0L ? laneConfig.getHoldMaxMs() : sendConfig.getBatchHoldMaxMs();
+        int releasePercent = laneConfig.getReleasePercentPerCycle() >= 0
+                ? laneConfig.getReleasePercentPerCycle()
+                : sendConfig.getBatchReleasePercentPerCycle();
+        Set<String> messageTypes = laneConfig.getMessageTypes() == null ? Set.of() : Set.copyOf(laneConfig.getMessageTypes());
+
+        return List.of(
+                new DispatchLaneProfile(freshLane, laneConfig.getPriority(), laneConfig.getWeight(), laneConfig.getReservedSlots(),
+                        100, 100, 0L, 0, preemptsHold, holdable, holdMaxMs, releasePercent, messageTypes, retryLane),
+                new DispatchLaneProfile(retryLane, retryPriority, laneConfig.getWeight(), 0,
+                        retryMaxPercent, sendConfig.getRetryAgingRelaxPercent(), sendConfig.getRetryAgingRelaxThresholdMs(),
+                        Math.max(0, sendConfig.getFreshReserveMin()), false, holdable, holdMaxMs, releasePercent, Set.of(), null)
+        );
+    }
+
+    private static ExecutionMode parseExecutionMode(EmailConfig.Send.LaneConfig laneConfig) {
+        String value = laneConfig.getExecutionMode();
+        try {
+            return ExecutionMode.valueOf(value == null ? "" : value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid execution mode for dispatch lane " + laneConfig.getName() + ": " + value, e);
+        }
+    }
+}
@@ -1,53 +1,60 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.engine;
 
-import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiPredicate;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLaneProfile;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchQueue;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
 
 /**
  * Dispatch processor that selects domain batches based on worker pool status and queue conditions and delivers them to the executor.
- * Performs Realtime/Batch, Fresh/Retry lane policies, and runner validation together.
+ * <p>
+ * Lanes are evaluated by a single weighted scheduler driven by {@link DispatchLanePlan}: priority tiers are visited in order,
+ * lanes of the same tier are served by weighted round-robin, and each lane's hold, reservation and in-flight cap rules
+ * ({@link DispatchLaneProfile}) decide whether it may dispatch in the current cycle. Runner validation is performed together.
  */
 @Slf4j
 final class DispatchProcessor {
 
     private static final int DEFAULT_BATCH_HOLD_MULTIPLIER = 2;
     private static final int DEFAULT_BATCH_RELEASE_SMOOTHING_CYCLES = 1;
-    private static final List<DispatchLane> REALTIME_ONLY_POLL_ORDER = List.of(DispatchLane.REALTIME_FRESH, DispatchLane.REALTIME_RETRY);
-    private static final List<DispatchLane> FULL_POLL_ORDER = List.of(DispatchLane.REALTIME_FRESH, DispatchLane.REALTIME_RETRY, DispatchLane.BATCH_FRESH, DispatchLane.BATCH_RETRY);
 
     private final DomainBatchQueue batchQueue;
     private final EngineExecutors engineExecutors;
-    private final EmailConfig.Send sendConfig;
     private final EngineRuntimeState runtimeState;
     private final int schedulerIntervalMs;
     private final RunnerExecutionGuard runnerExecutionGuard;
     private final BatchResultFinalizer batchResultFinalizer;
+    private final DispatchLanePlan lanePlan;
     private final BiPredicate<DomainBatchTask, Set<String>> batchExecutor;
+    // Smooth weighted round-robin credits for lanes sharing a priority tier (accessed only from the dispatch thread)
+    private final Map<DispatchLane, Integer> laneCredits = new HashMap<>();
 
     DispatchProcessor(EngineRuntimeContext context, BiPredicate<DomainBatchTask, Set<String>> batchExecutor) {
         this.batchQueue = context.batchQueue();
         this.engineExecutors = context.engineExecutors();
-        this.sendConfig = context.sendConfig();
         this.runtimeState = context.runtimeState();
         this.schedulerIntervalMs = context.runtimeOptions().schedulerIntervalMs();
         this.runnerExecutionGuard = context.runnerExecutionGuard();
         this.batchResultFinalizer = context.batchResultFinalizer();
+        this.lanePlan = context.lanePlan();
         this.batchExecutor = batchExecutor;
     }
 
     /**
      * Retrieves executable batches from the queue and dispatches them to the worker pool during one scheduler cycle.
      * <p>
-     * Determines the maximum dispatch count for this cycle reflecting realtime backlog, batch hold/relax policies, and runner validity (active/aborted).
+     * Determines the maximum dispatch count for this cycle reflecting preempting-lane backlog, hold/relax policies, and runner validity (active/aborted).
      *
      * @param running Engine execution state (dispatch only when true)
      */
@@ -68,23 +75,37 @@ final class DispatchProcessor {
     private DispatchCycle initializeCycle() {
         int maxWorkers = engineExecutors.maxWorkerCount();
         DispatchCycle cycle = new DispatchCycle(maxWorkers, Math.max(10, maxWorkers));
-
-        // Must reflect Realtime Fresh waiting status first to ensure consistent batch hold/relax policy for this cycle.
-        boolean hasRealtimeFreshAtStart = batchQueue.hasAvailableBatch(DispatchLane.REALTIME_FRESH, cycle.realtimeNoSlotDomains());
-        updateBatchHoldState(hasRealtimeFreshAtStart);
-        cycle.setBatchDispatchLimit(resolveBatchDispatchLimitPerCycle(maxWorkers, hasRealtimeFreshAtStart));
+        // Runner pause and rate state apply per cycle, so availability checks below share one gate result per runner.
+        batchQueue.refreshRunnerGate();
+
+        // Must reflect preempting lane waiting status first to ensure consistent hold/relax policy for this cycle.
+        boolean hasPreemptingAtStart = hasPreemptingPending(cycle);
+        updateBatchHoldState(hasPreemptingAtStart);
+        for (DispatchLaneProfile profile : lanePlan.profiles()) {
+            if (profile.holdable()) {
+                cycle.setHoldDispatchLimit(profile.lane(), resolveHoldDispatchLimitPerCycle(profile, maxWorkers, hasPreemptingAtStart));
+            }
+        }
 
         return cycle;
     }
 
+    private boolean hasPreemptingPending(DispatchCycle cycle) {
+        for (DispatchLaneProfile profile : lanePlan.profiles()) {
+            if (profile.preemptsHold() && batchQueue.hasAvailableBatch(profile.lane(), cycle.noSlotDomains(profile.lane()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void dispatchBatches(DispatchCycle cycle) {
         while (cycle.canDispatchMore()) {
             if (!hasAvailableWorkerSlot(cycle)) {
                 break;
             }
 
-            DomainBatchTask domainBatchTask = pollNextTask(cycle.realtimeNoSlotDomains(), cycle.batchNoSlotDomains(),
-                    cycle.batchDispatchedThisCycle(), cycle.batchDispatchLimit(), cycle.maxWorkers());
+            DomainBatchTask domainBatchTask = pollNextTask(cycle);
             if (domainBatchTask == null) {
                 break;
             }
@@ -95,7 +116,7 @@ final class DispatchProcessor {
             }
 
             if (tryDispatch(domainBatchTask, cycle)) {
-                cycle.markDispatched(isBatchLane(domainBatchTask));
+                cycle.markDispatched(isHoldableLane(domainBatchTask));
             }
         }
     }
@@ -118,19 +139,12 @@ final class DispatchProcessor {
     }
 
     private boolean tryDispatch(DomainBatchTask domainBatchTask, DispatchCycle cycle) {
-        // Separates no-slot domains per lane to reduce excessive retry/re-polling in the same cycle.
-        Set<String> noSlotDomains = isRealtimeLane(domainBatchTask)
-                ? cycle.realtimeNoSlotDomains()
-                : cycle.batchNoSlotDomains();
-        return batchExecutor.test(domainBatchTask, noSlotDomains);
-    }
-
-    private boolean isRealtimeLane(DomainBatchTask domainBatchTask) {
-        return domainBatchTask.getDispatchLane() != null && domainBatchTask.getDispatchLane().isRealtime();
+        // Separates no-slot domains per mode to reduce excessive retry/re-polling in the same cycle.
+        return batchExecutor.test(domainBatchTask, cycle.noSlotDomains(domainBatchTask.getDispatchLane()));
     }
 
-    private boolean isBatchLane(DomainBatchTask domainBatchTask) {
-        return domainBatchTask.getDispatchLane() != null && !domainBatchTask.getDispatchLane().isRealtime();
+    private boolean isHoldableLane(DomainBatchTask domainBatchTask) {
+        return lanePlan.profile(domainBatchTask.getDispatchLane()).holdable();
     }
 
     private void finalizeCycle(DispatchCycle cycle) {
@@ -144,28 +158,51 @@ final class DispatchProcessor {
     }
 
     /**
-     * Selects the next batch that fits the current cycle policy (Realtime priority, Batch limit, Retry allowance).
+     * Selects the next batch that fits the current cycle policy by visiting priority tiers in order.
      *
-     * @param realtimeNoSlotDomains Set of domains excluded due to worker slot shortage in realtime lane
-     * @param batchNoSlotDomains Set of domains excluded due to worker slot shortage in batch lane
-     * @param batchDispatchedThisCycle Number of batches already dispatched in this cycle
-     * @param batchDispatchLimit Maximum allowed batch dispatch count for this cycle
-     * @param maxWorkers Maximum worker pool size
+     * @param cycle Current dispatch cycle
      * @return Next executable batch, or {@code null} if none
      */
-    private DomainBatchTask pollNextTask(Set<String> realtimeNoSlotDomains, Set<String> batchNoSlotDomains,
-                                         int batchDispatchedThisCycle, int batchDispatchLimit, int maxWorkers) {
-        boolean hasRealtimeFresh = batchQueue.hasAvailableBatch(DispatchLane.REALTIME_FRESH, realtimeNoSlotDomains);
-        boolean strictRealtimeOnly = hasRealtimeFresh && (batchDispatchLimit <= 0);
-        List<DispatchLane> pollOrder = strictRealtimeOnly ? REALTIME_ONLY_POLL_ORDER : FULL_POLL_ORDER;
-        for (DispatchLane lane : pollOrder) {
-            if (!canDispatchLane(lane, batchDispatchedThisCycle, batchDispatchLimit, maxWorkers,
-                    realtimeNoSlotDomains, batchNoSlotDomains)) {
-                continue;
+    private DomainBatchTask pollNextTask(DispatchCycle cycle) {
+        for (List<DispatchLaneProfile> tier : lanePlan.tiers()) {
+            DomainBatchTask task = tier.size() == 1 ? pollLane(tier.getFirst(), cycle) : pollWeightedTier(tier, cycle);
+            if (task != null) {
+                return task;
             }
-            Set<String> excludedDomains = lane.isRealtime() ? realtimeNoSlotDomains : batchNoSlotDomains;
-            DomainBatchTask task = batchQueue.poll(lane, excludedDomains);
+        }
+        return null;
+    }
+
+    private DomainBatchTask pollLane(DispatchLaneProfile profile, DispatchCycle cycle) {
+        if (!canDispatchLane(profile, cycle)) {
+            return null;
+        }
+        return batchQueue.poll(profile.lane(), cycle.noSlotDomains(profile.lane()));
+    }
+
+    /**
+     * Serves lanes of the same priority tier by smooth weighted round-robin among lanes that can dispatch now.
+     */
+    private DomainBatchTask pollWeightedTier(List<DispatchLaneProfile> tier, DispatchCycle cycle) {
+        List<DispatchLaneProfile> candidates = new ArrayList<>(tier.size());
+        int totalWeight = 0;
+        for (DispatchLaneProfile profile : tier) {
+            if (canDispatchLane(profile, cycle)
+                    && batchQueue.hasAvailableBatch(profile.lane(), cycle.noSlotDomains(profile.lane()))) {
+                candidates.add(profile);
+                totalWeight += profile.weight();
+                laneCredits.merge(profile.lane(), profile.weight(), Integer::sum);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        candidates.sort(Comparator.comparingInt((DispatchLaneProfile profile) -> laneCredits.getOrDefault(profile.lane(), 0)).reversed());
+        for (DispatchLaneProfile profile : candidates) {
+            DomainBatchTask task = batchQueue.poll(profile.lane(), cycle.noSlotDomains(profile.lane()));
             if (task != null) {
+                laneCredits.merge(profile.lane(), -totalWeight, Integer::sum);
                 return task;
             }
         }
@@ -173,80 +210,122 @@ final class DispatchProcessor {
     }
 
     /**
-     * Determines if the specified lane can be dispatched in the current cycle.
-     * Retry lane additionally applies {@link #canDispatchRetry(DispatchLane, int, Set, Set)} policy.
+     * Determines if the lane can be dispatched in the current cycle.
+     * Applies the hold limit, the reserved capacity of other lanes, and for capped lanes
+     * the {@link #canDispatchCapped(DispatchLaneProfile, int, Set, Set)} policy.
      */
-    private boolean canDispatchLane(DispatchLane lane, int batchDispatchedThisCycle, int batchDispatchLimit, int maxWorkers,
-                                    Set<String> realtimeNoSlotDomains, Set<String> batchNoSlotDomains) {
-        if (lane == null) {
+    private boolean canDispatchLane(DispatchLaneProfile profile, DispatchCycle cycle) {
+        if (profile.holdable() && cycle.heldDispatchedThisCycle() >= cycle.holdDispatchLimit(profile.lane())) {
             return false;
         }
-        if (!lane.isRealtime() && batchDispatchedThisCycle >= batchDispatchLimit) {
+        if (!hasCapacityOutsideReservations(profile, cycle)) {
             return false;
         }
-        if (!lane.isRetry()) {
+        if (!profile.isCapped()) {
             return true;
         }
-        return canDispatchRetry(lane, maxWorkers, realtimeNoSlotDomains, batchNoSlotDomains);
+        return canDispatchCapped(profile, cycle.maxWorkers(), cycle.realtimeNoSlotDomains(), cycle.batchNoSlotDomains());
+    }
+
+    /**
+     * Checks that dispatching from the lane does not consume slots reserved for other lanes with pending batches.
+     */
+    private boolean hasCapacityOutsideReservations(DispatchLaneProfile profile, DispatchCycle cycle) {
+        if (lanePlan.reservingProfiles().isEmpty()) {
+            return true;
+        }
+
+        int reservedForOthers = 0;
+        for (DispatchLaneProfile other : lanePlan.reservingProfiles()) {
+            if (other.lane().equals(profile.lane())) {
+                continue;
+            }
+            int outstanding = other.reservedSlots() - getInFlightCount(other.lane());
+            if (outstanding > 0 && batchQueue.hasAvailableBatch(other.lane(), cycle.noSlotDomains(other.lane()))) {
+                reservedForOthers += outstanding;
+            }
+        }
+        if (reservedForOthers == 0) {
+            return true;
+        }
+        int freeSlots = cycle.maxWorkers() - getTotalInFlightCount();
+        return freeSlots > reservedForOthers;
     }
 
     /**
      * Calculates whether Retry lane dispatch is allowed.
-     * <p>
-     * Determines Retry allowance limit by combining in-flight count within the same mode (Realtime/Batch),
-     * Fresh reservation minimum, Retry occupancy cap, and Retry wait aging relaxation threshold.
      *
      * @param retryLane Target Retry lane
      * @param maxWorkers Maximum worker pool size
      * @param realtimeNoSlotDomains Realtime lane excluded domain set
      * @param batchNoSlotDomains Batch lane excluded domain set
      * @return {@code true} if Retry dispatch is possible under current conditions
+     * @see #canDispatchCapped(DispatchLaneProfile, int, Set, Set)
      */
     boolean canDispatchRetry(DispatchLane retryLane, int maxWorkers, Set<String> realtimeNoSlotDomains, Set<String> batchNoSlotDomains) {
-        boolean realtimeLane = retryLane.isRealtime();
-        int modeInFlight = realtimeLane ? getRealtimeInFlightCount() : getBatchInFlightCount();
-        int otherModeInFlight = realtimeLane ? getBatchInFlightCount() : getRealtimeInFlightCount();
-        int retryInFlight = getInFlightCount(retryLane);
+        return canDispatchCapped(lanePlan.profile(retryLane), maxWorkers, realtimeNoSlotDomains, batchNoSlotDomains);
+    }
+
+    /**
+     * Calculates whether a capped lane may dispatch.
+     * <p>
+     * Determines the allowance limit by combining in-flight count within the same mode (Realtime/Batch),
+     * the lane's headroom for other lanes, its occupancy cap while an uncapped lane of the same mode is pending,
+     * and the wait aging relaxation threshold.
+     *
+     * @param profile Target capped lane profile
+     * @param maxWorkers Maximum worker pool size
+     * @param realtimeNoSlotDomains Realtime lane excluded domain set
+     * @param batchNoSlotDomains Batch lane excluded domain set
+     * @return {@code true} if dispatch is possible under current conditions
+     */
+    boolean canDispatchCapped(DispatchLaneProfile profile, int maxWorkers, Set<String> realtimeNoSlotDomains, Set<String> batchNoSlotDomains) {
+        DispatchLane lane = profile.lane();
+        boolean realtimeLane = lane.isRealtime();
+        Set<String> modeNoSlotDomains = realtimeLane ? realtimeNoSlotDomains : batchNoSlotDomains;
+        int modeInFlight = getModeInFlightCount(realtimeLane);
+        int otherModeInFlight = getModeInFlightCount(!realtimeLane);
+        int laneInFlight = getInFlightCount(lane);
         int modeCapacity = Math.max(0, maxWorkers - otherModeInFlight);
         if (modeInFlight >= modeCapacity) {
             return false;
         }
 
-        boolean freshPending = realtimeLane
-                ? batchQueue.hasAvailableBatch(DispatchLane.REALTIME_FRESH, realtimeNoSlotDomains)
-                : batchQueue.hasAvailableBatch(DispatchLane.BATCH_FRESH, batchNoSlotDomains);
-        int freshReserveMin = Math.max(0, sendConfig.getFreshReserveMin());
-
-        int retryCapPercent = realtimeLane
-                ? normalizePercent(sendConfig.getRealtimeRetryMaxPercent())
-                : normalizePercent(sendConfig.getBatchRetryMaxPercent());
+        boolean uncappedPending = false;
+        for (DispatchLaneProfile other : lanePlan.profiles()) {
+            if (other.lane().isRealtime() == realtimeLane && !other.isCapped() && !other.lane().equals(lane)
+                    && batchQueue.hasAvailableBatch(other.lane(), modeNoSlotDomains)) {
+                uncappedPending = true;
+                break;
+            }
+        }
+        int headroomSlots = profile.headroomSlots();
 
-        long oldestRetryAge = batchQueue.getOldestAgeMillis(retryLane,
-                realtimeLane ? realtimeNoSlotDomains : batchNoSlotDomains);
-        long relaxThresholdMs = Math.max(0L, sendConfig.getRetryAgingRelaxThresholdMs());
-        if (oldestRetryAge >= relaxThresholdMs) {
-            retryCapPercent = Math.max(retryCapPercent, normalizePercent(sendConfig.getRetryAgingRelaxPercent()));
+        int capPercent = profile.maxInFlightPercent();
+        long oldestAge = batchQueue.getOldestAgeMillis(lane, modeNoSlotDomains);
+        if (oldestAge >= profile.agingRelaxThresholdMs()) {
+            capPercent = Math.max(capPercent, profile.agingRelaxPercent());
         }
 
-        int retryLimit;
-        if (freshPending) {
-            retryLimit = (int) Math.floor(modeCapacity * (retryCapPercent / 100.0d));
-            retryLimit = Math.min(retryLimit, Math.max(0, modeCapacity - freshReserveMin));
+        int laneLimit;
+        if (uncappedPending) {
+            laneLimit = (int) Math.floor(modeCapacity * (capPercent / 100.0d));
+            laneLimit = Math.min(laneLimit, Math.max(0, modeCapacity - headroomSlots));
             if (modeCapacity > 0) {
-                retryLimit = Math.max(1, retryLimit);
+                laneLimit = Math.max(1, laneLimit);
             }
         } else {
-            retryLimit = Math.max(0, modeCapacity - freshReserveMin);
+            laneLimit = Math.max(0, modeCapacity - headroomSlots);
         }
 
-        return retryInFlight < retryLimit;
+        return laneInFlight < laneLimit;
     }
 
     /**
-     * Updates batch hold start time and relaxation cycle state based on Realtime Fresh waiting status.
+     * Updates hold start time and relaxation cycle state based on preempting lane waiting status.
      */
-    private void updateBatchHoldState(boolean hasRealtimeFreshPending) {
-        if (hasRealtimeFreshPending) {
+    private void updateBatchHoldState(boolean hasPreemptingPending) {
+        if (hasPreemptingPending) {
             if (runtimeState.batchHoldStartedAtMs() < 0L) {
                 runtimeState.setBatchHoldStartedAtMs(System.currentTimeMillis());
             }
@@ -260,31 +339,44 @@ final class DispatchProcessor {
     }
 
     /**
-     * Calculates the upper limit of how many batch lanes can be dispatched in this cycle.
-     * <p>
-     * Returns 0 if Realtime Fresh is waiting before hold time elapses,
-     * and allows only a limited ratio in the relaxation period immediately after hold release.
+     * Calculates the upper limit of how many batches the built-in batch lanes can dispatch in this cycle.
      *
      * @param maxWorkers Maximum worker pool size
      * @param hasRealtimeFreshPending Realtime Fresh waiting status
      * @return Batch dispatch allowance limit (Unlimited is {@link Integer#MAX_VALUE})
+     * @see #resolveHoldDispatchLimitPerCycle(DispatchLaneProfile, int, boolean)
      */
     int resolveBatchDispatchLimitPerCycle(int maxWorkers, boolean hasRealtimeFreshPending) {
+        return resolveHoldDispatchLimitPerCycle(lanePlan.profile(DispatchLane.BATCH_FRESH), maxWorkers, hasRealtimeFreshPending);
+    }
+
+    /**
+     * Calculates the upper limit of how many batches a holdable lane can dispatch in this cycle.
+     * <p>
+     * Returns 0 if a preempting lane is waiting before the lane's hold time elapses,
+     * and allows only a limited ratio in the relaxation period immediately after hold release.
+     *
+     * @param profile Holdable lane profile
+     * @param maxWorkers Maximum worker pool size
+     * @param hasPreemptingPending Preempting lane waiting status
+     * @return Dispatch allowance limit (Unlimited is {@link Integer#MAX_VALUE})
+     */
+    int resolveHoldDispatchLimitPerCycle(DispatchLaneProfile profile, int maxWorkers, boolean hasPreemptingPending) {
         if (maxWorkers <= 0) {
             return 0;
         }
-        if (hasRealtimeFreshPending) {
-            long holdMaxMs = resolveBatchHoldMaxMs();
+        if (hasPreemptingPending) {
+            long holdMaxMs = resolveHoldMaxMs(profile);
             long holdElapsedMs = runtimeState.batchHoldStartedAtMs() >= 0L
                     ? System.currentTimeMillis() - runtimeState.batchHoldStartedAtMs()
                     : 0L;
             if (holdElapsedMs < holdMaxMs) {
                 return 0;
             }
-            return computeBatchReleasePerCycle(maxWorkers);
+            return computeReleasePerCycle(profile, maxWorkers);
         }
         if (runtimeState.batchReleaseSmoothingCycles() > 0) {
-            return computeBatchReleasePerCycle(maxWorkers);
+            return computeReleasePerCycle(profile, maxWorkers);
         }
         return Integer.MAX_VALUE;
     }
@@ -299,35 +391,36 @@ final class DispatchProcessor {
         }
     }
 
-    private long resolveBatchHoldMaxMs() {
-        long configured = sendConfig.getBatchHoldMaxMs();
+    private long resolveHoldMaxMs(DispatchLaneProfile profile) {
+        long configured = profile.holdMaxMs();
         if (configured > 0L) {
             return configured;
         }
         return Math.max(10L, (long) schedulerIntervalMs * DEFAULT_BATCH_HOLD_MULTIPLIER);
     }
 
-    private int computeBatchReleasePerCycle(int maxWorkers) {
-        int percent = normalizePercent(sendConfig.getBatchReleasePercentPerCycle());
-        int computed = (int) Math.floor(maxWorkers * (percent / 100.0d));
+    private int computeReleasePerCycle(DispatchLaneProfile profile, int maxWorkers) {
+        int computed = (int) Math.floor(maxWorkers * (profile.releasePercentPerCycle() / 100.0d));
         return Math.max(1, computed);
     }
 
-    private int normalizePercent(int value) {
-        return Math.min(100, Math.max(0, value));
-    }
-
     private int getInFlightCount(DispatchLane lane) {
         AtomicInteger counter = runtimeState.inFlightByLane().get(lane);
         return counter != null ? Math.max(0, counter.get()) : 0;
     }
 
-    private int getRealtimeInFlightCount() {
-        return getInFlightCount(DispatchLane.REALTIME_FRESH) + getInFlightCount(DispatchLane.REALTIME_RETRY);
+    private int getModeInFlightCount(boolean realtime) {
+        int total = 0;
+        for (Map.Entry<DispatchLane, AtomicInteger> entry : runtimeState.inFlightByLane().entrySet()) {
+            if (entry.getKey().isRealtime() == realtime) {
+                total += Math.max(0, entry.getValue().get());
+            }
+        }
+        return total;
     }
 
-    private int getBatchInFlightCount() {
-        return getInFlightCount(DispatchLane.BATCH_FRESH) + getInFlightCount(DispatchLane.BATCH_RETRY);
+    private int getTotalInFlightCount() {
+        return getModeInFlightCount(true) + getModeInFlightCount(false);
     }
 
     private void completeTaskAsFailure(DomainBatchTask task, Exception cause, String reason) {
@@ -339,9 +432,9 @@ final class DispatchProcessor {
         private final int maxDispatchPerCycle;
         private final Set<String> realtimeNoSlotDomains = new HashSet<>();
         private final Set<String> batchNoSlotDomains = new HashSet<>();
-        private int batchDispatchLimit;
+        private final Map<DispatchLane, Integer> holdDispatchLimits = new HashMap<>();
         private int dispatched;
-        private int batchDispatchedThisCycle;
+        private int heldDispatchedThisCycle;
 
         private DispatchCycle(int maxWorkers, int maxDispatchPerCycle) {
             this.maxWorkers = maxWorkers;
@@ -360,30 +453,34 @@ final class DispatchProcessor {
             return batchNoSlotDomains;
         }
 
-        private int batchDispatchLimit() {
-            return batchDispatchLimit;
+        private Set<String> noSlotDomains(DispatchLane lane) {
+            return lane != null && lane.isRealtime() ? realtimeNoSlotDomains : batchNoSlotDomains;
+        }
+
+        private int holdDispatchLimit(DispatchLane lane) {
+            return holdDispatchLimits.getOrDefault(lane, Integer.MAX_VALUE);
         }
 
-        private void setBatchDispatchLimit(int batchDispatchLimit) {
-            this.batchDispatchLimit = batchDispatchLimit;
+        private void setHoldDispatchLimit(DispatchLane lane, int limit) {
+            holdDispatchLimits.put(lane, limit);
         }
 
         private int dispatched() {
             return dispatched;
         }
 
-        private int batchDispatchedThisCycle() {
-            return batchDispatchedThisCycle;
+        private int heldDispatchedThisCycle() {
+            return heldDispatchedThisCycle;
         }
 
         private boolean canDispatchMore() {
             return dispatched < maxDispatchPerCycle;
         }
 
-        private void markDispatched(boolean batchLane) {
+        private void markDispatched(boolean holdableLane) {
             dispatched++;
-            if (batchLane) {
-                batchDispatchedThisCycle++;
+            if (holdableLane) {
+                heldDispatchedThisCycle++;
             }
         }
     }
@@ -0,0 +1,118 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpStatus;
+import io.github.hotbrkm.smtpengine.agent.email.send.worker.ResultApplier;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-domain verdicts that let batches complete without taking a worker slot or bind IP lease.
+ * <p>
+ * A domain has a verdict while:
+ * 1) Its last session open failed definitively in DNS (NXDOMAIN, or no MX and no A), for {@code dnsFailureTtlMs}
+ * 2) Its {@link EmailDomain} block window is active ({@link EmailDomain#isWithinBlockEndTime(LocalDateTime)})
+ */
+@Slf4j
+final class DomainVerdictCache {
+
+    private final EmailDomainManager emailDomainManager;
+    private final boolean enabled;
+    private final long dnsFailureTtlMs;
+    private final Map<String, DomainVerdict> dnsVerdicts = new ConcurrentHashMap<>();
+
+    DomainVerdictCache(EmailDomainManager emailDomainManager, boolean enabled, long dnsFailureTtlMs) {
+        this.emailDomainManager = emailDomainManager;
+        this.enabled = enabled;
+        this.dnsFailureTtlMs = Math.max(0L, dnsFailureTtlMs);
+    }
+
+    static DomainVerdictCache fromSendConfig(EmailConfig.Send sendConfig, EmailDomainManager emailDomainManager) {
+        return new DomainVerdictCache(emailDomainManager, sendConfig.isDomainVerdictEnabled(), sendConfig.getDomainVerdictDnsFailureTtlMs());
+    }
+
+    /**
+     * Returns the active verdict of a domain, or null if its batches should be dispatched.
+     */
+    DomainVerdict find(String domain) {
+        if (!enabled || domain == null) {
+            return null;
+        }
+        String key = domain.toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        DomainVerdict dnsVerdict = dnsVerdicts.get(key);
+        if (dnsVerdict != null) {
+            if (now < dnsVerdict.expiresAtMillis()) {
+                return dnsVerdict;
+            }
+            dnsVerdicts.remove(key, dnsVerdict);
+        }
+        return findBlockVerdict(key);
+    }
+
+    /**
+     * Records a definitive DNS failure; batches of the domain complete with the same code until the verdict expires.
+     */
+    void recordDnsFailure(String domain, int statusCode, String message) {
+        if (!enabled || domain == null || dnsFailureTtlMs == 0L) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + dnsFailureTtlMs;
+        DomainVerdict previous = dnsVerdicts.put(domain.toLowerCase(Locale.ROOT), new DomainVerdict(statusCode, message, expiresAt));
+        if (previous == null) {
+            log.info("Domain {} is unresolvable; completing its batches without dispatch for {} ms. reason={}",
+                    domain, dnsFailureTtlMs, message);
+        }
+    }
+
+    /**
+     * Marks every target that has not been delivered yet with the verdict (retry targets replace their earlier failure).
+     *
+     * @return Number of targets marked
+     */
+    static int applyTo(List<EmailSendTarget> targets, ResultApplier applier, DomainVerdict verdict) {
+        int applied = 0;
+        for (EmailSendTarget target : targets) {
+            if (!"SUCCESS".equals(target.getSendStatus())) {
+                applier.apply(target, SendResult.failure(verdict.statusCode(), verdict.message()));
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    private DomainVerdict findBlockVerdict(String domain) {
+        if (emailDomainManager == null) {
+            return null;
+        }
+        EmailDomain emailDomain = emailDomainManager.getEmailDomain(domain);
+        // Unknown domains resolve to the default entry, whose block window is not a per-domain verdict
+        if (emailDomain == null || !domain.equalsIgnoreCase(emailDomain.getDomainName())) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (!emailDomain.isWithinBlockEndTime(now)) {
+            return null;
+        }
+        LocalDateTime blockEndTime = emailDomain.getBlockEndTime();
+        return new DomainVerdict(SmtpStatus.DOMAIN_BLOCKED,
+                SmtpStatus.DOMAIN_BLOCKED + " Domain blocked until " + blockEndTime,
+                blockEndTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    /**
+     * Result every target of a domain receives while the verdict is active.
+     */
+    record DomainVerdict(int statusCode, String message, long expiresAtMillis) {
+    }
+}
@@ -1,18 +1,34 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.engine;
 
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchSpec;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
+import io.github.hotbrkm.smtpengine.agent.email.send.worker.StandbySessionPool;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchQueue;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.QueueJournal;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainMetricSnapshot;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.AdaptiveConcurrencyController;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.AdaptiveConcurrencyPolicy;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.RunnerLimits;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.RunnerThrottle;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.SendRateLimiter;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.MxGroupResolver;
 
 /**
  * Email sending engine class
@@ -38,6 +54,17 @@ public class EmailSendEngine {
     private final BindIpSessionAllocator bindIpSessionAllocator;
     private final EngineExecutors engineExecutors;
     private final DomainSendMetrics domainSendMetrics;
+    private final AdaptiveConcurrencyController concurrencyController;
+    private final SendRateLimiter sendRateLimiter;
+    private final RunnerThrottle runnerThrottle;
+    private final MxGroupResolver mxGroupResolver;
+    private final BounceSuppressionStore bounceSuppressionStore;
+    private final QueueJournal queueJournal;
+    private final QueueRecovery queueRecovery;
+    private final ExecutionCoordinator executionCoordinator;
+    private final RealtimeMicroBatcher realtimeMicroBatcher;
+    private final StandbySessionPool standbySessionPool;
+    private final long standbyKeepaliveMs;
 
     private volatile boolean isRunning = false;
 
@@ -56,6 +83,20 @@ public class EmailSendEngine {
         this.bindIpSessionAllocator = context.bindIpSessionAllocator();
         this.engineExecutors = context.engineExecutors();
         this.domainSendMetrics = context.domainSendMetrics();
+        this.concurrencyController = context.concurrencyController();
+        this.sendRateLimiter = context.sendRateLimiter();
+        this.runnerThrottle = context.runnerThrottle();
+        this.mxGroupResolver = context.mxGroupResolver();
+        this.bounceSuppressionStore = context.bounceSuppressionStore();
+        this.queueJournal = context.queueJournal();
+        this.queueRecovery = assembly.queueRecovery();
+        this.executionCoordinator = assembly.executionCoordinator();
+        this.standbySessionPool = assembly.standbySessionPool();
+        this.standbyKeepaliveMs = context.sendConfig().getRealtimeStandbyKeepaliveMs();
+        this.realtimeMicroBatcher = new RealtimeMicroBatcher(context.sendConfig().getRealtimeMicroBatchWindowMs(),
+                domain -> context.emailDomainManager().getEmailDomain(domain).getSendCountPerSession(),
+                engineExecutors, batchSubmissionService::submitBatchAsync, this::unregisterRunner,
+                bounceSuppressionStore.isEnabled() ? bounceSuppressionStore::isSuppressed : null);
 
         EngineRuntimeOptions runtimeOptions = context.runtimeOptions();
         log.info("EmailSendEngine initialized with workers={}, bindIpCount={}, schedulerIntervalMs={}, maxRetryCount={}",
@@ -80,6 +121,36 @@ public class EmailSendEngine {
         log.info("Starting EmailSendEngine...");
         engineExecutors.scheduleAtFixedRate(this::dispatchOnce, 0, schedulerIntervalMs, TimeUnit.MILLISECONDS);
         engineExecutors.scheduleAtFixedRate(domainSendMetrics::evict, 60, 60, TimeUnit.SECONDS);
+        engineExecutors.scheduleAtFixedRate(sendRateLimiter::evictIdle, 60, 60, TimeUnit.SECONDS);
+        AdaptiveConcurrencyPolicy concurrencyPolicy = concurrencyController.getPolicy();
+        if (concurrencyPolicy.enabled()) {
+            engineExecutors.scheduleAtFixedRate(concurrencyController::adjust,
+                    concurrencyPolicy.intervalMs(), concurrencyPolicy.intervalMs(), TimeUnit.MILLISECONDS);
+        }
+        if (queueJournal.isEnabled()) {
+            engineExecutors.scheduleAtFixedRate(queueJournal::sync,
+                    queueJournal.getSyncIntervalMs(), queueJournal.getSyncIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+        if (standbySessionPool != null) {
+            // Half the keepalive so an idle session gets its NOOP before it has been idle for two intervals
+            long maintainIntervalMs = Math.max(1_000L, standbyKeepaliveMs / 2);
+            engineExecutors.scheduleAtFixedRate(standbySessionPool::maintain, maintainIntervalMs, maintainIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues again the batches the previous run left uncompleted in the queue journal, including their pending
+     * retries. Call once after creating the engine, before new batches are submitted.
+     * <p>
+     * Each recovered runner is registered with the writer returned for it, which receives the remaining results;
+     * the caller closes the writers once the returned futures complete. Batches of runners the provider returns
+     * {@code null} for are dropped.
+     *
+     * @return Result futures of the requeued batches by runner ID (empty if the journal is disabled)
+     */
+    public Map<String, List<CompletableFuture<EmailBatchResult>>> recover(Function<String, EmailBatchResultWriter> resultWriterProvider) {
+        Objects.requireNonNull(resultWriterProvider, "resultWriterProvider must not be null");
+        return queueRecovery.recover(resultWriterProvider, this::registerRunner);
     }
 
     /**
@@ -89,11 +160,39 @@ public class EmailSendEngine {
         return batchSubmissionService.submitBatchAsync(emailBatchSpec);
     }
 
+    /**
+     * Submits a single message without a runner. Messages of the same domain and send context that arrive within
+     * {@code realtimeMicroBatchWindowMs} are sent as one batch over a shared session (up to the domain's send count per session).
+     *
+     * @return Future completed with the message's result: its first success, or its last result once no retry is left
+     */
+    public CompletableFuture<EmailSendProgress> submitRealtime(EmailSendTarget target, EmailSendContext context) {
+        return realtimeMicroBatcher.submit(target, context);
+    }
+
     /**
      * Registers a runner and marks stale tasks from previous runs as failed.
      */
     public void registerRunner(String runnerId, Object runnerToken) {
+        registerRunner(runnerId, runnerToken, DomainBatchQueue.DEFAULT_RUNNER_WEIGHT);
+    }
+
+    /**
+     * Registers a runner with a fair-queuing weight and marks stale tasks from previous runs as failed.
+     * Within a lane, runners receive dispatch share in proportion to their weight.
+     */
+    public void registerRunner(String runnerId, Object runnerToken, int weight) {
+        registerRunner(runnerId, runnerToken, weight, RunnerLimits.UNLIMITED);
+    }
+
+    /**
+     * Registers a runner with a fair-queuing weight and throughput caps, and marks stale tasks from previous runs as failed.
+     * The caps are enforced by the dispatcher and can be changed while the runner runs ({@link #setRunnerLimits(String, RunnerLimits)}).
+     */
+    public void registerRunner(String runnerId, Object runnerToken, int weight, RunnerLimits limits) {
         List<DomainBatchTask> staleTasks = runnerExecutionGuard.registerRunner(runnerId, runnerToken);
+        batchQueue.setRunnerWeight(runnerId, weight);
+        runnerThrottle.register(runnerId, limits);
         for (DomainBatchTask staleTask : staleTasks) {
             batchResultFinalizer.completeTaskAsFailure(staleTask,
                     new IllegalStateException("Dropped stale queued task from previous runner run"), "register_runner_run_drop_stale");
@@ -105,6 +204,71 @@ public class EmailSendEngine {
      */
     public void unregisterRunner(String runnerId) {
         runnerExecutionGuard.unregisterRunner(runnerId);
+        batchQueue.removeRunnerWeight(runnerId);
+        runnerThrottle.unregister(runnerId);
+    }
+
+    /**
+     * Changes the rate and concurrency caps of a registered runner, effective from the next dispatch cycle.
+     * Batches already executing are not interrupted.
+     *
+     * @return false if the runner is not registered
+     */
+    public boolean setRunnerLimits(String runnerId, RunnerLimits limits) {
+        boolean applied = runnerThrottle.setLimits(runnerId, limits);
+        if (applied) {
+            log.info("Runner [{}] limits changed. messagesPerMinute={}, maxInFlightBatches={}",
+                    runnerId, limits.messagesPerMinute(), limits.maxInFlightBatches());
+        }
+        return applied;
+    }
+
+    /**
+     * Returns the caps of a registered runner, or {@code null} if it is not registered.
+     */
+    public RunnerLimits getRunnerLimits(String runnerId) {
+        return runnerThrottle.getLimits(runnerId);
+    }
+
+    /**
+     * Stops dispatching batches of a registered runner. Queued batches stay in place and executing ones finish;
+     * retries of the runner still become due and wait in the queue.
+     *
+     * @return false if the runner is not registered
+     */
+    public boolean pauseRunner(String runnerId) {
+        boolean paused = runnerThrottle.setPaused(runnerId, true);
+        if (paused) {
+            log.info("Runner [{}] paused", runnerId);
+        }
+        return paused;
+    }
+
+    /**
+     * Resumes dispatching batches of a paused runner.
+     *
+     * @return false if the runner is not registered
+     */
+    public boolean resumeRunner(String runnerId) {
+        boolean resumed = runnerThrottle.setPaused(runnerId, false);
+        if (resumed) {
+            log.info("Runner [{}] resumed", runnerId);
+        }
+        return resumed;
+    }
+
+    public boolean isRunnerPaused(String runnerId) {
+        return runnerThrottle.isPaused(runnerId);
+    }
+
+    /**
+     * Cancels the active run of a runner. Its queued batches and retries waiting for their delay are marked as
+     * failed right away; batches already sending finish their current attempt and are not retried.
+     *
+     * @return true if the runner had an active run
+     */
+    public boolean cancelRunner(String runnerId) {
+        return executionCoordinator.cancelRunner(runnerId);
     }
 
     private void dispatchOnce() {
@@ -151,6 +315,20 @@ public class EmailSendEngine {
         return domainSendMetrics.snapshotAll(seconds);
     }
 
+    /**
+     * Returns the resolver mapping domains to MX groups, used by runners to plan shared-session batches.
+     */
+    public MxGroupResolver getMxGroupResolver() {
+        return mxGroupResolver;
+    }
+
+    /**
+     * Returns the store of hard-bounced recipients, used by runners to skip them before batching.
+     */
+    public BounceSuppressionStore getBounceSuppressionStore() {
+        return bounceSuppressionStore;
+    }
+
     /**
      * Shuts down all executors and waits for remaining tasks to terminate.
      */
@@ -158,6 +336,15 @@ public class EmailSendEngine {
         log.info("Shutting down EmailSendEngine...");
         isRunning = false;
         engineExecutors.shutdown();
+        if (standbySessionPool != null) {
+            standbySessionPool.close();
+        }
+        try {
+            bounceSuppressionStore.close();
+        } catch (IOException e) {
+            log.warn("Failed to close bounce suppression store", e);
+        }
+        queueJournal.close();
         log.info("EmailSendEngine shut down completed");
     }
 }
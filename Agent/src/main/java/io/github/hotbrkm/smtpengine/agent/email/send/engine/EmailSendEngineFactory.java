@@ -2,7 +2,9 @@ package io.github.hotbrkm.smtpengine.agent.email.send.engine;
 
 import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
 import io.github.hotbrkm.smtpengine.agent.email.send.worker.EmailBatchSenderFactory;
+import io.github.hotbrkm.smtpengine.agent.email.send.worker.StandbySessionPool;
 import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.MxGroupResolver;
 import lombok.experimental.UtilityClass;
 
 import java.util.Objects;
@@ -21,9 +23,17 @@ public class EmailSendEngineFactory {
      * Creates a default engine based on configuration.
      */
     public static EmailSendEngine create(EmailConfig.Send sendConfig, EmailDomainManager emailDomainManager, EmailBatchSenderFactory emailBatchSenderFactory) {
+        return create(sendConfig, emailDomainManager, emailBatchSenderFactory, MxGroupResolver.disabled());
+    }
+
+    /**
+     * Creates a default engine that schedules and caps sessions by MX group.
+     */
+    public static EmailSendEngine create(EmailConfig.Send sendConfig, EmailDomainManager emailDomainManager,
+                                         EmailBatchSenderFactory emailBatchSenderFactory, MxGroupResolver mxGroupResolver) {
         EmailConfig.Send effectiveSendConfig = Objects.requireNonNull(sendConfig, "sendConfig must not be null");
         EngineRuntimeOptions options = EngineRuntimeOptions.fromSendConfig(effectiveSendConfig);
-        Assembly assemble = assemble(emailBatchSenderFactory, emailDomainManager, effectiveSendConfig, options);
+        Assembly assemble = assemble(emailBatchSenderFactory, emailDomainManager, effectiveSendConfig, options, mxGroupResolver);
         return new EmailSendEngine(assemble);
     }
 
@@ -57,6 +67,14 @@ public class EmailSendEngineFactory {
      */
     static Assembly assemble(EmailBatchSenderFactory emailBatchSenderFactory, EmailDomainManager emailDomainManager,
                              EmailConfig.Send sendConfig, EngineRuntimeOptions options) {
+        return assemble(emailBatchSenderFactory, emailDomainManager, sendConfig, options, MxGroupResolver.disabled());
+    }
+
+    /**
+     * Assembles runtime components with the given MX group resolver.
+     */
+    static Assembly assemble(EmailBatchSenderFactory emailBatchSenderFactory, EmailDomainManager emailDomainManager,
+                             EmailConfig.Send sendConfig, EngineRuntimeOptions options, MxGroupResolver mxGroupResolver) {
         Objects.requireNonNull(emailBatchSenderFactory, "emailBatchSenderFactory must not be null");
         Objects.requireNonNull(emailDomainManager, "emailDomainManager must not be null");
 
@@ -65,22 +83,33 @@ public class EmailSendEngineFactory {
 
         EngineRuntimeContext context = EngineRuntimeContext.initialize(requiredSendConfig, runtimeOptions,
                 emailDomainManager, BIND_IP_ALLOCATION_TIMEOUT_CODE,
-                DEFAULT_NO_SLOT_REQUEUE_BASE_DELAY_MS, DEFAULT_NO_SLOT_REQUEUE_JITTER_MS);
+                DEFAULT_NO_SLOT_REQUEUE_BASE_DELAY_MS, DEFAULT_NO_SLOT_REQUEUE_JITTER_MS, mxGroupResolver);
 
         emailBatchSenderFactory.setDomainSendMetrics(context.domainSendMetrics());
+        emailBatchSenderFactory.setSendRateLimiter(context.sendRateLimiter());
+        emailBatchSenderFactory.setRetryPolicy(context.retryPolicy());
+        emailBatchSenderFactory.setBounceSuppressionStore(context.bounceSuppressionStore());
+        emailBatchSenderFactory.setComposeExecutor(context.engineExecutors().composeExecutor());
+        emailBatchSenderFactory.setQueueJournal(context.queueJournal());
+        emailBatchSenderFactory.setMaxRetryCount(runtimeOptions.maxRetryCount());
+        StandbySessionPool standbySessionPool = emailBatchSenderFactory.initStandbySessionPool(
+                context.bindIpSessionAllocator(), context.mxGroupResolver()::resolveGroup);
 
         RetryScheduler retryScheduler = new RetryScheduler(context);
         ResourceGate resourceGate = new ResourceGate(context, retryScheduler);
         ExecutionCoordinator executionCoordinator = new ExecutionCoordinator(
                 context, emailBatchSenderFactory, retryScheduler, resourceGate);
         DispatchProcessor dispatchProcessor = new DispatchProcessor(context, executionCoordinator::executeBatch);
+        QueueRecovery queueRecovery = new QueueRecovery(context, retryScheduler);
 
-        return new Assembly(context, executionCoordinator, dispatchProcessor);
+        return new Assembly(context, executionCoordinator, dispatchProcessor, queueRecovery, standbySessionPool);
     }
 
     /**
      * Assembly result object for engine configuration.
+     * {@code standbySessionPool} is null when standby sessions are disabled.
      */
-    record Assembly(EngineRuntimeContext context, ExecutionCoordinator executionCoordinator, DispatchProcessor dispatchProcessor) {
+    record Assembly(EngineRuntimeContext context, ExecutionCoordinator executionCoordinator, DispatchProcessor dispatchProcessor,
+                    QueueRecovery queueRecovery, StandbySessionPool standbySessionPool) {
     }
 }
@@ -5,7 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -20,6 +22,7 @@ import java.util.function.Supplier;
  *   <li><b>oneshotExecutor</b> — Dedicated for delayed one-shot tasks (requeue, retry scheduling). corePoolSize=1.</li>
  *   <li><b>workerExecutor</b> — Fixed thread pool for EmailBatchSender execution.</li>
  *   <li><b>completionExecutor</b> — Virtual thread dedicated to waiting for worker completion (future.get()).</li>
+ *   <li><b>composeExecutor</b> — CPU-sized ForkJoinPool that composes and signs messages ahead of the workers.</li>
  * </ul>
  */
 @Slf4j
@@ -29,8 +32,16 @@ final class EngineExecutors {
     private final ScheduledThreadPoolExecutor oneshotExecutor;
     private final ThreadPoolExecutor workerExecutor;
     private final ExecutorService completionExecutor;
+    private final ForkJoinPool composeExecutor;
 
     EngineExecutors(int workerCount) {
+        this(workerCount, 0);
+    }
+
+    /**
+     * @param composeParallelism Threads of the compose pool (0 or less means available processors)
+     */
+    EngineExecutors(int workerCount, int composeParallelism) {
         this.periodicExecutor = new ScheduledThreadPoolExecutor(0);
         this.periodicExecutor.setRemoveOnCancelPolicy(true);
 
@@ -39,6 +50,7 @@ final class EngineExecutors {
 
         this.workerExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(workerCount);
         this.completionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.composeExecutor = new ForkJoinPool(composeParallelism > 0 ? composeParallelism : Runtime.getRuntime().availableProcessors());
     }
 
     /**
@@ -72,6 +84,13 @@ final class EngineExecutors {
         return CompletableFuture.supplyAsync(supplier, completionExecutor);
     }
 
+    /**
+     * Returns the pool that composes messages ahead of the workers.
+     */
+    Executor composeExecutor() {
+        return composeExecutor;
+    }
+
     /**
      * Returns the current number of active threads in the worker pool.
      */
@@ -94,6 +113,7 @@ final class EngineExecutors {
         oneshotExecutor.shutdown();
         workerExecutor.shutdown();
         completionExecutor.shutdown();
+        composeExecutor.shutdown();
 
         try {
             if (!workerExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
@@ -108,11 +128,15 @@ final class EngineExecutors {
             if (!completionExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
                 completionExecutor.shutdownNow();
             }
+            if (!composeExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                composeExecutor.shutdownNow();
+            }
         } catch (InterruptedException e) {
             workerExecutor.shutdownNow();
             periodicExecutor.shutdownNow();
             oneshotExecutor.shutdownNow();
             completionExecutor.shutdownNow();
+            composeExecutor.shutdownNow();
             Thread.currentThread().interrupt();
         }
     }
@@ -4,11 +4,22 @@ import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
 import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
 import org.jspecify.annotations.NonNull;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchQueue;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.QueueJournal;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpCooldownPolicy;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.AdaptiveConcurrencyController;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.AdaptiveConcurrencyPolicy;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.RunnerThrottle;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.SendRateLimiter;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.MxGroupResolver;
 
 /**
  * Context holding runtime dependencies required for engine execution.
@@ -25,7 +36,17 @@ record EngineRuntimeContext(EmailConfig.Send sendConfig,
                             int bindIpAllocationTimeoutCode,
                             long noSlotRequeueBaseDelayMs,
                             long noSlotRequeueJitterMs,
-                            DomainSendMetrics domainSendMetrics) {
+                            DomainSendMetrics domainSendMetrics,
+                            DispatchLanePlan lanePlan,
+                            AdaptiveConcurrencyController concurrencyController,
+                            SendRateLimiter sendRateLimiter,
+                            MxGroupResolver mxGroupResolver,
+                            EmailDomainManager emailDomainManager,
+                            RetryPolicy retryPolicy,
+                            BounceSuppressionStore bounceSuppressionStore,
+                            DomainVerdictCache domainVerdictCache,
+                            QueueJournal queueJournal,
+                            RunnerThrottle runnerThrottle) {
 
     /**
      * Initializes runtime components and creates the context.
@@ -36,30 +57,81 @@ record EngineRuntimeContext(EmailConfig.Send sendConfig,
                                            int bindIpAllocationTimeoutCode,
                                            long noSlotRequeueBaseDelayMs,
                                            long noSlotRequeueJitterMs) {
+        return initialize(sendConfig, runtimeOptions, emailDomainManager, bindIpAllocationTimeoutCode,
+                noSlotRequeueBaseDelayMs, noSlotRequeueJitterMs, MxGroupResolver.disabled());
+    }
+
+    /**
+     * Initializes runtime components with an MX group resolver that keys scheduling and session limits by MX group.
+     */
+    static EngineRuntimeContext initialize(EmailConfig.Send sendConfig,
+                                           EngineRuntimeOptions runtimeOptions,
+                                           EmailDomainManager emailDomainManager,
+                                           int bindIpAllocationTimeoutCode,
+                                           long noSlotRequeueBaseDelayMs,
+                                           long noSlotRequeueJitterMs,
+                                           MxGroupResolver mxGroupResolver) {
         EmailConfig.Send requiredSendConfig = Objects.requireNonNull(sendConfig, "sendConfig must not be null");
         EngineRuntimeOptions requiredOptions = Objects.requireNonNull(runtimeOptions, "runtimeOptions must not be null");
+        MxGroupResolver requiredMxGroupResolver = Objects.requireNonNull(mxGroupResolver, "mxGroupResolver must not be null");
 
-        DomainBatchQueue batchQueue = new DomainBatchQueue();
-        BindIpSessionAllocator bindIpSessionAllocator = getBindIpSessionAllocator(emailDomainManager, requiredOptions, requiredSendConfig);
+        DispatchLanePlan lanePlan = DispatchLanePlan.fromSendConfig(requiredSendConfig);
+        DomainBatchQueue batchQueue = new DomainBatchQueue(lanePlan.laneOrder());
+        RunnerThrottle runnerThrottle = new RunnerThrottle(requiredSendConfig.getSendRateBurstSeconds());
+        batchQueue.setRunnerGate(runnerThrottle::canDispatch);
+        batchQueue.setDeadlineRiskWindowMillis(requiredSendConfig.getDeadlineRiskWindowMs());
+        DomainSendMetrics domainSendMetrics = new DomainSendMetrics(60, 60);
+        EmailDomainManager requiredEmailDomainManager = Objects.requireNonNull(emailDomainManager, "emailDomainManager must not be null");
+        AdaptiveConcurrencyController concurrencyController = getConcurrencyController(requiredEmailDomainManager, domainSendMetrics, requiredSendConfig,
+                requiredMxGroupResolver);
+        BindIpSessionAllocator bindIpSessionAllocator = getBindIpSessionAllocator(requiredEmailDomainManager, requiredOptions,
+                requiredSendConfig, concurrencyController);
+        SendRateLimiter sendRateLimiter = new SendRateLimiter(requiredEmailDomainManager, requiredSendConfig.getSendRateBurstSeconds());
         EngineRuntimeState runtimeState = new EngineRuntimeState(requiredOptions);
         RunnerExecutionGuard runnerExecutionGuard = new RunnerExecutionGuard(batchQueue);
         BatchResultFinalizer batchResultFinalizer = new BatchResultFinalizer(runtimeState,
-                task -> WaitTrackingSupport.removeWaitTrackingForTask(runtimeState, task));
-        EngineExecutors engineExecutors = new EngineExecutors(requiredOptions.workerCount());
-        DomainSendMetrics domainSendMetrics = new DomainSendMetrics(60, 60);
-        BatchSubmissionService batchSubmissionService = new BatchSubmissionService(runnerExecutionGuard, batchQueue, domainSendMetrics);
+                task -> WaitTrackingSupport.removeWaitTrackingForTask(runtimeState, task), domainSendMetrics);
+        EngineExecutors engineExecutors = new EngineExecutors(requiredOptions.workerCount(),
+                requiredSendConfig.getMimeComposeParallelism());
+        DomainVerdictCache domainVerdictCache = DomainVerdictCache.fromSendConfig(requiredSendConfig, requiredEmailDomainManager);
+        QueueJournal queueJournal = QueueJournal.fromSendConfig(requiredSendConfig);
+        BatchSubmissionService batchSubmissionService = new BatchSubmissionService(runnerExecutionGuard, batchQueue, domainSendMetrics, lanePlan,
+                requiredMxGroupResolver, domainVerdictCache, queueJournal);
+        RetryPolicy retryPolicy = RetryPolicy.fromSendConfig(requiredSendConfig);
+        BounceSuppressionStore bounceSuppressionStore = BounceSuppressionStore.fromSendConfig(requiredSendConfig);
 
         return new EngineRuntimeContext(requiredSendConfig, requiredOptions, batchQueue, bindIpSessionAllocator, runtimeState,
                 runnerExecutionGuard, batchResultFinalizer, batchSubmissionService, engineExecutors,
-                bindIpAllocationTimeoutCode, noSlotRequeueBaseDelayMs, noSlotRequeueJitterMs, domainSendMetrics);
+                bindIpAllocationTimeoutCode, noSlotRequeueBaseDelayMs, noSlotRequeueJitterMs, domainSendMetrics, lanePlan,
+                concurrencyController, sendRateLimiter, requiredMxGroupResolver, requiredEmailDomainManager, retryPolicy,
+                bounceSuppressionStore, domainVerdictCache, queueJournal, runnerThrottle);
     }
 
     private static @NonNull BindIpSessionAllocator getBindIpSessionAllocator(EmailDomainManager emailDomainManager,
                                                                              EngineRuntimeOptions requiredOptions,
-                                                                             EmailConfig.Send requiredSendConfig) {
-        EmailDomainManager requiredEmailDomainManager = Objects.requireNonNull(emailDomainManager, "emailDomainManager must not be null");
+                                                                             EmailConfig.Send requiredSendConfig,
+                                                                             AdaptiveConcurrencyController concurrencyController) {
         BindIpCooldownPolicy bindIpCooldownPolicy = new BindIpCooldownPolicy(requiredOptions.bindIpCooldownTriggerCodes(),
                 requiredSendConfig::getCooldownThresholdForCode, requiredSendConfig.getBindIpFailureCooldownMs());
-        return new BindIpSessionAllocator(requiredOptions.bindIps(), requiredEmailDomainManager, bindIpCooldownPolicy);
+        return new BindIpSessionAllocator(requiredOptions.bindIps(), emailDomainManager, bindIpCooldownPolicy, concurrencyController);
+    }
+
+    private static @NonNull AdaptiveConcurrencyController getConcurrencyController(EmailDomainManager emailDomainManager,
+                                                                                   DomainSendMetrics domainSendMetrics,
+                                                                                   EmailConfig.Send requiredSendConfig,
+                                                                                   MxGroupResolver mxGroupResolver) {
+        List<Integer> throttleCodes = requiredSendConfig.getAdaptiveConcurrencyThrottleCodes();
+        AdaptiveConcurrencyPolicy policy = new AdaptiveConcurrencyPolicy(requiredSendConfig.isAdaptiveConcurrencyEnabled(),
+                throttleCodes == null ? Set.of() : new HashSet<>(throttleCodes),
+                requiredSendConfig.getAdaptiveConcurrencyMinLimit(),
+                requiredSendConfig.getAdaptiveConcurrencyMaxPercent(),
+                requiredSendConfig.getAdaptiveConcurrencyThrottleRatePercent(),
+                requiredSendConfig.getAdaptiveConcurrencyDecreasePercent(),
+                requiredSendConfig.getAdaptiveConcurrencySlowResponseMs(),
+                requiredSendConfig.getAdaptiveConcurrencyMinSamples(),
+                requiredSendConfig.getAdaptiveConcurrencyIntervalMs());
+        // Learn limits per MX group, the key BindIpSessionAllocator caps sessions by
+        return new AdaptiveConcurrencyController(policy, domainSendMetrics, emailDomainManager::getSessionLimit,
+                mxGroupResolver::resolveGroup);
     }
 }
@@ -1,21 +1,31 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.engine;
 
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.ResultPersistenceException;
 import io.github.hotbrkm.smtpengine.agent.email.send.worker.EmailBatchSender;
 import io.github.hotbrkm.smtpengine.agent.email.send.worker.EmailBatchSenderFactory;
+import io.github.hotbrkm.smtpengine.agent.email.send.worker.ResultApplier;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.QueueJournal;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpLease;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.RunnerThrottle;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
 
 /**
  * Orchestrates the execution lifecycle of individual batches.
@@ -36,6 +46,10 @@ final class ExecutionCoordinator {
     private final BatchResultFinalizer batchResultFinalizer;
     private final BindIpSessionAllocator bindIpSessionAllocator;
     private final DomainSendMetrics domainSendMetrics;
+    private final RetryPolicy retryPolicy;
+    private final DomainVerdictCache domainVerdictCache;
+    private final QueueJournal queueJournal;
+    private final RunnerThrottle runnerThrottle;
 
     ExecutionCoordinator(EngineRuntimeContext context, EmailBatchSenderFactory emailBatchSenderFactory,
                          RetryScheduler retryScheduler, ResourceGate resourceGate) {
@@ -51,6 +65,10 @@ final class ExecutionCoordinator {
         this.retryScheduler = retryScheduler;
         this.bindIpSessionAllocator = context.bindIpSessionAllocator();
         this.domainSendMetrics = context.domainSendMetrics();
+        this.retryPolicy = context.retryPolicy();
+        this.domainVerdictCache = context.domainVerdictCache();
+        this.queueJournal = context.queueJournal();
+        this.runnerThrottle = context.runnerThrottle();
     }
 
     /**
@@ -64,6 +82,12 @@ final class ExecutionCoordinator {
             return false;
         }
 
+        DomainVerdictCache.DomainVerdict verdict = domainVerdictCache.find(task.getDomain());
+        if (verdict != null) {
+            completeWithVerdict(task, verdict);
+            return false;
+        }
+
         Optional<ExecutionPermit> permitOptional = executionPermitService.tryAcquire(task, noSlotDomains);
         if (permitOptional.isEmpty()) {
             return false;
@@ -74,14 +98,18 @@ final class ExecutionCoordinator {
         log.info("Executing batch [{}] for domain: {} with {} targets, bindIp={}",
                 task.getBatchId(), task.getDomain(), task.getBatch().size(), lease.bindIp());
 
+        queueJournal.recordDispatched(task);
+        retryScheduler.recordRetryDispatched(task);
         EmailBatchSender sender = emailBatchSenderFactory.create(task, lease.bindIp());
         Future<Integer> future;
         incrementInFlight(task.getDispatchLane());
+        runnerThrottle.onStarted(task.getRunnerId(), task.getSize());
         try {
             future = engineExecutors.submitWorker(sender);
         } catch (Exception submitException) {
             // Upon submit failure, in-flight and permit must be immediately reverted to enable the next schedule without leaks.
             decrementInFlight(task.getDispatchLane());
+            runnerThrottle.onFinished(task.getRunnerId());
             executionPermitService.release(task, permit);
             throw submitException;
         }
@@ -99,21 +127,41 @@ final class ExecutionCoordinator {
         try {
             Integer successCount = future.get();
             applyCooldownPolicy(task, sender, successCount);
+            if (sender.isUnresolvableDomain()) {
+                domainVerdictCache.recordDnsFailure(task.getDomain(), sender.getLastErrorStatusCode(), sender.getLastErrorMessage());
+            }
 
             if (isTaskAborted(task)) {
                 completeTaskAsFailure(task, getAbortCause(task), "batch_completed_after_runner_abort");
                 return successCount;
             }
 
+            retryScheduler.recordRetryOutcome(task);
+
+            DomainBatchTask processedTask = task;
+            List<EmailSendTarget> handoffTargets = sender.extractHandoffTargets();
+            if (!handoffTargets.isEmpty()) {
+                processedTask = handOffTail(task, handoffTargets);
+                if (processedTask == null) {
+                    return successCount;
+                }
+            }
+
             List<EmailSendTarget> retryTargets = sender.extractRetryTargets();
             if (!retryTargets.isEmpty()) {
-                domainSendMetrics.recordRetry(task.getDomain(), retryTargets.size());
+                domainSendMetrics.recordRetry(processedTask.getDomain(), retryTargets.size());
             }
-            if (!retryTargets.isEmpty() && (task.getRetryCount() < maxRetryCount)) {
+            if (processedTask.isCoalesced()) {
+                completeCoalescedMembers(processedTask, sender, retryTargets);
+                return successCount;
+            }
+            // Retrying a domain with an active verdict would only complete it with the same result later
+            if (!retryTargets.isEmpty() && (processedTask.getRetryCount() < maxRetryCount)
+                    && domainVerdictCache.find(processedTask.getDomain()) == null) {
                 sender.incrementRetryCount(retryTargets);
-                retryScheduler.submitRetryBatch(task, retryTargets);
+                retryScheduler.submitRetryBatch(processedTask, retryTargets);
             } else {
-                batchResultFinalizer.handleBatchCompletion(task, successCount, retryTargets.size());
+                batchResultFinalizer.handleBatchCompletion(processedTask, successCount, retryTargets.size());
             }
 
             return successCount;
@@ -126,12 +174,121 @@ final class ExecutionCoordinator {
             return 0;
         } finally {
             decrementInFlight(task.getDispatchLane());
+            runnerThrottle.onFinished(task.getRunnerId());
             executionPermitService.release(task, permit);
         }
     }
 
+    /**
+     * Requeues the unprocessed tail of a batch whose session degraded, so it can run on another session right away.
+     * <p>
+     * The batch is split into a processed head and a handed-off tail, each with its own result future; the batch's own
+     * future completes with the combined result once both have finished (including their retries), and only then is the
+     * batch counted. A coalesced task is split per member so every original batch keeps its own result, and the member
+     * tails travel together. The tail is charged one retry, so a domain that keeps degrading runs out of retry budget
+     * instead of handing off forever.
+     *
+     * @return Task covering only the processed head, used for the rest of completion handling (null if nothing is left)
+     */
+    private DomainBatchTask handOffTail(DomainBatchTask task, List<EmailSendTarget> handoffTargets) {
+        Set<EmailSendTarget> handoffSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        handoffSet.addAll(handoffTargets);
+
+        List<DomainBatchTask> heads = new ArrayList<>();
+        List<DomainBatchTask> tails = new ArrayList<>();
+        for (DomainBatchTask original : task.isCoalesced() ? task.getCoalescedTasks() : List.of(task)) {
+            splitForHandoff(original, handoffSet, heads, tails);
+        }
+        if (tails.isEmpty()) {
+            return task;
+        }
+        if (task.isCoalesced()) {
+            // The merged task is not counted; it completes once every member has
+            WaitTrackingSupport.removeWaitTrackingForTask(runtimeState, task);
+            CompletableFuture.allOf(task.getCoalescedTasks().stream().map(DomainBatchTask::getResultFuture)
+                            .filter(Objects::nonNull).toArray(CompletableFuture[]::new))
+                    .thenRun(() -> task.getResultFuture().complete(EmailBatchResult.success(task.getBatchId(), task.getDomain(),
+                            task.getSize(), BatchResultFinalizer.countSucceeded(task))));
+        }
+
+        DomainBatchTask tailTask = tails.size() == 1 ? tails.getFirst() : DomainBatchTask.coalesce(task.getBatchId() + "-handoff", tails);
+        log.info("Batch [{}] handed off {} unprocessed targets for domain: {} as [{}]",
+                task.getBatchId(), handoffTargets.size(), task.getDomain(), tailTask.getBatchId());
+        executionPermitService.enqueueIfRunnable(tailTask, "session_handoff");
+
+        if (heads.isEmpty()) {
+            return null;
+        }
+        return heads.size() == 1 ? heads.getFirst() : DomainBatchTask.coalesce(task.getBatchId(), heads);
+    }
+
+    /**
+     * Splits one original batch into its head and tail parts, wiring the parts' futures back to the batch.
+     * A batch without handed-off targets goes to {@code heads} unchanged.
+     */
+    private void splitForHandoff(DomainBatchTask original, Set<EmailSendTarget> handoffSet,
+                                 List<DomainBatchTask> heads, List<DomainBatchTask> tails) {
+        List<EmailSendTarget> headTargets = new ArrayList<>();
+        List<EmailSendTarget> tailTargets = new ArrayList<>();
+        for (EmailSendTarget target : original.getBatch()) {
+            (handoffSet.contains(target) ? tailTargets : headTargets).add(target);
+        }
+        if (tailTargets.isEmpty()) {
+            heads.add(original);
+            return;
+        }
+
+        String batchId = original.getBatchId();
+        CompletableFuture<EmailBatchResult> tailFuture = new CompletableFuture<>();
+        tails.add(original.handoffPart(tailTargets, batchId + "-handoff", tailFuture, original.getRetryCount() + 1));
+        if (headTargets.isEmpty()) {
+            tailFuture.thenAccept(tail -> batchResultFinalizer.completeHandedOff(original, tail));
+            return;
+        }
+        CompletableFuture<EmailBatchResult> headFuture = new CompletableFuture<>();
+        heads.add(original.handoffPart(headTargets, batchId, headFuture, original.getRetryCount()));
+        headFuture.thenCombine(tailFuture, (head, tail) -> EmailBatchResult.combine(batchId, head, tail))
+                .thenAccept(result -> batchResultFinalizer.completeHandedOff(original, result));
+    }
+
+    /**
+     * Splits the result of a coalesced retry task back into its members: each member retries its own failed targets
+     * within its own retry budget, or completes with its own success count. As for a single batch, members of a domain
+     * with an active verdict complete instead of retrying.
+     */
+    private void completeCoalescedMembers(DomainBatchTask task, EmailBatchSender sender, List<EmailSendTarget> retryTargets) {
+        Set<EmailSendTarget> retrySet = Collections.newSetFromMap(new IdentityHashMap<>());
+        retrySet.addAll(retryTargets);
+
+        for (DomainBatchTask member : task.getCoalescedTasks()) {
+            List<EmailSendTarget> memberRetryTargets = member.getBatch().stream().filter(retrySet::contains).toList();
+            if (!memberRetryTargets.isEmpty() && member.getRetryCount() < maxRetryCount
+                    && domainVerdictCache.find(member.getDomain()) == null) {
+                sender.incrementRetryCount(memberRetryTargets);
+                retryScheduler.submitRetryBatch(member, memberRetryTargets);
+            } else {
+                batchResultFinalizer.handleBatchCompletion(member, BatchResultFinalizer.countSucceeded(member), memberRetryTargets.size());
+            }
+        }
+        WaitTrackingSupport.removeWaitTrackingForTask(runtimeState, task);
+        task.getResultFuture().complete(EmailBatchResult.success(task.getBatchId(), task.getDomain(), task.getSize(),
+                BatchResultFinalizer.countSucceeded(task)));
+    }
+
+    /**
+     * Completes a batch of a domain with an active verdict without acquiring a slot or starting a sender.
+     */
+    private void completeWithVerdict(DomainBatchTask task, DomainVerdictCache.DomainVerdict verdict) {
+        ResultApplier applier = new ResultApplier(task.getRunnerId(), task.getResultWriter(), domainSendMetrics);
+        int applied = DomainVerdictCache.applyTo(task.getBatch(), applier, verdict);
+        log.info("Batch [{}] for domain: {} completed without dispatch by domain verdict. targets={}, code={}",
+                task.getBatchId(), task.getDomain(), applied, verdict.statusCode());
+        batchResultFinalizer.handleBatchCompletion(task, BatchResultFinalizer.countSucceeded(task), 0);
+    }
+
     /**
      * Updates the bind IP cooldown policy based on batch results.
+     * A retry rule for the last error may force or suppress the cooldown regardless of the trigger codes.
      */
     private void applyCooldownPolicy(DomainBatchTask task, EmailBatchSender sender, Integer successCount) {
         String bindIp = sender.getBindIp();
@@ -145,7 +302,12 @@ final class ExecutionCoordinator {
             return;
         }
 
-        bindIpSessionAllocator.recordBatchResult(task.getDomain(), bindIp, statusCode, hasAnySuccess);
+        Boolean coolBindIp = retryPolicy.decide(task.getDomain(), statusCode, sender.getLastErrorMessage()).coolBindIp();
+        if (coolBindIp != null) {
+            bindIpSessionAllocator.recordBatchResult(task.getMxGroup(), bindIp, statusCode, hasAnySuccess, coolBindIp);
+        } else {
+            bindIpSessionAllocator.recordBatchResult(task.getMxGroup(), bindIp, statusCode, hasAnySuccess);
+        }
     }
 
     private void incrementInFlight(DispatchLane lane) {
@@ -186,6 +348,31 @@ final class ExecutionCoordinator {
                 runnerId -> WaitTrackingSupport.removeWaitTrackingForRunner(runtimeState, runnerId),
                 this::completeTaskAsFailure
         );
+        if (failedTask != null) {
+            retryScheduler.cancelScheduled(failedTask.getRunnerId(), failedTask.getResultWriter(), persistenceException,
+                    "runner_abort_remove_scheduled");
+        }
+    }
+
+    /**
+     * Cancels the active run of a runner, failing its queued and scheduled retry batches.
+     *
+     * @return true if the runner had an active run
+     */
+    boolean cancelRunner(String runnerId) {
+        IllegalStateException cause = new IllegalStateException("Runner cancelled");
+        Object runnerToken = runnerExecutionGuard.cancelRunner(runnerId, cause,
+                id -> WaitTrackingSupport.removeWaitTrackingForRunner(runtimeState, id),
+                this::completeTaskAsFailure
+        );
+        if (runnerToken == null) {
+            return false;
+        }
+        int cancelledRetries = retryScheduler.cancelScheduled(runnerId, runnerToken, cause, "runner_cancel_remove_scheduled");
+        if (cancelledRetries > 0) {
+            log.info("Runner [{}] cancelled {} scheduled retry batches", runnerId, cancelledRetries);
+        }
+        return true;
     }
 
     private ResultPersistenceException extractResultPersistenceException(Throwable throwable) {
@@ -15,14 +15,17 @@ import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatch
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpLease;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.SendRateLimiter;
 
 /**
- * Handles permit acquisition/release required for batch execution and post-processing for bind IP no-slot situations.
+ * Handles permit acquisition/release required for batch execution and post-processing for bind IP no-slot
+ * and rate-limited situations.
  */
 @Slf4j
 final class ExecutionPermitService {
 
     private final BindIpSessionAllocator bindIpSessionAllocator;
+    private final SendRateLimiter sendRateLimiter;
     private final ResourceGate resourceGate;
     private final EngineRuntimeState runtimeState;
     private final RunnerExecutionGuard runnerExecutionGuard;
@@ -39,6 +42,7 @@ final class ExecutionPermitService {
 
     ExecutionPermitService(EngineRuntimeContext context, ResourceGate resourceGate, RetryScheduler retryScheduler) {
         this.bindIpSessionAllocator = context.bindIpSessionAllocator();
+        this.sendRateLimiter = context.sendRateLimiter();
         this.resourceGate = resourceGate;
         this.runtimeState = context.runtimeState();
         this.runnerExecutionGuard = context.runnerExecutionGuard();
@@ -55,35 +59,48 @@ final class ExecutionPermitService {
     }
 
     /**
-     * Sequentially acquires resources (attachment, bind IP) required for batch execution.
+     * Sequentially acquires resources (attachment, bind IP, send rate token) required for batch execution.
      * <p>
      * If any acquisition fails, immediately releases already acquired resources and proceeds to requeue/retry flow.
      *
      * @param task          Target batch for execution
-     * @param noSlotDomains Set of domains with slot shortage in this dispatch cycle
+     * @param noSlotDomains Set of scheduling keys (domain or MX group) with slot shortage in this dispatch cycle
      * @return Permit if all resources acquired, otherwise empty
      */
     Optional<ExecutionPermit> tryAcquire(DomainBatchTask task, Set<String> noSlotDomains) {
         String domain = task.getDomain();
+        // Session limits and slot shortage are tracked per MX group; send rates stay per domain.
+        String mxGroup = task.getMxGroup();
 
         if (!resourceGate.tryAcquireAttachmentSlot(task)) {
             resourceGate.handleAttachmentLimitUnavailable(task);
-            noSlotDomains.add(domain);
+            noSlotDomains.add(mxGroup);
             return Optional.empty();
         }
 
-        Optional<BindIpLease> leaseOptional = bindIpSessionAllocator.tryAcquire(domain);
+        Optional<BindIpLease> leaseOptional = bindIpSessionAllocator.tryAcquire(mxGroup);
         if (leaseOptional.isEmpty()) {
             // Release previously acquired attachment slot when bind IP acquisition fails.
             resourceGate.releaseAttachmentSlotIfNeeded(task, true);
             handleBindIpUnavailable(task);
-            noSlotDomains.add(domain);
+            noSlotDomains.add(mxGroup);
             return Optional.empty();
         }
 
         // On successful acquisition, cleans up wait tracking state to prevent stale wait info in the next attempt.
         WaitTrackingSupport.removeWaitTrackingForTask(runtimeState, task);
-        return Optional.of(new ExecutionPermit(leaseOptional.get(), true));
+
+        BindIpLease lease = leaseOptional.get();
+        long rateWaitMs = sendRateLimiter.tryAcquire(domain, lease.bindIp());
+        if (rateWaitMs > 0) {
+            // Release the lease and attachment slot so other domains can use them while this one is paced.
+            bindIpSessionAllocator.release(lease);
+            resourceGate.releaseAttachmentSlotIfNeeded(task, true);
+            handleRateLimited(task, lease.bindIp(), rateWaitMs);
+            noSlotDomains.add(mxGroup);
+            return Optional.empty();
+        }
+        return Optional.of(new ExecutionPermit(lease, true));
     }
 
     /**
@@ -112,6 +129,23 @@ final class ExecutionPermitService {
         batchQueue.offer(task);
     }
 
+    /**
+     * Requeues a task whose domain or bind IP has no send rate token until a token is expected to be available.
+     * <p>
+     * Rate limiting does not consume retries or the bind IP wait budget.
+     */
+    private void handleRateLimited(DomainBatchTask task, String bindIp, long rateWaitMs) {
+        if (!validateRunnerTaskOrFail(task, "rate_limit_drop_inactive_runner", "rate_limit_drop_aborted_runner",
+                "Dropped stale rate-limited task from inactive runner run")) {
+            return;
+        }
+
+        long delay = Math.max(rateWaitMs, BatchFailureSupport.computeRequeueDelayMillis(noSlotRequeueBaseDelayMs, noSlotRequeueJitterMs));
+        engineExecutors.schedule(() -> enqueueIfRunnable(task, "rate_limit_requeue"), delay, TimeUnit.MILLISECONDS);
+        log.debug("Send rate limit reached for batch [{}], domain={}, bindIp={}, requeueDelayMs={}",
+                task.getBatchId(), task.getDomain(), bindIp, delay);
+    }
+
     /**
      * Performs post-processing (wait requeue/retry/final failure) for tasks that failed to acquire a bind IP slot.
      */
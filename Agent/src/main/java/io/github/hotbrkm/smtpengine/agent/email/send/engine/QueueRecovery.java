@@ -0,0 +1,198 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.MxGroupResolver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchQueue;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.QueueJournal;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.RecoveredBatch;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
+
+/**
+ * Queues again the batches a previous run left uncompleted in the {@link QueueJournal}.
+ * <p>
+ * Targets whose last journaled result is final (success, a failure the retry policy does not retry, or a failure
+ * that used up the retries) are skipped. Targets of a retry that was scheduled but not dispatched wait for the rest
+ * of its delay; the other targets are queued right away, keeping their retry count.
+ */
+@Slf4j
+final class QueueRecovery {
+
+    private final QueueJournal queueJournal;
+    private final DomainBatchQueue batchQueue;
+    private final DispatchLanePlan lanePlan;
+    private final MxGroupResolver mxGroupResolver;
+    private final RetryPolicy retryPolicy;
+    private final RetryScheduler retryScheduler;
+    private final int maxRetryCount;
+
+    QueueRecovery(EngineRuntimeContext context, RetryScheduler retryScheduler) {
+        this.queueJournal = context.queueJournal();
+        this.batchQueue = context.batchQueue();
+        this.lanePlan = context.lanePlan();
+        this.mxGroupResolver = context.mxGroupResolver();
+        this.retryPolicy = context.retryPolicy();
+        this.retryScheduler = retryScheduler;
+        this.maxRetryCount = context.runtimeOptions().maxRetryCount();
+    }
+
+    /**
+     * Requeues the recovered batches of every runner the provider returns a result writer for.
+     *
+     * @param resultWriterProvider Returns the writer results of a recovered runner go to, or {@code null} to drop its batches
+     * @param runnerRegistrar      Registers a recovered runner with its writer as run token
+     * @return Result futures of the requeued batches by runner ID; each future covers all targets of one original batch
+     */
+    Map<String, List<CompletableFuture<EmailBatchResult>>> recover(Function<String, EmailBatchResultWriter> resultWriterProvider,
+                                                                   BiConsumer<String, EmailBatchResultWriter> runnerRegistrar) {
+        Map<String, EmailBatchResultWriter> writers = new HashMap<>();
+        Map<String, List<CompletableFuture<EmailBatchResult>>> futures = new LinkedHashMap<>();
+        int dropped = 0;
+        for (RecoveredBatch batch : queueJournal.drainRecoveredBatches()) {
+            String runnerId = batch.runnerId();
+            if (!writers.containsKey(runnerId)) {
+                EmailBatchResultWriter writer = resultWriterProvider.apply(runnerId);
+                writers.put(runnerId, writer);
+                if (writer != null) {
+                    runnerRegistrar.accept(runnerId, writer);
+                }
+            }
+            EmailBatchResultWriter writer = writers.get(runnerId);
+            if (writer == null) {
+                queueJournal.recordCompleted(batch.batchId());
+                dropped++;
+                continue;
+            }
+            CompletableFuture<EmailBatchResult> future = requeue(batch, writer);
+            if (future != null) {
+                futures.computeIfAbsent(runnerId, key -> new ArrayList<>()).add(future);
+            }
+        }
+        log.info("Queue recovery completed. runners={}, requeuedBatches={}, droppedBatches={}",
+                futures.size(), futures.values().stream().mapToInt(List::size).sum(), dropped);
+        return futures;
+    }
+
+    /**
+     * @return Future of the requeued targets, or {@code null} if every target already has a final result
+     */
+    private CompletableFuture<EmailBatchResult> requeue(RecoveredBatch batch, EmailBatchResultWriter writer) {
+        Map<Integer, RecoveredBatch.ScheduledRetry> retryByListSeq = new HashMap<>();
+        for (RecoveredBatch.ScheduledRetry retry : batch.scheduledRetries()) {
+            retry.listSeqs().forEach(listSeq -> retryByListSeq.put(listSeq, retry));
+        }
+        List<EmailSendTarget> pending = new ArrayList<>();
+        List<EmailSendTarget> ready = new ArrayList<>();
+        Map<RecoveredBatch.ScheduledRetry, List<EmailSendTarget>> delayed = new LinkedHashMap<>();
+        for (EmailSendTarget target : batch.targets()) {
+            EmailSendProgress result = batch.results().get(target.getListSeq());
+            if (result != null) {
+                if (isFinal(target, result)) {
+                    continue;
+                }
+                carryRetryCount(target, result.retryCount() + 1);
+            }
+            pending.add(target);
+            RecoveredBatch.ScheduledRetry retry = retryByListSeq.get(target.getListSeq());
+            if (retry != null) {
+                delayed.computeIfAbsent(retry, key -> new ArrayList<>()).add(target);
+            } else {
+                ready.add(target);
+            }
+        }
+        if (pending.isEmpty()) {
+            queueJournal.recordCompleted(batch.batchId());
+            return null;
+        }
+
+        EmailSendContext context = batch.context();
+        ExecutionMode executionMode = context.executionMode();
+        DispatchLane freshLane = lanePlan.freshLaneFor(executionMode, context.messageType());
+        DispatchLane retryLane = lanePlan.retryLaneFor(freshLane, executionMode);
+        String mxGroup = mxGroupResolver.resolveGroup(batch.domain());
+        List<DomainBatchTask> readyTasks = new ArrayList<>();
+        Map<DomainBatchTask, Long> delayedTasks = new LinkedHashMap<>();
+        List<CompletableFuture<EmailBatchResult>> parts = new ArrayList<>();
+        if (!ready.isEmpty()) {
+            int retryCount = ready.stream().mapToInt(EmailSendTarget::getRetryCount).max().orElse(0);
+            CompletableFuture<EmailBatchResult> part = new CompletableFuture<>();
+            readyTasks.add(new DomainBatchTask(ready, batch.domain(), mxGroup, batch.batchId(), part, retryCount, batch.runnerId(),
+                    writer, context, executionMode, retryCount > 0 ? retryLane : freshLane));
+            parts.add(part);
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<RecoveredBatch.ScheduledRetry, List<EmailSendTarget>> entry : delayed.entrySet()) {
+            RecoveredBatch.ScheduledRetry retry = entry.getKey();
+            CompletableFuture<EmailBatchResult> part = new CompletableFuture<>();
+            delayedTasks.put(new DomainBatchTask(entry.getValue(), batch.domain(), mxGroup, retry.batchId(), batch.batchId(), part,
+                    retry.retryCount(), batch.runnerId(), writer, context, executionMode, retryLane),
+                    Math.max(0L, retry.dueAtMillis() - now));
+            parts.add(part);
+        }
+        CompletableFuture<EmailBatchResult> future = combine(batch.batchId(), parts);
+
+        // Journal the remaining targets before their tasks can schedule retries or write results
+        queueJournal.recordSubmitted(batch.batchId(), batch.runnerId(), batch.domain(), context, pending, future);
+        readyTasks.forEach(batchQueue::offer);
+        delayedTasks.forEach(retryScheduler::scheduleRecoveredRetryBatch);
+        log.info("Recovered batch [{}] for domain: {} with {} of {} targets pending ({} ready, {} scheduled retries)",
+                batch.batchId(), batch.domain(), pending.size(), batch.targets().size(), ready.size(), delayed.size());
+        return future;
+    }
+
+    private boolean isFinal(EmailSendTarget target, EmailSendProgress result) {
+        if ("SUCCESS".equals(result.sendStatus())) {
+            return true;
+        }
+        int statusCode = parseStatusCode(result.sendCode());
+        if (statusCode < 0 || statusCode == 701) {
+            // Not processed yet
+            return false;
+        }
+        return result.retryCount() >= maxRetryCount || !retryPolicy.decide(target.getDomain(), statusCode, result.errorMessage()).retry();
+    }
+
+    private static int parseStatusCode(String sendCode) {
+        if (sendCode == null || sendCode.isBlank()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(sendCode.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void carryRetryCount(EmailSendTarget target, int retryCount) {
+        while (target.getRetryCount() < retryCount) {
+            target.incrementRetryCount();
+        }
+    }
+
+    private static CompletableFuture<EmailBatchResult> combine(String batchId, List<CompletableFuture<EmailBatchResult>> parts) {
+        if (parts.size() == 1) {
+            return parts.getFirst();
+        }
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> parts.stream()
+                        .map(CompletableFuture::join)
+                        .reduce((first, second) -> EmailBatchResult.combine(batchId, first, second))
+                        .orElseThrow());
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchSpec;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Groups single realtime messages of the same domain into batches so they share one session.
+ * <p>
+ * - A message waits at most {@code windowMillis} for others with the same domain and send context.
+ * - A group is submitted as soon as it reaches the domain's send count per session.
+ * - Each submitted group is its own short-lived runner; the runner is unregistered when the batch completes.
+ * - The per-message future completes with the message's first successful result, or with its last result once the
+ *   batch (including retries) has completed.
+ */
+@Slf4j
+final class RealtimeMicroBatcher {
+
+    static final String RUNNER_ID_PREFIX = "realtime-";
+
+    private final long windowMillis;
+    private final ToIntFunction<String> sessionSizeResolver;
+    private final EngineExecutors engineExecutors;
+    private final Function<EmailBatchSpec, CompletableFuture<EmailBatchResult>> submitter;
+    private final Consumer<String> runnerReleaser;
+    private final Predicate<String> suppressedAddress;
+    private final AtomicLong groupSequence = new AtomicLong();
+
+    private final Map<GroupKey, MessageGroup> pending = new HashMap<>();
+
+    /**
+     * @param windowMillis        Longest time a message waits for others (0 submits every message on its own right away)
+     * @param sessionSizeResolver Send count per session of a domain
+     * @param engineExecutors     Scheduler for window flushes
+     * @param submitter           Batch submission (validation and queueing)
+     * @param runnerReleaser      Unregisters the runner of a completed group
+     * @param suppressedAddress   Returns true for recipients that must not be sent to (may be null)
+     */
+    RealtimeMicroBatcher(long windowMillis, ToIntFunction<String> sessionSizeResolver, EngineExecutors engineExecutors,
+                         Function<EmailBatchSpec, CompletableFuture<EmailBatchResult>> submitter,
+                         Consumer<String> runnerReleaser, Predicate<String> suppressedAddress) {
+        this.windowMillis = Math.max(0L, windowMillis);
+        this.sessionSizeResolver = sessionSizeResolver;
+        this.engineExecutors = engineExecutors;
+        this.submitter = submitter;
+        this.runnerReleaser = runnerReleaser;
+        this.suppressedAddress = suppressedAddress;
+    }
+
+    /**
+     * Accepts one realtime message.
+     *
+     * @return Future completed with the message's send result
+     */
+    CompletableFuture<EmailSendProgress> submit(EmailSendTarget target, EmailSendContext context) {
+        if (target == null || context == null || context.executionMode() == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("target and context with execution_mode are required"));
+        }
+
+        String domain = suppressedAddress != null && suppressedAddress.test(target.getTargetEmail())
+                ? BounceSuppressionStore.SUPPRESSED_DOMAIN
+                : target.getDomain();
+        Message message = new Message(target);
+        GroupKey key = new GroupKey(domain, context);
+        int sessionSize = resolveSessionSize(domain);
+        if (windowMillis == 0L || sessionSize <= 1) {
+            emit(key, List.of(message));
+            return message.future;
+        }
+
+        List<MessageGroup> ready = new ArrayList<>(2);
+        MessageGroup scheduled = null;
+        synchronized (pending) {
+            MessageGroup group = pending.get(key);
+            if (group != null && group.contains(target.getListSeq())) {
+                // Results are routed back by listSeq, so a repeated listSeq starts a new group
+                pending.remove(key);
+                ready.add(group);
+                group = null;
+            }
+            if (group == null) {
+                group = new MessageGroup();
+                pending.put(key, group);
+                scheduled = group;
+            }
+            group.add(message);
+            if (group.size() >= sessionSize) {
+                pending.remove(key);
+                ready.add(group);
+                scheduled = null;
+            }
+        }
+
+        for (MessageGroup group : ready) {
+            emit(key, group.messages);
+        }
+        if (scheduled != null) {
+            MessageGroup group = scheduled;
+            engineExecutors.schedule(() -> flush(key, group), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return message.future;
+    }
+
+    /**
+     * Returns the number of messages waiting for their window.
+     */
+    int pendingMessageCount() {
+        synchronized (pending) {
+            return pending.values().stream().mapToInt(MessageGroup::size).sum();
+        }
+    }
+
+    private void flush(GroupKey key, MessageGroup group) {
+        synchronized (pending) {
+            if (!pending.remove(key, group)) {
+                return;
+            }
+        }
+        emit(key, group.messages);
+    }
+
+    private void emit(GroupKey key, List<Message> messages) {
+        String runnerId = RUNNER_ID_PREFIX + groupSequence.incrementAndGet();
+        MessageRouter router = new MessageRouter(messages);
+        List<EmailSendTarget> targets = messages.stream().map(message -> message.target).toList();
+        EmailBatchSpec spec = new EmailBatchSpec(runnerId + "-batch-0", key.domain(), new ArrayList<>(targets), runnerId,
+                router, key.context());
+        CompletableFuture<EmailBatchResult> batchFuture;
+        try {
+            batchFuture = submitter.apply(spec);
+        } catch (Exception e) {
+            batchFuture = CompletableFuture.failedFuture(e);
+        }
+        if (messages.size() > 1) {
+            log.debug("Micro-batched {} realtime messages into [{}] for domain: {}", messages.size(), spec.getBatchId(), key.domain());
+        }
+        batchFuture.whenComplete((result, error) -> {
+            router.completeAll(result, error);
+            runnerReleaser.accept(runnerId);
+        });
+    }
+
+    private int resolveSessionSize(String domain) {
+        int size = sessionSizeResolver.applyAsInt(domain);
+        return size > 0 ? size : 1;
+    }
+
+    private record GroupKey(String domain, EmailSendContext context) {
+    }
+
+    private static final class Message {
+        private final EmailSendTarget target;
+        private final CompletableFuture<EmailSendProgress> future = new CompletableFuture<>();
+        private volatile EmailSendProgress lastProgress;
+
+        private Message(EmailSendTarget target) {
+            this.target = target;
+        }
+    }
+
+    private static final class MessageGroup {
+        private final List<Message> messages = new ArrayList<>();
+        private final Map<Integer, Message> byListSeq = new HashMap<>();
+
+        private void add(Message message) {
+            messages.add(message);
+            byListSeq.put(message.target.getListSeq(), message);
+        }
+
+        private boolean contains(int listSeq) {
+            return byListSeq.containsKey(listSeq);
+        }
+
+        private int size() {
+            return messages.size();
+        }
+    }
+
+    /**
+     * Result writer of one group; also the run token of the group's runner.
+     */
+    private static final class MessageRouter implements EmailBatchResultWriter {
+        private final Map<Integer, Message> messagesByListSeq = new HashMap<>();
+        private final List<Message> messages;
+
+        private MessageRouter(List<Message> messages) {
+            this.messages = messages;
+            for (Message message : messages) {
+                messagesByListSeq.put(message.target.getListSeq(), message);
+            }
+        }
+
+        @Override
+        public void writeResult(EmailSendProgress progress) {
+            Message message = messagesByListSeq.get(progress.listSeq());
+            if (message == null) {
+                return;
+            }
+            message.lastProgress = progress;
+            if ("SUCCESS".equals(progress.sendStatus())) {
+                message.future.complete(progress);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void completeAll(EmailBatchResult result, Throwable error) {
+            Throwable cause = error != null ? error : result != null ? result.exception() : null;
+            for (Message message : messages) {
+                EmailSendProgress progress = message.lastProgress;
+                if (progress != null) {
+                    message.future.complete(progress);
+                } else if (!message.target.isUnprocessed()) {
+                    message.future.complete(message.target.toProgress());
+                } else {
+                    message.future.completeExceptionally(cause != null ? cause : new IllegalStateException("Realtime message was not sent"));
+                }
+            }
+        }
+    }
+}
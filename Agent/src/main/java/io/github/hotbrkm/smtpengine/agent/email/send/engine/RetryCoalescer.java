@@ -0,0 +1,222 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Merges due retry tasks of the same domain into batches up to the domain's send count per session.
+ * <p>
+ * - Retry tasks only carry the failed targets of one original batch, so each would otherwise open its own session.
+ * - A due task waits at most {@code windowMillis} for compatible tasks (same domain, runner run, context, lane and attachment class).
+ * - The buffer is flushed as soon as it reaches the session size; members are never split across merged tasks.
+ * - Each buffer has a generation, so a window flush scheduled for an earlier buffer of the same key leaves a newer one alone.
+ * - Buffers are indexed by runner, so a cancelled or aborted run takes its buffered tasks back without a full scan.
+ */
+@Slf4j
+final class RetryCoalescer {
+
+    private final long windowMillis;
+    private final ToIntFunction<String> sessionSizeResolver;
+    private final EngineExecutors engineExecutors;
+    private final Consumer<DomainBatchTask> sink;
+
+    // Guarded by pending, together with pendingKeysByRunner and nextGeneration
+    private final Map<CoalesceKey, Buffer> pending = new HashMap<>();
+    private final Map<String, Set<CoalesceKey>> pendingKeysByRunner = new HashMap<>();
+    private long nextGeneration;
+
+    /**
+     * @param windowMillis        Longest time a due retry task waits for others (0 disables coalescing)
+     * @param sessionSizeResolver Send count per session of a domain
+     * @param engineExecutors     Scheduler for window flushes
+     * @param sink                Destination of flushed tasks; validates the runner run before queueing
+     */
+    RetryCoalescer(long windowMillis, ToIntFunction<String> sessionSizeResolver, EngineExecutors engineExecutors,
+                   Consumer<DomainBatchTask> sink) {
+        this.windowMillis = Math.max(0L, windowMillis);
+        this.sessionSizeResolver = sessionSizeResolver;
+        this.engineExecutors = engineExecutors;
+        this.sink = sink;
+    }
+
+    /**
+     * Accepts a due retry task, either forwarding it immediately or buffering it for merging.
+     */
+    void offer(DomainBatchTask task) {
+        int sessionSize = resolveSessionSize(task.getDomain());
+        if (windowMillis == 0L || task.isCoalesced() || task.getSize() >= sessionSize) {
+            sink.accept(task);
+            return;
+        }
+
+        CoalesceKey key = CoalesceKey.of(task);
+        List<DomainBatchTask> ready = null;
+        long flushGeneration = -1L;
+        synchronized (pending) {
+            Buffer buffer = pending.get(key);
+            if (buffer == null) {
+                buffer = new Buffer(nextGeneration++);
+                pending.put(key, buffer);
+                indexKey(key);
+                flushGeneration = buffer.generation;
+            }
+            buffer.tasks.add(task);
+            buffer.targetCount += task.getSize();
+            if (buffer.targetCount >= sessionSize) {
+                removeBuffer(key);
+                ready = buffer.tasks;
+                flushGeneration = -1L;
+            }
+        }
+
+        if (ready != null) {
+            emit(ready, sessionSize);
+        } else if (flushGeneration >= 0L) {
+            long generation = flushGeneration;
+            engineExecutors.schedule(() -> flush(key, generation), windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes the buffered tasks of a runner run so they are never flushed.
+     *
+     * @param runnerToken Run token (result writer) the tasks must belong to
+     * @return Removed tasks, in arrival order per buffer
+     */
+    List<DomainBatchTask> removeByRunner(String runnerId, Object runnerToken) {
+        List<DomainBatchTask> removed = new ArrayList<>();
+        if (runnerId == null) {
+            return removed;
+        }
+        synchronized (pending) {
+            Set<CoalesceKey> keys = pendingKeysByRunner.get(runnerId);
+            if (keys == null) {
+                return removed;
+            }
+            Iterator<CoalesceKey> iterator = keys.iterator();
+            while (iterator.hasNext()) {
+                CoalesceKey key = iterator.next();
+                if (key.resultWriter() == runnerToken) {
+                    iterator.remove();
+                    removed.addAll(pending.remove(key).tasks);
+                }
+            }
+            if (keys.isEmpty()) {
+                pendingKeysByRunner.remove(runnerId);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of buffered retry tasks.
+     */
+    int pendingTaskCount() {
+        synchronized (pending) {
+            return pending.values().stream().mapToInt(buffer -> buffer.tasks.size()).sum();
+        }
+    }
+
+    private void flush(CoalesceKey key, long generation) {
+        Buffer buffer;
+        synchronized (pending) {
+            buffer = pending.get(key);
+            if (buffer == null || buffer.generation != generation) {
+                // Already emitted or removed; a newer buffer of the key has its own flush
+                return;
+            }
+            removeBuffer(key);
+        }
+        emit(buffer.tasks, resolveSessionSize(key.domain()));
+    }
+
+    private void indexKey(CoalesceKey key) {
+        if (key.runnerId() != null) {
+            pendingKeysByRunner.computeIfAbsent(key.runnerId(), id -> new HashSet<>()).add(key);
+        }
+    }
+
+    private void removeBuffer(CoalesceKey key) {
+        pending.remove(key);
+        if (key.runnerId() == null) {
+            return;
+        }
+        Set<CoalesceKey> keys = pendingKeysByRunner.get(key.runnerId());
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            pendingKeysByRunner.remove(key.runnerId());
+        }
+    }
+
+    /**
+     * Packs buffered tasks in arrival order into merged tasks no larger than the session size.
+     */
+    private void emit(List<DomainBatchTask> buffer, int sessionSize) {
+        List<DomainBatchTask> chunk = new ArrayList<>();
+        int chunkTargets = 0;
+        for (DomainBatchTask task : buffer) {
+            if (!chunk.isEmpty() && chunkTargets + task.getSize() > sessionSize) {
+                emitChunk(chunk);
+                chunk = new ArrayList<>();
+                chunkTargets = 0;
+            }
+            chunk.add(task);
+            chunkTargets += task.getSize();
+        }
+        if (!chunk.isEmpty()) {
+            emitChunk(chunk);
+        }
+    }
+
+    private void emitChunk(List<DomainBatchTask> chunk) {
+        if (chunk.size() == 1) {
+            sink.accept(chunk.getFirst());
+            return;
+        }
+        String batchId = chunk.getFirst().getBatchId() + "-coalesced" + chunk.size();
+        DomainBatchTask merged = DomainBatchTask.coalesce(batchId, chunk);
+        log.info("Coalesced {} retry batches into [{}] for domain: {} with {} targets",
+                chunk.size(), batchId, merged.getDomain(), merged.getSize());
+        sink.accept(merged);
+    }
+
+    private int resolveSessionSize(String domain) {
+        int size = sessionSizeResolver.applyAsInt(domain);
+        return size > 0 ? size : 1;
+    }
+
+    private static final class Buffer {
+        private final long generation;
+        private final List<DomainBatchTask> tasks = new ArrayList<>();
+        private int targetCount;
+
+        private Buffer(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Compatibility key; the result writer identifies the runner run.
+     */
+    private record CoalesceKey(String domain, String mxGroup, String runnerId, EmailBatchResultWriter resultWriter,
+                               EmailSendContext emailSendContext, DispatchLane lane, boolean hasAttachment) {
+
+        static CoalesceKey of(DomainBatchTask task) {
+            return new CoalesceKey(task.getDomain(), task.getMxGroup(), task.getRunnerId(), task.getResultWriter(),
+                    task.getEmailSendContext(), task.getDispatchLane(), task.hasAttachment());
+        }
+    }
+}
@@ -4,22 +4,49 @@ import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchQueue;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.QueueJournal;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.GreylistTracker;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
 
 /**
  * Component responsible for creating and scheduling retry batches with delay.
+ * Due retry batches pass through {@link RetryCoalescer} so small retries of the same domain share a session.
+ * Partial failure retries wait for the longest delay the {@link RetryPolicy} assigns to their failure classes;
+ * greylisted targets wait for the learned greylisting window of their MX ({@link GreylistTracker}).
+ * Retries waiting for their delay, and retries buffered in the coalescer, are indexed by runner so a cancelled run drops
+ * them right away; flushed retries are validated against the runner run again before queueing.
  */
 @Slf4j
 final class RetryScheduler {
 
+    private static final int MAX_PENDING_GREYLIST_RETRIES = 10_000;
+    private static final long STALE_GREYLIST_RETRY_MS = TimeUnit.HOURS.toMillis(6);
+
     private final EngineExecutors engineExecutors;
     private final DomainBatchQueue batchQueue;
     private final RunnerExecutionGuard runnerExecutionGuard;
     private final BatchResultFinalizer batchResultFinalizer;
+    private final DispatchLanePlan lanePlan;
+    private final RetryCoalescer retryCoalescer;
+    private final RetryPolicy retryPolicy;
+    private final GreylistTracker greylistTracker;
+    private final QueueJournal queueJournal;
+    // Retry batch ID -> greylisted retry awaiting its outcome, used to learn the MX's greylisting window
+    private final Map<String, PendingGreylistRetry> pendingGreylistRetries = new ConcurrentHashMap<>();
+    // Runner ID -> retries waiting for their delay; sets are only mutated inside compute() of their key
+    private final Map<String, Set<ScheduledRetry>> scheduledRetriesByRunner = new ConcurrentHashMap<>();
 
     private final long initialRetryDelayMillis;
     private final long maxRetryDelayMillis;
@@ -30,6 +57,13 @@ final class RetryScheduler {
         this.batchQueue = context.batchQueue();
         this.runnerExecutionGuard = context.runnerExecutionGuard();
         this.batchResultFinalizer = context.batchResultFinalizer();
+        this.lanePlan = context.lanePlan();
+        this.retryCoalescer = new RetryCoalescer(context.sendConfig().getBatchRetryCoalesceWindowMs(),
+                domain -> context.emailDomainManager().getEmailDomain(domain).getSendCountPerSession(),
+                engineExecutors, this::enqueueFlushed);
+        this.retryPolicy = context.retryPolicy();
+        this.greylistTracker = GreylistTracker.fromSendConfig(context.sendConfig());
+        this.queueJournal = context.queueJournal();
 
         this.initialRetryDelayMillis = context.runtimeOptions().initialRetryDelayMs();
         this.maxRetryDelayMillis = context.runtimeOptions().maxRetryDelayMs();
@@ -48,16 +82,26 @@ final class RetryScheduler {
         String batchId = originalTask.getBatchId();
         int nextRetryCount = originalTask.getRetryCount() + 1;
         DomainBatchTask retryTask = buildRetryTask(originalTask, retryTargets, nextRetryCount);
-        long delayMillis = scheduleRetryTask(retryTask, nextRetryCount, "batch_retry");
+        String mxKey = originalTask.getMxGroup();
+        long scheduledDelayMillis = computeRetryDelayMillis(nextRetryCount);
+        long delayMillis = retryPolicy.resolveRetryDelayMs(retryTargets, target -> greylistTracker.isGreylisted(mxKey, target)
+                ? greylistTracker.retryDelayMs(mxKey, target.getErrorMessage()) : scheduledDelayMillis);
         String retryBatchId = retryTask.getBatchId();
-        log.info("Batch [{}] has {} retry targets. Scheduling retry batch [{}] after {} ms (retry count: {})",
-                batchId, retryTargets.size(), retryBatchId, delayMillis, nextRetryCount);
+        boolean greylisted = trackGreylistRetry(retryTask, retryTargets, delayMillis);
+        scheduleRetryTask(retryTask, delayMillis, "batch_retry");
+        log.info("Batch [{}] has {} retry targets. Scheduling retry batch [{}] after {} ms (retry count: {}{})",
+                batchId, retryTargets.size(), retryBatchId, delayMillis, nextRetryCount, greylisted ? ", greylisted" : "");
     }
 
     /**
      * Registers the entire batch to the retry queue after bind IP no-slot exhaustion.
      */
     void submitNoSlotRetryBatch(DomainBatchTask originalTask) {
+        if (originalTask.isCoalesced()) {
+            // Split back into the original batches so each keeps its own retry count and result.
+            originalTask.getCoalescedTasks().forEach(this::submitNoSlotRetryBatch);
+            return;
+        }
         if (!validateRunnerTaskOrFail(originalTask, "no_slot_retry_skip_inactive_runner",
                 "no_slot_retry_skip_aborted_runner", "Skip no-slot retry for inactive runner run")) {
             return;
@@ -66,7 +110,8 @@ final class RetryScheduler {
         String batchId = originalTask.getBatchId();
         int nextRetryCount = originalTask.getRetryCount() + 1;
         DomainBatchTask retryTask = buildRetryTask(originalTask, originalTask.getBatch(), nextRetryCount);
-        long delayMillis = scheduleRetryTask(retryTask, nextRetryCount, "no_slot_retry");
+        long delayMillis = computeRetryDelayMillis(nextRetryCount);
+        scheduleRetryTask(retryTask, delayMillis, "no_slot_retry");
         String retryBatchId = retryTask.getBatchId();
         log.info("Batch [{}] bind IP wait timeout. Scheduling retry batch [{}] after {} ms (retry count: {})",
                 batchId, retryBatchId, delayMillis, nextRetryCount);
@@ -76,15 +121,112 @@ final class RetryScheduler {
      * Registers the resource (secure-email/attachment) wait timeout batch to the retry queue.
      */
     void submitResourceLimitRetryBatch(DomainBatchTask originalTask, String resourceLabel, String sourcePrefix) {
+        if (originalTask.isCoalesced()) {
+            originalTask.getCoalescedTasks().forEach(member -> submitResourceLimitRetryBatch(member, resourceLabel, sourcePrefix));
+            return;
+        }
         String batchId = originalTask.getBatchId();
         int nextRetryCount = originalTask.getRetryCount() + 1;
         DomainBatchTask retryTask = buildRetryTask(originalTask, originalTask.getBatch(), nextRetryCount);
-        long delayMillis = scheduleRetryTask(retryTask, nextRetryCount, sourcePrefix + "_retry");
+        long delayMillis = computeRetryDelayMillis(nextRetryCount);
+        scheduleRetryTask(retryTask, delayMillis, sourcePrefix + "_retry");
         String retryBatchId = retryTask.getBatchId();
         log.info("Batch [{}] {} wait timeout. Scheduling retry batch [{}] after {} ms (retry count: {})",
                 batchId, resourceLabel, retryBatchId, delayMillis, nextRetryCount);
     }
 
+    /**
+     * Schedules a retry task rebuilt from the queue journal to be queued after {@code delayMillis}.
+     */
+    void scheduleRecoveredRetryBatch(DomainBatchTask retryTask, long delayMillis) {
+        scheduleRetryTask(retryTask, delayMillis, "recovered_retry");
+        log.info("Recovered retry batch [{}] with {} targets scheduled after {} ms (retry count: {})",
+                retryTask.getBatchId(), retryTask.getBatch().size(), delayMillis, retryTask.getRetryCount());
+    }
+
+    /**
+     * Cancels the retries of a runner run that are still waiting for their delay or buffered for coalescing,
+     * and marks them as failed. Only the runner's own index entries are visited.
+     *
+     * @param runnerToken Run token the retries must belong to
+     * @return Number of cancelled retries
+     */
+    int cancelScheduled(String runnerId, Object runnerToken, Exception cause, String reason) {
+        if (runnerId == null || runnerId.isBlank()) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (DomainBatchTask buffered : retryCoalescer.removeByRunner(runnerId, runnerToken)) {
+            completeTaskAsFailure(buffered, cause, reason);
+            cancelled++;
+        }
+        Set<ScheduledRetry> scheduled = scheduledRetriesByRunner.remove(runnerId);
+        if (scheduled == null) {
+            return cancelled;
+        }
+        List<ScheduledRetry> otherRuns = new ArrayList<>();
+        for (ScheduledRetry retry : scheduled) {
+            if (retry.task().getResultWriter() != runnerToken) {
+                otherRuns.add(retry);
+                continue;
+            }
+            if (!retry.claim()) {
+                // Already due; validation at enqueue time drops it
+                continue;
+            }
+            retry.cancel();
+            completeTaskAsFailure(retry.task(), cause, reason);
+            cancelled++;
+        }
+        otherRuns.forEach(this::index);
+        return cancelled;
+    }
+
+    /**
+     * Stamps the dispatch time of a greylisted retry; the wait learned from its outcome ends here, so it leaves out
+     * queueing, coalescing and the send itself. A retry requeued for lack of a slot is stamped again when it runs.
+     */
+    void recordRetryDispatched(DomainBatchTask task) {
+        if (task.isCoalesced()) {
+            task.getCoalescedTasks().forEach(this::recordRetryDispatched);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        pendingGreylistRetries.computeIfPresent(task.getBatchId(),
+                (batchId, pending) -> new PendingGreylistRetry(pending.mxKey(), pending.greylistedAtMillis(), now));
+    }
+
+    /**
+     * Feeds the outcome of a completed greylisted retry back into the greylisting window of its MX:
+     * acceptance bounds the window from above, another greylisting reply from below. The wait runs from the
+     * greylisting reply to the dispatch of the retry.
+     */
+    void recordRetryOutcome(DomainBatchTask task) {
+        if (task.isCoalesced()) {
+            task.getCoalescedTasks().forEach(this::recordRetryOutcome);
+            return;
+        }
+        PendingGreylistRetry pending = pendingGreylistRetries.remove(task.getBatchId());
+        if (pending == null || pending.dispatchedAtMillis() < 0) {
+            return;
+        }
+        long waitedMillis = pending.dispatchedAtMillis() - pending.greylistedAtMillis();
+        boolean anyAccepted = false;
+        for (EmailSendTarget target : task.getBatch()) {
+            if (target.isUnprocessed()) {
+                continue;
+            }
+            if (greylistTracker.isGreylisted(pending.mxKey(), target)) {
+                greylistTracker.recordRejected(pending.mxKey(), waitedMillis);
+                return;
+            }
+            anyAccepted = anyAccepted || "SUCCESS".equals(target.getSendStatus());
+        }
+        if (anyAccepted) {
+            greylistTracker.recordAccepted(pending.mxKey(), waitedMillis);
+        }
+    }
+
     /**
      * Calculates retry delay time using exponential backoff rules.
      */
@@ -102,17 +244,62 @@ final class RetryScheduler {
 
     private DomainBatchTask buildRetryTask(DomainBatchTask originalTask, List<EmailSendTarget> targets, int retryCount) {
         ExecutionMode executionMode = originalTask.getExecutionMode();
-        DispatchLane retryLane = DispatchLane.forRetry(executionMode);
+        DispatchLane retryLane = lanePlan.retryLaneFor(originalTask.getDispatchLane(), executionMode);
         String retryBatchId = originalTask.getBatchId() + "-retry" + retryCount;
-        return new DomainBatchTask(targets, originalTask.getDomain(), retryBatchId, originalTask.getResultFuture(),
-                retryCount, originalTask.getRunnerId(), originalTask.getResultWriter(), originalTask.getEmailSendContext(),
-                executionMode, retryLane);
+        return originalTask.derive(targets, retryBatchId, originalTask.getResultFuture(), retryCount, retryLane);
+    }
+
+    /**
+     * Remembers a retry of greylisted targets so its outcome can be learned.
+     *
+     * @return true if any retry target was greylisted
+     */
+    private boolean trackGreylistRetry(DomainBatchTask retryTask, List<EmailSendTarget> retryTargets, long delayMillis) {
+        String mxKey = retryTask.getMxGroup();
+        if (!greylistTracker.isEnabled() || retryTargets.stream().noneMatch(target -> greylistTracker.isGreylisted(mxKey, target))) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (pendingGreylistRetries.size() >= MAX_PENDING_GREYLIST_RETRIES) {
+            // Entries of retries that never completed (e.g. dropped with their runner) are discarded after a while
+            pendingGreylistRetries.values().removeIf(pending -> now - pending.greylistedAtMillis() > STALE_GREYLIST_RETRY_MS);
+        }
+        pendingGreylistRetries.put(retryTask.getBatchId(), new PendingGreylistRetry(mxKey, now, -1L));
+        return true;
     }
 
-    private long scheduleRetryTask(DomainBatchTask retryTask, int retryCount, String source) {
-        long delayMillis = computeRetryDelayMillis(retryCount);
-        engineExecutors.schedule(() -> enqueueIfRunnable(retryTask, source), delayMillis, TimeUnit.MILLISECONDS);
-        return delayMillis;
+    private void scheduleRetryTask(DomainBatchTask retryTask, long delayMillis, String source) {
+        queueJournal.recordRetryScheduled(retryTask, System.currentTimeMillis() + delayMillis);
+        ScheduledRetry retry = new ScheduledRetry(retryTask);
+        index(retry);
+        retry.future = engineExecutors.schedule(() -> {
+            if (!retry.claim()) {
+                return;
+            }
+            unindex(retry);
+            enqueueIfRunnable(retryTask, source);
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void index(ScheduledRetry retry) {
+        if (retry.task().getRunnerId() == null) {
+            return;
+        }
+        scheduledRetriesByRunner.compute(retry.task().getRunnerId(), (runnerId, retries) -> {
+            Set<ScheduledRetry> target = retries != null ? retries : new HashSet<>();
+            target.add(retry);
+            return target;
+        });
+    }
+
+    private void unindex(ScheduledRetry retry) {
+        if (retry.task().getRunnerId() == null) {
+            return;
+        }
+        scheduledRetriesByRunner.computeIfPresent(retry.task().getRunnerId(), (runnerId, retries) -> {
+            retries.remove(retry);
+            return retries.isEmpty() ? null : retries;
+        });
     }
 
     private void enqueueIfRunnable(DomainBatchTask task, String source) {
@@ -120,6 +307,17 @@ final class RetryScheduler {
                 "Dropped scheduled stale task from inactive runner run")) {
             return;
         }
+        retryCoalescer.offer(task);
+    }
+
+    /**
+     * Queues a task flushed by the coalescer unless its runner run was cancelled or aborted while it was buffered.
+     */
+    private void enqueueFlushed(DomainBatchTask task) {
+        if (!validateRunnerTaskOrFail(task, "coalesced_retry_drop_inactive_runner", "coalesced_retry_drop_aborted_runner",
+                "Dropped coalesced retry from inactive runner run")) {
+            return;
+        }
         batchQueue.offer(task);
     }
 
@@ -128,6 +326,42 @@ final class RetryScheduler {
     }
 
     private void completeTaskAsFailure(DomainBatchTask task, Exception cause, String reason) {
+        if (task.isCoalesced()) {
+            task.getCoalescedTasks().forEach(member -> pendingGreylistRetries.remove(member.getBatchId()));
+        }
+        pendingGreylistRetries.remove(task.getBatchId());
         batchResultFinalizer.completeTaskAsFailure(task, cause, reason);
     }
+
+    // dispatchedAtMillis is -1 until the retry is dispatched
+    private record PendingGreylistRetry(String mxKey, long greylistedAtMillis, long dispatchedAtMillis) {
+    }
+
+    /**
+     * Retry waiting for its delay. Whoever claims it first, the timer or a cancellation, owns the task.
+     */
+    private static final class ScheduledRetry {
+        private final DomainBatchTask task;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile ScheduledFuture<?> future;
+
+        ScheduledRetry(DomainBatchTask task) {
+            this.task = task;
+        }
+
+        DomainBatchTask task() {
+            return task;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
 }
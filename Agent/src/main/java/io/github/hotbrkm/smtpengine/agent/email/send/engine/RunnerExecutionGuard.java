@@ -149,6 +149,33 @@ final class RunnerExecutionGuard {
                 runnerId, failedTask.getBatchId(), removedTasks.size(), persistenceException);
     }
 
+    /**
+     * Cancels the active run of the runner: its queued tasks are marked as failed and tasks of the run that are
+     * in flight or scheduled are dropped as aborted when they next pass validation.
+     *
+     * @return Token of the cancelled run, or {@code null} if the runner has no active run
+     */
+    Object cancelRunner(String runnerId, Exception cause, Consumer<String> waitTrackingRemoverForRunner,
+                        TaskFailureHandler taskFailureHandler) {
+        if (runnerId == null || runnerId.isBlank()) {
+            return null;
+        }
+        Object runnerToken = activeRunnerTokens.get(runnerId);
+        if (runnerToken == null) {
+            return null;
+        }
+        abortedRunnerStates.put(runnerId, new RunnerAbortState(runnerToken, cause));
+
+        List<DomainBatchTask> removedTasks = batchQueue.removeByRunnerId(runnerId, runnerToken);
+        for (DomainBatchTask removedTask : removedTasks) {
+            taskFailureHandler.onFailure(removedTask, cause, "runner_cancel_remove_queued");
+        }
+        waitTrackingRemoverForRunner.accept(runnerId);
+
+        log.info("Runner [{}] cancelled. removedQueuedBatches={}", runnerId, removedTasks.size());
+        return runnerToken;
+    }
+
     @FunctionalInterface
     interface TaskFailureHandler {
         void onFailure(DomainBatchTask task, Exception cause, String reason);
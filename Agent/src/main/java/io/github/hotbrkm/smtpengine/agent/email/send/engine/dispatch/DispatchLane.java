@@ -2,24 +2,100 @@ package io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch;
 
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
 
+import java.util.Locale;
+import java.util.Objects;
+
 /**
  * Execution lane for dispatch priority management.
+ * <p>
+ * The four built-in lanes (REALTIME/BATCH x FRESH/RETRY) are always available.
+ * Additional lanes can be declared through configuration with {@link #of(String, ExecutionMode, boolean)};
+ * their scheduling policy is described by {@link DispatchLaneProfile}.
  */
-public enum DispatchLane {
-    REALTIME_FRESH, REALTIME_RETRY, BATCH_FRESH, BATCH_RETRY;
+public final class DispatchLane {
+
+    public static final DispatchLane REALTIME_FRESH = new DispatchLane("REALTIME_FRESH", ExecutionMode.REALTIME, false);
+    public static final DispatchLane REALTIME_RETRY = new DispatchLane("REALTIME_RETRY", ExecutionMode.REALTIME, true);
+    public static final DispatchLane BATCH_FRESH = new DispatchLane("BATCH_FRESH", ExecutionMode.BATCH, false);
+    public static final DispatchLane BATCH_RETRY = new DispatchLane("BATCH_RETRY", ExecutionMode.BATCH, true);
+
+    private static final DispatchLane[] BUILT_IN_LANES = {REALTIME_FRESH, REALTIME_RETRY, BATCH_FRESH, BATCH_RETRY};
+
+    private final String name;
+    private final ExecutionMode executionMode;
+    private final boolean retry;
+
+    private DispatchLane(String name, ExecutionMode executionMode, boolean retry) {
+        this.name = name;
+        this.executionMode = executionMode;
+        this.retry = retry;
+    }
+
+    /**
+     * Returns a lane with the given name. Built-in lane names resolve to the built-in constants.
+     *
+     * @param name          Lane name (case-insensitive)
+     * @param executionMode Execution mode the lane belongs to
+     * @param retry         Whether the lane carries retry batches
+     * @return Lane
+     * @throws IllegalArgumentException if the name is blank or conflicts with a built-in lane
+     */
+    public static DispatchLane of(String name, ExecutionMode executionMode, boolean retry) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Lane name must not be blank");
+        }
+        Objects.requireNonNull(executionMode, "executionMode must not be null");
+        String normalizedName = name.trim().toUpperCase(Locale.ROOT);
+        for (DispatchLane builtIn : BUILT_IN_LANES) {
+            if (builtIn.name.equals(normalizedName)) {
+                if (builtIn.executionMode != executionMode || builtIn.retry != retry) {
+                    throw new IllegalArgumentException("Lane " + normalizedName + " conflicts with the built-in lane definition");
+                }
+                return builtIn;
+            }
+        }
+        return new DispatchLane(normalizedName, executionMode, retry);
+    }
+
+    /**
+     * Returns the built-in lanes in default priority order.
+     */
+    public static DispatchLane[] values() {
+        return BUILT_IN_LANES.clone();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
 
     /**
      * Returns whether it is a realtime lane.
      */
     public boolean isRealtime() {
-        return this == REALTIME_FRESH || this == REALTIME_RETRY;
+        return executionMode == ExecutionMode.REALTIME;
     }
 
     /**
      * Returns whether it is a retry lane.
      */
     public boolean isRetry() {
-        return this == REALTIME_RETRY || this == BATCH_RETRY;
+        return retry;
+    }
+
+    /**
+     * Returns whether it is one of the four built-in lanes.
+     */
+    public boolean isBuiltIn() {
+        for (DispatchLane builtIn : BUILT_IN_LANES) {
+            if (builtIn == this) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -35,4 +111,25 @@ public enum DispatchLane {
     public static DispatchLane forRetry(ExecutionMode mode) {
         return mode == ExecutionMode.REALTIME ? REALTIME_RETRY : BATCH_RETRY;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof DispatchLane that)) {
+            return false;
+        }
+        return name.equals(that.name) && executionMode == that.executionMode && retry == that.retry;
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
 }
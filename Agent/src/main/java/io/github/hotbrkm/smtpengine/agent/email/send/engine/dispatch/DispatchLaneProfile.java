@@ -0,0 +1,66 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Scheduling policy of a single dispatch lane.
+ * <p>
+ * Lanes are evaluated in ascending {@code priority}; lanes sharing the same priority are served by weighted round-robin.
+ *
+ * @param lane                   Target lane
+ * @param priority               Priority tier (lower value is dispatched first)
+ * @param weight                 Share within the same priority tier (minimum 1)
+ * @param reservedSlots          Worker slots kept free for this lane while it has pending batches
+ * @param maxInFlightPercent     In-flight cap as a percentage of the mode capacity while an uncapped lane of the same mode
+ *                               is pending (100 means uncapped)
+ * @param agingRelaxPercent      Relaxed cap applied once the oldest batch of this lane has waited {@code agingRelaxThresholdMs}
+ * @param agingRelaxThresholdMs  Wait time after which {@code agingRelaxPercent} applies
+ * @param headroomSlots          Slots of the mode capacity this lane always leaves to the other lanes of the same mode
+ *                               (a lane with headroom is treated as capped)
+ * @param preemptsHold           Whether pending batches in this lane start the hold window of holdable lanes
+ * @param holdable               Whether this lane is held while a preempting lane has pending batches
+ * @param holdMaxMs              Maximum hold duration (0 means the engine default)
+ * @param releasePercentPerCycle Share of workers released per cycle once the hold window expires
+ * @param messageTypes           Message types routed to this lane on fresh submission (empty for none)
+ * @param retryLane              Lane receiving retries of this lane's batches ({@code null} for retry lanes)
+ */
+public record DispatchLaneProfile(DispatchLane lane,
+                                  int priority,
+                                  int weight,
+                                  int reservedSlots,
+                                  int maxInFlightPercent,
+                                  int agingRelaxPercent,
+                                  long agingRelaxThresholdMs,
+                                  int headroomSlots,
+                                  boolean preemptsHold,
+                                  boolean holdable,
+                                  long holdMaxMs,
+                                  int releasePercentPerCycle,
+                                  Set<String> messageTypes,
+                                  DispatchLane retryLane) {
+
+    public DispatchLaneProfile {
+        Objects.requireNonNull(lane, "lane must not be null");
+        weight = Math.max(1, weight);
+        reservedSlots = Math.max(0, reservedSlots);
+        maxInFlightPercent = normalizePercent(maxInFlightPercent);
+        agingRelaxPercent = normalizePercent(agingRelaxPercent);
+        agingRelaxThresholdMs = Math.max(0L, agingRelaxThresholdMs);
+        headroomSlots = Math.max(0, headroomSlots);
+        holdMaxMs = Math.max(0L, holdMaxMs);
+        releasePercentPerCycle = normalizePercent(releasePercentPerCycle);
+        messageTypes = messageTypes == null ? Set.of() : Set.copyOf(messageTypes);
+    }
+
+    /**
+     * Returns whether an in-flight cap applies to this lane.
+     */
+    public boolean isCapped() {
+        return maxInFlightPercent < 100 || headroomSlots > 0;
+    }
+
+    private static int normalizePercent(int value) {
+        return Math.min(100, Math.max(0, value));
+    }
+}
@@ -4,22 +4,37 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.EnumMap;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Queue managing batches per domain.
  * Maintains a separate queue for each domain to provide O(1) access performance.
+ * Domains are keyed by {@link DomainBatchTask#getMxGroup()}, so domains hosted on the same MX group share one queue
+ * and are skipped together when the group has no slot.
  * <p>
  * Synchronization is managed independently by each {@link LaneState} with its own monitor lock.
  * Thus, operations on different lanes can be performed concurrently.
  * Cross-lane aggregation methods ({@link #getTotalBatchCount()}, {@link #getDomainStatistics()}, etc.)
  * query each lane sequentially, so point-in-time consistency is not guaranteed and should be used for monitoring/statistics purposes.
+ * <p>
+ * Within a lane, batches of different runners are shared by weighted fair queuing (see {@link #setRunnerWeight(String, int)}).
+ * Runners rejected by the runner gate (see {@link #setRunnerGate(Predicate)}) keep their batches in place and are skipped by polling.
+ * Availability checks reuse each runner's gate result until the next {@link #refreshRunnerGate()}.
+ * Realtime lanes let batches whose delivery deadline is at risk (see {@link #setDeadlineRiskWindowMillis(long)}) go first.
  */
 @Slf4j
 public class DomainBatchQueue {
@@ -28,12 +43,40 @@ public class DomainBatchQueue {
             DispatchLane.REALTIME_FRESH, DispatchLane.REALTIME_RETRY, DispatchLane.BATCH_FRESH, DispatchLane.BATCH_RETRY
     );
 
-    private final Map<DispatchLane, LaneState> laneStates;
+    /**
+     * Weight applied to runners without an explicit weight.
+     */
+    public static final int DEFAULT_RUNNER_WEIGHT = 1;
+
+    /**
+     * Default time before its deadline from which a batch is served earliest-deadline-first.
+     */
+    public static final long DEFAULT_DEADLINE_RISK_WINDOW_MILLIS = 60_000L;
+
+    // Lane lookup only; iteration order of a concurrent map is not the priority order
+    private final Map<DispatchLane, LaneState> laneStates = new ConcurrentHashMap<>();
+    // Lanes in poll priority order; lanes are only ever appended
+    private final List<DispatchLane> pollOrder = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> runnerWeights = new ConcurrentHashMap<>();
+    private volatile Predicate<String> runnerGate;
+    // Bumped once per dispatch cycle; gate results cached under an older epoch are evaluated again
+    private final AtomicLong gateEpoch = new AtomicLong();
+    private volatile long deadlineRiskWindowMillis = DEFAULT_DEADLINE_RISK_WINDOW_MILLIS;
 
     public DomainBatchQueue() {
-        this.laneStates = new EnumMap<>(DispatchLane.class);
-        for (DispatchLane lane : DispatchLane.values()) {
-            laneStates.put(lane, new LaneState(lane));
+        this(DEFAULT_POLL_ORDER);
+    }
+
+    /**
+     * @param laneOrder Lanes in poll priority order. Built-in lanes missing from it follow in their default order,
+     *                  and lanes first seen at offer time are polled last.
+     */
+    public DomainBatchQueue(List<DispatchLane> laneOrder) {
+        for (DispatchLane lane : laneOrder) {
+            registerLane(lane);
+        }
+        for (DispatchLane lane : DEFAULT_POLL_ORDER) {
+            registerLane(lane);
         }
     }
 
@@ -77,7 +120,7 @@ public class DomainBatchQueue {
      * @return Batch task, or null if none
      */
     public DomainBatchTask poll(Set<String> excludedDomains) {
-        for (DispatchLane lane : DEFAULT_POLL_ORDER) {
+        for (DispatchLane lane : defaultPollOrder()) {
             DomainBatchTask task = laneState(lane).poll(excludedDomains);
             if (task != null) {
                 return task;
@@ -196,7 +239,7 @@ public class DomainBatchQueue {
      * @return true if there is an available batch
      */
     public boolean hasAvailableBatch(Set<String> excludedDomains) {
-        for (DispatchLane lane : DEFAULT_POLL_ORDER) {
+        for (DispatchLane lane : defaultPollOrder()) {
             if (laneState(lane).hasAvailableBatch(excludedDomains)) {
                 return true;
             }
@@ -266,6 +309,10 @@ public class DomainBatchQueue {
 
     /**
      * Removes batches for a specific runnerId (and optional token) from the queue.
+     * <p>
+     * Batches are partitioned by runner within each lane, so when every queued batch of the runner matches the token
+     * its partition is detached under the lane lock in O(domains of the runner) and drained after the lock is released;
+     * dispatch of other runners is not held up by the size of the removed backlog.
      *
      * @param runnerId    Target runnerId to remove
      * @param runnerToken Runner identification token (if null, based on runnerId only)
@@ -283,127 +330,335 @@ public class DomainBatchQueue {
         return removed;
     }
 
+    /**
+     * Sets the fair-queuing weight of a runner. A runner with weight 2 receives roughly twice the
+     * dispatch share (in targets) of a runner with weight 1 while both have batches waiting in the same lane.
+     *
+     * @param runnerId Target runnerId
+     * @param weight   Weight (values less than 1 are treated as 1)
+     */
+    public void setRunnerWeight(String runnerId, int weight) {
+        if (runnerId == null || runnerId.isBlank()) {
+            return;
+        }
+        int normalizedWeight = Math.max(1, weight);
+        if (normalizedWeight == DEFAULT_RUNNER_WEIGHT) {
+            runnerWeights.remove(runnerId);
+        } else {
+            runnerWeights.put(runnerId, normalizedWeight);
+        }
+    }
+
+    /**
+     * Removes the fair-queuing weight of a runner, reverting it to {@link #DEFAULT_RUNNER_WEIGHT}.
+     */
+    public void removeRunnerWeight(String runnerId) {
+        if (runnerId == null || runnerId.isBlank()) {
+            return;
+        }
+        runnerWeights.remove(runnerId);
+    }
+
+    /**
+     * Returns the fair-queuing weight of a runner.
+     */
+    public int getRunnerWeight(String runnerId) {
+        return runnerWeight(runnerId);
+    }
+
+    /**
+     * Sets the check deciding whether a runner's batches may be polled now (e.g. paused or over its rate cap).
+     * The gate is evaluated under the lane lock, so it must be cheap and must not block.
+     *
+     * @param runnerGate Returns true if the runner may be served; {@code null} serves every runner
+     */
+    public void setRunnerGate(Predicate<String> runnerGate) {
+        this.runnerGate = runnerGate;
+        gateEpoch.incrementAndGet();
+    }
+
+    /**
+     * Starts a new dispatch cycle for the runner gate. Availability and age checks evaluate the gate at most once per
+     * runner between two calls, so the dispatcher can ask them repeatedly within a cycle without re-running the gate;
+     * polling always evaluates the gate live.
+     */
+    public void refreshRunnerGate() {
+        gateEpoch.incrementAndGet();
+    }
+
+    /**
+     * Sets how long before its deadline a batch in a realtime lane preempts fair queuing. Batches with a later deadline
+     * wait their turn like batches without one, so far-off deadlines cannot starve them.
+     *
+     * @param deadlineRiskWindowMillis Window in milliseconds (negative values are treated as 0)
+     */
+    public void setDeadlineRiskWindowMillis(long deadlineRiskWindowMillis) {
+        this.deadlineRiskWindowMillis = Math.max(0L, deadlineRiskWindowMillis);
+    }
+
+    private boolean isRunnerOpen(String runnerId) {
+        Predicate<String> gate = runnerGate;
+        return gate == null || gate.test(runnerId);
+    }
+
+    /**
+     * Gate result of the runner for the current cycle, evaluated on first use. Only called under the lane lock.
+     */
+    private boolean isRunnerOpenThisCycle(RunnerState runnerState) {
+        long epoch = gateEpoch.get();
+        if (runnerState.gateEpoch != epoch) {
+            runnerState.gateOpen = isRunnerOpen(runnerState.runnerId);
+            runnerState.gateEpoch = epoch;
+        }
+        return runnerState.gateOpen;
+    }
+
     private LaneState laneState(DispatchLane lane) {
         DispatchLane targetLane = lane != null ? lane : DispatchLane.BATCH_FRESH;
-        return laneStates.get(targetLane);
+        LaneState laneState = laneStates.get(targetLane);
+        return laneState != null ? laneState : registerLane(targetLane);
+    }
+
+    private synchronized LaneState registerLane(DispatchLane lane) {
+        LaneState laneState = laneStates.get(lane);
+        if (laneState == null) {
+            laneState = new LaneState(lane);
+            laneStates.put(lane, laneState);
+            pollOrder.add(lane);
+        }
+        return laneState;
+    }
+
+    /**
+     * Lanes in the configured priority order, followed by lanes registered later.
+     */
+    private List<DispatchLane> defaultPollOrder() {
+        return pollOrder;
+    }
+
+    private int runnerWeight(String runnerId) {
+        Integer weight = runnerId != null ? runnerWeights.get(runnerId) : null;
+        return weight != null ? weight : DEFAULT_RUNNER_WEIGHT;
     }
 
     /**
      * Manages the per-domain queue state for a single lane.
-     * Encapsulates internal queue logic such as domain round-robin, batch addition/removal.
+     * Batches are first partitioned by runner and shared between runners with weighted fair queuing,
+     * then round-robined by domain within the selected runner.
+     * <p>
+     * Each runner carries a virtual time that advances by {@code batchSize / weight} whenever one of its batches is polled.
+     * The runner with the smallest virtual time that has a dispatchable domain is served next, so a runner that submits
+     * a large backlog first cannot starve runners that join later. A runner that becomes active again starts from the
+     * lane virtual time instead of its stale value, so idle periods do not accumulate credit.
+     * Runners are kept in a set ordered by virtual time (ties by arrival) and re-positioned only when charged or lifted,
+     * so a poll costs O(log runners) plus the runners it has to skip.
      * <p>
-     * All public methods are synchronized with their own monitor lock ({@code synchronized}).
+     * Realtime lanes serve batches whose delivery deadline falls within the risk window earliest-deadline-first across
+     * runners and domains before falling back to fair queuing. Domain queue heads carrying a deadline are indexed by
+     * deadline, so the pick reads the index instead of scanning runners and domains.
+     * <p>
+     * All public methods are synchronized with their own monitor lock ({@code synchronized}),
+     * except that removed runner partitions are drained outside of it.
      */
-    private static final class LaneState {
+    private final class LaneState {
         private final DispatchLane lane;
-        private final Map<String, Queue<DomainBatchTask>> domainQueues = new LinkedHashMap<>();
-        private final Queue<String> availableDomains = new ArrayDeque<>();
+        private final boolean earliestDeadlineFirst;
+        private final Map<String, RunnerState> runnerStates = new LinkedHashMap<>();
+        // Same runners as runnerStates; a runner's virtual time only changes while it is out of this set
+        private final NavigableSet<RunnerState> runnersByVirtualTime = new TreeSet<>(
+                Comparator.<RunnerState>comparingDouble(runnerState -> runnerState.virtualTime)
+                        .thenComparingLong(runnerState -> runnerState.arrival));
+        // Heads of domain queues that carry a deadline, earliest first (realtime lanes only)
+        private final NavigableSet<DeadlineHead> deadlineHeads = new TreeSet<>(
+                Comparator.comparingLong(DeadlineHead::deadlineMillis).thenComparingLong(DeadlineHead::sequence));
+        private final Map<String, Integer> domainBatchCounts = new HashMap<>();
+        private long headSequence;
+        private long runnerArrivals;
+        private double laneVirtualTime;
         private int totalBatches;
+        private int deadlineBatches;
 
         LaneState(DispatchLane lane) {
             this.lane = lane;
+            this.earliestDeadlineFirst = lane.isRealtime();
         }
 
         synchronized void offer(DomainBatchTask task) {
-            String domain = task.getDomain();
-            Queue<DomainBatchTask> queue = domainQueues.computeIfAbsent(domain, k -> new ArrayDeque<>());
+            String domain = task.getMxGroup();
+            RunnerState runnerState = runnerStates.get(task.getRunnerId());
+            if (runnerState == null) {
+                runnerState = new RunnerState(task.getRunnerId(), runnerArrivals++);
+                runnerState.virtualTime = laneVirtualTime;
+                runnerStates.put(task.getRunnerId(), runnerState);
+                runnersByVirtualTime.add(runnerState);
+            }
 
-            boolean wasEmpty = queue.isEmpty();
-            queue.offer(task);
+            int domainQueueSize = runnerState.offer(task);
+            if (domainQueueSize == 1) {
+                refreshDeadlineHead(runnerState, domain);
+            }
+            domainBatchCounts.merge(domain, 1, Integer::sum);
             totalBatches++;
-
-            if (wasEmpty) {
-                availableDomains.offer(domain);
+            if (task.hasDeadline()) {
+                deadlineBatches++;
             }
 
-            log.debug("Batch added. lane={}, domain='{}', laneQueueSize={}, laneTotal={}",
-                    lane, domain, queue.size(), totalBatches);
+            log.debug("Batch added. lane={}, runnerId={}, domain='{}', laneQueueSize={}, laneTotal={}",
+                    lane, task.getRunnerId(), domain, domainQueueSize, totalBatches);
         }
 
         synchronized DomainBatchTask poll(Set<String> excludedDomains) {
-            if (availableDomains.isEmpty()) {
+            if (totalBatches == 0) {
                 return null;
             }
 
-            int attempts = availableDomains.size();
-            for (int i = 0; i < attempts; i++) {
-                String domain = availableDomains.poll();
-                if (domain == null) {
-                    break;
+            if (earliestDeadlineFirst && deadlineBatches > 0) {
+                DomainBatchTask task = pollEarliestDeadline(excludedDomains);
+                if (task != null) {
+                    return task;
                 }
+            }
 
-                if (excludedDomains != null && excludedDomains.contains(domain)) {
-                    availableDomains.offer(domain);
+            List<RunnerState> heldBack = null;
+            RunnerState polledRunner = null;
+            DomainBatchTask task = null;
+            for (RunnerState runnerState : runnersByVirtualTime) {
+                if (!isRunnerOpen(runnerState.runnerId)) {
+                    if (runnerState.virtualTime < laneVirtualTime) {
+                        if (heldBack == null) {
+                            heldBack = new ArrayList<>();
+                        }
+                        heldBack.add(runnerState);
+                    }
                     continue;
                 }
-
-                Queue<DomainBatchTask> queue = domainQueues.get(domain);
-                if (queue == null || queue.isEmpty()) {
-                    continue;
+                task = runnerState.poll(excludedDomains);
+                if (task != null) {
+                    refreshDeadlineHead(runnerState, task.getMxGroup());
+                    polledRunner = runnerState;
+                    break;
+                }
+            }
+            if (heldBack != null) {
+                // A held-back runner does not bank credit for the time it is skipped
+                for (RunnerState runnerState : heldBack) {
+                    reposition(runnerState, laneVirtualTime);
                 }
+            }
+            return task != null ? onPolled(polledRunner, task) : null;
+        }
 
-                DomainBatchTask task = queue.poll();
-                totalBatches--;
+        private void reposition(RunnerState runnerState, double virtualTime) {
+            runnersByVirtualTime.remove(runnerState);
+            runnerState.virtualTime = virtualTime;
+            runnersByVirtualTime.add(runnerState);
+        }
 
-                if (!queue.isEmpty()) {
-                    availableDomains.offer(domain);
+        /**
+         * Serves the domain head with the earliest deadline within the risk window across all runners and domains.
+         * Batches with a later deadline or none are left to the fair-queuing path.
+         */
+        private DomainBatchTask pollEarliestDeadline(Set<String> excludedDomains) {
+            long riskHorizon = System.currentTimeMillis() + deadlineRiskWindowMillis;
+            for (DeadlineHead head : deadlineHeads) {
+                if (head.deadlineMillis() > riskHorizon) {
+                    return null;
                 }
+                if ((excludedDomains != null && excludedDomains.contains(head.domain())) || !isRunnerOpen(head.runnerState().runnerId)) {
+                    continue;
+                }
+                // The index changes below, so the iteration ends here
+                RunnerState runnerState = head.runnerState();
+                DomainBatchTask task = runnerState.pollDomain(head.domain());
+                refreshDeadlineHead(runnerState, head.domain());
+                return onPolled(runnerState, task);
+            }
+            return null;
+        }
 
-                log.debug("Batch polled. lane={}, domain='{}', laneRemaining={}, laneTotal={}",
-                        lane, domain, queue.size(), totalBatches);
+        /**
+         * Re-indexes the head of a runner's domain queue after it may have changed.
+         */
+        private void refreshDeadlineHead(RunnerState runnerState, String domain) {
+            if (!earliestDeadlineFirst) {
+                return;
+            }
+            DeadlineHead previous = runnerState.deadlineHeads.remove(domain);
+            if (previous != null) {
+                deadlineHeads.remove(previous);
+            }
+            Queue<DomainBatchTask> queue = runnerState.domainQueues.get(domain);
+            DomainBatchTask head = queue != null ? queue.peek() : null;
+            if (head != null && head.hasDeadline()) {
+                DeadlineHead current = new DeadlineHead(head.getDeadlineMillis(), headSequence++, runnerState, domain);
+                runnerState.deadlineHeads.put(domain, current);
+                deadlineHeads.add(current);
+            }
+        }
 
-                return task;
+        private void unindexDeadlineHeads(RunnerState runnerState) {
+            for (DeadlineHead head : runnerState.deadlineHeads.values()) {
+                deadlineHeads.remove(head);
             }
-            return null;
+            runnerState.deadlineHeads.clear();
+        }
+
+        private DomainBatchTask onPolled(RunnerState runnerState, DomainBatchTask task) {
+            laneVirtualTime = runnerState.virtualTime;
+            runnersByVirtualTime.remove(runnerState);
+            runnerState.virtualTime += (double) Math.max(1, task.getSize()) / runnerWeight(runnerState.runnerId);
+            onRemoved(task);
+            if (runnerState.totalBatches == 0) {
+                runnerStates.remove(runnerState.runnerId);
+            } else {
+                runnersByVirtualTime.add(runnerState);
+            }
+
+            log.debug("Batch polled. lane={}, runnerId={}, domain='{}', runnerRemaining={}, laneTotal={}",
+                    lane, runnerState.runnerId, task.getDomain(), runnerState.totalBatches, totalBatches);
+
+            return task;
         }
 
         synchronized boolean hasAvailableBatch(Set<String> excludedDomains) {
-            if (availableDomains.isEmpty()) {
+            if (totalBatches == 0) {
+                return false;
+            }
+
+            if (runnerGate != null) {
+                for (RunnerState runnerState : runnerStates.values()) {
+                    if (isRunnerOpenThisCycle(runnerState) && runnerState.hasDomainOutside(excludedDomains)) {
+                        return true;
+                    }
+                }
                 return false;
             }
 
-            if (excludedDomains == null || excludedDomains.isEmpty()) {
+            if (excludedDomains == null || domainBatchCounts.size() > excludedDomains.size()) {
                 return true;
             }
 
-            for (String domain : availableDomains) {
+            for (String domain : domainBatchCounts.keySet()) {
                 if (!excludedDomains.contains(domain)) {
-                    Queue<DomainBatchTask> queue = domainQueues.get(domain);
-                    if (queue != null && !queue.isEmpty()) {
-                        return true;
-                    }
+                    return true;
                 }
             }
             return false;
         }
 
         synchronized long getOldestAgeMillis(Set<String> excludedDomains) {
-            if (domainQueues.isEmpty()) {
-                return 0L;
-            }
-
             long oldestAge = 0L;
-            for (Map.Entry<String, Queue<DomainBatchTask>> entry : domainQueues.entrySet()) {
-                if (excludedDomains != null && excludedDomains.contains(entry.getKey())) {
+            for (RunnerState runnerState : runnerStates.values()) {
+                if (!isRunnerOpenThisCycle(runnerState)) {
                     continue;
                 }
-
-                Queue<DomainBatchTask> queue = entry.getValue();
-                if (queue.isEmpty()) {
-                    continue;
-                }
-
-                DomainBatchTask head = queue.peek();
-                if (head != null) {
-                    oldestAge = Math.max(oldestAge, head.getAge());
-                }
+                oldestAge = Math.max(oldestAge, runnerState.getOldestAgeMillis(excludedDomains));
             }
             return oldestAge;
         }
 
         synchronized int getDomainBatchCount(String domain) {
-            Queue<DomainBatchTask> queue = domainQueues.get(domain);
-            return queue != null ? queue.size() : 0;
+            return domainBatchCounts.getOrDefault(domain, 0);
         }
 
         synchronized int getTotalBatchCount() {
@@ -411,7 +666,7 @@ public class DomainBatchQueue {
         }
 
         synchronized int getActiveDomainCount() {
-            return availableDomains.size();
+            return domainBatchCounts.size();
         }
 
         synchronized boolean isEmpty() {
@@ -419,55 +674,243 @@ public class DomainBatchQueue {
         }
 
         synchronized void collectDomainStatistics(Map<String, Integer> stats) {
-            for (Map.Entry<String, Queue<DomainBatchTask>> entry : domainQueues.entrySet()) {
-                stats.merge(entry.getKey(), entry.getValue().size(), Integer::sum);
+            for (Map.Entry<String, Integer> entry : domainBatchCounts.entrySet()) {
+                stats.merge(entry.getKey(), entry.getValue(), Integer::sum);
             }
         }
 
-        synchronized void removeByRunnerId(String runnerId, Object runnerToken, List<DomainBatchTask> removed) {
-            for (Map.Entry<String, Queue<DomainBatchTask>> entry : domainQueues.entrySet()) {
-                Queue<DomainBatchTask> queue = entry.getValue();
-                if (queue.isEmpty()) {
-                    continue;
+        void removeByRunnerId(String runnerId, Object runnerToken, List<DomainBatchTask> removed) {
+            RunnerState detached;
+            synchronized (this) {
+                RunnerState runnerState = runnerStates.get(runnerId);
+                if (runnerState == null) {
+                    return;
                 }
 
-                List<DomainBatchTask> toRemove = new ArrayList<>();
-                for (DomainBatchTask task : queue) {
-                    if (!runnerId.equals(task.getRunnerId())) {
-                        continue;
+                if (runnerToken != null && !runnerState.holdsOnly(runnerToken)) {
+                    // Batches of an earlier run are still queued next to this run's; filter them by token
+                    int before = removed.size();
+                    runnerState.removeByToken(runnerToken, removed);
+                    for (int i = before; i < removed.size(); i++) {
+                        onRemoved(removed.get(i));
                     }
-                    if (runnerToken != null && task.getResultWriter() != runnerToken) {
-                        continue;
+                    unindexDeadlineHeads(runnerState);
+                    for (String domain : runnerState.domainQueues.keySet()) {
+                        refreshDeadlineHead(runnerState, domain);
                     }
-                    toRemove.add(task);
-                }
-
-                for (DomainBatchTask task : toRemove) {
-                    if (queue.remove(task)) {
-                        removed.add(task);
+                    if (runnerState.totalBatches == 0) {
+                        runnerStates.remove(runnerId);
+                        runnersByVirtualTime.remove(runnerState);
                     }
+                    return;
                 }
+
+                runnerStates.remove(runnerId);
+                runnersByVirtualTime.remove(runnerState);
+                unindexDeadlineHeads(runnerState);
+                onDetached(runnerState);
+                detached = runnerState;
             }
-            rebuild();
+            // The partition is no longer reachable from the lane, so it can be drained without the lock
+            detached.drainTo(removed);
+            log.debug("Runner batches removed. lane={}, runnerId={}, removed={}", lane, runnerId, detached.totalBatches);
         }
 
         synchronized void clear() {
-            domainQueues.clear();
-            availableDomains.clear();
+            runnerStates.clear();
+            runnersByVirtualTime.clear();
+            deadlineHeads.clear();
+            domainBatchCounts.clear();
+            laneVirtualTime = 0.0d;
             totalBatches = 0;
+            deadlineBatches = 0;
+        }
+
+        /**
+         * Subtracts a whole runner partition from the lane counters, touching each of its domains once.
+         */
+        private void onDetached(RunnerState runnerState) {
+            totalBatches -= runnerState.totalBatches;
+            deadlineBatches -= runnerState.deadlineBatches;
+            for (Map.Entry<String, Queue<DomainBatchTask>> entry : runnerState.domainQueues.entrySet()) {
+                int size = entry.getValue().size();
+                domainBatchCounts.computeIfPresent(entry.getKey(), (key, count) -> count > size ? count - size : null);
+            }
+        }
+
+        private void onRemoved(DomainBatchTask task) {
+            totalBatches--;
+            if (task.hasDeadline()) {
+                deadlineBatches--;
+            }
+            domainBatchCounts.computeIfPresent(task.getMxGroup(), (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Per-domain queues of a single runner within a lane. Not thread-safe; guarded by the owning {@link LaneState}.
+     */
+    private static final class RunnerState {
+        private final String runnerId;
+        // Order in which the runner joined the lane, breaking virtual time ties
+        private final long arrival;
+        private final Map<String, Queue<DomainBatchTask>> domainQueues = new LinkedHashMap<>();
+        private final Queue<String> availableDomains = new ArrayDeque<>();
+        // Queued batch count per run token (result writer identity), to tell whether a removal covers the whole runner
+        private final Map<Object, Integer> tokenCounts = new IdentityHashMap<>();
+        // Index entries of this runner's domain heads that carry a deadline, maintained by the owning lane
+        private final Map<String, DeadlineHead> deadlineHeads = new HashMap<>();
+        private double virtualTime;
+        private int totalBatches;
+        private int deadlineBatches;
+        // Gate result cached for availability checks, valid while gateEpoch matches the queue's
+        private long gateEpoch = -1L;
+        private boolean gateOpen;
+
+        RunnerState(String runnerId, long arrival) {
+            this.runnerId = runnerId;
+            this.arrival = arrival;
+        }
+
+        int offer(DomainBatchTask task) {
+            String domain = task.getMxGroup();
+            Queue<DomainBatchTask> queue = domainQueues.computeIfAbsent(domain, k -> new ArrayDeque<>());
+
+            boolean wasEmpty = queue.isEmpty();
+            queue.offer(task);
+            totalBatches++;
+            if (task.hasDeadline()) {
+                deadlineBatches++;
+            }
+            tokenCounts.merge(task.getResultWriter(), 1, Integer::sum);
+
+            if (wasEmpty) {
+                availableDomains.offer(domain);
+            }
+            return queue.size();
         }
 
-        private void rebuild() {
-            availableDomains.clear();
-            int count = 0;
+        DomainBatchTask poll(Set<String> excludedDomains) {
+            int attempts = availableDomains.size();
+            for (int i = 0; i < attempts; i++) {
+                String domain = availableDomains.poll();
+                if (domain == null) {
+                    break;
+                }
+
+                if (excludedDomains != null && excludedDomains.contains(domain)) {
+                    availableDomains.offer(domain);
+                    continue;
+                }
+
+                Queue<DomainBatchTask> queue = domainQueues.get(domain);
+                if (queue == null || queue.isEmpty()) {
+                    continue;
+                }
+
+                DomainBatchTask task = queue.poll();
+                onTaskRemoved(task);
+
+                if (queue.isEmpty()) {
+                    domainQueues.remove(domain);
+                } else {
+                    availableDomains.offer(domain);
+                }
+                return task;
+            }
+            return null;
+        }
+
+        /**
+         * Runs in O(min(domains, excluded)): with more queued domains than excluded ones, one of them is outside.
+         */
+        boolean hasDomainOutside(Set<String> excludedDomains) {
+            if (excludedDomains == null || domainQueues.size() > excludedDomains.size()) {
+                return !domainQueues.isEmpty();
+            }
+            for (String domain : domainQueues.keySet()) {
+                if (!excludedDomains.contains(domain)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        DomainBatchTask pollDomain(String domain) {
+            Queue<DomainBatchTask> queue = domainQueues.get(domain);
+            DomainBatchTask task = queue.poll();
+            onTaskRemoved(task);
+            if (queue.isEmpty()) {
+                domainQueues.remove(domain);
+                availableDomains.remove(domain);
+            }
+            return task;
+        }
+
+        long getOldestAgeMillis(Set<String> excludedDomains) {
+            long oldestAge = 0L;
             for (Map.Entry<String, Queue<DomainBatchTask>> entry : domainQueues.entrySet()) {
-                Queue<DomainBatchTask> queue = entry.getValue();
-                if (!queue.isEmpty()) {
-                    availableDomains.offer(entry.getKey());
-                    count += queue.size();
+                if (excludedDomains != null && excludedDomains.contains(entry.getKey())) {
+                    continue;
+                }
+
+                DomainBatchTask head = entry.getValue().peek();
+                if (head != null) {
+                    oldestAge = Math.max(oldestAge, head.getAge());
                 }
             }
-            totalBatches = count;
+            return oldestAge;
         }
+
+        void removeByToken(Object runnerToken, List<DomainBatchTask> removed) {
+            Iterator<Map.Entry<String, Queue<DomainBatchTask>>> iterator = domainQueues.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Queue<DomainBatchTask> queue = iterator.next().getValue();
+                Iterator<DomainBatchTask> taskIterator = queue.iterator();
+                while (taskIterator.hasNext()) {
+                    DomainBatchTask task = taskIterator.next();
+                    if (runnerToken != null && task.getResultWriter() != runnerToken) {
+                        continue;
+                    }
+                    taskIterator.remove();
+                    removed.add(task);
+                    onTaskRemoved(task);
+                }
+                if (queue.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+            availableDomains.removeIf(domain -> !domainQueues.containsKey(domain));
+        }
+
+        /**
+         * @return true if every queued batch of this runner belongs to the given run token
+         */
+        boolean holdsOnly(Object runnerToken) {
+            return tokenCounts.size() == 1 && tokenCounts.containsKey(runnerToken);
+        }
+
+        /**
+         * Moves all batches to {@code removed}. Only called on a partition already detached from its lane.
+         */
+        void drainTo(List<DomainBatchTask> removed) {
+            for (Queue<DomainBatchTask> queue : domainQueues.values()) {
+                removed.addAll(queue);
+            }
+        }
+
+        private void onTaskRemoved(DomainBatchTask task) {
+            totalBatches--;
+            if (task.hasDeadline()) {
+                deadlineBatches--;
+            }
+            tokenCounts.computeIfPresent(task.getResultWriter(), (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Index entry for the head of a runner's domain queue that carries a deadline.
+     */
+    private record DeadlineHead(long deadlineMillis, long sequence, RunnerState runnerState, String domain) {
     }
 }
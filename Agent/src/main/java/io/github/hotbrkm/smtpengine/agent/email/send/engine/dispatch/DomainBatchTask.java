@@ -3,10 +3,12 @@ package io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import io.github.hotbrkm.smtpengine.agent.email.send.recipient.StoredTargetRange;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
 import lombok.Getter;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -18,10 +20,18 @@ import java.util.concurrent.CompletableFuture;
 @Getter
 public class DomainBatchTask {
 
+    /**
+     * {@link #getDeadlineMillis()} value of tasks without a delivery deadline.
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
     private final List<EmailSendTarget> batch;
     private final String domain;
+    private final String mxGroup;
     private final long createdTime;
     private final String batchId;
+    // Batch ID of the submitted batch this task derives from (its own ID for submitted and coalesced batches)
+    private final String rootBatchId;
     private final CompletableFuture<EmailBatchResult> resultFuture;
     private final int retryCount;
     private final String runnerId;
@@ -30,13 +40,53 @@ public class DomainBatchTask {
     private final ExecutionMode executionMode;
     private final DispatchLane dispatchLane;
     private final boolean hasAttachment;
+    private final long deadlineMillis;
+    private final List<DomainBatchTask> coalescedTasks;
+    // Part of a batch split by a session handoff; the batch it was split from is counted instead
+    private final boolean handoffPart;
 
     public DomainBatchTask(List<EmailSendTarget> batch, String domain, String batchId, CompletableFuture<EmailBatchResult> resultFuture,
                            int retryCount, String runnerId, EmailBatchResultWriter resultWriter, EmailSendContext emailSendContext,
                            ExecutionMode executionMode, DispatchLane lane) {
+        this(batch, domain, null, batchId, resultFuture, retryCount, runnerId, resultWriter, emailSendContext, executionMode, lane);
+    }
+
+    /**
+     * Creates a task scheduled under an MX group.
+     *
+     * @param mxGroup Scheduling and session-limit key shared by domains on the same MX farm ({@code null} means the domain)
+     */
+    public DomainBatchTask(List<EmailSendTarget> batch, String domain, String mxGroup, String batchId,
+                           CompletableFuture<EmailBatchResult> resultFuture, int retryCount, String runnerId,
+                           EmailBatchResultWriter resultWriter, EmailSendContext emailSendContext,
+                           ExecutionMode executionMode, DispatchLane lane) {
+        this(batch, domain, mxGroup, batchId, batchId, resultFuture, retryCount, runnerId, resultWriter, emailSendContext,
+                executionMode, lane);
+    }
+
+    /**
+     * Creates a task for targets of a batch submitted earlier, e.g. a retry recovered from the queue journal.
+     *
+     * @param rootBatchId Batch ID of the submitted batch the task derives from
+     */
+    public DomainBatchTask(List<EmailSendTarget> batch, String domain, String mxGroup, String batchId, String rootBatchId,
+                           CompletableFuture<EmailBatchResult> resultFuture, int retryCount, String runnerId,
+                           EmailBatchResultWriter resultWriter, EmailSendContext emailSendContext,
+                           ExecutionMode executionMode, DispatchLane lane) {
+        this(batch, domain, mxGroup, batchId, rootBatchId, resultFuture, retryCount, runnerId, resultWriter, emailSendContext,
+                executionMode, lane, List.of(), false);
+    }
+
+    private DomainBatchTask(List<EmailSendTarget> batch, String domain, String mxGroup, String batchId, String rootBatchId,
+                            CompletableFuture<EmailBatchResult> resultFuture, int retryCount, String runnerId,
+                            EmailBatchResultWriter resultWriter, EmailSendContext emailSendContext,
+                            ExecutionMode executionMode, DispatchLane lane, List<DomainBatchTask> coalescedTasks,
+                            boolean handoffPart) {
         this.batch = batch;
         this.domain = Objects.requireNonNull(domain);
+        this.mxGroup = mxGroup != null && !mxGroup.isBlank() ? mxGroup : domain;
         this.batchId = Objects.requireNonNull(batchId);
+        this.rootBatchId = rootBatchId != null ? rootBatchId : batchId;
         this.resultFuture = resultFuture;
         this.retryCount = retryCount;
         this.runnerId = Objects.requireNonNull(runnerId);
@@ -46,6 +96,66 @@ public class DomainBatchTask {
         this.dispatchLane = lane != null ? lane : resolveLane(this.executionMode, retryCount);
         this.hasAttachment = resolveHasAttachment(batch);
         this.createdTime = System.currentTimeMillis();
+        this.deadlineMillis = emailSendContext != null && emailSendContext.hasDeadline()
+                ? emailSendContext.deadline().toEpochMilli()
+                : NO_DEADLINE;
+        this.coalescedTasks = coalescedTasks;
+        this.handoffPart = handoffPart;
+    }
+
+    /**
+     * Creates a task for some of this task's targets, e.g. a retry, keeping its domain, runner, context, mode,
+     * root batch ID and handoff part status.
+     */
+    public DomainBatchTask derive(List<EmailSendTarget> targets, String batchId, CompletableFuture<EmailBatchResult> resultFuture,
+                                  int retryCount, DispatchLane lane) {
+        return new DomainBatchTask(targets, domain, mxGroup, batchId, rootBatchId, resultFuture, retryCount, runnerId, resultWriter,
+                emailSendContext, executionMode, lane, List.of(), handoffPart);
+    }
+
+    /**
+     * Creates the head or tail part of this task for a session handoff, in the same lane.
+     * Parts are not counted as batches; this task is, once all its parts have completed.
+     */
+    public DomainBatchTask handoffPart(List<EmailSendTarget> targets, String batchId, CompletableFuture<EmailBatchResult> resultFuture,
+                                       int retryCount) {
+        return new DomainBatchTask(targets, domain, mxGroup, batchId, rootBatchId, resultFuture, retryCount, runnerId, resultWriter,
+                emailSendContext, executionMode, dispatchLane, List.of(), true);
+    }
+
+    /**
+     * Merges retry tasks of the same domain, runner and context into one task sent on a single session.
+     * <p>
+     * The merged task has its own result future; each member keeps its targets and result future and is completed
+     * individually, so callers waiting on the original batches see their own results.
+     *
+     * @param batchId Batch ID of the merged task
+     * @param members Retry tasks to merge (at least two, sharing domain, runner, context and lane)
+     */
+    public static DomainBatchTask coalesce(String batchId, List<DomainBatchTask> members) {
+        if (members == null || members.size() < 2) {
+            throw new IllegalArgumentException("At least two tasks are required to coalesce");
+        }
+        DomainBatchTask first = members.getFirst();
+        List<EmailSendTarget> targets = new ArrayList<>();
+        int retryCount = 0;
+        for (DomainBatchTask member : members) {
+            if (member.isCoalesced()) {
+                throw new IllegalArgumentException("Coalesced tasks cannot be nested: " + member.getBatchId());
+            }
+            targets.addAll(member.getBatch());
+            retryCount = Math.max(retryCount, member.getRetryCount());
+        }
+        return new DomainBatchTask(targets, first.getDomain(), first.getMxGroup(), batchId, batchId, new CompletableFuture<>(), retryCount,
+                first.getRunnerId(), first.getResultWriter(), first.getEmailSendContext(), first.getExecutionMode(),
+                first.getDispatchLane(), List.copyOf(members), false);
+    }
+
+    /**
+     * Returns whether this task merges several retry tasks (see {@link #getCoalescedTasks()}).
+     */
+    public boolean isCoalesced() {
+        return !coalescedTasks.isEmpty();
     }
 
     public DomainBatchTask(List<EmailSendTarget> batch, String domain, String batchId, CompletableFuture<EmailBatchResult> resultFuture,
@@ -73,6 +183,22 @@ public class DomainBatchTask {
         return System.currentTimeMillis() - createdTime;
     }
 
+    /**
+     * Returns whether the task carries a delivery deadline.
+     */
+    public boolean hasDeadline() {
+        return deadlineMillis != NO_DEADLINE;
+    }
+
+    /**
+     * Returns whether the delivery deadline has passed at the given time.
+     *
+     * @param nowMillis Current time (epoch ms)
+     */
+    public boolean isPastDeadline(long nowMillis) {
+        return hasDeadline() && nowMillis > deadlineMillis;
+    }
+
     /**
      * Returns whether attachments exist.
      */
@@ -90,8 +216,8 @@ public class DomainBatchTask {
 
     @Override
     public String toString() {
-        return String.format("BatchTask[domain=%s, size=%d, age=%dms, retryCount=%d, mode=%s, lane=%s]",
-                domain, getSize(), getAge(), retryCount, executionMode, dispatchLane);
+        return String.format("BatchTask[domain=%s, size=%d, age=%dms, retryCount=%d, mode=%s, lane=%s, coalesced=%d]",
+                domain, getSize(), getAge(), retryCount, executionMode, dispatchLane, coalescedTasks.size());
     }
 
     private static DispatchLane resolveLane(ExecutionMode mode, int retryCount) {
@@ -105,6 +231,10 @@ public class DomainBatchTask {
         if (batch == null || batch.isEmpty()) {
             return false;
         }
+        // Stored batches answer from their records so queued tasks do not read their targets onto the heap
+        if (batch instanceof StoredTargetRange range) {
+            return range.hasAttachment();
+        }
 
         for (EmailSendTarget target : batch) {
             if (target == null || target.getAttachments() == null || target.getAttachments().isEmpty()) {
@@ -30,12 +30,13 @@ public enum TaskLane {
         if (lane == null) {
             return null;
         }
-        return switch (lane) {
-            case REALTIME_FRESH -> RT_FRESH;
-            case REALTIME_RETRY -> RT_RETRY;
-            case BATCH_FRESH -> BA_FRESH;
-            case BATCH_RETRY -> BA_RETRY;
-        };
+        for (TaskLane taskLane : values()) {
+            if (taskLane.dispatchLane.equals(lane)) {
+                return taskLane;
+            }
+        }
+        // Configured lanes have no legacy counterpart; map them by mode and retry flag.
+        return lane.isRetry() ? forRetry(lane.getExecutionMode()) : forFresh(lane.getExecutionMode());
     }
 
     public boolean isRealtime() {
@@ -0,0 +1,237 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.mime.AttachmentMedia;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailContent;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import lombok.experimental.UtilityClass;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary form of queue journal events.
+ * <p>
+ * Frame: 4-byte payload length, 4-byte CRC32C of the payload, payload. The payload starts with the event type;
+ * strings are written as a 4-byte UTF-8 length (-1 for null) followed by the bytes.
+ */
+@UtilityClass
+final class QueueEventCodec {
+
+    static final byte CONTENT = 1;
+    static final byte SUBMITTED = 2;
+    static final byte DISPATCHED = 3;
+    static final byte RESULT = 4;
+    static final byte RETRY_SCHEDULED = 5;
+    static final byte COMPLETED = 6;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+
+    /**
+     * Writes {@code payload} as one frame.
+     */
+    static void writeFrame(DataOutputStream out, byte[] payload, int length) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, length);
+        out.writeInt(length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload, 0, length);
+    }
+
+    /**
+     * Reads the payload of the next frame, or returns {@code null} at the end of the journal
+     * (end of stream or a torn frame left by a crash).
+     */
+    static byte[] readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0) {
+                return null;
+            }
+            int expectedCrc = in.readInt();
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            return (int) crc.getValue() == expectedCrc ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    static void writeContext(DataOutput out, EmailSendContext context) throws IOException {
+        out.writeLong(context.messageId());
+        out.writeLong(context.resultSeq());
+        out.writeInt(context.groupSeq());
+        writeString(out, context.messageType());
+        writeString(out, context.templateSubtype());
+        writeString(out, context.executionMode().name());
+        out.writeBoolean(context.hasDeadline());
+        if (context.hasDeadline()) {
+            out.writeLong(context.deadline().getEpochSecond());
+            out.writeInt(context.deadline().getNano());
+        }
+    }
+
+    static EmailSendContext readContext(DataInput in) throws IOException {
+        long messageId = in.readLong();
+        long resultSeq = in.readLong();
+        int groupSeq = in.readInt();
+        String messageType = readString(in);
+        String templateSubtype = readString(in);
+        ExecutionMode executionMode = ExecutionMode.valueOf(readString(in));
+        Instant deadline = in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+        return new EmailSendContext(messageId, resultSeq, groupSeq, messageType, templateSubtype, executionMode, deadline);
+    }
+
+    /**
+     * Writes the recipient part of a target; its content is written as the journal key of a preceding CONTENT event.
+     * Send results are journaled separately as RESULT events.
+     */
+    static void writeTarget(DataOutput out, EmailSendTarget target, int contentKey) throws IOException {
+        writeString(out, target.getTargetEmail());
+        writeString(out, target.getSenderName());
+        writeString(out, target.getSenderEmail());
+        writeString(out, target.getTargetId());
+        writeString(out, target.getTargetName());
+        out.writeInt(target.getListSeq());
+        out.writeInt(target.getRetryCount());
+        out.writeInt(contentKey);
+        writeAttributes(out, target.attributesView());
+        List<AttachmentMedia> attachments = target.getAttachments();
+        out.writeInt(attachments.size());
+        for (AttachmentMedia attachment : attachments) {
+            writeString(out, attachment.fileName());
+            writeString(out, attachment.filePath());
+        }
+    }
+
+    static EmailSendTarget readTarget(DataInput in, Map<Integer, EmailContent> contents) throws IOException {
+        EmailSendTarget.EmailSendTargetBuilder builder = EmailSendTarget.builder()
+                .targetEmail(readString(in))
+                .senderName(readString(in))
+                .senderEmail(readString(in))
+                .targetId(readString(in))
+                .targetName(readString(in))
+                .listSeq(in.readInt())
+                .retryCount(in.readInt());
+        int contentKey = in.readInt();
+        EmailContent content = contents.get(contentKey);
+        if (content == null) {
+            throw new IOException("Queue journal references unknown content " + contentKey);
+        }
+        builder.content(content).targetData(readAttributes(in));
+        int attachmentCount = in.readInt();
+        if (attachmentCount > 0) {
+            List<AttachmentMedia> attachments = new ArrayList<>(attachmentCount);
+            for (int i = 0; i < attachmentCount; i++) {
+                attachments.add(new AttachmentMedia(readString(in), readString(in)));
+            }
+            builder.attachments(attachments);
+        }
+        return builder.build();
+    }
+
+    static void writeProgress(DataOutput out, EmailSendProgress progress) throws IOException {
+        out.writeInt(progress.listSeq());
+        out.writeInt(progress.retryCount());
+        writeString(out, progress.targetEmail());
+        writeString(out, progress.sendCode());
+        writeString(out, progress.sendStatus());
+        writeString(out, progress.errorMessage());
+        writeString(out, progress.endDateTime());
+        writeString(out, progress.emailDomain());
+    }
+
+    static EmailSendProgress readProgress(DataInput in) throws IOException {
+        int listSeq = in.readInt();
+        int retryCount = in.readInt();
+        String targetEmail = readString(in);
+        String sendCode = readString(in);
+        String sendStatus = readString(in);
+        String errorMessage = readString(in);
+        String endDateTime = readString(in);
+        String emailDomain = readString(in);
+        return new EmailSendProgress(listSeq, targetEmail, sendCode, sendStatus, errorMessage, endDateTime, emailDomain, retryCount);
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes attributes as: count, then per entry key, type tag and value.
+     * Values other than String/Integer/Long are stored as their String form; listSeq is written with the target.
+     */
+    private static void writeAttributes(DataOutput out, Map<String, Object> attributes) throws IOException {
+        out.writeInt(attributes.containsKey(EmailSendTarget.ATTR_LIST_SEQ) ? attributes.size() - 1 : attributes.size());
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            if (EmailSendTarget.ATTR_LIST_SEQ.equals(entry.getKey())) {
+                continue;
+            }
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            if (value == null) {
+                out.writeByte(TYPE_NULL);
+            } else if (value instanceof Integer i) {
+                out.writeByte(TYPE_INT);
+                out.writeInt(i);
+            } else if (value instanceof Long l) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong(l);
+            } else {
+                out.writeByte(TYPE_STRING);
+                writeString(out, String.valueOf(value));
+            }
+        }
+    }
+
+    private static Map<String, Object> readAttributes(DataInput in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> attributes = new HashMap<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            Object value = switch (type) {
+                case TYPE_NULL -> null;
+                case TYPE_INT -> in.readInt();
+                case TYPE_LONG -> in.readLong();
+                default -> readString(in);
+            };
+            attributes.put(key, value);
+        }
+        return attributes;
+    }
+}
@@ -0,0 +1,681 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailContent;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.recipient.StoredTargetRange;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+/**
+ * Write-ahead journal of the batches held by the engine, used to rebuild queues and retry timers after a crash.
+ * <p>
+ * Every batch of a runner with a result writer is journaled through its lifecycle: submitted (with its targets),
+ * each target result, retries scheduled with their due time, retries dispatched, and completed. Events are appended to
+ * {@code queue.journal} as CRC-checked frames ({@link QueueEventCodec}) and forced to disk by {@link #sync()}, which the
+ * engine calls periodically; a crash loses at most the events since the last sync, so those targets are sent again.
+ * <p>
+ * For the batches not completed yet, the journal keeps in memory where their SUBMITTED event lies in the file, their
+ * results and their scheduled retries, but not their targets. Once the file grows past {@code compactBytes} it is
+ * rewritten with only those batches, copying their SUBMITTED events as they are, and atomically replaced; content keys
+ * stay stable across rewrites for that. On open, the file is replayed: batches not completed are kept for
+ * {@link #drainRecoveredBatches()} and the file is rewritten, dropping completed batches and a torn tail.
+ * <p>
+ * Retry, handoff and coalesced batches belong to the batch they derive from ({@link DomainBatchTask#getRootBatchId()}),
+ * which their events name explicitly; targets are identified by listSeq.
+ * A failed write stops journaling until the next restart, so sending is never blocked by the journal.
+ */
+@Slf4j
+public final class QueueJournal implements Closeable {
+
+    static final String JOURNAL_FILE_NAME = "queue.journal";
+    static final String COMPACT_FILE_NAME = "queue.journal.compact";
+
+    // Frame header: payload length and CRC
+    private static final int FRAME_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long syncIntervalMs;
+    private final long compactBytes;
+    // Batch ID -> batch submitted and not completed yet
+    private final Map<String, LiveBatch> liveBatches = new LinkedHashMap<>();
+    // Content <-> key of its CONTENT event; a key never changes, so SUBMITTED events can be copied on compaction
+    private final Map<EmailContent, Integer> contentKeys = new HashMap<>();
+    private final Map<Integer, EmailContent> contentsByKey = new HashMap<>();
+    private int nextContentKey;
+    private final EventBuffer event = new EventBuffer();
+    private final DataOutputStream eventOut = new DataOutputStream(event);
+
+    private FileChannel channel;
+    private DataOutputStream out;
+    private long writtenBytes;
+    private boolean dirty;
+    private boolean failed;
+    private boolean closed;
+    private List<RecoveredBatch> recoveredBatches = List.of();
+
+    private QueueJournal() {
+        this.enabled = false;
+        this.directory = null;
+        this.syncIntervalMs = 0L;
+        this.compactBytes = Long.MAX_VALUE;
+    }
+
+    /**
+     * Opens (or creates) the journal in {@code directory}, replaying batches left by the previous run.
+     *
+     * @param syncIntervalMs Interval at which the engine calls {@link #sync()}
+     * @param compactBytes   Journal size that triggers a rewrite of the live batches
+     */
+    public QueueJournal(Path directory, long syncIntervalMs, long compactBytes) throws IOException {
+        this.enabled = true;
+        this.directory = directory;
+        this.syncIntervalMs = Math.max(1L, syncIntervalMs);
+        this.compactBytes = Math.max(1L, compactBytes);
+
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(COMPACT_FILE_NAME));
+        Path file = directory.resolve(JOURNAL_FILE_NAME);
+        Map<String, RecoveredBatch> submissions = new HashMap<>();
+        int events = Files.exists(file) ? replay(file, submissions) : 0;
+        this.recoveredBatches = liveBatches.entrySet().stream()
+                .map(entry -> entry.getValue().toRecovered(submissions.get(entry.getKey())))
+                .toList();
+        try (FileChannel source = events > 0 ? FileChannel.open(file, StandardOpenOption.READ) : null) {
+            compact(source);
+        }
+        log.info("Queue journal opened. dir={}, replayedEvents={}, openBatches={}", directory, events, recoveredBatches.size());
+    }
+
+    /**
+     * Returns a journal that records nothing and recovers nothing.
+     */
+    public static QueueJournal disabled() {
+        return new QueueJournal();
+    }
+
+    /**
+     * Opens the journal under {@code <spoolDir>/queue}, or returns a disabled journal if it is off or cannot be opened.
+     */
+    public static QueueJournal fromSendConfig(EmailConfig.Send sendConfig) {
+        if (!sendConfig.isQueueJournalEnabled()) {
+            return disabled();
+        }
+        if (sendConfig.getSpoolDir() == null || sendConfig.getSpoolDir().isBlank()) {
+            log.warn("Queue journal is enabled but spoolDir is not set; journal disabled");
+            return disabled();
+        }
+        try {
+            return new QueueJournal(Paths.get(sendConfig.getSpoolDir(), "queue"), sendConfig.getQueueJournalSyncIntervalMs(),
+                    sendConfig.getQueueJournalCompactBytes());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to open queue journal; journal disabled. spoolDir={}", sendConfig.getSpoolDir(), e);
+            return disabled();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getSyncIntervalMs() {
+        return syncIntervalMs;
+    }
+
+    /**
+     * Returns the batches the previous run left uncompleted, once; later calls return an empty list.
+     */
+    public synchronized List<RecoveredBatch> drainRecoveredBatches() {
+        List<RecoveredBatch> drained = recoveredBatches;
+        recoveredBatches = List.of();
+        return drained;
+    }
+
+    /**
+     * Records a newly queued batch and records its completion when its result future completes.
+     * A stored batch is journaled from a copy of its targets, so it stays off the heap until dispatched.
+     */
+    public void recordSubmitted(DomainBatchTask task) {
+        if (journals(task)) {
+            List<EmailSendTarget> targets = task.getBatch() instanceof StoredTargetRange range ? range.copyTargets() : task.getBatch();
+            recordSubmitted(task.getBatchId(), task.getRunnerId(), task.getDomain(), task.getEmailSendContext(), targets,
+                    task.getResultFuture());
+        }
+    }
+
+    /**
+     * Records a batch with the given targets, replacing any earlier record of the same batch ID
+     * (used when recovered batches are queued again), and records its completion when {@code completion} completes.
+     */
+    public void recordSubmitted(String batchId, String runnerId, String domain, EmailSendContext context,
+                                List<EmailSendTarget> targets, CompletableFuture<?> completion) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (!isWritable()) {
+                return;
+            }
+            try {
+                liveBatches.put(batchId, appendSubmitted(batchId, runnerId, domain, context, targets));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        completion.whenComplete((result, throwable) -> recordCompleted(batchId));
+    }
+
+    /**
+     * Records that a task left the queue for a sender, clearing the scheduled retries it carries.
+     */
+    public synchronized void recordDispatched(DomainBatchTask task) {
+        if (!enabled || !isWritable()) {
+            return;
+        }
+        List<DomainBatchTask> tasks = task.isCoalesced() ? task.getCoalescedTasks() : List.of(task);
+        try {
+            for (DomainBatchTask member : tasks) {
+                LiveBatch batch = liveBatches.get(member.getRootBatchId());
+                if (batch != null && batch.scheduledRetries.remove(member.getBatchId()) != null) {
+                    beginEvent(QueueEventCodec.DISPATCHED);
+                    QueueEventCodec.writeString(eventOut, member.getRootBatchId());
+                    QueueEventCodec.writeString(eventOut, member.getBatchId());
+                    endEvent();
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records a retry task that will be queued at {@code dueAtMillis}.
+     */
+    public synchronized void recordRetryScheduled(DomainBatchTask retryTask, long dueAtMillis) {
+        if (!enabled || !isWritable()) {
+            return;
+        }
+        LiveBatch batch = liveBatches.get(retryTask.getRootBatchId());
+        if (batch == null) {
+            return;
+        }
+        Set<Integer> listSeqs = new LinkedHashSet<>();
+        for (EmailSendTarget target : retryTask.getBatch()) {
+            listSeqs.add(target.getListSeq());
+        }
+        RecoveredBatch.ScheduledRetry retry = new RecoveredBatch.ScheduledRetry(retryTask.getBatchId(), retryTask.getRetryCount(),
+                dueAtMillis, listSeqs);
+        batch.scheduledRetries.put(retry.batchId(), retry);
+        try {
+            appendRetryScheduled(retryTask.getRootBatchId(), retry);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records that a batch completed, so it is not recovered.
+     */
+    public synchronized void recordCompleted(String batchId) {
+        if (!enabled || !isWritable() || liveBatches.remove(batchId) == null) {
+            return;
+        }
+        try {
+            beginEvent(QueueEventCodec.COMPLETED);
+            QueueEventCodec.writeString(eventOut, batchId);
+            endEvent();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Wraps the result writer a sender of {@code task} writes to, so every target result is also journaled.
+     */
+    public EmailBatchResultWriter resultWriter(DomainBatchTask task, EmailBatchResultWriter delegate) {
+        if (!enabled || !journals(task)) {
+            return delegate;
+        }
+        if (!task.isCoalesced()) {
+            String batchId = task.getRootBatchId();
+            return new JournalingResultWriter(delegate, listSeq -> batchId);
+        }
+        Map<Integer, String> batchIds = new HashMap<>();
+        for (DomainBatchTask member : task.getCoalescedTasks()) {
+            String batchId = member.getRootBatchId();
+            member.getBatch().forEach(target -> batchIds.put(target.getListSeq(), batchId));
+        }
+        return new JournalingResultWriter(delegate, batchIds::get);
+    }
+
+    /**
+     * Forces the events written so far to disk, then rewrites the journal if it grew past the compaction size.
+     */
+    public synchronized void sync() {
+        if (!enabled || !isWritable()) {
+            return;
+        }
+        try {
+            if (dirty) {
+                out.flush();
+                channel.force(false);
+                dirty = false;
+            }
+            if (writtenBytes > compactBytes) {
+                compact(channel);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Forces the remaining events to disk and closes the file; open batches stay in the journal for the next run.
+     */
+    @Override
+    public synchronized void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        sync();
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Failed to close queue journal. dir={}", directory, e);
+        }
+    }
+
+    private synchronized void recordResult(String batchId, EmailSendProgress progress) {
+        if (batchId == null || !isWritable()) {
+            return;
+        }
+        LiveBatch batch = liveBatches.get(batchId);
+        if (batch == null) {
+            return;
+        }
+        batch.results.put(progress.listSeq(), progress);
+        try {
+            appendResult(batchId, progress);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private static boolean journals(DomainBatchTask task) {
+        return task.getResultWriter() != null && !task.getRunnerId().isBlank();
+    }
+
+    private boolean isWritable() {
+        return !closed && !failed;
+    }
+
+    private void fail(IOException e) {
+        failed = true;
+        log.warn("Failed to write queue journal; journaling stopped until restart. dir={}", directory, e);
+    }
+
+    /**
+     * Replays the file into the live batches; the targets of submitted batches are collected into {@code submissions}.
+     */
+    private int replay(Path file, Map<String, RecoveredBatch> submissions) throws IOException {
+        int events = 0;
+        long position = 0L;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            byte[] payload;
+            while ((payload = QueueEventCodec.readFrame(in)) != null) {
+                int frameLength = FRAME_HEADER_BYTES + payload.length;
+                try {
+                    applyEvent(new DataInputStream(new ByteArrayInputStream(payload)), position, frameLength, submissions);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Stopped queue journal replay at a malformed event. file={}, events={}", file, events, e);
+                    break;
+                }
+                position += frameLength;
+                events++;
+            }
+        }
+        return events;
+    }
+
+    private void applyEvent(DataInputStream in, long position, int frameLength, Map<String, RecoveredBatch> submissions)
+            throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case QueueEventCodec.CONTENT -> {
+                int key = in.readInt();
+                int id = in.readInt();
+                registerContent(key, new EmailContent(id, QueueEventCodec.readString(in), QueueEventCodec.readString(in)));
+            }
+            case QueueEventCodec.SUBMITTED -> {
+                String batchId = QueueEventCodec.readString(in);
+                String runnerId = QueueEventCodec.readString(in);
+                String domain = QueueEventCodec.readString(in);
+                EmailSendContext context = QueueEventCodec.readContext(in);
+                int count = in.readInt();
+                List<EmailSendTarget> targets = new ArrayList<>(count);
+                int[] keys = new int[count];
+                for (int i = 0; i < count; i++) {
+                    EmailSendTarget target = QueueEventCodec.readTarget(in, contentsByKey);
+                    keys[i] = contentKeys.get(target.getContent());
+                    targets.add(target);
+                }
+                liveBatches.put(batchId, new LiveBatch(position, frameLength, keys));
+                submissions.put(batchId, new RecoveredBatch(batchId, runnerId, domain, context, targets, Map.of(), List.of()));
+            }
+            case QueueEventCodec.DISPATCHED -> {
+                LiveBatch batch = liveBatches.get(QueueEventCodec.readString(in));
+                String batchId = QueueEventCodec.readString(in);
+                if (batch != null) {
+                    batch.scheduledRetries.remove(batchId);
+                }
+            }
+            case QueueEventCodec.RESULT -> {
+                LiveBatch batch = liveBatches.get(QueueEventCodec.readString(in));
+                EmailSendProgress progress = QueueEventCodec.readProgress(in);
+                if (batch != null) {
+                    batch.results.put(progress.listSeq(), progress);
+                }
+            }
+            case QueueEventCodec.RETRY_SCHEDULED -> {
+                LiveBatch batch = liveBatches.get(QueueEventCodec.readString(in));
+                String batchId = QueueEventCodec.readString(in);
+                int retryCount = in.readInt();
+                long dueAtMillis = in.readLong();
+                int count = in.readInt();
+                Set<Integer> listSeqs = new LinkedHashSet<>();
+                for (int i = 0; i < count; i++) {
+                    listSeqs.add(in.readInt());
+                }
+                if (batch != null) {
+                    batch.scheduledRetries.put(batchId, new RecoveredBatch.ScheduledRetry(batchId, retryCount, dueAtMillis, listSeqs));
+                }
+            }
+            case QueueEventCodec.COMPLETED -> {
+                String batchId = QueueEventCodec.readString(in);
+                liveBatches.remove(batchId);
+                submissions.remove(batchId);
+            }
+            default -> throw new IOException("Unknown queue journal event type " + type);
+        }
+    }
+
+    /**
+     * Writes the live batches to a new file and atomically replaces the journal with it.
+     *
+     * @param source File the live batches' SUBMITTED events are copied from ({@code null} when there are none);
+     *               closed before the journal is replaced
+     */
+    private void compact(FileChannel source) throws IOException {
+        Path file = directory.resolve(JOURNAL_FILE_NAME);
+        Path temp = directory.resolve(COMPACT_FILE_NAME);
+        DataOutputStream previous = out;
+        long previousBytes = writtenBytes;
+        if (previous != null) {
+            // The events to copy must be in the file
+            previous.flush();
+        }
+        open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        // Only contents of live batches are kept, under their current keys
+        Set<Integer> liveKeys = new TreeSet<>();
+        liveBatches.values().forEach(batch -> Arrays.stream(batch.contentKeys).forEach(liveKeys::add));
+        contentsByKey.keySet().retainAll(liveKeys);
+        contentKeys.values().retainAll(liveKeys);
+        for (int key : liveKeys) {
+            appendContent(key, contentsByKey.get(key));
+        }
+        for (Map.Entry<String, LiveBatch> entry : liveBatches.entrySet()) {
+            String batchId = entry.getKey();
+            LiveBatch batch = entry.getValue();
+            long offset = writtenBytes;
+            copyFrame(source, batch.frameOffset, batch.frameLength);
+            batch.frameOffset = offset;
+            for (EmailSendProgress progress : batch.results.values()) {
+                appendResult(batchId, progress);
+            }
+            for (RecoveredBatch.ScheduledRetry retry : batch.scheduledRetries.values()) {
+                appendRetryScheduled(batchId, retry);
+            }
+        }
+        out.flush();
+        channel.force(true);
+        out.close();
+        if (previous != null) {
+            previous.close();
+        }
+        if (source != null) {
+            source.close();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long compactedBytes = writtenBytes;
+        open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(compactedBytes);
+        writtenBytes = compactedBytes;
+        dirty = false;
+        log.debug("Compacted queue journal from {} to {} bytes ({} open batches). dir={}",
+                previousBytes, compactedBytes, liveBatches.size(), directory);
+    }
+
+    private void open(Path path, OpenOption... options) throws IOException {
+        channel = FileChannel.open(path, options);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+        writtenBytes = 0L;
+    }
+
+    /**
+     * Writes the SUBMITTED event of a batch and returns the live batch that points at it.
+     */
+    private LiveBatch appendSubmitted(String batchId, String runnerId, String domain, EmailSendContext context,
+                                      List<EmailSendTarget> targets) throws IOException {
+        int[] keys = new int[targets.size()];
+        int index = 0;
+        for (EmailSendTarget target : targets) {
+            keys[index++] = contentKeyOf(target.getContent());
+        }
+        beginEvent(QueueEventCodec.SUBMITTED);
+        QueueEventCodec.writeString(eventOut, batchId);
+        QueueEventCodec.writeString(eventOut, runnerId);
+        QueueEventCodec.writeString(eventOut, domain);
+        QueueEventCodec.writeContext(eventOut, context);
+        eventOut.writeInt(keys.length);
+        index = 0;
+        for (EmailSendTarget target : targets) {
+            QueueEventCodec.writeTarget(eventOut, target, keys[index++]);
+        }
+        long offset = writtenBytes;
+        endEvent();
+        return new LiveBatch(offset, (int) (writtenBytes - offset), keys);
+    }
+
+    /**
+     * Copies one frame of {@code source} to the current file as it is.
+     */
+    private void copyFrame(FileChannel source, long offset, int length) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(length);
+        while (frame.hasRemaining()) {
+            if (source.read(frame, offset + frame.position()) < 0) {
+                throw new EOFException("Queue journal ends inside the frame at " + offset);
+            }
+        }
+        out.write(frame.array(), 0, length);
+        writtenBytes += length;
+        dirty = true;
+    }
+
+    private void appendResult(String batchId, EmailSendProgress progress) throws IOException {
+        beginEvent(QueueEventCodec.RESULT);
+        QueueEventCodec.writeString(eventOut, batchId);
+        QueueEventCodec.writeProgress(eventOut, progress);
+        endEvent();
+    }
+
+    private void appendRetryScheduled(String rootBatchId, RecoveredBatch.ScheduledRetry retry) throws IOException {
+        beginEvent(QueueEventCodec.RETRY_SCHEDULED);
+        QueueEventCodec.writeString(eventOut, rootBatchId);
+        QueueEventCodec.writeString(eventOut, retry.batchId());
+        eventOut.writeInt(retry.retryCount());
+        eventOut.writeLong(retry.dueAtMillis());
+        eventOut.writeInt(retry.listSeqs().size());
+        for (int listSeq : retry.listSeqs()) {
+            eventOut.writeInt(listSeq);
+        }
+        endEvent();
+    }
+
+    /**
+     * Returns the key of {@code content}, writing its CONTENT event the first time.
+     */
+    private int contentKeyOf(EmailContent content) throws IOException {
+        Integer key = contentKeys.get(content);
+        if (key != null) {
+            return key;
+        }
+        int newKey = nextContentKey;
+        appendContent(newKey, content);
+        registerContent(newKey, content);
+        return newKey;
+    }
+
+    private void registerContent(int key, EmailContent content) {
+        contentKeys.put(content, key);
+        contentsByKey.put(key, content);
+        nextContentKey = Math.max(nextContentKey, key + 1);
+    }
+
+    private void appendContent(int key, EmailContent content) throws IOException {
+        beginEvent(QueueEventCodec.CONTENT);
+        eventOut.writeInt(key);
+        eventOut.writeInt(content.id());
+        QueueEventCodec.writeString(eventOut, content.title());
+        QueueEventCodec.writeString(eventOut, content.body());
+        endEvent();
+    }
+
+    private void beginEvent(byte type) throws IOException {
+        event.reset();
+        eventOut.writeByte(type);
+    }
+
+    private void endEvent() throws IOException {
+        QueueEventCodec.writeFrame(out, event.array(), event.size());
+        writtenBytes += 2L * Integer.BYTES + event.size();
+        dirty = true;
+    }
+
+    /**
+     * Batch submitted and not completed yet; its targets stay in its SUBMITTED event in the file.
+     */
+    private static final class LiveBatch {
+
+        // Position and length of the SUBMITTED frame in the current file
+        private long frameOffset;
+        private final int frameLength;
+        // Distinct keys of the contents the SUBMITTED event references
+        private final int[] contentKeys;
+        // listSeq -> last result
+        private final Map<Integer, EmailSendProgress> results = new LinkedHashMap<>();
+        // Retry batch ID -> retry not dispatched yet
+        private final Map<String, RecoveredBatch.ScheduledRetry> scheduledRetries = new LinkedHashMap<>();
+
+        private LiveBatch(long frameOffset, int frameLength, int[] contentKeys) {
+            this.frameOffset = frameOffset;
+            this.frameLength = frameLength;
+            this.contentKeys = Arrays.stream(contentKeys).distinct().toArray();
+        }
+
+        /**
+         * Returns the replayed submission with this batch's results and scheduled retries.
+         */
+        private RecoveredBatch toRecovered(RecoveredBatch submitted) {
+            return new RecoveredBatch(submitted.batchId(), submitted.runnerId(), submitted.domain(), submitted.context(),
+                    List.copyOf(submitted.targets()), Map.copyOf(results), List.copyOf(scheduledRetries.values()));
+        }
+    }
+
+    /**
+     * Writer that journals each result after handing it to the runner's writer.
+     */
+    private final class JournalingResultWriter implements EmailBatchResultWriter {
+
+        private final EmailBatchResultWriter delegate;
+        private final IntFunction<String> batchIdOfListSeq;
+
+        private JournalingResultWriter(EmailBatchResultWriter delegate, IntFunction<String> batchIdOfListSeq) {
+            this.delegate = delegate;
+            this.batchIdOfListSeq = batchIdOfListSeq;
+        }
+
+        @Override
+        public void writeResult(EmailSendProgress progress) {
+            delegate.writeResult(progress);
+            recordResult(batchIdOfListSeq.apply(progress.listSeq()), progress);
+        }
+
+        @Override
+        public void writeResults(List<EmailSendProgress> progresses) {
+            delegate.writeResults(progresses);
+            for (EmailSendProgress progress : progresses) {
+                recordResult(batchIdOfListSeq.apply(progress.listSeq()), progress);
+            }
+        }
+
+        @Override
+        public void flush() {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+
+    /**
+     * Byte buffer whose array is written out directly instead of copied.
+     */
+    private static final class EventBuffer extends ByteArrayOutputStream {
+
+        EventBuffer() {
+            super(512);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
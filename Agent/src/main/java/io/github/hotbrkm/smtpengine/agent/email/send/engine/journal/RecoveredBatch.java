@@ -0,0 +1,30 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch that was submitted but not completed when the queue journal was last written.
+ *
+ * @param batchId          Batch ID given at submission
+ * @param targets          Targets as submitted, without send results
+ * @param results          Last journaled result of each target, by listSeq
+ * @param scheduledRetries Retries that were scheduled but not dispatched yet
+ */
+public record RecoveredBatch(String batchId, String runnerId, String domain, EmailSendContext context,
+                             List<EmailSendTarget> targets, Map<Integer, EmailSendProgress> results,
+                             List<ScheduledRetry> scheduledRetries) {
+
+    /**
+     * @param batchId     Retry batch ID
+     * @param dueAtMillis Time the retry was due to be queued
+     * @param listSeqs    Targets of the retry
+     */
+    public record ScheduledRetry(String batchId, int retryCount, long dueAtMillis, Set<Integer> listSeqs) {
+    }
+}
@@ -14,10 +14,11 @@ import java.util.Map;
  * @param sessionFailureCount  Session failure count
  * @param totalResponseTimeMs  Total response time (ms)
  * @param responseTimeSampleCount Response time sample count
+ * @param deadlineMissCount    Targets whose batch completed after its delivery deadline
  */
 public record DomainMetricSnapshot(String domain, int durationSeconds, long successCount, long failureCount,
         Map<Integer, Long> resultCodeCounts, long retryCount, long sessionFailureCount, long totalResponseTimeMs,
-        long responseTimeSampleCount) {
+        long responseTimeSampleCount, long deadlineMissCount) {
 
     /**
      * Returns the average SMTP response time (ms). Returns 0.0 if no samples.
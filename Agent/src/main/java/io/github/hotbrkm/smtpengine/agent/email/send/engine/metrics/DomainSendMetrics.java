@@ -77,6 +77,16 @@ public class DomainSendMetrics {
         counters.responseTimeCount.record(1);
     }
 
+    /**
+     * Records targets whose batch completed after its delivery deadline.
+     */
+    public void recordDeadlineMiss(String domain, long count) {
+        if (count <= 0) {
+            return;
+        }
+        getCounters(domain).deadlineMiss.record(count);
+    }
+
     /**
      * Returns a snapshot of the last 'seconds' for a specific domain.
      */
@@ -84,7 +94,7 @@ public class DomainSendMetrics {
         int windows = Math.max(1, seconds / windowSeconds);
         DomainCounters counters = countersByDomain.get(domain);
         if (counters == null) {
-            return new DomainMetricSnapshot(domain, seconds, 0, 0, Collections.emptyMap(), 0, 0, 0, 0);
+            return new DomainMetricSnapshot(domain, seconds, 0, 0, Collections.emptyMap(), 0, 0, 0, 0, 0);
         }
         return buildSnapshot(domain, seconds, windows, counters);
     }
@@ -112,6 +122,7 @@ public class DomainSendMetrics {
             counters.sessionFailure.evict();
             counters.responseTimeSum.evict();
             counters.responseTimeCount.evict();
+            counters.deadlineMiss.evict();
             for (TimeWindowCounter codeCounter : counters.resultCodes.values()) {
                 codeCounter.evict();
             }
@@ -131,6 +142,7 @@ public class DomainSendMetrics {
         long sessionFailure = counters.sessionFailure.sumRange(windows);
         long responseTimeSum = counters.responseTimeSum.sumRange(windows);
         long responseTimeCount = counters.responseTimeCount.sumRange(windows);
+        long deadlineMiss = counters.deadlineMiss.sumRange(windows);
 
         Map<Integer, Long> resultCodeCounts = new HashMap<>();
         for (Map.Entry<Integer, TimeWindowCounter> entry : counters.resultCodes.entrySet()) {
@@ -142,7 +154,7 @@ public class DomainSendMetrics {
 
         return new DomainMetricSnapshot(domain, durationSeconds, success, failure,
                 Collections.unmodifiableMap(resultCodeCounts), retry, sessionFailure,
-                responseTimeSum, responseTimeCount);
+                responseTimeSum, responseTimeCount, deadlineMiss);
     }
 
     /**
@@ -156,6 +168,7 @@ public class DomainSendMetrics {
         private final TimeWindowCounter sessionFailure;
         private final TimeWindowCounter responseTimeSum;
         private final TimeWindowCounter responseTimeCount;
+        private final TimeWindowCounter deadlineMiss;
 
         DomainCounters(int retentionWindows, int windowSeconds) {
             this.success = new TimeWindowCounter(retentionWindows, windowSeconds);
@@ -165,12 +178,14 @@ public class DomainSendMetrics {
             this.sessionFailure = new TimeWindowCounter(retentionWindows, windowSeconds);
             this.responseTimeSum = new TimeWindowCounter(retentionWindows, windowSeconds);
             this.responseTimeCount = new TimeWindowCounter(retentionWindows, windowSeconds);
+            this.deadlineMiss = new TimeWindowCounter(retentionWindows, windowSeconds);
         }
 
         boolean isEmpty() {
             return success.windowCount() == 0 && failure.windowCount() == 0 && resultCodes.isEmpty()
                     && retry.windowCount() == 0 && sessionFailure.windowCount() == 0
-                    && responseTimeSum.windowCount() == 0 && responseTimeCount.windowCount() == 0;
+                    && responseTimeSum.windowCount() == 0 && responseTimeCount.windowCount() == 0
+                    && deadlineMiss.windowCount() == 0;
         }
     }
 }
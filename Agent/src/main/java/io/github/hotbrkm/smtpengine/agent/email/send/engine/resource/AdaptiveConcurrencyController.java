@@ -0,0 +1,199 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.resource;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainMetricSnapshot;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Adjusts the per-IP session limit of each domain from recent sending metrics (AIMD).
+ * <p>
+ * - Additive increase (+1) while the domain is active and shows no throttling.
+ * - Multiplicative decrease when throttle codes/session failures or slow responses exceed the policy thresholds.
+ * - The limit stays between {@code minLimit} and {@code maxLimitPercent} of the static domain limit.
+ * <p>
+ * Domains never adjusted use the static limit. A domain without enough samples in a window (including an idle one)
+ * moves back toward the static limit by one per interval, since a cut limit may leave it too few slots to ever reach
+ * {@code minSamples} again; a limit back at the static limit is dropped.
+ * <p>
+ * Limits are learned per limit key, the key the bind IP allocator caps sessions by (the MX group when MX-group routing
+ * is on); metrics of the domains sharing a key are summed before evaluation.
+ */
+@Slf4j
+public class AdaptiveConcurrencyController {
+
+    @Getter
+    private final AdaptiveConcurrencyPolicy policy;
+    private final DomainSendMetrics domainSendMetrics;
+    private final ToIntFunction<String> staticLimitResolver;
+    private final UnaryOperator<String> limitKeyResolver;
+    private final Map<String, AtomicInteger> limitByDomain = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyController(AdaptiveConcurrencyPolicy policy,
+                                         DomainSendMetrics domainSendMetrics,
+                                         ToIntFunction<String> staticLimitResolver) {
+        this(policy, domainSendMetrics, staticLimitResolver, UnaryOperator.identity());
+    }
+
+    /**
+     * @param staticLimitResolver Static session limit of a limit key
+     * @param limitKeyResolver    Maps a metrics domain to the limit key sessions are capped by
+     */
+    public AdaptiveConcurrencyController(AdaptiveConcurrencyPolicy policy,
+                                         DomainSendMetrics domainSendMetrics,
+                                         ToIntFunction<String> staticLimitResolver,
+                                         UnaryOperator<String> limitKeyResolver) {
+        this.policy = Objects.requireNonNull(policy, "policy must not be null");
+        this.domainSendMetrics = Objects.requireNonNull(domainSendMetrics, "domainSendMetrics must not be null");
+        this.staticLimitResolver = Objects.requireNonNull(staticLimitResolver, "staticLimitResolver must not be null");
+        this.limitKeyResolver = Objects.requireNonNull(limitKeyResolver, "limitKeyResolver must not be null");
+    }
+
+    /**
+     * Returns a controller that always keeps the static domain limit.
+     */
+    static AdaptiveConcurrencyController disabled() {
+        return new AdaptiveConcurrencyController(AdaptiveConcurrencyPolicy.disabled(), new DomainSendMetrics(1, 60), domain -> 1);
+    }
+
+    /**
+     * Returns the effective per-IP session limit of the domain.
+     *
+     * @param domain      Limit key (sending domain or its MX group)
+     * @param staticLimit Limit configured in the domain table
+     * @return Adjusted limit, or {@code staticLimit} if disabled or not yet adjusted
+     */
+    public int effectiveLimit(String domain, int staticLimit) {
+        if (!policy.enabled()) {
+            return staticLimit;
+        }
+        AtomicInteger limit = limitByDomain.get(domain);
+        if (limit == null) {
+            return staticLimit;
+        }
+        return clamp(limit.get(), staticLimit);
+    }
+
+    /**
+     * Re-evaluates all domains using metrics of the last evaluation interval.
+     */
+    public void adjust() {
+        if (!policy.enabled()) {
+            return;
+        }
+        int seconds = (int) Math.max(1L, policy.intervalMs() / 1000L);
+        adjust(domainSendMetrics.snapshotAll(seconds));
+    }
+
+    /**
+     * Re-evaluates the given domains.
+     *
+     * @param snapshots Metric snapshots by domain
+     */
+    public void adjust(Map<String, DomainMetricSnapshot> snapshots) {
+        if (!policy.enabled()) {
+            return;
+        }
+        Map<String, DomainMetricSnapshot> snapshotsByKey = new HashMap<>();
+        for (Map.Entry<String, DomainMetricSnapshot> entry : snapshots.entrySet()) {
+            String key = limitKeyResolver.apply(entry.getKey());
+            snapshotsByKey.merge(key, entry.getValue(), (a, b) -> merge(key, a, b));
+        }
+        for (Map.Entry<String, DomainMetricSnapshot> entry : snapshotsByKey.entrySet()) {
+            adjustDomain(entry.getKey(), entry.getValue());
+        }
+        for (String domain : limitByDomain.keySet()) {
+            if (!snapshotsByKey.containsKey(domain)) {
+                recover(domain);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of domains whose limit differs from the static limit.
+     */
+    public int getAdjustedDomainCount() {
+        return limitByDomain.size();
+    }
+
+    private static DomainMetricSnapshot merge(String key, DomainMetricSnapshot a, DomainMetricSnapshot b) {
+        Map<Integer, Long> resultCodeCounts = new HashMap<>(a.resultCodeCounts());
+        b.resultCodeCounts().forEach((code, count) -> resultCodeCounts.merge(code, count, Long::sum));
+        return new DomainMetricSnapshot(key, a.durationSeconds(), a.successCount() + b.successCount(),
+                a.failureCount() + b.failureCount(), resultCodeCounts, a.retryCount() + b.retryCount(),
+                a.sessionFailureCount() + b.sessionFailureCount(), a.totalResponseTimeMs() + b.totalResponseTimeMs(),
+                a.responseTimeSampleCount() + b.responseTimeSampleCount(), a.deadlineMissCount() + b.deadlineMissCount());
+    }
+
+    private void adjustDomain(String domain, DomainMetricSnapshot snapshot) {
+        long samples = snapshot.successCount() + snapshot.failureCount() + snapshot.sessionFailureCount();
+        if (samples < policy.minSamples()) {
+            recover(domain);
+            return;
+        }
+
+        int staticLimit = Math.max(1, staticLimitResolver.applyAsInt(domain));
+        AtomicInteger limit = limitByDomain.computeIfAbsent(domain, k -> new AtomicInteger(staticLimit));
+        int current = clamp(limit.get(), staticLimit);
+        int next;
+        if (isThrottled(snapshot, samples)) {
+            next = clamp(current * policy.decreasePercent() / 100, staticLimit);
+        } else {
+            next = clamp(current + 1, staticLimit);
+        }
+
+        if (next != current) {
+            log.info("Adaptive concurrency limit changed. domain={}, limit={} -> {}, staticLimit={}", domain, current, next, staticLimit);
+        }
+        if (next == staticLimit) {
+            limitByDomain.remove(domain, limit);
+        } else {
+            limit.set(next);
+        }
+    }
+
+    /**
+     * Moves the limit of a domain without enough samples one step back toward its static limit.
+     */
+    private void recover(String domain) {
+        AtomicInteger limit = limitByDomain.get(domain);
+        if (limit == null) {
+            return;
+        }
+        int staticLimit = Math.max(1, staticLimitResolver.applyAsInt(domain));
+        int current = clamp(limit.get(), staticLimit);
+        if (current + 1 < staticLimit) {
+            limit.set(current + 1);
+            log.debug("Adaptive concurrency limit recovering. domain={}, limit={} -> {}, staticLimit={}",
+                    domain, current, current + 1, staticLimit);
+            return;
+        }
+        limitByDomain.remove(domain, limit);
+        log.info("Adaptive concurrency limit restored. domain={}, limit={} -> {}", domain, current, staticLimit);
+    }
+
+    private boolean isThrottled(DomainMetricSnapshot snapshot, long samples) {
+        long throttled = snapshot.sessionFailureCount();
+        for (Integer code : policy.throttleCodes()) {
+            throttled += snapshot.resultCodeCounts().getOrDefault(code, 0L);
+        }
+        if (throttled * 100 > samples * policy.throttleRatePercent()) {
+            return true;
+        }
+        return policy.slowResponseMs() > 0 && snapshot.avgResponseTimeMs() > policy.slowResponseMs();
+    }
+
+    private int clamp(int value, int staticLimit) {
+        int ceiling = Math.max(1, (int) ((long) staticLimit * policy.maxLimitPercent() / 100));
+        int floor = Math.min(policy.minLimit(), ceiling);
+        return Math.min(ceiling, Math.max(floor, value));
+    }
+}
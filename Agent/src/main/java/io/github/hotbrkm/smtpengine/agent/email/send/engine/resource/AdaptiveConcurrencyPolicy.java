@@ -0,0 +1,57 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.resource;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Defines adaptive per-domain concurrency rules (AIMD bounds, throttle signals, evaluation interval).
+ *
+ * @param enabled             Whether adaptive limits replace the static domain session limit
+ * @param throttleCodes       Result codes counted as throttling signals (e.g. 421, 451)
+ * @param minLimit            Lowest per-IP session limit the controller may decrease to
+ * @param maxLimitPercent     Highest per-IP session limit as a percentage of the static domain limit
+ * @param throttleRatePercent Throttle signal rate (codes + session failures) that triggers a decrease
+ * @param decreasePercent     Share of the current limit kept on a decrease
+ * @param slowResponseMs      Average response time that triggers a decrease (0 disables)
+ * @param minSamples          Minimum sample count in the window before the limit is changed
+ * @param intervalMs          Evaluation interval (also the metrics window looked at)
+ */
+public record AdaptiveConcurrencyPolicy(boolean enabled,
+                                        Set<Integer> throttleCodes,
+                                        int minLimit,
+                                        int maxLimitPercent,
+                                        int throttleRatePercent,
+                                        int decreasePercent,
+                                        long slowResponseMs,
+                                        long minSamples,
+                                        long intervalMs) {
+
+    public AdaptiveConcurrencyPolicy {
+        Objects.requireNonNull(throttleCodes, "throttleCodes must not be null");
+
+        Set<Integer> normalizedCodes = new HashSet<>();
+        for (Integer code : throttleCodes) {
+            if (code != null && code > 0) {
+                normalizedCodes.add(code);
+            }
+        }
+
+        throttleCodes = Collections.unmodifiableSet(normalizedCodes);
+        minLimit = Math.max(1, minLimit);
+        maxLimitPercent = Math.max(100, maxLimitPercent);
+        throttleRatePercent = Math.min(100, Math.max(0, throttleRatePercent));
+        decreasePercent = Math.min(99, Math.max(1, decreasePercent));
+        slowResponseMs = Math.max(0L, slowResponseMs);
+        minSamples = Math.max(1L, minSamples);
+        intervalMs = Math.max(1_000L, intervalMs);
+    }
+
+    /**
+     * Returns a disabled policy that keeps the static domain limit.
+     */
+    static AdaptiveConcurrencyPolicy disabled() {
+        return new AdaptiveConcurrencyPolicy(false, Set.of(), 1, 100, 100, 50, 0L, 1L, 60_000L);
+    }
+}
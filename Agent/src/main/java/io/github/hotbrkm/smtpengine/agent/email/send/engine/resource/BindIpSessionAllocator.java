@@ -21,6 +21,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * - Session counts are managed by (domain, bindIp).
  * - Selection strategy is Least Usage First + Round Robin for ties.
  * - Cooldowns are managed by (domain, bindIp).
+ * - Per-IP limits come from domain policy, optionally adjusted by {@link AdaptiveConcurrencyController}.
+ * - Idle standby sessions hold slots too ({@link #tryReserveStandby}), so they count against the same limit.
  */
 @Slf4j
 public class BindIpSessionAllocator {
@@ -29,6 +31,7 @@ public class BindIpSessionAllocator {
     private final List<String> bindIps;
     private final EmailDomainManager emailDomainManager;
     private final BindIpCooldownPolicy cooldownPolicy;
+    private final AdaptiveConcurrencyController concurrencyController;
     private final Map<String, DomainState> domainStates = new ConcurrentHashMap<>();
 
     public BindIpSessionAllocator(List<String> bindIps, EmailDomainManager emailDomainManager) {
@@ -36,9 +39,15 @@ public class BindIpSessionAllocator {
     }
 
     public BindIpSessionAllocator(List<String> bindIps, EmailDomainManager emailDomainManager, BindIpCooldownPolicy cooldownPolicy) {
+        this(bindIps, emailDomainManager, cooldownPolicy, AdaptiveConcurrencyController.disabled());
+    }
+
+    public BindIpSessionAllocator(List<String> bindIps, EmailDomainManager emailDomainManager, BindIpCooldownPolicy cooldownPolicy,
+                                  AdaptiveConcurrencyController concurrencyController) {
         this.bindIps = normalizeBindIps(bindIps);
         this.emailDomainManager = Objects.requireNonNull(emailDomainManager, "emailDomainManager must not be null");
         this.cooldownPolicy = Objects.requireNonNull(cooldownPolicy, "cooldownPolicy must not be null");
+        this.concurrencyController = Objects.requireNonNull(concurrencyController, "concurrencyController must not be null");
         if (this.bindIps.isEmpty()) {
             throw new IllegalArgumentException("bindIps must not be empty");
         }
@@ -60,7 +69,7 @@ public class BindIpSessionAllocator {
             return Optional.empty();
         }
 
-        int perIpLimit = emailDomainManager.getSessionLimit(domain);
+        int perIpLimit = concurrencyController.effectiveLimit(domain, emailDomainManager.getSessionLimit(domain));
         DomainState state = domainStates.computeIfAbsent(domain, k -> new DomainState());
 
         // Allow retries on CAS contention.
@@ -135,12 +144,69 @@ public class BindIpSessionAllocator {
         }
     }
 
+    /**
+     * Reserves a slot of the domain on the bind IP for an idle standby session.
+     * <p>
+     * The slot counts against the per-IP limit like an active session, but at least one slot is always left for
+     * dispatch so standby sessions cannot starve the tasks they are kept for. Cooling down IPs get no reservation.
+     *
+     * @param handover true when the session comes from an active lease of the same IP that is about to be released
+     * @return true if reserved; release it with {@link #releaseStandby}
+     */
+    public boolean tryReserveStandby(String domain, String bindIp, boolean handover) {
+        if (domain == null || bindIp == null || !bindIps.contains(bindIp)) {
+            return false;
+        }
+        int perIpLimit = concurrencyController.effectiveLimit(domain, emailDomainManager.getSessionLimit(domain));
+        DomainState state = domainStates.computeIfAbsent(domain, k -> new DomainState());
+        if (isCoolingDown(state, bindIp)) {
+            return false;
+        }
+        AtomicInteger counter = state.activeByIp.computeIfAbsent(bindIp, k -> new AtomicInteger(0));
+        // After a handover the released lease frees the slot the reservation takes
+        int occupiedAfter = handover ? 0 : 1;
+        while (true) {
+            int current = counter.get();
+            if (current + occupiedAfter >= perIpLimit) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                state.standbyByIp.computeIfAbsent(bindIp, k -> new AtomicInteger(0)).incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a slot reserved by {@link #tryReserveStandby}, e.g. when the standby session is closed or taken by a
+     * sender that holds its own lease.
+     */
+    public void releaseStandby(String domain, String bindIp) {
+        DomainState state = domain != null ? domainStates.get(domain) : null;
+        AtomicInteger standby = state != null ? state.standbyByIp.get(bindIp) : null;
+        if (standby == null || standby.getAndUpdate(count -> Math.max(0, count - 1)) <= 0) {
+            log.warn("Failed to release standby slot. No reservation: {} / {}", domain, bindIp);
+            return;
+        }
+        release(new BindIpLease(domain, bindIp, System.currentTimeMillis()));
+    }
+
     /**
      * Updates cooldown status reflecting the batch attempt result.
      *
      * @return true if cooldown is triggered
      */
     public boolean recordBatchResult(String domain, String bindIp, int statusCode, boolean hasAnySuccess) {
+        return recordBatchResult(domain, bindIp, statusCode, hasAnySuccess, cooldownPolicy.triggerCodes().contains(statusCode));
+    }
+
+    /**
+     * Updates cooldown status with an explicit decision on whether the status code counts toward cooldown
+     * (e.g. from a retry rule), instead of the policy's trigger codes.
+     *
+     * @return true if cooldown is triggered
+     */
+    public boolean recordBatchResult(String domain, String bindIp, int statusCode, boolean hasAnySuccess, boolean triggersCooldown) {
         if (domain == null || bindIp == null) {
             return false;
         }
@@ -151,7 +217,7 @@ public class BindIpSessionAllocator {
             return false;
         }
 
-        if (!cooldownPolicy.triggerCodes().contains(statusCode)) {
+        if (!triggersCooldown) {
             resetCodeStreak(state, bindIp);
             return false;
         }
@@ -171,13 +237,18 @@ public class BindIpSessionAllocator {
     }
 
     /**
-     * Returns the total sum of active sessions for all domains/Bind IPs.
+     * Returns the total sum of active sessions for all domains/Bind IPs; standby reservations are not included.
      */
     public int getTotalActiveSessionCount() {
-        return domainStates.values().stream()
+        int occupied = domainStates.values().stream()
                 .flatMap(state -> state.activeByIp.values().stream())
                 .mapToInt(AtomicInteger::get)
                 .sum();
+        int standby = domainStates.values().stream()
+                .flatMap(state -> state.standbyByIp.values().stream())
+                .mapToInt(AtomicInteger::get)
+                .sum();
+        return Math.max(0, occupied - standby);
     }
 
     private int incrementCodeStreak(DomainState state, String bindIp, int statusCode) {
@@ -225,7 +296,9 @@ public class BindIpSessionAllocator {
 
     private static final class DomainState {
         private final AtomicInteger rrCursor = new AtomicInteger(0);
+        // Sessions holding a slot, standby reservations included
         private final Map<String, AtomicInteger> activeByIp = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> standbyByIp = new ConcurrentHashMap<>();
         private final Map<String, AtomicLong> cooldownUntilByIp = new ConcurrentHashMap<>();
         private final Map<String, Map<Integer, AtomicInteger>> codeStreakByIp = new ConcurrentHashMap<>();
     }
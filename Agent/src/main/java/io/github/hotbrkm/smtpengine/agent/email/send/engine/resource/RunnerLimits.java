@@ -0,0 +1,28 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.resource;
+
+/**
+ * Throughput caps of a single runner. A value of 0 or less disables the cap.
+ *
+ * @param messagesPerMinute  Messages the runner may start per minute, charged per batch by its target count
+ * @param maxInFlightBatches Batches of the runner that may be executing at the same time
+ */
+public record RunnerLimits(int messagesPerMinute, int maxInFlightBatches) {
+
+    /**
+     * No rate or concurrency cap.
+     */
+    public static final RunnerLimits UNLIMITED = new RunnerLimits(0, 0);
+
+    public RunnerLimits {
+        messagesPerMinute = Math.max(0, messagesPerMinute);
+        maxInFlightBatches = Math.max(0, maxInFlightBatches);
+    }
+
+    public boolean isRateLimited() {
+        return messagesPerMinute > 0;
+    }
+
+    public boolean isConcurrencyLimited() {
+        return maxInFlightBatches > 0;
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.resource;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-runner rate/concurrency caps and pause state, consulted by the dispatcher before a runner's batch is polled.
+ * <p>
+ * - {@link #canDispatch(String)} is the lock-free check made while selecting a runner; a runner that fails it keeps
+ *   its batches queued and is skipped until it passes again.
+ * - {@link #onStarted(String, int)} / {@link #onFinished(String)} bracket the execution of one batch. The rate is
+ *   charged by the batch's target count when it starts, so a large batch delays the runner's next one accordingly.
+ * <p>
+ * Limits and pause state can be changed at any time and apply from the next dispatch cycle.
+ */
+public class RunnerThrottle {
+
+    private final int burstSeconds;
+    private final Map<String, RunnerState> runnerStates = new ConcurrentHashMap<>();
+
+    /**
+     * @param burstSeconds Rate bucket capacity expressed in seconds of the configured rate (minimum 1 message)
+     */
+    public RunnerThrottle(int burstSeconds) {
+        this.burstSeconds = Math.max(1, burstSeconds);
+    }
+
+    /**
+     * Starts tracking a runner run with the given limits. Pause state of an earlier run is cleared.
+     */
+    public void register(String runnerId, RunnerLimits limits) {
+        if (runnerId == null || runnerId.isBlank()) {
+            return;
+        }
+        RunnerState state = new RunnerState();
+        state.applyLimits(limits != null ? limits : RunnerLimits.UNLIMITED, burstSeconds, System.nanoTime());
+        runnerStates.put(runnerId, state);
+    }
+
+    /**
+     * Stops tracking a runner. Batches of the runner that are still executing finish without being counted.
+     */
+    public void unregister(String runnerId) {
+        if (runnerId == null || runnerId.isBlank()) {
+            return;
+        }
+        runnerStates.remove(runnerId);
+    }
+
+    /**
+     * Changes the limits of a registered runner.
+     *
+     * @return false if the runner is not registered
+     */
+    public boolean setLimits(String runnerId, RunnerLimits limits) {
+        RunnerState state = state(runnerId);
+        if (state == null) {
+            return false;
+        }
+        state.applyLimits(Objects.requireNonNull(limits, "limits must not be null"), burstSeconds, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Returns the limits of a registered runner, or {@code null} if it is not registered.
+     */
+    public RunnerLimits getLimits(String runnerId) {
+        RunnerState state = state(runnerId);
+        return state != null ? state.limits : null;
+    }
+
+    /**
+     * Pauses or resumes dispatch of a registered runner. Queued batches stay in place while paused.
+     *
+     * @return false if the runner is not registered
+     */
+    public boolean setPaused(String runnerId, boolean paused) {
+        RunnerState state = state(runnerId);
+        if (state == null) {
+            return false;
+        }
+        state.paused = paused;
+        return true;
+    }
+
+    public boolean isPaused(String runnerId) {
+        RunnerState state = state(runnerId);
+        return state != null && state.paused;
+    }
+
+    /**
+     * Returns whether a batch of the runner may be dispatched now. Unregistered runners are never held back.
+     */
+    public boolean canDispatch(String runnerId) {
+        RunnerState state = state(runnerId);
+        if (state == null) {
+            return true;
+        }
+        if (state.paused) {
+            return false;
+        }
+        RunnerLimits limits = state.limits;
+        if (limits.isConcurrencyLimited() && state.inFlight.get() >= limits.maxInFlightBatches()) {
+            return false;
+        }
+        TokenBucket bucket = state.bucket;
+        return bucket == null || bucket.waitNanos(System.nanoTime()) == 0L;
+    }
+
+    /**
+     * Counts a batch of the runner as executing and charges its target count against the rate.
+     */
+    public void onStarted(String runnerId, int messageCount) {
+        RunnerState state = state(runnerId);
+        if (state == null) {
+            return;
+        }
+        state.inFlight.incrementAndGet();
+        TokenBucket bucket = state.bucket;
+        if (bucket != null) {
+            bucket.charge(System.nanoTime(), Math.max(1, messageCount));
+        }
+    }
+
+    /**
+     * Counts a batch of the runner as finished.
+     */
+    public void onFinished(String runnerId) {
+        RunnerState state = state(runnerId);
+        if (state == null) {
+            return;
+        }
+        if (state.inFlight.decrementAndGet() < 0) {
+            state.inFlight.set(0);
+        }
+    }
+
+    /**
+     * Returns the number of executing batches of the runner.
+     */
+    public int getInFlight(String runnerId) {
+        RunnerState state = state(runnerId);
+        return state != null ? state.inFlight.get() : 0;
+    }
+
+    private RunnerState state(String runnerId) {
+        return runnerId != null ? runnerStates.get(runnerId) : null;
+    }
+
+    private static final class RunnerState {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile RunnerLimits limits = RunnerLimits.UNLIMITED;
+        private volatile TokenBucket bucket;
+        private volatile boolean paused;
+
+        private void applyLimits(RunnerLimits newLimits, int burstSeconds, long nowNanos) {
+            TokenBucket current = bucket;
+            if (!newLimits.isRateLimited()) {
+                bucket = null;
+            } else if (current == null || current.ratePerMinute() != newLimits.messagesPerMinute()) {
+                int burst = Math.max(1, (int) ((long) newLimits.messagesPerMinute() * burstSeconds / 60));
+                bucket = new TokenBucket(newLimits.messagesPerMinute(), burst, nowNanos);
+            }
+            limits = newLimits;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.resource;
+
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Message rate limiter per domain and per (domain, bindIp).
+ * <p>
+ * - Limits come from {@link EmailDomain#getMessagesPerMinute()} and {@link EmailDomain#getMessagesPerMinutePerIp()}.
+ * - {@link #tryAcquire(String, String)} is the batch-level check made before execution; it resolves the current limits
+ *   and takes the token of the first message.
+ * - {@link #reserve(String, String, long)} paces the following messages of the batch.
+ * <p>
+ * Buckets are lock-free ({@link TokenBucket}); full buckets are dropped by {@link #evictIdle()}. Both methods get or
+ * create their buckets, so a bucket evicted while a batch paces below the limit comes back full, as it was evicted.
+ */
+public class SendRateLimiter {
+
+    private final EmailDomainManager emailDomainManager;
+    private final int burstSeconds;
+    private final Map<String, TokenBucket> domainBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> bindIpBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param emailDomainManager Source of per-domain rate limits
+     * @param burstSeconds       Bucket capacity expressed in seconds of the configured rate (minimum 1 message)
+     */
+    public SendRateLimiter(EmailDomainManager emailDomainManager, int burstSeconds) {
+        this.emailDomainManager = Objects.requireNonNull(emailDomainManager, "emailDomainManager must not be null");
+        this.burstSeconds = Math.max(1, burstSeconds);
+    }
+
+    /**
+     * Takes one token from the domain and bind IP buckets if both have one available now.
+     *
+     * @param domain Sending domain
+     * @param bindIp Bind IP of the acquired lease
+     * @return 0 if acquired, otherwise milliseconds until a token is expected to be available
+     */
+    public long tryAcquire(String domain, String bindIp) {
+        if (domain == null || bindIp == null) {
+            return 0L;
+        }
+        EmailDomain emailDomain = emailDomainManager.getEmailDomain(domain);
+        long now = System.nanoTime();
+        TokenBucket domainBucket = resolveBucket(domainBuckets, domainKey(domain), emailDomain.getMessagesPerMinute(), now);
+        TokenBucket bindIpBucket = resolveBucket(bindIpBuckets, bindIpKey(domain, bindIp), emailDomain.getMessagesPerMinutePerIp(), now);
+
+        if (domainBucket != null) {
+            long waitNanos = domainBucket.tryAcquire(now);
+            if (waitNanos > 0) {
+                return toMillisCeil(waitNanos);
+            }
+        }
+        if (bindIpBucket != null) {
+            long waitNanos = bindIpBucket.tryAcquire(now);
+            if (waitNanos > 0) {
+                if (domainBucket != null) {
+                    domainBucket.refund();
+                }
+                return toMillisCeil(waitNanos);
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Reserves one token from the domain and bind IP buckets for the next message of a running batch.
+     *
+     * @param domain       Sending domain
+     * @param bindIp       Bind IP of the session
+     * @param maxWaitNanos Longest acceptable wait
+     * @return Nanoseconds to wait before sending, or -1 if the wait would exceed {@code maxWaitNanos}
+     */
+    public long reserve(String domain, String bindIp, long maxWaitNanos) {
+        if (domain == null || bindIp == null) {
+            return 0L;
+        }
+        EmailDomain emailDomain = emailDomainManager.getEmailDomain(domain);
+        long now = System.nanoTime();
+        TokenBucket domainBucket = resolveBucket(domainBuckets, domainKey(domain), emailDomain.getMessagesPerMinute(), now);
+        TokenBucket bindIpBucket = resolveBucket(bindIpBuckets, bindIpKey(domain, bindIp), emailDomain.getMessagesPerMinutePerIp(), now);
+
+        long domainWait = 0L;
+        if (domainBucket != null) {
+            domainWait = domainBucket.reserve(now, maxWaitNanos);
+            if (domainWait < 0) {
+                return -1L;
+            }
+        }
+        long bindIpWait = 0L;
+        if (bindIpBucket != null) {
+            bindIpWait = bindIpBucket.reserve(now, maxWaitNanos);
+            if (bindIpWait < 0) {
+                if (domainBucket != null) {
+                    domainBucket.refund();
+                }
+                return -1L;
+            }
+        }
+        return Math.max(domainWait, bindIpWait);
+    }
+
+    /**
+     * Removes buckets that are full, i.e. have not been used for at least one burst period.
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        domainBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        bindIpBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    /**
+     * Returns the number of active buckets (domain + bind IP).
+     */
+    public int getBucketCount() {
+        return domainBuckets.size() + bindIpBuckets.size();
+    }
+
+    private TokenBucket resolveBucket(Map<String, TokenBucket> buckets, String key, int ratePerMinute, long now) {
+        if (ratePerMinute <= 0) {
+            buckets.remove(key);
+            return null;
+        }
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null && bucket.ratePerMinute() == ratePerMinute) {
+            return bucket;
+        }
+        int burst = Math.max(1, (int) ((long) ratePerMinute * burstSeconds / 60));
+        return buckets.compute(key, (k, existing) ->
+                existing != null && existing.ratePerMinute() == ratePerMinute ? existing : new TokenBucket(ratePerMinute, burst, now));
+    }
+
+    private static String domainKey(String domain) {
+        return domain.toLowerCase(Locale.ROOT);
+    }
+
+    private static String bindIpKey(String domain, String bindIp) {
+        return domainKey(domain) + '|' + bindIp;
+    }
+
+    private static long toMillisCeil(long nanos) {
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(nanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.resource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket for a single rate limit key.
+ * <p>
+ * Implemented as a generic cell rate algorithm: the bucket state is a single "theoretical arrival time" updated by CAS,
+ * which is equivalent to a token bucket refilled at {@code ratePerMinute} with capacity {@code burst}.
+ */
+final class TokenBucket {
+
+    private static final long NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final int ratePerMinute;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrivalNanos;
+
+    TokenBucket(int ratePerMinute, int burst, long nowNanos) {
+        this.ratePerMinute = Math.max(1, ratePerMinute);
+        this.intervalNanos = Math.max(1L, NANOS_PER_MINUTE / this.ratePerMinute);
+        this.burstNanos = this.intervalNanos * Math.max(1, burst);
+        this.theoreticalArrivalNanos = new AtomicLong(nowNanos);
+    }
+
+    int ratePerMinute() {
+        return ratePerMinute;
+    }
+
+    /**
+     * Takes one token if available now.
+     *
+     * @return 0 if a token was taken, otherwise nanoseconds until the next token is available
+     */
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrivalNanos.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long waitNanos = next - nowNanos - burstNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (theoreticalArrivalNanos.compareAndSet(current, next)) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * Reserves one token, possibly in the future.
+     *
+     * @param maxWaitNanos Longest acceptable wait
+     * @return Nanoseconds the caller must wait before using the token, or -1 if the wait exceeds {@code maxWaitNanos}
+     *         (nothing is reserved in that case)
+     */
+    long reserve(long nowNanos, long maxWaitNanos) {
+        while (true) {
+            long current = theoreticalArrivalNanos.get();
+            long next = Math.max(current, nowNanos) + intervalNanos;
+            long waitNanos = Math.max(0L, next - nowNanos - burstNanos);
+            if (waitNanos > maxWaitNanos) {
+                return -1L;
+            }
+            if (theoreticalArrivalNanos.compareAndSet(current, next)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    /**
+     * Returns how long until one token is available, without taking it.
+     *
+     * @return 0 if a token is available now, otherwise nanoseconds until it is
+     */
+    long waitNanos(long nowNanos) {
+        long next = Math.max(theoreticalArrivalNanos.get(), nowNanos) + intervalNanos;
+        return Math.max(0L, next - nowNanos - burstNanos);
+    }
+
+    /**
+     * Takes {@code tokens} tokens unconditionally; a bucket left in debt makes later callers wait until it is repaid.
+     */
+    void charge(long nowNanos, int tokens) {
+        long cost = intervalNanos * Math.max(0, tokens);
+        theoreticalArrivalNanos.accumulateAndGet(nowNanos, (current, now) -> Math.max(current, now) + cost);
+    }
+
+    /**
+     * Returns one previously taken token.
+     */
+    void refund() {
+        theoreticalArrivalNanos.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * Returns whether the bucket is full, i.e. dropping it loses no state.
+     */
+    boolean isFull(long nowNanos) {
+        return theoreticalArrivalNanos.get() <= nowNanos;
+    }
+}
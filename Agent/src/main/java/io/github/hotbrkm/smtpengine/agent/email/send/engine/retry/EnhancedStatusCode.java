@@ -0,0 +1,93 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.retry;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Parses RFC 3463 enhanced status codes (class.subject.detail, e.g. 4.2.2) from SMTP replies.
+ * <p>
+ * Codes are packed into one int ({@code class * 1_000_000 + subject * 1_000 + detail}) so they can be used as primitive table keys.
+ */
+@UtilityClass
+public final class EnhancedStatusCode {
+
+    /**
+     * Value returned when a reply carries no enhanced status code.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Extracts the enhanced status code from a reply line such as {@code "452 4.2.2 Mailbox full"},
+     * {@code "452-4.2.2 ..."} or a bare {@code "4.2.2"}.
+     *
+     * @param message SMTP reply (may be null)
+     * @return Packed enhanced status code, or {@link #NONE}
+     */
+    public static int parse(String message) {
+        if (message == null) {
+            return NONE;
+        }
+        int length = message.length();
+        int pos = 0;
+        // Skip the basic status code and its separator if present
+        if (length >= 4 && isDigit(message.charAt(0)) && isDigit(message.charAt(1)) && isDigit(message.charAt(2))
+                && (message.charAt(3) == ' ' || message.charAt(3) == '-')) {
+            pos = 4;
+        }
+        // Shortest enhanced code is "x.y.z"
+        if (length - pos < 5) {
+            return NONE;
+        }
+
+        char classChar = message.charAt(pos);
+        if ((classChar != '2' && classChar != '4' && classChar != '5') || message.charAt(pos + 1) != '.') {
+            return NONE;
+        }
+        pos += 2;
+
+        int subjectEnd = scanNumber(message, pos);
+        if (subjectEnd == pos || subjectEnd >= length || message.charAt(subjectEnd) != '.') {
+            return NONE;
+        }
+        int detailStart = subjectEnd + 1;
+        int detailEnd = scanNumber(message, detailStart);
+        if (detailEnd == detailStart || (detailEnd < length && !Character.isWhitespace(message.charAt(detailEnd)))) {
+            return NONE;
+        }
+
+        int subject = Integer.parseInt(message, pos, subjectEnd, 10);
+        int detail = Integer.parseInt(message, detailStart, detailEnd, 10);
+        return pack(classChar - '0', subject, detail);
+    }
+
+    /**
+     * Packs the three parts of an enhanced status code.
+     */
+    public static int pack(int statusClass, int subject, int detail) {
+        return statusClass * 1_000_000 + subject * 1_000 + detail;
+    }
+
+    /**
+     * Returns the dotted form of a packed code (e.g. "4.7.1"), or null for {@link #NONE}.
+     */
+    public static String format(int code) {
+        if (code < 0) {
+            return null;
+        }
+        return (code / 1_000_000) + "." + (code / 1_000 % 1_000) + "." + (code % 1_000);
+    }
+
+    /**
+     * Returns the end index of up to three digits starting at {@code start}.
+     */
+    private static int scanNumber(String message, int start) {
+        int end = start;
+        while (end < message.length() && end - start < 3 && isDigit(message.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
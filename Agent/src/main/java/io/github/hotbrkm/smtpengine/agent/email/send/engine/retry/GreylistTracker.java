@@ -0,0 +1,199 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.retry;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies greylisting replies and learns, per MX, how long a greylisted message has to wait before it is accepted.
+ * <p>
+ * Classification:
+ * 1) A 4xx reply mentioning greylisting, or
+ * 2) A 4xx reply with the same basic + enhanced code as an earlier greylisting reply of the same MX
+ * <p>
+ * Retry delay:
+ * 1) A delay stated in the reply ("try again in 300 seconds", or an ISO-8601 instant), plus the margin
+ * 2) Otherwise the shortest wait after which the MX accepted, or twice the longest wait it still rejected
+ * 3) Otherwise {@code defaultDelayMs} (the usual 5 minute greylisting window), plus the margin
+ */
+@Slf4j
+public class GreylistTracker {
+
+    private static final String[] GREYLIST_KEYWORDS = {"greylist", "graylist", "grey-list", "gray-list", "grey list", "gray list"};
+    private static final Pattern RELATIVE_DELAY = Pattern.compile(
+            "\\b(?:in|after|wait)\\s+(\\d{1,6})\\s*(s|sec|secs|seconds?|m|min|mins|minutes?)\\b");
+    private static final Pattern ISO_INSTANT = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{1,9})?Z");
+
+    private final boolean enabled;
+    private final long defaultDelayMs;
+    private final long marginMs;
+    private final long maxDelayMs;
+    private final Map<String, MxState> states = new ConcurrentHashMap<>();
+
+    /**
+     * @param enabled        Whether greylisting replies get their own retry timing
+     * @param defaultDelayMs Assumed minimum delay of an MX that has not been learned yet
+     * @param marginMs       Extra wait added after the expected window
+     * @param maxDelayMs     Upper bound of any greylisting retry delay
+     */
+    public GreylistTracker(boolean enabled, long defaultDelayMs, long marginMs, long maxDelayMs) {
+        this.enabled = enabled;
+        this.maxDelayMs = Math.max(1L, maxDelayMs);
+        this.defaultDelayMs = Math.min(Math.max(0L, defaultDelayMs), this.maxDelayMs);
+        this.marginMs = Math.max(0L, marginMs);
+    }
+
+    public static GreylistTracker fromSendConfig(EmailConfig.Send sendConfig) {
+        return new GreylistTracker(sendConfig.isGreylistRetryEnabled(), sendConfig.getGreylistDefaultDelayMs(),
+                sendConfig.getGreylistRetryMarginMs(), sendConfig.getGreylistMaxDelayMs());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether the last result of the target is a greylisting reply of the MX.
+     */
+    public boolean isGreylisted(String mxKey, EmailSendTarget target) {
+        String sendCode = target.getSendCode();
+        if (sendCode == null || sendCode.length() != 3 || sendCode.charAt(0) != '4') {
+            return false;
+        }
+        try {
+            return isGreylisted(mxKey, Integer.parseInt(sendCode), target.getErrorMessage());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the reply is a greylisting reply; keyword matches teach the MX its greylisting signature.
+     *
+     * @param mxKey      MX group (or domain) the reply came from
+     * @param statusCode Basic status code
+     * @param message    SMTP reply
+     */
+    public boolean isGreylisted(String mxKey, int statusCode, String message) {
+        if (!enabled || statusCode < 400 || statusCode >= 500 || message == null) {
+            return false;
+        }
+        long signature = signature(statusCode, EnhancedStatusCode.parse(message));
+        if (containsGreylistKeyword(message)) {
+            if (mxKey != null && stateOf(mxKey).signatures.add(signature)) {
+                log.info("Learned greylisting reply signature for MX {}: {} {}", mxKey, statusCode,
+                        EnhancedStatusCode.format(EnhancedStatusCode.parse(message)));
+            }
+            return true;
+        }
+        MxState state = mxKey != null ? states.get(mxKey) : null;
+        return state != null && EnhancedStatusCode.parse(message) != EnhancedStatusCode.NONE && state.signatures.contains(signature);
+    }
+
+    /**
+     * Returns how long to wait before retrying a greylisted message of the MX.
+     */
+    public long retryDelayMs(String mxKey, String message) {
+        long hintMs = parseDelayHintMs(message, System.currentTimeMillis());
+        if (hintMs >= 0L) {
+            return cap(hintMs + marginMs);
+        }
+        MxState state = mxKey != null ? states.get(mxKey) : null;
+        if (state != null) {
+            long accepted = state.shortestAcceptedMs.get();
+            long rejected = state.longestRejectedMs.get();
+            if (accepted != Long.MAX_VALUE && accepted > rejected) {
+                return cap(accepted);
+            }
+            if (rejected > 0L) {
+                return cap(Math.max(rejected * 2, rejected + marginMs));
+            }
+        }
+        return cap(defaultDelayMs + marginMs);
+    }
+
+    /**
+     * Records that the MX accepted a previously greylisted message after waiting {@code waitedMs}.
+     */
+    public void recordAccepted(String mxKey, long waitedMs) {
+        if (!enabled || mxKey == null || waitedMs < 0L) {
+            return;
+        }
+        stateOf(mxKey).shortestAcceptedMs.accumulateAndGet(waitedMs, Math::min);
+    }
+
+    /**
+     * Records that the MX greylisted a message again after waiting {@code waitedMs}, i.e. its window is longer.
+     */
+    public void recordRejected(String mxKey, long waitedMs) {
+        if (!enabled || mxKey == null || waitedMs < 0L) {
+            return;
+        }
+        MxState state = stateOf(mxKey);
+        state.longestRejectedMs.accumulateAndGet(waitedMs, Math::max);
+        // An accepted wait at or below a rejected one is stale (the MX window grew)
+        state.shortestAcceptedMs.updateAndGet(accepted -> accepted <= waitedMs ? Long.MAX_VALUE : accepted);
+    }
+
+    /**
+     * Returns the delay stated in the reply, or -1 if it states none.
+     */
+    static long parseDelayHintMs(String message, long nowMillis) {
+        if (message == null) {
+            return -1L;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        Matcher relative = RELATIVE_DELAY.matcher(lower);
+        if (relative.find()) {
+            long amount = Long.parseLong(relative.group(1));
+            return relative.group(2).startsWith("m") ? amount * 60_000L : amount * 1_000L;
+        }
+        Matcher instant = ISO_INSTANT.matcher(message);
+        if (instant.find()) {
+            try {
+                return Math.max(0L, Instant.parse(instant.group()).toEpochMilli() - nowMillis);
+            } catch (DateTimeParseException e) {
+                return -1L;
+            }
+        }
+        return -1L;
+    }
+
+    private long cap(long delayMs) {
+        return Math.min(Math.max(0L, delayMs), maxDelayMs);
+    }
+
+    private MxState stateOf(String mxKey) {
+        return states.computeIfAbsent(mxKey, key -> new MxState());
+    }
+
+    private static boolean containsGreylistKeyword(String message) {
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (String keyword : GREYLIST_KEYWORDS) {
+            if (lower.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long signature(int statusCode, int enhancedCode) {
+        return (long) statusCode * 10_000_000L + enhancedCode;
+    }
+
+    private static final class MxState {
+        private final Set<Long> signatures = ConcurrentHashMap.newKeySet();
+        private final AtomicLong shortestAcceptedMs = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong longestRejectedMs = new AtomicLong(0L);
+    }
+}
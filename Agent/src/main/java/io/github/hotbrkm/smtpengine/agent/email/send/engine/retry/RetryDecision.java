@@ -0,0 +1,25 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.retry;
+
+/**
+ * Retry handling of one failure class.
+ *
+ * @param retry      Whether failed targets of this class are retried
+ * @param delayMs    Retry delay; negative means the engine's exponential backoff schedule
+ * @param coolBindIp Whether the failure counts toward bind IP cooldown; null leaves it to bindIpCooldownTriggerCodes
+ */
+public record RetryDecision(boolean retry, long delayMs, Boolean coolBindIp) {
+
+    /**
+     * Retry on the default schedule, cooldown by trigger codes.
+     */
+    public static final RetryDecision DEFAULT = new RetryDecision(true, -1L, null);
+
+    /**
+     * No retry, cooldown by trigger codes.
+     */
+    public static final RetryDecision NO_RETRY = new RetryDecision(false, -1L, null);
+
+    public boolean hasDelay() {
+        return delayMs >= 0L;
+    }
+}
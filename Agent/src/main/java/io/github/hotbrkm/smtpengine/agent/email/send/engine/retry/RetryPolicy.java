@@ -0,0 +1,283 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.retry;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Compiled retry rules keyed by basic (e.g. 452) and enhanced (e.g. 4.2.2) status codes.
+ * <p>
+ * Lookup order:
+ * 1) Domain rules, then global rules; within each, basic + enhanced code, then enhanced code, then basic code
+ * 2) Otherwise codes listed in retryExcludeCode are not retried and every other failure is retried on the default schedule
+ * <p>
+ * Rules are compiled into primitive tables (an array indexed by basic code and sorted key arrays for enhanced codes),
+ * so evaluating a target does not allocate.
+ */
+public final class RetryPolicy {
+
+    private static final int BASIC_CODE_LIMIT = 1_000;
+    private static final RetryPolicy DEFAULT = new RetryPolicy(RuleTable.compile(Map.of(), List.of()), Map.of());
+
+    private final RuleTable globalTable;
+    private final Map<String, RuleTable> domainTables;
+
+    private RetryPolicy(RuleTable globalTable, Map<String, RuleTable> domainTables) {
+        this.globalTable = globalTable;
+        this.domainTables = domainTables;
+    }
+
+    /**
+     * Returns a policy that retries every failure on the default schedule.
+     */
+    public static RetryPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a policy that only applies the legacy retry exclude codes.
+     */
+    public static RetryPolicy ofExcludedCodes(List<String> retryExcludeCode) {
+        return of(retryExcludeCode, Map.of(), Map.of());
+    }
+
+    /**
+     * Compiles the retry rules of the send configuration.
+     *
+     * @throws IllegalArgumentException if a rule key is not a valid status code
+     */
+    public static RetryPolicy fromSendConfig(EmailConfig.Send sendConfig) {
+        return of(sendConfig.getRetryExcludeCode(), sendConfig.getRetryRules(), sendConfig.getDomainRetryRules());
+    }
+
+    /**
+     * Compiles retry rules.
+     *
+     * @param retryExcludeCode Basic codes that are never retried unless a rule says otherwise
+     * @param rules            Global rules keyed by "452", "4.2.2" or "452 4.2.2"
+     * @param domainRules      Per-domain rules checked before the global rules
+     * @throws IllegalArgumentException if a rule key is not a valid status code
+     */
+    public static RetryPolicy of(List<String> retryExcludeCode, Map<String, EmailConfig.Send.RetryRule> rules,
+                                 Map<String, Map<String, EmailConfig.Send.RetryRule>> domainRules) {
+        RuleTable globalTable = RuleTable.compile(rules, retryExcludeCode);
+        Map<String, RuleTable> domainTables = new HashMap<>();
+        if (domainRules != null) {
+            for (Map.Entry<String, Map<String, EmailConfig.Send.RetryRule>> entry : domainRules.entrySet()) {
+                if (entry.getKey() != null && !entry.getKey().isBlank() && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    domainTables.put(normalizeDomain(entry.getKey()), RuleTable.compile(entry.getValue(), List.of()));
+                }
+            }
+        }
+        return new RetryPolicy(globalTable, Collections.unmodifiableMap(domainTables));
+    }
+
+    /**
+     * Returns the retry decision for a failure.
+     *
+     * @param domain     Recipient domain (may be null)
+     * @param statusCode Basic status code
+     * @param message    SMTP reply, used for the enhanced status code (may be null)
+     */
+    public RetryDecision decide(String domain, int statusCode, String message) {
+        int enhancedCode = EnhancedStatusCode.parse(message);
+        if (!domainTables.isEmpty() && domain != null) {
+            RuleTable domainTable = domainTables.get(normalizeDomain(domain));
+            if (domainTable != null) {
+                RetryDecision decision = domainTable.find(statusCode, enhancedCode);
+                if (decision != null) {
+                    return decision;
+                }
+            }
+        }
+        RetryDecision decision = globalTable.find(statusCode, enhancedCode);
+        return decision != null ? decision : RetryDecision.DEFAULT;
+    }
+
+    /**
+     * Returns the retry decision for the last result of a target.
+     */
+    public RetryDecision decide(EmailSendTarget target) {
+        int sendCode = target.getSendCodeValue();
+        return decide(target.getDomain(), sendCode >= 100 && sendCode <= 999 ? sendCode : -1, target.getErrorMessage());
+    }
+
+    /**
+     * Returns whether a processed target should be retried; targets without a result code are never retried.
+     */
+    public boolean shouldRetry(EmailSendTarget target) {
+        if (target.getSendCodeValue() < 0) {
+            return false;
+        }
+        return decide(target).retry();
+    }
+
+    /**
+     * Returns the delay before retrying the given targets together: the longest delay any of them asks for,
+     * where targets without a rule delay use {@code scheduledDelayMs}.
+     */
+    public long resolveRetryDelayMs(List<EmailSendTarget> targets, long scheduledDelayMs) {
+        return targets.isEmpty() ? scheduledDelayMs : resolveRetryDelayMs(targets, target -> scheduledDelayMs);
+    }
+
+    /**
+     * Returns the delay before retrying the given targets together, where targets without a rule delay
+     * use the delay given by {@code defaultDelay} (e.g. a greylisting window).
+     */
+    public long resolveRetryDelayMs(List<EmailSendTarget> targets, ToLongFunction<EmailSendTarget> defaultDelay) {
+        long delayMs = 0L;
+        for (EmailSendTarget target : targets) {
+            RetryDecision decision = decide(target);
+            delayMs = Math.max(delayMs, decision.hasDelay() ? decision.delayMs() : defaultDelay.applyAsLong(target));
+        }
+        return delayMs;
+    }
+
+    private static int parseStatusCode(String sendCode) {
+        if (sendCode == null || sendCode.length() != 3) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = sendCode.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            code = code * 10 + (c - '0');
+        }
+        return code;
+    }
+
+    private static String normalizeDomain(String domain) {
+        return domain.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Rules of one scope compiled into primitive lookup tables.
+     */
+    private static final class RuleTable {
+
+        private final RetryDecision[] byBasic;
+        private final int[] enhancedKeys;
+        private final RetryDecision[] byEnhanced;
+        private final long[] combinedKeys;
+        private final RetryDecision[] byCombined;
+
+        private RuleTable(RetryDecision[] byBasic, int[] enhancedKeys, RetryDecision[] byEnhanced,
+                          long[] combinedKeys, RetryDecision[] byCombined) {
+            this.byBasic = byBasic;
+            this.enhancedKeys = enhancedKeys;
+            this.byEnhanced = byEnhanced;
+            this.combinedKeys = combinedKeys;
+            this.byCombined = byCombined;
+        }
+
+        static RuleTable compile(Map<String, EmailConfig.Send.RetryRule> rules, List<String> excludedCodes) {
+            RetryDecision[] byBasic = new RetryDecision[BASIC_CODE_LIMIT];
+            if (excludedCodes != null) {
+                for (String excludedCode : excludedCodes) {
+                    int code = parseStatusCode(excludedCode == null ? null : excludedCode.trim());
+                    if (code >= 0) {
+                        byBasic[code] = RetryDecision.NO_RETRY;
+                    }
+                }
+            }
+
+            Map<Integer, RetryDecision> enhancedRules = new HashMap<>();
+            Map<Long, RetryDecision> combinedRules = new HashMap<>();
+            if (rules != null) {
+                for (Map.Entry<String, EmailConfig.Send.RetryRule> entry : rules.entrySet()) {
+                    RetryDecision decision = toDecision(entry.getValue());
+                    RuleKey key = RuleKey.parse(entry.getKey());
+                    if (key.enhancedCode() == EnhancedStatusCode.NONE) {
+                        byBasic[key.basicCode()] = decision;
+                    } else if (key.basicCode() < 0) {
+                        enhancedRules.put(key.enhancedCode(), decision);
+                    } else {
+                        combinedRules.put(combinedKey(key.basicCode(), key.enhancedCode()), decision);
+                    }
+                }
+            }
+
+            int[] enhancedKeys = enhancedRules.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            RetryDecision[] byEnhanced = new RetryDecision[enhancedKeys.length];
+            for (int i = 0; i < enhancedKeys.length; i++) {
+                byEnhanced[i] = enhancedRules.get(enhancedKeys[i]);
+            }
+            long[] combinedKeys = combinedRules.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            RetryDecision[] byCombined = new RetryDecision[combinedKeys.length];
+            for (int i = 0; i < combinedKeys.length; i++) {
+                byCombined[i] = combinedRules.get(combinedKeys[i]);
+            }
+            return new RuleTable(byBasic, enhancedKeys, byEnhanced, combinedKeys, byCombined);
+        }
+
+        /**
+         * Returns the most specific matching decision, or null if no rule of this scope matches.
+         */
+        RetryDecision find(int basicCode, int enhancedCode) {
+            boolean validBasic = basicCode >= 0 && basicCode < BASIC_CODE_LIMIT;
+            if (enhancedCode != EnhancedStatusCode.NONE) {
+                if (validBasic && combinedKeys.length > 0) {
+                    int index = Arrays.binarySearch(combinedKeys, combinedKey(basicCode, enhancedCode));
+                    if (index >= 0) {
+                        return byCombined[index];
+                    }
+                }
+                if (enhancedKeys.length > 0) {
+                    int index = Arrays.binarySearch(enhancedKeys, enhancedCode);
+                    if (index >= 0) {
+                        return byEnhanced[index];
+                    }
+                }
+            }
+            return validBasic ? byBasic[basicCode] : null;
+        }
+
+        private static long combinedKey(int basicCode, int enhancedCode) {
+            return (long) basicCode * 10_000_000L + enhancedCode;
+        }
+
+        private static RetryDecision toDecision(EmailConfig.Send.RetryRule rule) {
+            if (rule == null) {
+                return RetryDecision.DEFAULT;
+            }
+            return new RetryDecision(rule.isRetry(), rule.getDelayMs(), rule.getCoolBindIp());
+        }
+    }
+
+    /**
+     * Parsed rule key; {@code basicCode} is -1 when the key only names an enhanced code.
+     */
+    private record RuleKey(int basicCode, int enhancedCode) {
+
+        static RuleKey parse(String key) {
+            List<String> tokens = key == null ? List.of() : new ArrayList<>(Arrays.asList(key.trim().split("\\s+")));
+            tokens.removeIf(String::isEmpty);
+            if (tokens.isEmpty() || tokens.size() > 2) {
+                throw new IllegalArgumentException("Invalid retry rule key: " + key);
+            }
+
+            int basicCode = parseStatusCode(tokens.getFirst());
+            if (basicCode >= 0) {
+                tokens.removeFirst();
+            }
+            int enhancedCode = EnhancedStatusCode.NONE;
+            if (!tokens.isEmpty()) {
+                enhancedCode = tokens.size() == 1 ? EnhancedStatusCode.parse(tokens.getFirst()) : EnhancedStatusCode.NONE;
+                if (enhancedCode == EnhancedStatusCode.NONE) {
+                    throw new IllegalArgumentException("Invalid retry rule key: " + key);
+                }
+            }
+            return new RuleKey(basicCode, enhancedCode);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.entry;
+
+/**
+ * Title and body shared by the targets of a runner.
+ * <p>
+ * Obtain instances from {@link EmailContentRegistry#intern(String, String)} so that targets with the same content
+ * reference one instance instead of each holding its own copy.
+ *
+ * @param id    Registry-assigned id (-1 for content created outside a registry)
+ * @param title Mail title
+ * @param body  Mail body
+ */
+public record EmailContent(int id, String title, String body) {
+
+    public static final int UNREGISTERED_ID = -1;
+
+    static EmailContent unregistered(String title, String body) {
+        return new EmailContent(UNREGISTERED_ID, title, body);
+    }
+
+    @Override
+    public String toString() {
+        return "EmailContent[id=" + id + ", title=" + title + ", body=" + (body != null ? "<" + body.length() + " chars>" : null) + "]";
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.entry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-runner registry that keeps each distinct title/body pair once and hands out a shared {@link EmailContent}.
+ * <p>
+ * Thread-safe; a runner typically creates one registry and passes each target's content through {@link #intern}.
+ */
+public final class EmailContentRegistry {
+
+    private final Map<ContentKey, EmailContent> contents = new ConcurrentHashMap<>();
+    private final Map<Integer, EmailContent> contentsById = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Returns the shared content equal to {@code title}/{@code body}, registering it on first use.
+     */
+    public EmailContent intern(String title, String body) {
+        return contents.computeIfAbsent(new ContentKey(title, body), key -> {
+            EmailContent content = new EmailContent(nextId.getAndIncrement(), title, body);
+            contentsById.put(content.id(), content);
+            return content;
+        });
+    }
+
+    /**
+     * Returns the shared content equal to {@code content}; content already registered here is returned as is.
+     */
+    public EmailContent intern(EmailContent content) {
+        if (content.id() != EmailContent.UNREGISTERED_ID && contentsById.get(content.id()) == content) {
+            return content;
+        }
+        return intern(content.title(), content.body());
+    }
+
+    /**
+     * Returns the content registered under {@code id}, or {@code null} if none.
+     */
+    public EmailContent get(int id) {
+        return contentsById.get(id);
+    }
+
+    /**
+     * Returns the number of distinct contents registered.
+     */
+    public int size() {
+        return contentsById.size();
+    }
+
+    private record ContentKey(String title, String body) {
+    }
+}
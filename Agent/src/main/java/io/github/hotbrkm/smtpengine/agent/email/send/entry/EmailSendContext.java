@@ -1,9 +1,16 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.entry;
 
+import java.time.Instant;
 import java.util.Objects;
 
+/**
+ * Message-level send context.
+ *
+ * @param deadline Optional delivery deadline; realtime lanes dispatch batches with the earliest deadline first ({@code null} for none)
+ */
 public record EmailSendContext(
-        long messageId, long resultSeq, int groupSeq, String messageType, String templateSubtype, ExecutionMode executionMode
+        long messageId, long resultSeq, int groupSeq, String messageType, String templateSubtype, ExecutionMode executionMode,
+        Instant deadline
 ) {
     public EmailSendContext {
         Objects.requireNonNull(messageType, "messageType must not be null");
@@ -11,7 +18,23 @@ public record EmailSendContext(
         Objects.requireNonNull(executionMode, "executionMode must not be null");
     }
 
+    public EmailSendContext(long messageId, long resultSeq, int groupSeq, String messageType, String templateSubtype,
+                            ExecutionMode executionMode) {
+        this(messageId, resultSeq, groupSeq, messageType, templateSubtype, executionMode, null);
+    }
+
     public String toRunnerId() {
         return messageId + "-" + resultSeq + "-" + groupSeq;
     }
+
+    public boolean hasDeadline() {
+        return deadline != null;
+    }
+
+    /**
+     * Returns a copy of this context with the given delivery deadline.
+     */
+    public EmailSendContext withDeadline(Instant deadline) {
+        return new EmailSendContext(messageId, resultSeq, groupSeq, messageType, templateSubtype, executionMode, deadline);
+    }
 }
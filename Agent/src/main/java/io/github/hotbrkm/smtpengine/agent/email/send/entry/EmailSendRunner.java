@@ -5,14 +5,24 @@ import io.github.hotbrkm.smtpengine.agent.email.send.engine.EmailSendEngine;
 import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchAggregator;
 import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchPlanner;
 import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchSpec;
+import io.github.hotbrkm.smtpengine.agent.email.send.recipient.MappedRecipientStore;
+import io.github.hotbrkm.smtpengine.agent.email.send.recipient.StoredTargetRange;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchRunSummary;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.MxGroupResolver;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Email send runner.
@@ -20,6 +30,12 @@ import java.util.concurrent.CompletableFuture;
  * Takes target data (typed list) as input, groups them into domain-based batches,
  * and submits them to the engine (EmailSendEngine).
  * Waits until all submitted batches complete and outputs a completion summary log.
+ * <p>
+ * In streaming mode, targets are pulled from an iterator and batches are submitted as their domain buffers fill,
+ * with at most {@code maxInFlightBatches} batches submitted but not yet completed, so memory follows in-flight work
+ * rather than run size.
+ * <p>
+ * With a recipient store directory set, planned batches are kept in a {@link MappedRecipientStore} until dispatched.
  */
 @Slf4j
 public class EmailSendRunner {
@@ -29,10 +45,19 @@ public class EmailSendRunner {
 
     private final String runnerId;
     private final List<EmailSendTarget> emailSendTargets;
+    // Streaming mode source (null when the runner was given a target list)
+    private final Iterator<EmailSendTarget> targetSource;
+    private final int maxBufferedTargets;
+    private final int maxInFlightBatches;
     private final EmailSendContext emailSendContext;
     private final EmailDomainManager emailDomainManager;
     private final EmailSendEngine emailSendEngine;
     private final EmailBatchResultWriter resultWriter;
+    private volatile EmailBatchAggregator.ProgressListener progressListener;
+    // Aggregator of the current execution, read by snapshot() from other threads
+    private volatile EmailBatchAggregator aggregator;
+    // Directory of the per-execution recipient store (null keeps planned batches on heap)
+    private volatile Path recipientStoreDirectory;
 
     public EmailSendRunner(List<EmailSendTarget> emailSendTargets, EmailSendContext emailSendContext, EmailDomainManager emailDomainManager,
                            EmailSendEngine emailSendEngine) {
@@ -41,8 +66,31 @@ public class EmailSendRunner {
 
     public EmailSendRunner(List<EmailSendTarget> emailSendTargets, EmailSendContext emailSendContext, EmailDomainManager emailDomainManager,
                            EmailSendEngine emailSendEngine, EmailBatchResultWriter resultWriter) {
+        this(emailSendTargets, null, 0, 0, emailSendContext, emailDomainManager, emailSendEngine, resultWriter);
+    }
+
+    /**
+     * Streaming mode constructor.
+     *
+     * @param targetSource       Target source; read once, in order, on the thread calling {@link #execute()}
+     * @param maxBufferedTargets Upper bound of targets buffered while waiting for their batch to fill
+     * @param maxInFlightBatches Upper bound of submitted batches not completed yet; planning blocks beyond it
+     */
+    public EmailSendRunner(Iterator<EmailSendTarget> targetSource, int maxBufferedTargets, int maxInFlightBatches,
+                           EmailSendContext emailSendContext, EmailDomainManager emailDomainManager,
+                           EmailSendEngine emailSendEngine, EmailBatchResultWriter resultWriter) {
+        this(null, targetSource, maxBufferedTargets, maxInFlightBatches, emailSendContext, emailDomainManager, emailSendEngine,
+                resultWriter);
+    }
+
+    private EmailSendRunner(List<EmailSendTarget> emailSendTargets, Iterator<EmailSendTarget> targetSource, int maxBufferedTargets,
+                            int maxInFlightBatches, EmailSendContext emailSendContext, EmailDomainManager emailDomainManager,
+                            EmailSendEngine emailSendEngine, EmailBatchResultWriter resultWriter) {
         this.runnerId = emailSendContext.toRunnerId();
         this.emailSendTargets = emailSendTargets;
+        this.targetSource = targetSource;
+        this.maxBufferedTargets = Math.max(1, maxBufferedTargets);
+        this.maxInFlightBatches = Math.max(1, maxInFlightBatches);
         this.emailSendContext = emailSendContext;
         this.emailDomainManager = emailDomainManager;
         this.emailSendEngine = emailSendEngine;
@@ -56,67 +104,206 @@ public class EmailSendRunner {
      * @return execution summary information
      */
     public EmailBatchRunSummary execute() {
+        if (targetSource != null) {
+            return executeStreaming();
+        }
         log.info("runnerId={}, event=starting, targets={}", runnerId, emailSendTargets.size());
         emailSendEngine.registerRunner(runnerId, resultWriter);
 
         long start = System.currentTimeMillis();
+        MappedRecipientStore recipientStore = openRecipientStore();
         try {
             // 1. Create batches
-            List<EmailBatchSpec> batchSpecs = createBatches(emailSendTargets);
+            List<EmailBatchSpec> batchSpecs = createBatches(emailSendTargets, recipientStore);
             log.debug("runnerId={}, batchesCreated={}, targets={}", runnerId, batchSpecs.size(), emailSendTargets.size());
 
-            // 2. Submit batches to Engine and collect CompletableFutures
-            List<CompletableFuture<EmailBatchResult>> futures = submitBatches(batchSpecs);
+            // 2. Submit batches to Engine; each result is aggregated as it completes
+            EmailBatchAggregator runAggregator = startAggregation();
+            submitBatches(batchSpecs, runAggregator);
             log.debug("runnerId={}, batchesSubmitted={}, targets={}", runnerId, batchSpecs.size(), emailSendTargets.size());
 
-            // 3. Wait for all batches to complete and aggregate summary
-            EmailBatchRunSummary summary = waitForCompletion(futures);
+            // 3. Wait for all batches to complete and take the final summary
+            EmailBatchRunSummary summary = runAggregator.awaitCompletion(COMPLETION_TIMEOUT_MS);
 
             long totalTime = System.currentTimeMillis() - start;
             log.info("runnerId={}, event=all_batches_completed, totalTimeMs={}", runnerId, totalTime);
 
             return summary;
         } finally {
+            // Batches left by a timeout or failure must not keep sending for a finished run
+            emailSendEngine.cancelRunner(runnerId);
+            closeRecipientStore(recipientStore);
             emailSendEngine.unregisterRunner(runnerId);
         }
     }
 
+    /**
+     * Streaming mode: plan → submit with backpressure, interleaved, then wait/aggregate.
+     *
+     * @return execution summary information
+     */
+    private EmailBatchRunSummary executeStreaming() {
+        log.info("runnerId={}, event=starting, mode=streaming, maxBufferedTargets={}, maxInFlightBatches={}",
+                runnerId, maxBufferedTargets, maxInFlightBatches);
+        emailSendEngine.registerRunner(runnerId, resultWriter);
+
+        long start = System.currentTimeMillis();
+        MappedRecipientStore recipientStore = openRecipientStore();
+        try {
+            Semaphore inFlight = new Semaphore(maxInFlightBatches);
+            EmailBatchAggregator runAggregator = startAggregation();
+            int targets = createPlanner(List.of(), recipientStore).planStreaming(targetSource, maxBufferedTargets,
+                    batchSpec -> runAggregator.track(submitWithBackpressure(batchSpec, inFlight)));
+            log.debug("runnerId={}, batchesSubmitted={}, targets={}", runnerId, runAggregator.getTrackedBatches(), targets);
+
+            EmailBatchRunSummary summary = runAggregator.awaitCompletion(COMPLETION_TIMEOUT_MS);
+
+            long totalTime = System.currentTimeMillis() - start;
+            log.info("runnerId={}, event=all_batches_completed, targets={}, totalTimeMs={}", runnerId, targets, totalTime);
+
+            return summary;
+        } finally {
+            // Batches left by a timeout or failure must not keep sending for a finished run
+            emailSendEngine.cancelRunner(runnerId);
+            closeRecipientStore(recipientStore);
+            emailSendEngine.unregisterRunner(runnerId);
+        }
+    }
+
+    /**
+     * Submits a batch once fewer than {@code maxInFlightBatches} are in flight; the permit is returned on completion.
+     */
+    private CompletableFuture<EmailBatchResult> submitWithBackpressure(EmailBatchSpec batchSpec, Semaphore inFlight) {
+        try {
+            if (!inFlight.tryAcquire(COMPLETION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("runnerId={}, batchId={}, event=submit_wait_timeout, timeoutMs={}", runnerId, batchSpec.getBatchId(),
+                        COMPLETION_TIMEOUT_MS);
+                return failedSubmission(batchSpec, new TimeoutException("No in-flight batch completed within " + COMPLETION_TIMEOUT_MS + " ms"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("runnerId={}, batchId={}, event=submit_interrupted", runnerId, batchSpec.getBatchId());
+            return failedSubmission(batchSpec, e);
+        }
+        try {
+            CompletableFuture<EmailBatchResult> future = emailSendEngine.submitBatchAsync(batchSpec);
+            future.whenComplete((result, error) -> inFlight.release());
+            return future;
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private CompletableFuture<EmailBatchResult> failedSubmission(EmailBatchSpec batchSpec, Exception e) {
+        if (batchSpec.getEmailSendTargetList() instanceof StoredTargetRange range) {
+            // Never reaches the engine, so nothing else releases it
+            range.release();
+        }
+        return CompletableFuture.completedFuture(EmailBatchResult.failure(batchSpec.getBatchId(), batchSpec.getDomain(),
+                batchSpec.getEmailSendTargetList().size(), e));
+    }
+
     /**
      * Groups target data by domain and splits them according to each domain's
      * sendCountPerSession policy to create a list of submission requests (EmailBatchSpec).
      *
      * @param emailSendTargets converted SmtpRequest list
+     * @param recipientStore   store the planned batches are moved to, or {@code null}
      * @return generated list of submission requests
      */
-    private List<EmailBatchSpec> createBatches(List<EmailSendTarget> emailSendTargets) {
-        EmailBatchPlanner planner = new EmailBatchPlanner(runnerId, emailSendTargets, emailDomainManager, emailSendContext, resultWriter);
-        return planner.plan();
+    private List<EmailBatchSpec> createBatches(List<EmailSendTarget> emailSendTargets, MappedRecipientStore recipientStore) {
+        return createPlanner(emailSendTargets, recipientStore).plan();
+    }
+
+    private EmailBatchPlanner createPlanner(List<EmailSendTarget> emailSendTargets, MappedRecipientStore recipientStore) {
+        MxGroupResolver mxGroupResolver = emailSendEngine.getMxGroupResolver();
+        BounceSuppressionStore suppressionStore = emailSendEngine.getBounceSuppressionStore();
+        return new EmailBatchPlanner(runnerId, emailSendTargets, emailDomainManager, emailSendContext, resultWriter,
+                mxGroupResolver != null ? mxGroupResolver::resolveSharedSessionGroup : null,
+                suppressionStore != null && suppressionStore.isEnabled() ? suppressionStore::isSuppressed : null,
+                recipientStore);
+    }
+
+    /**
+     * Opens the recipient store of this execution; falls back to on-heap batches if it cannot be created.
+     */
+    private MappedRecipientStore openRecipientStore() {
+        Path directory = recipientStoreDirectory;
+        if (directory == null) {
+            return null;
+        }
+        try {
+            return new MappedRecipientStore(directory);
+        } catch (IOException | RuntimeException e) {
+            log.warn("runnerId={}, event=recipient_store_unavailable, directory={}", runnerId, directory, e);
+            return null;
+        }
     }
 
     /**
-     * Submits generated requests to the engine and returns a list of CompletableFutures.
+     * Requests the store be released; batches still queued in the engine keep it open until they are dispatched or end.
+     */
+    private void closeRecipientStore(MappedRecipientStore recipientStore) {
+        if (recipientStore != null) {
+            recipientStore.close();
+        }
+    }
+
+    /**
+     * Submits generated requests to the engine and hands each CompletableFuture to the aggregator.
      *
-     * @param batchSpecs list of requests to submit
-     * @return list of CompletableFutures containing each batch's processing result
+     * @param batchSpecs    list of requests to submit
+     * @param runAggregator aggregator of this run
      */
-    private List<CompletableFuture<EmailBatchResult>> submitBatches(List<EmailBatchSpec> batchSpecs) {
-        List<CompletableFuture<EmailBatchResult>> futures = new ArrayList<>();
+    private void submitBatches(List<EmailBatchSpec> batchSpecs, EmailBatchAggregator runAggregator) {
         for (EmailBatchSpec request : batchSpecs) {
-            CompletableFuture<EmailBatchResult> future = emailSendEngine.submitBatchAsync(request);
-            futures.add(future);
+            runAggregator.track(emailSendEngine.submitBatchAsync(request));
+        }
+    }
+
+    private EmailBatchAggregator startAggregation() {
+        EmailBatchAggregator runAggregator = new EmailBatchAggregator(runnerId, TOP_DOMAIN_SUMMARY_LIMIT, progressListener);
+        this.aggregator = runAggregator;
+        return runAggregator;
+    }
+
+    /**
+     * Sets the listener notified as each batch of this runner completes. Must be called before {@link #execute()}.
+     */
+    public void setProgressListener(EmailBatchAggregator.ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Keeps planned batches in memory-mapped files under {@code directory} until dispatched. Must be called before {@link #execute()}.
+     */
+    public void setRecipientStoreDirectory(Path recipientStoreDirectory) {
+        this.recipientStoreDirectory = recipientStoreDirectory;
+    }
+
+    /**
+     * Returns the live batch counts of the running (or last) execution in constant time; batches still in flight count
+     * toward the total only. Per-domain statistics are not included, see {@link #getDomainStats()}.
+     *
+     * @return current summary (empty before {@link #execute()} starts)
+     */
+    public EmailBatchRunSummary snapshot() {
+        EmailBatchAggregator current = aggregator;
+        if (current == null) {
+            return EmailBatchRunSummary.builder().runnerId(runnerId).domainStats(Map.of()).build();
         }
-        return futures;
+        return current.snapshot();
     }
 
     /**
-     * Waits until all submitted batches complete.
-     * Joins each batch's future sequentially to aggregate results.
+     * Returns the per-domain target counts of the running (or last) execution, built on each call.
      *
-     * @param futures list of CompletableFutures to track
+     * @return per-domain statistics (empty before {@link #execute()} starts)
      */
-    private EmailBatchRunSummary waitForCompletion(List<CompletableFuture<EmailBatchResult>> futures) {
-        EmailBatchAggregator aggregator = new EmailBatchAggregator(runnerId, TOP_DOMAIN_SUMMARY_LIMIT);
-        return aggregator.aggregate(futures, COMPLETION_TIMEOUT_MS);
+    public Map<String, EmailBatchRunSummary.DomainStats> getDomainStats() {
+        EmailBatchAggregator current = aggregator;
+        return current != null ? current.getDomainStats() : Map.of();
     }
 
 }
@@ -5,8 +5,13 @@ import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.EmailSendEngine;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 /**
  * EmailSendRunner factory.
@@ -14,6 +19,7 @@ import java.util.List;
  * Encapsulates EmailSendRunner's dependencies (EmailDomainManager, EmailSendEngine, EmailConfig)
  * so callers don't need to know about them.
  */
+@Slf4j
 @RequiredArgsConstructor
 public class EmailSendRunnerFactory {
 
@@ -22,6 +28,40 @@ public class EmailSendRunnerFactory {
     private final EmailConfig emailConfig;
 
     public EmailSendRunner create(List<EmailSendTarget> emailSendTargets, EmailSendContext emailSendContext, EmailBatchResultWriter resultWriter) {
-        return new EmailSendRunner(emailSendTargets, emailSendContext, emailDomainManager, emailSendEngine, resultWriter);
+        return withRecipientStore(new EmailSendRunner(emailSendTargets, emailSendContext, emailDomainManager, emailSendEngine, resultWriter));
+    }
+
+    /**
+     * Creates a streaming runner that pulls targets from {@code targetSource} while sending.
+     */
+    public EmailSendRunner createStreaming(Iterator<EmailSendTarget> targetSource, EmailSendContext emailSendContext,
+                                           EmailBatchResultWriter resultWriter) {
+        EmailConfig.Send send = emailConfig.getSend();
+        return withRecipientStore(new EmailSendRunner(targetSource, send.getStreamingMaxBufferedTargets(),
+                send.getStreamingMaxInFlightBatches(), emailSendContext, emailDomainManager, emailSendEngine, resultWriter));
+    }
+
+    /**
+     * Creates a streaming runner that pulls targets from {@code targetSource} while sending.
+     */
+    public EmailSendRunner createStreaming(Spliterator<EmailSendTarget> targetSource, EmailSendContext emailSendContext,
+                                           EmailBatchResultWriter resultWriter) {
+        return createStreaming(Spliterators.iterator(targetSource), emailSendContext, resultWriter);
+    }
+
+    /**
+     * Points the runner at {@code <spoolDir>/recipients} when the recipient store is enabled.
+     */
+    private EmailSendRunner withRecipientStore(EmailSendRunner runner) {
+        EmailConfig.Send send = emailConfig.getSend();
+        if (!send.isRecipientStoreEnabled()) {
+            return runner;
+        }
+        if (send.getSpoolDir() == null || send.getSpoolDir().isBlank()) {
+            log.warn("Recipient store is enabled but spoolDir is not set; batches are kept on heap");
+            return runner;
+        }
+        runner.setRecipientStoreDirectory(Paths.get(send.getSpoolDir(), "recipients"));
+        return runner;
     }
 }
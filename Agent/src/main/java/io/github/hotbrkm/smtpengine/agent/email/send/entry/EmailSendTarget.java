@@ -4,15 +4,28 @@ import io.github.hotbrkm.smtpengine.agent.email.domain.EmailAddressUtil;
 import io.github.hotbrkm.smtpengine.agent.email.mime.AttachmentMedia;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
+/**
+ * Send target (one recipient) and its send result.
+ * <p>
+ * The representation is kept compact because a run can hold millions of targets:
+ * <ul>
+ *   <li>Title and body are an {@link EmailContent} that targets built from one {@link EmailContentRegistry} share</li>
+ *   <li>Additional attributes are a flat value array indexed by a {@link TargetAttributeLayout} shared by targets with the same keys</li>
+ *   <li>listSeq and end time are primitives; the String accessors format them on demand</li>
+ *   <li>Send codes reported by results are shared constants; a code passed to the builder is kept as given</li>
+ * </ul>
+ */
 @Getter
 public final class EmailSendTarget {
     public static final String ATTR_LIST_SEQ = "listSeq";
@@ -20,27 +33,45 @@ public final class EmailSendTarget {
     public static final String ATTR_REJECT_URL = "rejectUrl";
     public static final String ATTR_SECU_KEY = "secuKey";
 
+    private static final int NO_SEND_CODE = -1;
+    // Shared strings of the three-digit codes results report, so targets do not each hold a copy
+    private static final String[] SEND_CODES = new String[1000];
+    private static final long NO_END_DATE_TIME = -1L;
+    // Marks an attribute present with a null value (a null slot means absent or removed)
+    private static final Object NULL_VALUE = new Object();
+
     private final String targetId;
     private final String targetName;
     private final String targetEmail;
     private final String senderName;
     private final String senderEmail;
-    private final String title;
-    private final String body;
-    private final Map<String, Object> attributes;
+    private EmailContent content;
+    private final int listSeq;
+    @Getter(AccessLevel.NONE)
+    private final TargetAttributeLayout attributeLayout;
+    @Getter(AccessLevel.NONE)
+    private final Object[] attributeValues;
     private final List<AttachmentMedia> attachments;
     private final String domain;
 
     private int retryCount;
+    @Getter(AccessLevel.NONE)
     private String sendCode;
+    @Getter(AccessLevel.NONE)
+    private int sendCodeValue;
     private String sendStatus;
     private String errorMessage;
-    private String endDateTime;
+    // yyyyMMddHHmmss packed into a long
+    @Getter(AccessLevel.NONE)
+    private long endDateTime;
     private String emailDomain;
 
+    /**
+     * @param content Shared content from an {@link EmailContentRegistry}; when set, {@code title} and {@code body} are ignored
+     */
     @Builder
     public EmailSendTarget(String targetEmail, String senderName, String senderEmail, String targetId, int listSeq,
-                           String targetName, String title, String body, String coverBody, String rejectUrl,
+                           String targetName, String title, String body, EmailContent content, String coverBody, String rejectUrl,
                            String secuKey, int retryCount, String sendCode, String sendStatus, String errorMessage,
                            String endDateTime, String emailDomain, Map<String, Object> targetData,
                            List<AttachmentMedia> attachments) {
@@ -49,14 +80,18 @@ public final class EmailSendTarget {
         this.senderEmail = senderEmail;
         this.targetId = targetId;
         this.targetName = targetName;
-        this.title = title;
-        this.body = body;
+        this.content = content != null ? content : EmailContent.unregistered(title, body);
+        this.listSeq = listSeq;
 
         Map<String, Object> attrMap = new HashMap<>();
         if (targetData != null) {
+            if (targetData.containsKey(null)) {
+                throw new IllegalArgumentException("targetData must not contain a null key");
+            }
             attrMap.putAll(targetData);
         }
-        attrMap.put(ATTR_LIST_SEQ, listSeq);
+        // listSeq is held as a primitive field
+        attrMap.remove(ATTR_LIST_SEQ);
         if (coverBody != null) {
             attrMap.put(ATTR_COVER_BODY, coverBody);
         }
@@ -66,36 +101,82 @@ public final class EmailSendTarget {
         if (secuKey != null) {
             attrMap.put(ATTR_SECU_KEY, secuKey);
         }
-        this.attributes = attrMap;
+        this.attributeLayout = TargetAttributeLayout.of(attrMap.keySet());
+        this.attributeValues = new Object[attributeLayout.size()];
+        for (Map.Entry<String, Object> entry : attrMap.entrySet()) {
+            attributeValues[attributeLayout.slotOf(entry.getKey())] = entry.getValue() != null ? entry.getValue() : NULL_VALUE;
+        }
 
         this.attachments = attachments == null ? List.of() : List.copyOf(attachments);
         this.retryCount = Math.max(retryCount, 0);
         this.sendCode = sendCode;
-        this.sendStatus = sendStatus;
+        this.sendCodeValue = parseSendCode(sendCode);
+        this.sendStatus = canonicalStatus(sendStatus);
         this.errorMessage = errorMessage;
-        this.endDateTime = endDateTime;
+        this.endDateTime = parseEndDateTime(endDateTime);
         this.emailDomain = emailDomain;
         this.domain = EmailAddressUtil.extractDomain(targetEmail);
     }
 
+    public String getTitle() {
+        return content.title();
+    }
+
+    public String getBody() {
+        return content.body();
+    }
+
+    /**
+     * Returns the last send code (e.g. "250", "701") as given, or {@code null} if none.
+     */
+    public String getSendCode() {
+        return sendCode;
+    }
+
+    /**
+     * Returns the last send code as a number, or -1 if none or not numeric.
+     */
+    public int getSendCodeValue() {
+        return sendCodeValue;
+    }
+
+    /**
+     * Replaces the content with the registry's shared instance of the same title and body.
+     */
+    public void internContent(EmailContentRegistry registry) {
+        this.content = registry.intern(content);
+    }
+
+    /**
+     * Returns the end time formatted as yyyyMMddHHmmss, or {@code null} if not sent yet.
+     */
+    public String getEndDateTime() {
+        return endDateTime == NO_END_DATE_TIME ? null : String.valueOf(endDateTime);
+    }
+
     /**
      * API for retrieving additional attributes.
      */
     public Object getAttribute(String key) {
-        if (attributes == null || key == null) {
+        if (key == null) {
             return null;
         }
-        return attributes.get(key);
+        if (ATTR_LIST_SEQ.equals(key)) {
+            return listSeq;
+        }
+        int slot = attributeLayout.slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        Object v = attributeValues[slot];
+        return v == NULL_VALUE ? null : v;
     }
 
     /**
      * Retrieves a string value from additional attributes (Map).
      */
     public String getAttributeString(String key) {
-        if (attributes == null || key == null) {
-            return null;
-        }
-        Object v = attributes.get(key);
+        Object v = getAttribute(key);
         return v == null ? null : String.valueOf(v);
     }
 
@@ -111,10 +192,7 @@ public final class EmailSendTarget {
      * Retrieves an integer attribute from the original payload.
      */
     public Integer getAttributeInt(String key) {
-        if (attributes == null || key == null) {
-            return null;
-        }
-        Object v = attributes.get(key);
+        Object v = getAttribute(key);
         if (v instanceof Integer i) {
             return i;
         }
@@ -140,24 +218,44 @@ public final class EmailSendTarget {
      * Returns whether an attribute exists.
      */
     public boolean hasAttribute(String key) {
-        return attributes != null && key != null && attributes.containsKey(key);
+        if (key == null) {
+            return false;
+        }
+        if (ATTR_LIST_SEQ.equals(key)) {
+            return true;
+        }
+        int slot = attributeLayout.slotOf(key);
+        return slot >= 0 && attributeValues[slot] != null;
     }
 
     /**
      * Removes a derived attribute that is no longer needed during internal processing.
      */
     public void removeAttribute(String key) {
-        if (attributes == null || key == null) {
+        if (key == null) {
             return;
         }
-        attributes.remove(key);
+        int slot = attributeLayout.slotOf(key);
+        if (slot >= 0) {
+            attributeValues[slot] = null;
+        }
     }
 
     /**
      * Reflects the sending result in a typed state.
      */
     public void applySendResult(SendResult sendResult, String endDateTime, String emailDomain) {
-        this.sendCode = String.valueOf(sendResult.statusCode());
+        applySendResult(sendResult, parseEndDateTime(endDateTime), emailDomain);
+    }
+
+    /**
+     * Reflects the sending result in a typed state.
+     *
+     * @param endDateTime End time as a yyyyMMddHHmmss number (see {@link #packDateTime(LocalDateTime)})
+     */
+    public void applySendResult(SendResult sendResult, long endDateTime, String emailDomain) {
+        this.sendCode = formatSendCode(sendResult.statusCode());
+        this.sendCodeValue = sendResult.statusCode();
         this.sendStatus = sendResult.success() ? "SUCCESS" : "FAILURE";
         this.endDateTime = endDateTime;
         this.emailDomain = emailDomain;
@@ -172,10 +270,19 @@ public final class EmailSendTarget {
     }
 
     /**
-     * Read-only view of additional attributes (Map).
+     * Read-only view of additional attributes (Map), including listSeq.
+     * Built on each call; prefer {@link #getAttribute(String)} for single lookups.
      */
     public Map<String, Object> attributesView() {
-        return attributes == null ? Collections.emptyMap() : Collections.unmodifiableMap(attributes);
+        Map<String, Object> view = new HashMap<>();
+        for (int slot = 0; slot < attributeValues.length; slot++) {
+            Object v = attributeValues[slot];
+            if (v != null) {
+                view.put(attributeLayout.keyAt(slot), v == NULL_VALUE ? null : v);
+            }
+        }
+        view.put(ATTR_LIST_SEQ, listSeq);
+        return Collections.unmodifiableMap(view);
     }
 
     public boolean isUnprocessed() {
@@ -187,7 +294,69 @@ public final class EmailSendTarget {
     }
 
     public EmailSendProgress toProgress() {
-        return new EmailSendProgress(getAttributeInt(ATTR_LIST_SEQ, 0), targetEmail, sendCode, sendStatus, errorMessage, endDateTime, emailDomain, retryCount);
+        return new EmailSendProgress(listSeq, targetEmail, getSendCode(), sendStatus, errorMessage, getEndDateTime(), emailDomain, retryCount);
+    }
+
+    /**
+     * Packs a time into a yyyyMMddHHmmss number, the format end times are reported in.
+     */
+    public static long packDateTime(LocalDateTime dateTime) {
+        return dateTime.getYear() * 10_000_000_000L
+                + dateTime.getMonthValue() * 100_000_000L
+                + dateTime.getDayOfMonth() * 1_000_000L
+                + dateTime.getHour() * 10_000L
+                + dateTime.getMinute() * 100L
+                + dateTime.getSecond();
+    }
+
+    private static int parseSendCode(String sendCode) {
+        if (sendCode == null || sendCode.isBlank()) {
+            return NO_SEND_CODE;
+        }
+        try {
+            return Integer.parseInt(sendCode.trim());
+        } catch (NumberFormatException e) {
+            return NO_SEND_CODE;
+        }
+    }
+
+    private static String formatSendCode(int statusCode) {
+        if (statusCode < 0 || statusCode >= SEND_CODES.length) {
+            return String.valueOf(statusCode);
+        }
+        String code = SEND_CODES[statusCode];
+        if (code == null) {
+            // Racy initialization is harmless: every thread stores an equal string
+            code = String.valueOf(statusCode);
+            SEND_CODES[statusCode] = code;
+        }
+        return code;
+    }
+
+    private static long parseEndDateTime(String endDateTime) {
+        if (endDateTime == null || endDateTime.isBlank()) {
+            return NO_END_DATE_TIME;
+        }
+        try {
+            return Long.parseLong(endDateTime.trim());
+        } catch (NumberFormatException e) {
+            return NO_END_DATE_TIME;
+        }
+    }
+
+    /**
+     * Returns the shared constant for the usual statuses so targets do not each hold a copy.
+     */
+    private static String canonicalStatus(String sendStatus) {
+        if (sendStatus == null) {
+            return null;
+        }
+        return switch (sendStatus) {
+            case "PENDING" -> "PENDING";
+            case "SUCCESS" -> "SUCCESS";
+            case "FAILURE" -> "FAILURE";
+            default -> sendStatus;
+        };
     }
 
     @Override
@@ -204,22 +373,56 @@ public final class EmailSendTarget {
                 && Objects.equals(this.senderEmail, that.senderEmail)
                 && Objects.equals(this.targetId, that.targetId)
                 && Objects.equals(this.targetName, that.targetName)
-                && Objects.equals(this.title, that.title)
-                && Objects.equals(this.body, that.body)
-                && Objects.equals(this.attributes, that.attributes)
+                && Objects.equals(this.getTitle(), that.getTitle())
+                && Objects.equals(this.getBody(), that.getBody())
+                && this.listSeq == that.listSeq
+                && this.containsAttributesOf(that)
+                && that.containsAttributesOf(this)
                 && Objects.equals(this.attachments, that.attachments)
                 && this.retryCount == that.retryCount
                 && Objects.equals(this.sendCode, that.sendCode)
                 && Objects.equals(this.sendStatus, that.sendStatus)
                 && Objects.equals(this.errorMessage, that.errorMessage)
-                && Objects.equals(this.endDateTime, that.endDateTime)
+                && this.endDateTime == that.endDateTime
                 && Objects.equals(this.emailDomain, that.emailDomain);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(targetEmail, senderName, senderEmail, targetId, targetName, title, body,
-                attributes, attachments, retryCount, sendCode, sendStatus, errorMessage, endDateTime, emailDomain);
+        return Objects.hash(targetEmail, senderName, senderEmail, targetId, targetName, getTitle(), getBody(), listSeq,
+                attributesHashCode(), attachments, retryCount, sendCode, sendStatus, errorMessage, endDateTime, emailDomain);
+    }
+
+    /**
+     * Returns whether every attribute present in {@code other} is present here with an equal value.
+     */
+    private boolean containsAttributesOf(EmailSendTarget other) {
+        boolean sameLayout = attributeLayout == other.attributeLayout;
+        for (int slot = 0; slot < other.attributeValues.length; slot++) {
+            Object v = other.attributeValues[slot];
+            if (v == null) {
+                continue;
+            }
+            int mine = sameLayout ? slot : attributeLayout.slotOf(other.attributeLayout.keyAt(slot));
+            if (mine < 0 || !Objects.equals(attributeValues[mine], v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes present attributes independently of slot order, so equal targets with different layouts hash alike.
+     */
+    private int attributesHashCode() {
+        int hash = 0;
+        for (int slot = 0; slot < attributeValues.length; slot++) {
+            Object v = attributeValues[slot];
+            if (v != null) {
+                hash += attributeLayout.keyAt(slot).hashCode() ^ (v == NULL_VALUE ? 0 : v.hashCode());
+            }
+        }
+        return hash;
     }
 
     @Override
@@ -229,13 +432,13 @@ public final class EmailSendTarget {
                 + "senderName=" + senderName + ", "
                 + "senderEmail=" + senderEmail + ", "
                 + "targetId=" + targetId + ", "
-                + "listSeq=" + getAttributeInt(ATTR_LIST_SEQ, 0) + ", "
+                + "listSeq=" + listSeq + ", "
                 + "targetName=" + targetName + ", "
-                + "title=" + title + ", "
-                + "body=" + (body != null ? "<" + body.length() + " chars>" : null) + ", "
+                + "title=" + getTitle() + ", "
+                + "body=" + (getBody() != null ? "<" + getBody().length() + " chars>" : null) + ", "
                 + "rejectUrl=" + getAttributeString(ATTR_REJECT_URL) + ", "
                 + "retryCount=" + retryCount + ", "
-                + "sendCode=" + sendCode + ", "
+                + "sendCode=" + getSendCode() + ", "
                 + "sendStatus=" + sendStatus + ']';
     }
 
@@ -0,0 +1,77 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.entry;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Attribute key to slot mapping shared by every target with the same attribute keys.
+ * <p>
+ * Targets keep their attribute values in a flat array indexed by this layout instead of a map of their own.
+ * Layouts are interned by key set, so the targets of one run normally share a single instance.
+ */
+final class TargetAttributeLayout {
+
+    // Upper bound of interned layouts; key sets beyond it get an uncached layout
+    private static final int MAX_INTERNED_LAYOUTS = 1024;
+    private static final Map<List<String>, TargetAttributeLayout> INTERNED = new ConcurrentHashMap<>();
+
+    static final TargetAttributeLayout EMPTY = new TargetAttributeLayout(new String[0]);
+
+    private final String[] keys;
+    private final Map<String, Integer> slots;
+
+    private TargetAttributeLayout(String[] keys) {
+        this.keys = keys;
+        this.slots = new HashMap<>(Math.max(4, keys.length * 2));
+        for (int i = 0; i < keys.length; i++) {
+            slots.put(keys[i], i);
+        }
+    }
+
+    /**
+     * Returns the shared layout of the given keys.
+     *
+     * @throws IllegalArgumentException if a key is null
+     */
+    static TargetAttributeLayout of(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return EMPTY;
+        }
+        String[] sorted = keys.toArray(new String[0]);
+        for (String key : sorted) {
+            if (key == null) {
+                throw new IllegalArgumentException("Attribute key must not be null");
+            }
+        }
+        Arrays.sort(sorted);
+        List<String> key = List.of(sorted);
+        TargetAttributeLayout layout = INTERNED.get(key);
+        if (layout != null) {
+            return layout;
+        }
+        if (INTERNED.size() >= MAX_INTERNED_LAYOUTS) {
+            return new TargetAttributeLayout(sorted);
+        }
+        return INTERNED.computeIfAbsent(key, k -> new TargetAttributeLayout(sorted));
+    }
+
+    /**
+     * Returns the slot of {@code key}, or -1 if the layout has no such key.
+     */
+    int slotOf(String key) {
+        Integer slot = slots.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    String keyAt(int slot) {
+        return keys[slot];
+    }
+
+    int size() {
+        return keys.length;
+    }
+}
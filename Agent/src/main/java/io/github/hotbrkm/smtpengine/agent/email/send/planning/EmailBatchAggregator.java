@@ -2,32 +2,64 @@ package io.github.hotbrkm.smtpengine.agent.email.send.planning;
 
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchRunSummary;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Batch aggregator
  * <p>
- * - Wait for all batch Futures to complete (with timeout)
- * - Aggregate batch success/failure counts
- * - Generate per-domain transmission statistics and output summary log
+ * - Aggregate each batch Future as it completes into batch and per-domain counters
+ * - Expose a live summary ({@link #snapshot()}, per-domain breakdown on demand via {@link #getDomainStats()})
+ *   and notify a progress listener per completed batch
+ * - Wait for all tracked batches to complete (with timeout) and output summary log
  */
 @Slf4j
-@RequiredArgsConstructor
 public final class EmailBatchAggregator {
+
+    /**
+     * Receives each completed batch.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * @param result           Completed batch result ({@code null} if the Future completed exceptionally)
+         * @param completedBatches Batches completed so far
+         * @param trackedBatches   Batches tracked so far
+         */
+        void onBatchCompleted(EmailBatchResult result, int completedBatches, int trackedBatches);
+    }
+
     private final String runnerId;
     private final int topDomainSummaryLimit;
+    private final ProgressListener progressListener;
+
+    private final AtomicInteger trackedBatches = new AtomicInteger();
+    private final AtomicInteger completedBatches = new AtomicInteger();
+    private final AtomicInteger successBatches = new AtomicInteger();
+    private final AtomicInteger failedBatches = new AtomicInteger();
+    private final Map<String, DomainCounter> domainCounters = new ConcurrentHashMap<>();
+    private final Object completionMonitor = new Object();
+
+    public EmailBatchAggregator(String runnerId, int topDomainSummaryLimit) {
+        this(runnerId, topDomainSummaryLimit, null);
+    }
+
+    public EmailBatchAggregator(String runnerId, int topDomainSummaryLimit, ProgressListener progressListener) {
+        this.runnerId = runnerId;
+        this.topDomainSummaryLimit = topDomainSummaryLimit;
+        this.progressListener = progressListener;
+    }
 
     /**
      * Aggregates Future list to create execution summary
@@ -37,99 +69,158 @@ public final class EmailBatchAggregator {
      * @return Execution summary info
      */
     public EmailBatchRunSummary aggregate(List<CompletableFuture<EmailBatchResult>> futures, long timeoutMs) {
-        CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
-        try {
-            all.get(timeoutMs, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException e) {
-            log.warn("runnerId={}, event=wait_timeout, timeoutMs={}", runnerId, timeoutMs);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.warn("runnerId={}, event=wait_interrupted", runnerId);
-        } catch (ExecutionException e) {
-            Throwable cause = e.getCause() != null ? e.getCause() : e;
-            log.warn("runnerId={}, event=wait_error, message={}", runnerId, cause.getMessage());
+        for (CompletableFuture<EmailBatchResult> future : futures) {
+            track(future);
         }
+        return awaitCompletion(timeoutMs);
+    }
 
-        int successCount = 0;
-        int failureCount = 0;
-        Map<String, Integer> domainTotals = new HashMap<>();
-        Map<String, Integer> domainSuccesses = new HashMap<>();
+    /**
+     * Starts aggregating a batch Future; its result is counted as soon as it completes.
+     */
+    public void track(CompletableFuture<EmailBatchResult> future) {
+        trackedBatches.incrementAndGet();
+        future.whenComplete(this::record);
+    }
 
-        for (CompletableFuture<EmailBatchResult> future : futures) {
-            if (!future.isDone()) {
-                failureCount++;
-                log.warn("runnerId={}, event=batch_not_completed_within_timeout", runnerId);
-                continue;
-            }
+    /**
+     * Waits until every tracked batch completes, then returns the final summary.
+     * Batches still running when {@code timeoutMs} elapses are counted as failed.
+     *
+     * @param timeoutMs Total wait timeout (ms)
+     * @return Execution summary info
+     */
+    public EmailBatchRunSummary awaitCompletion(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (completionMonitor) {
             try {
-                EmailBatchResult result = future.join();
-                if (result.success()) {
-                    successCount++;
-                } else {
-                    failureCount++;
-                    log.warn("runnerId={}, batchId={}, event=batch_failed, errorMessage={}",
-                            runnerId, result.batchId(),
-                            result.exception() != null ? result.exception().getMessage() : "Unknown error");
+                while (completedBatches.get() < trackedBatches.get()) {
+                    long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMs <= 0) {
+                        log.warn("runnerId={}, event=wait_timeout, timeoutMs={}", runnerId, timeoutMs);
+                        break;
+                    }
+                    completionMonitor.wait(remainingMs);
                 }
-                aggregateDomainStats(domainTotals, domainSuccesses, result);
-            } catch (CompletionException e) {
-                failureCount++;
-                Throwable cause = e.getCause() != null ? e.getCause() : e;
-                log.warn("runnerId={}, event=future_completed_exceptionally, message={}", runnerId, cause.getMessage());
-            } catch (Exception e) {
-                failureCount++;
-                log.warn("runnerId={}, event=error_while_aggregating, message={}", runnerId, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("runnerId={}, event=wait_interrupted", runnerId);
             }
         }
 
+        EmailBatchRunSummary live = snapshot();
+        int notCompleted = live.totalBatches() - live.successBatches() - live.failedBatches();
+        if (notCompleted > 0) {
+            log.warn("runnerId={}, event=batch_not_completed_within_timeout, batches={}", runnerId, notCompleted);
+        }
+        EmailBatchRunSummary summary = EmailBatchRunSummary.builder()
+                .runnerId(runnerId)
+                .totalBatches(live.totalBatches())
+                .successBatches(live.successBatches())
+                .failedBatches(live.failedBatches() + Math.max(0, notCompleted))
+                .domainStats(getDomainStats())
+                .build();
+
         log.info("runnerId={}, successBatches={}, failedBatches={}, totalBatches={}",
-                runnerId, successCount, failureCount, futures.size());
+                runnerId, summary.successBatches(), summary.failedBatches(), summary.totalBatches());
 
         // Top domain summary log
-        logTopDomainSummary(domainTotals, domainSuccesses);
-
-        // Compose DomainStats
-        Map<String, EmailBatchRunSummary.DomainStats> stats = new LinkedHashMap<>();
-        for (Map.Entry<String, Integer> e : domainTotals.entrySet()) {
-            String domain = e.getKey();
-            int total = e.getValue();
-            int success = domainSuccesses.getOrDefault(domain, 0);
-            stats.put(domain, new EmailBatchRunSummary.DomainStats(total, success));
-        }
+        logTopDomainSummary(summary.domainStatsView());
+        return summary;
+    }
 
+    /**
+     * Returns the batch counts completed so far from the running totals, in constant time regardless of the number of
+     * domains; batches still running count toward the total only. Per-domain statistics are left empty, see
+     * {@link #getDomainStats()}.
+     */
+    public EmailBatchRunSummary snapshot() {
         return EmailBatchRunSummary.builder()
                 .runnerId(runnerId)
-                .totalBatches(futures.size())
-                .successBatches(successCount)
-                .failedBatches(failureCount)
-                .domainStats(stats)
+                .totalBatches(trackedBatches.get())
+                .successBatches(successBatches.get())
+                .failedBatches(failedBatches.get())
+                .domainStats(Map.of())
                 .build();
     }
 
     /**
-     * Accumulates per-domain total/success counts
+     * Builds the per-domain target counts of batches completed so far. Runs in O(domains).
      */
-    private void aggregateDomainStats(Map<String, Integer> domainTotals, Map<String, Integer> domainSuccesses, EmailBatchResult result) {
-        domainTotals.merge(result.domain(), result.totalTargets(), Integer::sum);
-        domainSuccesses.merge(result.domain(), result.successCount(), Integer::sum);
+    public Map<String, EmailBatchRunSummary.DomainStats> getDomainStats() {
+        Map<String, EmailBatchRunSummary.DomainStats> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, DomainCounter> e : domainCounters.entrySet()) {
+            stats.put(e.getKey(), new EmailBatchRunSummary.DomainStats(e.getValue().total.intValue(), e.getValue().success.intValue()));
+        }
+        return stats;
+    }
+
+    public int getTrackedBatches() {
+        return trackedBatches.get();
+    }
+
+    public int getCompletedBatches() {
+        return completedBatches.get();
+    }
+
+    private void record(EmailBatchResult result, Throwable error) {
+        try {
+            if (error != null) {
+                failedBatches.incrementAndGet();
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                log.warn("runnerId={}, event=future_completed_exceptionally, message={}", runnerId, cause.getMessage());
+                result = null;
+            } else if (result.success()) {
+                successBatches.incrementAndGet();
+            } else {
+                failedBatches.incrementAndGet();
+                log.warn("runnerId={}, batchId={}, event=batch_failed, errorMessage={}",
+                        runnerId, result.batchId(),
+                        result.exception() != null ? result.exception().getMessage() : "Unknown error");
+            }
+            if (result != null) {
+                DomainCounter counter = domainCounters.computeIfAbsent(result.domain(), domain -> new DomainCounter());
+                counter.total.add(result.totalTargets());
+                counter.success.add(result.successCount());
+            }
+        } catch (Exception e) {
+            log.warn("runnerId={}, event=error_while_aggregating, message={}", runnerId, e.getMessage());
+        }
+
+        int completed = completedBatches.incrementAndGet();
+        notifyProgress(result, completed);
+        synchronized (completionMonitor) {
+            completionMonitor.notifyAll();
+        }
+    }
+
+    private void notifyProgress(EmailBatchResult result, int completed) {
+        if (progressListener == null) {
+            return;
+        }
+        try {
+            progressListener.onBatchCompleted(result, completed, trackedBatches.get());
+        } catch (Exception e) {
+            log.warn("runnerId={}, event=progress_listener_failed, message={}", runnerId, e.getMessage());
+        }
     }
 
     /**
      * Output top domain summary log by transmission count
      */
-    private void logTopDomainSummary(Map<String, Integer> domainTotals, Map<String, Integer> domainSuccesses) {
-        if (domainTotals.isEmpty()) {
+    private void logTopDomainSummary(Map<String, EmailBatchRunSummary.DomainStats> domainStats) {
+        if (domainStats.isEmpty()) {
             return;
         }
-        List<Map.Entry<String, Integer>> entries = new ArrayList<>(domainTotals.entrySet());
-        entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        List<Map.Entry<String, EmailBatchRunSummary.DomainStats>> entries = new ArrayList<>(domainStats.entrySet());
+        entries.sort((a, b) -> Integer.compare(b.getValue().total(), a.getValue().total()));
         int limit = Math.min(topDomainSummaryLimit, entries.size());
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < limit; i++) {
-            Map.Entry<String, Integer> e = entries.get(i);
+            Map.Entry<String, EmailBatchRunSummary.DomainStats> e = entries.get(i);
             String domain = e.getKey();
-            int total = e.getValue();
-            int success = domainSuccesses.getOrDefault(domain, 0);
+            int total = e.getValue().total();
+            int success = e.getValue().success();
             double rate = total > 0 ? (success * 100.0) / total : 0.0;
             if (i > 0) {
                 sb.append(", ");
@@ -142,4 +233,12 @@ public final class EmailBatchAggregator {
         }
         log.info("runnerId={}, topDomainLimit={}, topDomains={}", runnerId, topDomainSummaryLimit, sb);
     }
+
+    /**
+     * Per-domain target counters, updated by completing batches.
+     */
+    private static final class DomainCounter {
+        private final LongAdder total = new LongAdder();
+        private final LongAdder success = new LongAdder();
+    }
 }
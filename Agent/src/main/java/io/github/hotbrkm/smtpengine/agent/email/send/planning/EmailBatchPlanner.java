@@ -1,25 +1,35 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.planning;
 
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailContentRegistry;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
 import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
 import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
-import lombok.RequiredArgsConstructor;
-
+import io.github.hotbrkm.smtpengine.agent.email.send.recipient.MappedRecipientStore;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * Batch planner
  * <p>
  * - Group input SmtpRequest list by domain
+ * - Share each distinct title/body pair among the run's targets through an {@link EmailContentRegistry}
  * - Slice according to domain policy (send count per session)
  * - Create EmailBatchSubmitRequest list for engine submission
+ * - Optionally merge domains of one shared-session MX group so their recipients go out on the same SMTP session
+ * - Optionally set aside suppressed (previously hard-bounced) recipients into {@link BounceSuppressionStore#SUPPRESSED_DOMAIN} batches
+ * - Or plan a target stream incrementally with bounded per-domain buffers ({@link #planStreaming})
+ * - Optionally move each planned batch into a {@link MappedRecipientStore} so it holds an index range instead of targets
  */
-@RequiredArgsConstructor
 public class EmailBatchPlanner {
 
     private final String runnerId;
@@ -27,6 +37,54 @@ public class EmailBatchPlanner {
     private final EmailDomainManager emailDomainManager;
     private final EmailSendContext emailSendContext;
     private final EmailBatchResultWriter resultWriter;
+    private final UnaryOperator<String> sharedSessionGroupResolver;
+    private final Predicate<String> suppressedAddress;
+    private final MappedRecipientStore recipientStore;
+    private final EmailContentRegistry contentRegistry = new EmailContentRegistry();
+
+    public EmailBatchPlanner(String runnerId, List<EmailSendTarget> emailSendTargets, EmailDomainManager emailDomainManager,
+                             EmailSendContext emailSendContext, EmailBatchResultWriter resultWriter) {
+        this(runnerId, emailSendTargets, emailDomainManager, emailSendContext, resultWriter, domain -> null);
+    }
+
+    /**
+     * @param sharedSessionGroupResolver Returns the group whose domains may share a session, or {@code null} to keep the domain separate.
+     *                                   A merged batch is submitted under its first target's domain and sized by the group's domain entry.
+     */
+    public EmailBatchPlanner(String runnerId, List<EmailSendTarget> emailSendTargets, EmailDomainManager emailDomainManager,
+                             EmailSendContext emailSendContext, EmailBatchResultWriter resultWriter,
+                             UnaryOperator<String> sharedSessionGroupResolver) {
+        this(runnerId, emailSendTargets, emailDomainManager, emailSendContext, resultWriter, sharedSessionGroupResolver, null);
+    }
+
+    /**
+     * @param suppressedAddress Returns whether a recipient address is suppressed, or {@code null} to send to every recipient.
+     *                          Suppressed targets are planned under {@link BounceSuppressionStore#SUPPRESSED_DOMAIN}.
+     */
+    public EmailBatchPlanner(String runnerId, List<EmailSendTarget> emailSendTargets, EmailDomainManager emailDomainManager,
+                             EmailSendContext emailSendContext, EmailBatchResultWriter resultWriter,
+                             UnaryOperator<String> sharedSessionGroupResolver, Predicate<String> suppressedAddress) {
+        this(runnerId, emailSendTargets, emailDomainManager, emailSendContext, resultWriter, sharedSessionGroupResolver,
+                suppressedAddress, null);
+    }
+
+    /**
+     * @param recipientStore Store that planned batches are appended to, or {@code null} to keep batch targets on heap.
+     *                       Batches then carry a {@link io.github.hotbrkm.smtpengine.agent.email.send.recipient.StoredTargetRange}.
+     */
+    public EmailBatchPlanner(String runnerId, List<EmailSendTarget> emailSendTargets, EmailDomainManager emailDomainManager,
+                             EmailSendContext emailSendContext, EmailBatchResultWriter resultWriter,
+                             UnaryOperator<String> sharedSessionGroupResolver, Predicate<String> suppressedAddress,
+                             MappedRecipientStore recipientStore) {
+        this.runnerId = runnerId;
+        this.emailSendTargets = emailSendTargets;
+        this.emailDomainManager = emailDomainManager;
+        this.emailSendContext = emailSendContext;
+        this.resultWriter = resultWriter;
+        this.sharedSessionGroupResolver = sharedSessionGroupResolver != null ? sharedSessionGroupResolver : domain -> null;
+        this.suppressedAddress = suppressedAddress;
+        this.recipientStore = recipientStore;
+    }
 
     /**
      * Groups targets by domain and creates submit requests by splitting into batch units according to policy
@@ -38,22 +96,85 @@ public class EmailBatchPlanner {
     }
 
     /**
-     * Groups target data by domain
+     * Plans targets pulled from {@code source} incrementally instead of the constructor's target list
+     * <p>
+     * - A batch is handed to {@code sink} as soon as its domain (or group) buffer reaches the session size
+     * - When all buffers together hold {@code maxBufferedTargets}, the oldest buffers are handed over early as partial batches
+     * until half of that is left
+     * - Remaining buffers are handed over once the source is exhausted
+     *
+     * @param source             Target source; read once, in order
+     * @param maxBufferedTargets Upper bound of targets held across all buffers
+     * @param sink               Receives each planned batch; may block to apply backpressure
+     * @return Number of targets planned
+     */
+    public int planStreaming(Iterator<EmailSendTarget> source, int maxBufferedTargets, Consumer<EmailBatchSpec> sink) {
+        int bufferLimit = Math.max(1, maxBufferedTargets);
+        Map<String, List<EmailSendTarget>> buffers = new LinkedHashMap<>();
+        Map<String, Integer> batchSizes = new HashMap<>();
+        Map<String, String> groupKeyCache = new HashMap<>();
+        int batchIndex = 0;
+        int buffered = 0;
+        int planned = 0;
+
+        while (source.hasNext()) {
+            EmailSendTarget emailSendTarget = source.next();
+            emailSendTarget.internContent(contentRegistry);
+            String key = resolveKey(emailSendTarget, groupKeyCache);
+            List<EmailSendTarget> buffer = buffers.computeIfAbsent(key, k -> new ArrayList<>());
+            buffer.add(emailSendTarget);
+            buffered++;
+            planned++;
+
+            if (buffer.size() >= batchSizes.computeIfAbsent(key, this::getBatchSizeForDomain)) {
+                buffers.remove(key);
+                buffered -= buffer.size();
+                sink.accept(createEmailBatchSpec(batchIndex++, key, buffer));
+            } else if (buffered >= bufferLimit) {
+                Iterator<Map.Entry<String, List<EmailSendTarget>>> oldest = buffers.entrySet().iterator();
+                while (buffered > bufferLimit / 2 && oldest.hasNext()) {
+                    Map.Entry<String, List<EmailSendTarget>> entry = oldest.next();
+                    oldest.remove();
+                    buffered -= entry.getValue().size();
+                    sink.accept(createEmailBatchSpec(batchIndex++, entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        for (Map.Entry<String, List<EmailSendTarget>> entry : buffers.entrySet()) {
+            sink.accept(createEmailBatchSpec(batchIndex++, entry.getKey(), entry.getValue()));
+        }
+        return planned;
+    }
+
+    /**
+     * Groups target data by domain, or by shared-session group when the domain belongs to one
      *
-     * @return Map of SmtpRequest list with domain as key
+     * @return Map of SmtpRequest list with domain (or group) as key
      */
     private Map<String, List<EmailSendTarget>> groupByDomain() {
         Map<String, List<EmailSendTarget>> domainGroups = new LinkedHashMap<>();
+        Map<String, String> groupKeyCache = new LinkedHashMap<>();
 
         for (EmailSendTarget emailSendTarget : emailSendTargets) {
-            String domain = emailSendTarget.getDomain();
-
-            domainGroups.computeIfAbsent(domain, k -> new ArrayList<>()).add(emailSendTarget);
+            emailSendTarget.internContent(contentRegistry);
+            String key = resolveKey(emailSendTarget, groupKeyCache);
+            domainGroups.computeIfAbsent(key, k -> new ArrayList<>()).add(emailSendTarget);
         }
 
         return domainGroups;
     }
 
+    /**
+     * Returns the grouping key of a target: the suppressed marker, its shared-session group or its domain
+     */
+    private String resolveKey(EmailSendTarget emailSendTarget, Map<String, String> groupKeyCache) {
+        if (suppressedAddress != null && suppressedAddress.test(emailSendTarget.getTargetEmail())) {
+            return BounceSuppressionStore.SUPPRESSED_DOMAIN;
+        }
+        return groupKeyCache.computeIfAbsent(emailSendTarget.getDomain(), this::resolveGroupKey);
+    }
+
     /**
      * Splits domain groups into batch units to create submit requests
      *
@@ -65,22 +186,32 @@ public class EmailBatchPlanner {
         int batchIndex = 0;
 
         for (Map.Entry<String, List<EmailSendTarget>> entry : domainGroups.entrySet()) {
-            String domain = entry.getKey();
             List<EmailSendTarget> requests = entry.getValue();
-            int batchSize = getBatchSizeForDomain(domain);
+            int batchSize = getBatchSizeForDomain(entry.getKey());
 
             for (int i = 0; i < requests.size(); i += batchSize) {
                 int endIndex = Math.min(i + batchSize, requests.size());
                 List<EmailSendTarget> emailSendTargets = new ArrayList<>(requests.subList(i, endIndex));
-
-                String batchId = runnerId + "-batch-" + (batchIndex++);
-                batches.add(new EmailBatchSpec(batchId, domain, emailSendTargets, runnerId, resultWriter, emailSendContext));
+                batches.add(createEmailBatchSpec(batchIndex++, entry.getKey(), emailSendTargets));
             }
         }
 
         return batches;
     }
 
+    private EmailBatchSpec createEmailBatchSpec(int batchIndex, String key, List<EmailSendTarget> emailSendTargets) {
+        // Shared-session batches connect using the first target's domain; others are single-domain anyway.
+        String domain = BounceSuppressionStore.SUPPRESSED_DOMAIN.equals(key) ? key : emailSendTargets.getFirst().getDomain();
+        String batchId = runnerId + "-batch-" + batchIndex;
+        List<EmailSendTarget> batchTargets = recipientStore != null ? recipientStore.append(emailSendTargets) : emailSendTargets;
+        return new EmailBatchSpec(batchId, domain, batchTargets, runnerId, resultWriter, emailSendContext);
+    }
+
+    private String resolveGroupKey(String domain) {
+        String group = sharedSessionGroupResolver.apply(domain);
+        return group != null && !group.isBlank() ? group : domain;
+    }
+
     /**
      * Gets batch size for domain
      *
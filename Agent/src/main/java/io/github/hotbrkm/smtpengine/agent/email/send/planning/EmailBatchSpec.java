@@ -6,6 +6,7 @@ import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Objects;
 
@@ -20,6 +21,13 @@ public final class EmailBatchSpec {
     private final EmailBatchResultWriter resultWriter;
     private final EmailSendContext emailSendContext;
 
+    /**
+     * Returns the delivery deadline carried by the send context, or {@code null} if none.
+     */
+    public Instant getDeadline() {
+        return emailSendContext != null ? emailSendContext.deadline() : null;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) {
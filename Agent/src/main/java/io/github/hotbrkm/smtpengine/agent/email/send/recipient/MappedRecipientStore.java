@@ -0,0 +1,420 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.recipient;
+
+import io.github.hotbrkm.smtpengine.agent.email.mime.AttachmentMedia;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailContent;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Memory-mapped store that keeps queued recipients off the Java heap.
+ * <p>
+ * Each target is a fixed-layout record in a record file; its strings and attributes live in a separate string arena.
+ * Both files are mapped in segments under the store directory and deleted when the store is closed.
+ * Contents and attachment lists, which are shared by many targets, stay on heap in small tables referenced by id.
+ * <p>
+ * Targets are appended in batch order, so every batch is one index range ({@link StoredTargetRange}) that is read
+ * back onto the heap only when the batch is first accessed, i.e. when it is dispatched. A range whose batch ends
+ * without being dispatched (cancelled, timed out, rejected) is discarded unread via {@link StoredTargetRange#release()}.
+ * The store is safe for one appending thread and any number of reading threads.
+ */
+@Slf4j
+public final class MappedRecipientStore implements Closeable {
+
+    // Record layout: 10 arena offsets, then listSeq, contentId, attachmentsId, retryCount, then the sendCode arena offset
+    private static final int OFF_TARGET_EMAIL = 0;
+    private static final int OFF_TARGET_ID = 8;
+    private static final int OFF_TARGET_NAME = 16;
+    private static final int OFF_SENDER_NAME = 24;
+    private static final int OFF_SENDER_EMAIL = 32;
+    private static final int OFF_SEND_STATUS = 40;
+    private static final int OFF_ERROR_MESSAGE = 48;
+    private static final int OFF_END_DATE_TIME = 56;
+    private static final int OFF_EMAIL_DOMAIN = 64;
+    private static final int OFF_ATTRIBUTES = 72;
+    private static final int OFF_LIST_SEQ = 80;
+    private static final int OFF_CONTENT_ID = 84;
+    private static final int OFF_ATTACHMENTS_ID = 88;
+    private static final int OFF_RETRY_COUNT = 92;
+    private static final int OFF_SEND_CODE = 96;
+    static final int RECORD_BYTES = 104;
+
+    private static final int RECORDS_PER_SEGMENT = 1 << 19;
+    private static final int ARENA_SEGMENT_BYTES = 64 << 20;
+    private static final long NULL_OFFSET = -1L;
+    private static final int NO_ATTACHMENTS = -1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+
+    private final Path recordFile;
+    private final Path arenaFile;
+    private final FileChannel recordChannel;
+    private final FileChannel arenaChannel;
+    private final List<MappedByteBuffer> recordSegments = new ArrayList<>();
+    private final List<MappedByteBuffer> arenaSegments = new ArrayList<>();
+    private final List<EmailContent> contents = new ArrayList<>();
+    private final Map<EmailContent, Integer> contentIds = new HashMap<>();
+    private final List<List<AttachmentMedia>> attachmentLists = new ArrayList<>();
+    private final Map<List<AttachmentMedia>, Integer> attachmentListIds = new HashMap<>();
+
+    private int size;
+    private long arenaPosition;
+    // Ranges handed out but neither read back nor discarded; the files are released once the store is closed and this reaches 0
+    private int pendingRanges;
+    private boolean closeRequested;
+    private boolean released;
+
+    /**
+     * Creates an empty store with new files under {@code directory}.
+     */
+    public MappedRecipientStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        String name = "recipients-" + UUID.randomUUID();
+        this.recordFile = directory.resolve(name + ".rec");
+        this.arenaFile = directory.resolve(name + ".arena");
+        this.recordChannel = FileChannel.open(recordFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            this.arenaChannel = FileChannel.open(arenaFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException | RuntimeException e) {
+            recordChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the targets as consecutive records and returns the range that reads them back.
+     * The given target objects are not referenced afterwards.
+     */
+    public synchronized StoredTargetRange append(List<EmailSendTarget> targets) {
+        ensureOpen();
+        int from = size;
+        try {
+            for (EmailSendTarget target : targets) {
+                writeRecord(size, target);
+                size++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write recipients to " + recordFile, e);
+        }
+        pendingRanges++;
+        return new StoredTargetRange(this, from, size);
+    }
+
+    /**
+     * Returns the number of stored targets.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Releases the files once every range handed out has been read back or discarded.
+     */
+    @Override
+    public synchronized void close() {
+        closeRequested = true;
+        if (pendingRanges == 0) {
+            release();
+        } else {
+            log.info("Recipient store close deferred until {} queued ranges are read or discarded. file={}", pendingRanges, recordFile);
+        }
+    }
+
+    /**
+     * Reads the targets of [from, to) back onto the heap; called once per range.
+     */
+    synchronized List<EmailSendTarget> read(int from, int to) {
+        List<EmailSendTarget> targets = copy(from, to);
+        settleRange();
+        return targets;
+    }
+
+    /**
+     * Reads a copy of the targets of [from, to) without settling the range, which is still read later.
+     */
+    synchronized List<EmailSendTarget> copy(int from, int to) {
+        ensureReadable();
+        List<EmailSendTarget> targets = new ArrayList<>(to - from);
+        for (int index = from; index < to; index++) {
+            targets.add(readRecord(index));
+        }
+        return targets;
+    }
+
+    /**
+     * Gives up a range without reading it; called at most once per range, never together with {@link #read}.
+     */
+    synchronized void discard() {
+        settleRange();
+    }
+
+    /**
+     * Returns whether any target of [from, to) has attachments, without reading the targets.
+     */
+    synchronized boolean hasAttachment(int from, int to) {
+        ensureReadable();
+        for (int index = from; index < to; index++) {
+            if (recordBuffer(index).getInt(recordOffset(index) + OFF_ATTACHMENTS_ID) != NO_ATTACHMENTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeRecord(int index, EmailSendTarget target) throws IOException {
+        MappedByteBuffer buffer = recordSegmentForWrite(index);
+        int base = recordOffset(index);
+        buffer.putLong(base + OFF_TARGET_EMAIL, writeString(target.getTargetEmail()));
+        buffer.putLong(base + OFF_TARGET_ID, writeString(target.getTargetId()));
+        buffer.putLong(base + OFF_TARGET_NAME, writeString(target.getTargetName()));
+        buffer.putLong(base + OFF_SENDER_NAME, writeString(target.getSenderName()));
+        buffer.putLong(base + OFF_SENDER_EMAIL, writeString(target.getSenderEmail()));
+        buffer.putLong(base + OFF_SEND_STATUS, writeString(target.getSendStatus()));
+        buffer.putLong(base + OFF_ERROR_MESSAGE, writeString(target.getErrorMessage()));
+        buffer.putLong(base + OFF_END_DATE_TIME, writeString(target.getEndDateTime()));
+        buffer.putLong(base + OFF_EMAIL_DOMAIN, writeString(target.getEmailDomain()));
+        buffer.putLong(base + OFF_ATTRIBUTES, writeBytes(encodeAttributes(target.attributesView())));
+        buffer.putInt(base + OFF_LIST_SEQ, target.getListSeq());
+        buffer.putInt(base + OFF_CONTENT_ID, contentIdOf(target.getContent()));
+        buffer.putInt(base + OFF_ATTACHMENTS_ID, attachmentsIdOf(target.getAttachments()));
+        buffer.putInt(base + OFF_RETRY_COUNT, target.getRetryCount());
+        buffer.putLong(base + OFF_SEND_CODE, writeString(target.getSendCode()));
+    }
+
+    private EmailSendTarget readRecord(int index) {
+        MappedByteBuffer buffer = recordBuffer(index);
+        int base = recordOffset(index);
+        EmailContent content = contents.get(buffer.getInt(base + OFF_CONTENT_ID));
+        int attachmentsId = buffer.getInt(base + OFF_ATTACHMENTS_ID);
+        return EmailSendTarget.builder()
+                .targetEmail(readString(buffer.getLong(base + OFF_TARGET_EMAIL)))
+                .targetId(readString(buffer.getLong(base + OFF_TARGET_ID)))
+                .targetName(readString(buffer.getLong(base + OFF_TARGET_NAME)))
+                .senderName(readString(buffer.getLong(base + OFF_SENDER_NAME)))
+                .senderEmail(readString(buffer.getLong(base + OFF_SENDER_EMAIL)))
+                .sendStatus(readString(buffer.getLong(base + OFF_SEND_STATUS)))
+                .errorMessage(readString(buffer.getLong(base + OFF_ERROR_MESSAGE)))
+                .endDateTime(readString(buffer.getLong(base + OFF_END_DATE_TIME)))
+                .emailDomain(readString(buffer.getLong(base + OFF_EMAIL_DOMAIN)))
+                .targetData(decodeAttributes(buffer.getLong(base + OFF_ATTRIBUTES)))
+                .listSeq(buffer.getInt(base + OFF_LIST_SEQ))
+                .content(content)
+                .attachments(attachmentsId == NO_ATTACHMENTS ? null : attachmentLists.get(attachmentsId))
+                .retryCount(buffer.getInt(base + OFF_RETRY_COUNT))
+                .sendCode(readString(buffer.getLong(base + OFF_SEND_CODE)))
+                .build();
+    }
+
+    private int contentIdOf(EmailContent content) {
+        return contentIds.computeIfAbsent(content, key -> {
+            contents.add(key);
+            return contents.size() - 1;
+        });
+    }
+
+    private int attachmentsIdOf(List<AttachmentMedia> attachments) {
+        if (attachments == null || attachments.isEmpty()) {
+            return NO_ATTACHMENTS;
+        }
+        return attachmentListIds.computeIfAbsent(attachments, key -> {
+            attachmentLists.add(key);
+            return attachmentLists.size() - 1;
+        });
+    }
+
+    private long writeString(String value) throws IOException {
+        return value == null ? NULL_OFFSET : writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends a length-prefixed blob to the arena; blobs never span two segments.
+     */
+    private long writeBytes(byte[] bytes) throws IOException {
+        int length = Integer.BYTES + bytes.length;
+        if (length > ARENA_SEGMENT_BYTES) {
+            throw new IOException("Recipient field too large for the store: " + bytes.length + " bytes");
+        }
+        long segmentEnd = (arenaPosition / ARENA_SEGMENT_BYTES + 1) * ARENA_SEGMENT_BYTES;
+        if (arenaPosition + length > segmentEnd) {
+            arenaPosition = segmentEnd;
+        }
+        long offset = arenaPosition;
+        MappedByteBuffer segment = arenaSegmentForWrite((int) (offset / ARENA_SEGMENT_BYTES));
+        int position = (int) (offset % ARENA_SEGMENT_BYTES);
+        segment.putInt(position, bytes.length);
+        segment.put(position + Integer.BYTES, bytes);
+        arenaPosition += length;
+        return offset;
+    }
+
+    private String readString(long offset) {
+        byte[] bytes = readBytes(offset);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(long offset) {
+        if (offset == NULL_OFFSET) {
+            return null;
+        }
+        MappedByteBuffer segment = arenaSegments.get((int) (offset / ARENA_SEGMENT_BYTES));
+        int position = (int) (offset % ARENA_SEGMENT_BYTES);
+        byte[] bytes = new byte[segment.getInt(position)];
+        segment.get(position + Integer.BYTES, bytes);
+        return bytes;
+    }
+
+    /**
+     * Encodes attributes as: count, then per entry key, type tag and value.
+     * Values other than String/Integer/Long are stored as their String form.
+     */
+    private static byte[] encodeAttributes(Map<String, Object> attributes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES);
+        writeInt(out, scratch, attributes.size());
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            writeUtf8(out, scratch, entry.getKey());
+            Object value = entry.getValue();
+            if (value == null) {
+                out.write(TYPE_NULL);
+            } else if (value instanceof Integer i) {
+                out.write(TYPE_INT);
+                writeInt(out, scratch, i);
+            } else if (value instanceof Long l) {
+                out.write(TYPE_LONG);
+                scratch.clear();
+                out.write(scratch.putLong(0, l).array(), 0, Long.BYTES);
+            } else {
+                out.write(TYPE_STRING);
+                writeUtf8(out, scratch, String.valueOf(value));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private Map<String, Object> decodeAttributes(long offset) {
+        byte[] bytes = readBytes(offset);
+        if (bytes == null) {
+            return Map.of();
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        int count = in.getInt();
+        Map<String, Object> attributes = new LinkedHashMap<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            String key = readUtf8(in);
+            byte type = in.get();
+            Object value = switch (type) {
+                case TYPE_NULL -> null;
+                case TYPE_INT -> in.getInt();
+                case TYPE_LONG -> in.getLong();
+                default -> readUtf8(in);
+            };
+            attributes.put(key, value);
+        }
+        return attributes;
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, ByteBuffer scratch, int value) {
+        out.write(scratch.putInt(0, value).array(), 0, Integer.BYTES);
+    }
+
+    private static void writeUtf8(ByteArrayOutputStream out, ByteBuffer scratch, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeInt(out, scratch, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readUtf8(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MappedByteBuffer recordSegmentForWrite(int index) throws IOException {
+        int segment = index / RECORDS_PER_SEGMENT;
+        while (recordSegments.size() <= segment) {
+            long segmentBytes = (long) RECORDS_PER_SEGMENT * RECORD_BYTES;
+            recordSegments.add(recordChannel.map(FileChannel.MapMode.READ_WRITE, recordSegments.size() * segmentBytes, segmentBytes));
+        }
+        return recordSegments.get(segment);
+    }
+
+    private MappedByteBuffer arenaSegmentForWrite(int segment) throws IOException {
+        while (arenaSegments.size() <= segment) {
+            arenaSegments.add(arenaChannel.map(FileChannel.MapMode.READ_WRITE,
+                    (long) arenaSegments.size() * ARENA_SEGMENT_BYTES, ARENA_SEGMENT_BYTES));
+        }
+        return arenaSegments.get(segment);
+    }
+
+    private MappedByteBuffer recordBuffer(int index) {
+        return recordSegments.get(index / RECORDS_PER_SEGMENT);
+    }
+
+    private static int recordOffset(int index) {
+        return (index % RECORDS_PER_SEGMENT) * RECORD_BYTES;
+    }
+
+    private void settleRange() {
+        pendingRanges--;
+        if (closeRequested && pendingRanges == 0) {
+            release();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closeRequested) {
+            throw new IllegalStateException("Recipient store is closed: " + recordFile);
+        }
+    }
+
+    private void ensureReadable() {
+        if (released) {
+            throw new IllegalStateException("Recipient store is released: " + recordFile);
+        }
+    }
+
+    private void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        recordSegments.clear();
+        arenaSegments.clear();
+        contents.clear();
+        contentIds.clear();
+        attachmentLists.clear();
+        attachmentListIds.clear();
+        try {
+            recordChannel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close recipient record file {}", recordFile, e);
+        }
+        try {
+            arenaChannel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close recipient arena file {}", arenaFile, e);
+        }
+    }
+}
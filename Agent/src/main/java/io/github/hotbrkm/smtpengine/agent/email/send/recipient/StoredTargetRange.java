@@ -0,0 +1,107 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.recipient;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Batch target list backed by an index range of a {@link MappedRecipientStore}.
+ * <p>
+ * Only the range is held until the list is first accessed; then the whole range is read onto the heap once and
+ * the same target instances are returned afterwards, so results applied to them stay visible to the writer.
+ * {@link #size()} and {@link #hasAttachment()} do not read the targets.
+ * {@link #release()} gives up a range that was never read, so its store can be released once the batch has ended.
+ */
+public final class StoredTargetRange extends AbstractList<EmailSendTarget> implements RandomAccess {
+
+    private final MappedRecipientStore store;
+    private final int from;
+    private final int to;
+    private volatile List<EmailSendTarget> targets;
+    private boolean discarded;
+
+    StoredTargetRange(MappedRecipientStore store, int from, int to) {
+        this.store = store;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public EmailSendTarget get(int index) {
+        return materialize().get(index);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * Returns whether any target in the range has attachments.
+     */
+    public boolean hasAttachment() {
+        List<EmailSendTarget> loaded = targets;
+        if (loaded != null) {
+            return loaded.stream().anyMatch(target -> target.getAttachments() != null && !target.getAttachments().isEmpty());
+        }
+        synchronized (this) {
+            return !discarded && store.hasAttachment(from, to);
+        }
+    }
+
+    /**
+     * Discards the range if it has not been read; called when its batch has ended. Reading it afterwards fails.
+     */
+    public void release() {
+        synchronized (this) {
+            if (targets != null || discarded) {
+                return;
+            }
+            discarded = true;
+        }
+        store.discard();
+    }
+
+    /**
+     * Returns the targets without keeping them in the range, e.g. to journal a batch while it is queued:
+     * the loaded targets if the range has been read, otherwise a detached copy, after which the range stays unread.
+     */
+    public List<EmailSendTarget> copyTargets() {
+        List<EmailSendTarget> loaded = targets;
+        if (loaded != null) {
+            return loaded;
+        }
+        synchronized (this) {
+            if (discarded) {
+                throw new IllegalStateException("Stored target range was released before it was read");
+            }
+            return store.copy(from, to);
+        }
+    }
+
+    /**
+     * Returns whether the targets have been read onto the heap.
+     */
+    public boolean isMaterialized() {
+        return targets != null;
+    }
+
+    private List<EmailSendTarget> materialize() {
+        List<EmailSendTarget> loaded = targets;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = targets;
+                if (loaded == null) {
+                    if (discarded) {
+                        throw new IllegalStateException("Stored target range was released before it was read");
+                    }
+                    loaded = store.read(from, to);
+                    targets = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,248 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Result writer decorator that moves persistence off the sending workers.
+ * <p>
+ * Workers enqueue results into a bounded queue and return; a dedicated writer thread drains it and hands the
+ * delegate groups of up to {@code maxBatchSize} results ({@link EmailBatchResultWriter#writeResults} then
+ * {@link EmailBatchResultWriter#flush}), committing at the latest {@code flushIntervalMs} after the first result of a group.
+ * <ul>
+ *   <li>Backpressure: when the queue is full, {@link #writeResult} waits up to {@code enqueueTimeoutMs}, then fails</li>
+ *   <li>Each result is handed to the delegate exactly once; a failed group is not retried, to avoid duplicates</li>
+ *   <li>A commit failure is latched and rethrown as {@link ResultPersistenceException} from the next
+ *       {@link #writeResult}/{@link #flush}, so the engine aborts the runner as it does for a synchronous writer</li>
+ *   <li>{@link #flush()} waits until every result accepted before the call is committed; the sender calls it at batch end,
+ *       so a batch is reported complete only after its results are persisted</li>
+ * </ul>
+ */
+@Slf4j
+public final class AsyncResultWriter implements EmailBatchResultWriter {
+
+    private final EmailBatchResultWriter delegate;
+    private final ArrayBlockingQueue<EmailSendProgress> queue;
+    private final int maxBatchSize;
+    private final long flushIntervalMs;
+    private final long enqueueTimeoutMs;
+    private final Thread writerThread;
+    private final Object commitMonitor = new Object();
+    // Enqueues hold the read lock, close takes the write lock, so no result is offered after close drains the queue
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    // Results accepted into the queue / handed to the delegate (committed or failed); guarded by commitMonitor for waits
+    private long acceptedCount;
+    private long processedCount;
+    private long flushRequestedUpTo;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    public AsyncResultWriter(EmailBatchResultWriter delegate, int queueCapacity, int maxBatchSize, long flushIntervalMs,
+                             long enqueueTimeoutMs) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate must not be null");
+        }
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.flushIntervalMs = Math.max(1L, flushIntervalMs);
+        this.enqueueTimeoutMs = Math.max(0L, enqueueTimeoutMs);
+        this.writerThread = Thread.ofPlatform()
+                .name("result-writer-" + delegate.getClass().getSimpleName())
+                .daemon(true)
+                .start(this::drainLoop);
+    }
+
+    /**
+     * Wraps {@code delegate} with the queue and commit settings of the send configuration.
+     */
+    public static AsyncResultWriter fromSendConfig(EmailBatchResultWriter delegate, EmailConfig.Send sendConfig) {
+        return new AsyncResultWriter(delegate, sendConfig.getResultWriterQueueCapacity(), sendConfig.getResultWriterMaxBatchSize(),
+                sendConfig.getResultWriterFlushIntervalMs(), sendConfig.getResultWriterEnqueueTimeoutMs());
+    }
+
+    @Override
+    public void writeResult(EmailSendProgress progress) {
+        throwIfFailed();
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new ResultPersistenceException("Result writer is closed");
+            }
+            enqueue(progress);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Waits until every result accepted before this call has been committed by the delegate.
+     *
+     * @throws ResultPersistenceException If a commit failed or the writer thread stopped
+     */
+    @Override
+    public void flush() {
+        synchronized (commitMonitor) {
+            long target = acceptedCount;
+            flushRequestedUpTo = Math.max(flushRequestedUpTo, target);
+            try {
+                // acceptedCount may drop below target when a concurrent enqueue times out
+                while (processedCount < Math.min(target, acceptedCount) && failure == null && writerThread.isAlive()) {
+                    commitMonitor.wait(flushIntervalMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResultPersistenceException("Interrupted while flushing results", e);
+            }
+            if (processedCount < Math.min(target, acceptedCount) && failure == null) {
+                throw new ResultPersistenceException("Result writer thread stopped with " + (target - processedCount) + " results pending");
+            }
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Commits the queued results, stops the writer thread and closes the delegate.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join();
+            // Results the writer thread left when it saw the close
+            List<EmailSendProgress> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            if (!rest.isEmpty()) {
+                commit(rest);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for the result writer to drain; {} results left", queue.size());
+        } finally {
+            delegate.close();
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Returns the number of results waiting to be committed.
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    private void drainLoop() {
+        List<EmailSendProgress> group = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                EmailSendProgress first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                fillGroup(group);
+                commit(group);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Result writer interrupted; {} results not committed", queue.size());
+        } finally {
+            synchronized (commitMonitor) {
+                commitMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Collects results until the group is full, the commit delay elapses, or a flush is waiting.
+     */
+    private void fillGroup(List<EmailSendProgress> group) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (group.size() < maxBatchSize) {
+            queue.drainTo(group, maxBatchSize - group.size());
+            if (group.size() >= maxBatchSize || closed || flushPending(group.size())) {
+                return;
+            }
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return;
+            }
+            EmailSendProgress next = queue.poll(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+            if (next != null) {
+                group.add(next);
+            }
+        }
+    }
+
+    private boolean flushPending(int groupSize) {
+        synchronized (commitMonitor) {
+            return processedCount + groupSize >= flushRequestedUpTo && flushRequestedUpTo > processedCount;
+        }
+    }
+
+    private void commit(List<EmailSendProgress> group) {
+        if (failure == null) {
+            try {
+                delegate.writeResults(group);
+                delegate.flush();
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                log.error("Failed to commit {} results; further writes are rejected", group.size(), e);
+            }
+        }
+        synchronized (commitMonitor) {
+            processedCount += group.size();
+            commitMonitor.notifyAll();
+        }
+    }
+
+    private void enqueue(EmailSendProgress progress) {
+        try {
+            // Count before offering so a flush issued after this call returns also covers this result
+            synchronized (commitMonitor) {
+                acceptedCount++;
+            }
+            if (!queue.offer(progress, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                uncount();
+                throw new ResultPersistenceException("Result queue stayed full for " + enqueueTimeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            uncount();
+            Thread.currentThread().interrupt();
+            throw new ResultPersistenceException("Interrupted while queueing result", e);
+        }
+    }
+
+    private void uncount() {
+        synchronized (commitMonitor) {
+            acceptedCount--;
+        }
+    }
+
+    private void throwIfFailed() {
+        Throwable cause = failure;
+        if (cause instanceof ResultPersistenceException persistenceException) {
+            throw persistenceException;
+        }
+        if (cause != null) {
+            throw new ResultPersistenceException("Asynchronous result commit failed", cause);
+        }
+    }
+}
@@ -16,4 +16,13 @@ public record EmailBatchResult(String batchId, String domain, int totalTargets,
     public static EmailBatchResult failure(String batchId, String domain, int totalTargets, Exception exception) {
         return new EmailBatchResult(batchId, domain, totalTargets, 0, totalTargets, false, exception);
     }
+
+    /**
+     * Combines the results of two parts of one batch (e.g. a batch whose tail was handed off to another session)
+     */
+    public static EmailBatchResult combine(String batchId, EmailBatchResult first, EmailBatchResult second) {
+        return new EmailBatchResult(batchId, first.domain(), first.totalTargets() + second.totalTargets(),
+                first.successCount() + second.successCount(), first.failureCount() + second.failureCount(),
+                first.success() && second.success(), first.exception() != null ? first.exception() : second.exception());
+    }
 }
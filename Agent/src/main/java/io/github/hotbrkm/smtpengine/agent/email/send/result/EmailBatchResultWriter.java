@@ -1,5 +1,7 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.result;
 
+import java.util.List;
+
 /**
  * Interface for recording email batch results.
  */
@@ -12,6 +14,23 @@ public interface EmailBatchResultWriter {
      */
     void writeResult(EmailSendProgress progress);
 
+    /**
+     * Writes several results as one group; writers that can commit a group at once should override this.
+     *
+     * @param progresses target processing results to write, in order
+     */
+    default void writeResults(List<EmailSendProgress> progresses) {
+        for (EmailSendProgress progress : progresses) {
+            writeResult(progress);
+        }
+    }
+
+    /**
+     * Makes every result written so far durable. Called at the end of each sent batch.
+     */
+    default void flush() {
+    }
+
     /**
      * Closes resources.
      */
@@ -0,0 +1,158 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Result writer that appends one JSON object per line (NDJSON) to a file.
+ * <p>
+ * Lines are formatted by hand into a reused buffer and written through a large buffered stream;
+ * {@link #flush()} pushes the buffer to the file and, with {@code forceOnFlush}, to the device.
+ * Intended to be wrapped in an {@link AsyncResultWriter}, which makes each flush a group commit;
+ * it is also safe to use directly from several workers.
+ */
+@Slf4j
+public final class NdjsonResultWriter implements EmailBatchResultWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BufferedWriter writer;
+    private final boolean forceOnFlush;
+    private final StringBuilder line = new StringBuilder(256);
+    private boolean closed;
+
+    /**
+     * Opens {@code file} for appending, creating it and its parent directories if needed.
+     *
+     * @param forceOnFlush Whether {@link #flush()} also forces the written lines to the storage device
+     */
+    public NdjsonResultWriter(Path file, boolean forceOnFlush) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.forceOnFlush = forceOnFlush;
+    }
+
+    @Override
+    public synchronized void writeResult(EmailSendProgress progress) {
+        ensureOpen();
+        try {
+            appendLine(progress);
+        } catch (IOException e) {
+            throw new ResultPersistenceException("Failed to write result to " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void writeResults(List<EmailSendProgress> progresses) {
+        ensureOpen();
+        try {
+            for (EmailSendProgress progress : progresses) {
+                appendLine(progress);
+            }
+        } catch (IOException e) {
+            throw new ResultPersistenceException("Failed to write " + progresses.size() + " results to " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        ensureOpen();
+        try {
+            writer.flush();
+            if (forceOnFlush) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new ResultPersistenceException("Failed to flush results to " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.flush();
+            if (forceOnFlush) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to flush results on close. file={}", file, e);
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Failed to close result file {}", file, e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private void appendLine(EmailSendProgress progress) throws IOException {
+        StringBuilder sb = line;
+        sb.setLength(0);
+        sb.append("{\"listSeq\":").append(progress.listSeq());
+        appendField(sb, "targetEmail", progress.targetEmail());
+        appendField(sb, "sendCode", progress.sendCode());
+        appendField(sb, "sendStatus", progress.sendStatus());
+        appendField(sb, "errorMessage", progress.errorMessage());
+        appendField(sb, "endDateTime", progress.endDateTime());
+        appendField(sb, "emailDomain", progress.emailDomain());
+        sb.append(",\"retryCount\":").append(progress.retryCount()).append("}\n");
+        writer.append(sb);
+    }
+
+    private static void appendField(StringBuilder sb, String name, String value) {
+        sb.append(",\"").append(name).append("\":");
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new ResultPersistenceException("Result file is closed: " + file);
+        }
+    }
+}
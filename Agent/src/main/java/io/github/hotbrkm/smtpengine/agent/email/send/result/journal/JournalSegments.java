@@ -0,0 +1,167 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result.journal;
+
+import lombok.experimental.UtilityClass;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File layout of a result journal directory.
+ * <ul>
+ *   <li>{@code segment-NNNNNNNN.journal}: records ({@link ResultRecordCodec}); the newest one may still be written</li>
+ *   <li>{@code segment-NNNNNNNN.journal.gz}: a sealed segment compressed with GZIP</li>
+ *   <li>{@code segment-NNNNNNNN.idx}: index of a sealed segment; 8-byte magic, 4-byte count, then (listSeq, offset)
+ *       int pairs sorted by listSeq, holding the offset of the last record of each listSeq in the uncompressed segment</li>
+ * </ul>
+ */
+@UtilityClass
+final class JournalSegments {
+
+    private static final long INDEX_MAGIC = 0x5253544944583031L; // "RSTIDX01"
+    private static final int INDEX_HEADER_BYTES = 12;
+    private static final int INDEX_ENTRY_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String COMPRESSED_SUFFIX = ".journal.gz";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{8})\\.journal(\\.gz)?");
+
+    static Path segmentPath(Path directory, int segment) {
+        return directory.resolve(baseName(segment) + SEGMENT_SUFFIX);
+    }
+
+    static Path compressedPath(Path directory, int segment) {
+        return directory.resolve(baseName(segment) + COMPRESSED_SUFFIX);
+    }
+
+    static Path indexPath(Path directory, int segment) {
+        return directory.resolve(baseName(segment) + ".idx");
+    }
+
+    /**
+     * Returns the segment numbers present in {@code directory}, oldest first.
+     */
+    static int[] listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new int[0];
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .mapToInt(matcher -> Integer.parseInt(matcher.group(1)))
+                    .distinct()
+                    .sorted()
+                    .toArray();
+        }
+    }
+
+    /**
+     * Opens the uncompressed record stream of a segment, compressed or not.
+     */
+    static InputStream openSegment(Path directory, int segment) throws IOException {
+        Path compressed = compressedPath(directory, segment);
+        if (Files.exists(compressed)) {
+            return new BufferedInputStream(new GZIPInputStream(Files.newInputStream(compressed), 1 << 16), 1 << 16);
+        }
+        return new BufferedInputStream(Files.newInputStream(segmentPath(directory, segment)), 1 << 16);
+    }
+
+    /**
+     * Compresses a sealed segment next to it, then removes the uncompressed file.
+     */
+    static void compress(Path directory, int segment) throws IOException {
+        Path source = segmentPath(directory, segment);
+        Path target = compressedPath(directory, segment);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+            Files.copy(source, out);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(source);
+    }
+
+    /**
+     * Writes the index of a sealed segment.
+     *
+     * @param entries ({@code listSeq << 32 | offset}) in write order; sorted in place
+     * @param count   Number of valid entries
+     */
+    static void writeIndex(Path directory, int segment, long[] entries, int count) throws IOException {
+        // Sorting by (listSeq, offset) puts the last record of each listSeq at the end of its run
+        Arrays.sort(entries, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && (int) (entries[i + 1] >> 32) == (int) (entries[i] >> 32)) {
+                continue;
+            }
+            entries[unique++] = entries[i];
+        }
+        Path target = indexPath(directory, segment);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeLong(INDEX_MAGIC);
+            out.writeInt(unique);
+            for (int i = 0; i < unique; i++) {
+                out.writeInt((int) (entries[i] >> 32));
+                out.writeInt((int) entries[i]);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static long indexEntry(int listSeq, int offset) {
+        return ((long) listSeq << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Looks up the offset of the last record of {@code listSeq} in a sealed segment by binary search.
+     *
+     * @return Offset in the uncompressed segment, or -1 if the segment has no record of {@code listSeq}
+     */
+    static int findOffset(Path indexFile, int listSeq) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            int count = buffer.getInt(8);
+            if (buffer.getLong(0) != INDEX_MAGIC || INDEX_HEADER_BYTES + (long) count * INDEX_ENTRY_BYTES != channel.size()) {
+                throw new IOException("Corrupt result journal index: " + indexFile);
+            }
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int position = INDEX_HEADER_BYTES + mid * INDEX_ENTRY_BYTES;
+                int key = buffer.getInt(position);
+                if (key < listSeq) {
+                    low = mid + 1;
+                } else if (key > listSeq) {
+                    high = mid - 1;
+                } else {
+                    return buffer.getInt(position + 4);
+                }
+            }
+            return -1;
+        }
+    }
+
+    static boolean isSealed(Path directory, int segment) {
+        return Files.exists(indexPath(directory, segment));
+    }
+
+    private static String baseName(int segment) {
+        return String.format("segment-%08d", segment);
+    }
+}
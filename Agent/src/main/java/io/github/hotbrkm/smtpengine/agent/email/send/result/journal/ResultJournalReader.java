@@ -0,0 +1,100 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.NdjsonResultWriter;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Reads a result journal written by {@link ResultJournalWriter}.
+ * <p>
+ * Segments are read oldest first; a segment still being written (or left unsealed by a crash) is read up to its
+ * last complete record. Lookups by listSeq use the index of sealed segments and scan only unsealed ones.
+ */
+public final class ResultJournalReader {
+
+    private final Path directory;
+
+    public ResultJournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Passes every record to {@code consumer} in write order.
+     *
+     * @return Number of records read
+     */
+    public long forEach(Consumer<EmailSendProgress> consumer) throws IOException {
+        long count = 0;
+        for (int segment : JournalSegments.listSegments(directory)) {
+            try (DataInputStream in = new DataInputStream(JournalSegments.openSegment(directory, segment))) {
+                EmailSendProgress progress;
+                while ((progress = ResultRecordCodec.read(in)) != null) {
+                    consumer.accept(progress);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes every record to {@code target} as NDJSON, appending if the file exists.
+     *
+     * @return Number of records exported
+     */
+    public long exportNdjson(Path target) throws IOException {
+        NdjsonResultWriter writer = new NdjsonResultWriter(target, false);
+        try {
+            return forEach(writer::writeResult);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the last record written for {@code listSeq}, i.e. the recipient's final status.
+     */
+    public Optional<EmailSendProgress> findLatest(int listSeq) throws IOException {
+        int[] segments = JournalSegments.listSegments(directory);
+        for (int i = segments.length - 1; i >= 0; i--) {
+            int segment = segments[i];
+            EmailSendProgress found = JournalSegments.isSealed(directory, segment)
+                    ? readIndexed(segment, listSeq)
+                    : scanForLast(segment, listSeq);
+            if (found != null) {
+                return Optional.of(found);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private EmailSendProgress readIndexed(int segment, int listSeq) throws IOException {
+        int offset = JournalSegments.findOffset(JournalSegments.indexPath(directory, segment), listSeq);
+        if (offset < 0) {
+            return null;
+        }
+        try (InputStream in = JournalSegments.openSegment(directory, segment)) {
+            in.skipNBytes(offset);
+            return ResultRecordCodec.read(new DataInputStream(in));
+        }
+    }
+
+    private EmailSendProgress scanForLast(int segment, int listSeq) throws IOException {
+        EmailSendProgress last = null;
+        try (DataInputStream in = new DataInputStream(JournalSegments.openSegment(directory, segment))) {
+            EmailSendProgress progress;
+            while ((progress = ResultRecordCodec.read(in)) != null) {
+                if (progress.listSeq() == listSeq) {
+                    last = progress;
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.ResultPersistenceException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result writer that appends binary, length-prefixed records to memory-mapped segment files.
+ * <p>
+ * Each writer starts a new segment after the existing ones and never rewrites sealed data. When a segment is full
+ * (or the writer is closed) it is sealed: truncated to its records, indexed by listSeq and optionally GZIP-compressed.
+ * {@link #flush()} forces the mapped records to disk, so wrapping this in an
+ * {@link io.github.hotbrkm.smtpengine.agent.email.send.result.AsyncResultWriter} gives one force per group commit.
+ * Read with {@link ResultJournalReader}.
+ */
+@Slf4j
+public final class ResultJournalWriter implements EmailBatchResultWriter {
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean compressSealedSegments;
+
+    private int segment;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private ByteBuffer scratch = ByteBuffer.allocate(512);
+    // (listSeq << 32 | offset) of every record of the current segment
+    private long[] indexEntries = new long[1024];
+    private int indexCount;
+    private boolean closed;
+
+    /**
+     * @param segmentBytes           Size of each segment file; a single record must fit in one segment
+     * @param compressSealedSegments Whether sealed segments are GZIP-compressed
+     */
+    public ResultJournalWriter(Path directory, int segmentBytes, boolean compressSealedSegments) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.segmentBytes = Math.max(1024, segmentBytes);
+        this.compressSealedSegments = compressSealedSegments;
+        int[] existing = JournalSegments.listSegments(directory);
+        this.segment = existing.length == 0 ? 1 : existing[existing.length - 1] + 1;
+        openSegment();
+    }
+
+    @Override
+    public synchronized void writeResult(EmailSendProgress progress) {
+        ensureOpen();
+        try {
+            append(progress);
+        } catch (IOException e) {
+            throw new ResultPersistenceException("Failed to append result to journal " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized void writeResults(List<EmailSendProgress> progresses) {
+        ensureOpen();
+        try {
+            for (EmailSendProgress progress : progresses) {
+                append(progress);
+            }
+        } catch (IOException e) {
+            throw new ResultPersistenceException("Failed to append " + progresses.size() + " results to journal " + directory, e);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        ensureOpen();
+        buffer.force();
+    }
+
+    /**
+     * Seals the current segment.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            sealSegment();
+        } catch (IOException e) {
+            log.warn("Failed to seal result journal segment {} in {}", segment, directory, e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private void append(EmailSendProgress progress) throws IOException {
+        scratch = ResultRecordCodec.encode(progress, scratch);
+        int recordBytes = scratch.remaining();
+        // Keep 4 bytes for the zero length that ends a segment
+        if (recordBytes + Integer.BYTES > segmentBytes) {
+            throw new IOException("Result record of " + recordBytes + " bytes exceeds the segment size " + segmentBytes);
+        }
+        if (buffer.remaining() < recordBytes + Integer.BYTES) {
+            sealSegment();
+            segment++;
+            openSegment();
+        }
+        int offset = buffer.position();
+        buffer.put(scratch);
+        if (indexCount == indexEntries.length) {
+            indexEntries = Arrays.copyOf(indexEntries, indexEntries.length * 2);
+        }
+        indexEntries[indexCount++] = JournalSegments.indexEntry(progress.listSeq(), offset);
+    }
+
+    private void openSegment() throws IOException {
+        Path path = JournalSegments.segmentPath(directory, segment);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, segmentBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        indexCount = 0;
+    }
+
+    private void sealSegment() throws IOException {
+        int written = buffer.position();
+        buffer.force();
+        buffer = null;
+        try {
+            channel.truncate(written);
+        } finally {
+            channel.close();
+        }
+        if (indexCount == 0) {
+            Files.deleteIfExists(JournalSegments.segmentPath(directory, segment));
+            return;
+        }
+        JournalSegments.writeIndex(directory, segment, indexEntries, indexCount);
+        if (compressSealedSegments) {
+            JournalSegments.compress(directory, segment);
+        }
+        log.debug("Sealed result journal segment {} ({} records, {} bytes) in {}", segment, indexCount, written, directory);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new ResultPersistenceException("Result journal is closed: " + directory);
+        }
+    }
+}
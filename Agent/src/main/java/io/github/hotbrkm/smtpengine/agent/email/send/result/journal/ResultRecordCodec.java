@@ -0,0 +1,134 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import lombok.experimental.UtilityClass;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary form of one {@link EmailSendProgress} in a result journal segment.
+ * <p>
+ * Record: 4-byte payload length, 4-byte CRC32C of the payload, payload.
+ * Payload: varint listSeq, varint retryCount, then targetEmail, sendCode, sendStatus, errorMessage, endDateTime and
+ * emailDomain, each as varint (UTF-8 length + 1; 0 for null) followed by the bytes.
+ * A zero length marks the unwritten tail of a segment.
+ */
+@UtilityClass
+final class ResultRecordCodec {
+
+    static final int HEADER_BYTES = 8;
+
+    /**
+     * Encodes {@code progress} as a complete record into {@code scratch}, growing it if needed.
+     *
+     * @return Buffer holding the record between position 0 and its limit
+     */
+    static ByteBuffer encode(EmailSendProgress progress, ByteBuffer scratch) {
+        byte[][] strings = {
+                utf8(progress.targetEmail()), utf8(progress.sendCode()), utf8(progress.sendStatus()),
+                utf8(progress.errorMessage()), utf8(progress.endDateTime()), utf8(progress.emailDomain())
+        };
+        int capacity = HEADER_BYTES + 10;
+        for (byte[] bytes : strings) {
+            capacity += 5 + (bytes != null ? bytes.length : 0);
+        }
+        ByteBuffer buffer = scratch.capacity() >= capacity ? scratch.clear() : ByteBuffer.allocate(Math.max(capacity, scratch.capacity() * 2));
+
+        buffer.position(HEADER_BYTES);
+        putVarInt(buffer, progress.listSeq());
+        putVarInt(buffer, progress.retryCount());
+        for (byte[] bytes : strings) {
+            if (bytes == null) {
+                putVarInt(buffer, 0);
+            } else {
+                putVarInt(buffer, bytes.length + 1);
+                buffer.put(bytes);
+            }
+        }
+        int payloadLength = buffer.position() - HEADER_BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Reads the next record, or returns {@code null} at the end of the written records
+     * (end of stream, zero length, or a torn record left by a crash).
+     */
+    static EmailSendProgress read(DataInputStream in) throws IOException {
+        int payloadLength;
+        int expectedCrc;
+        byte[] payload;
+        try {
+            payloadLength = in.readInt();
+            if (payloadLength <= 0) {
+                return null;
+            }
+            expectedCrc = in.readInt();
+            payload = new byte[payloadLength];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    private static EmailSendProgress decode(ByteBuffer payload) {
+        int listSeq = getVarInt(payload);
+        int retryCount = getVarInt(payload);
+        String targetEmail = getString(payload);
+        String sendCode = getString(payload);
+        String sendStatus = getString(payload);
+        String errorMessage = getString(payload);
+        String endDateTime = getString(payload);
+        String emailDomain = getString(payload);
+        return new EmailSendProgress(listSeq, targetEmail, sendCode, sendStatus, errorMessage, endDateTime, emailDomain, retryCount);
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int lengthPlusOne = getVarInt(payload);
+        if (lengthPlusOne == 0) {
+            return null;
+        }
+        String value = new String(payload.array(), payload.position(), lengthPlusOne - 1, StandardCharsets.UTF_8);
+        payload.position(payload.position() + lengthPlusOne - 1);
+        return value;
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in result journal");
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.suppression;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter over 128-bit fingerprints.
+ * <p>
+ * Bit positions are derived from the two fingerprint halves (h1 + i * h2), so no hashing is done here.
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries   Number of entries the filter is sized for
+     * @param falsePositiveRate Target false positive rate at {@code expectedEntries}
+     */
+    BloomFilter(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1L, expectedEntries);
+        double rate = Math.min(0.5d, Math.max(1e-9d, falsePositiveRate));
+        long bits = (long) Math.ceil(-entries * Math.log(rate) / (Math.log(2) * Math.log(2)));
+        // AtomicLongArray is int-indexed
+        long maxBits = (long) Integer.MAX_VALUE * Long.SIZE;
+        this.bitCount = Math.min(Math.max(Long.SIZE, bits), maxBits);
+        this.hashCount = (int) Math.max(1L, Math.round((double) bitCount / entries * Math.log(2)));
+        this.words = new AtomicLongArray((int) ((bitCount + Long.SIZE - 1) / Long.SIZE));
+    }
+
+    void put(long h1, long h2) {
+        long combined = h1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(combined, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(index);
+            while ((current & mask) == 0L && !words.compareAndSet(index, current, current | mask)) {
+                current = words.get(index);
+            }
+            combined += h2;
+        }
+    }
+
+    boolean mightContain(long h1, long h2) {
+        long combined = h1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(combined, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0L) {
+                return false;
+            }
+            combined += h2;
+        }
+        return true;
+    }
+
+    int hashCount() {
+        return hashCount;
+    }
+}
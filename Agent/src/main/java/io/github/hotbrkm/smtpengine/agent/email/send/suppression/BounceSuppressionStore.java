@@ -0,0 +1,448 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.suppression;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.EnhancedStatusCode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistent set of recipients that hard-bounced, checked before targets are batched.
+ * <p>
+ * Addresses are stored as 128-bit fingerprints only (no plaintext on disk):
+ * 1) A Bloom filter answers most lookups (all non-suppressed ones) from memory
+ * 2) A memory-mapped sorted fingerprint file confirms Bloom hits by binary search
+ * 3) Fingerprints recorded since the last compaction live in memory and in an append-only journal
+ * <p>
+ * The journal is merged into the sorted file on a background thread once it reaches {@code compactThreshold} entries,
+ * so recording threads never wait for the rewrite, and on close. The merged file is written aside and moved over the old
+ * one atomically; lookups switch to it only once it is complete.
+ * A crash between the merge and the journal cleanup only replays entries that are already in the sorted file.
+ * The rotated journal is deleted only after a merge covering it has been forced to disk; a failed merge leaves it in
+ * place and the next rotation appends to it.
+ */
+@Slf4j
+public class BounceSuppressionStore implements Closeable {
+
+    /** Planning key (and batch domain) of suppressed targets */
+    public static final String SUPPRESSED_DOMAIN = "SUPPRESSED";
+
+    static final String SORTED_FILE_NAME = "fingerprints.dat";
+    static final String JOURNAL_FILE_NAME = "journal.log";
+    static final String ROTATED_JOURNAL_FILE_NAME = "journal.log.1";
+
+    private static final long SEED_1 = 0x9E3779B97F4A7C15L;
+    private static final long SEED_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final String[] UNKNOWN_USER_PHRASES = {"user unknown", "unknown user", "no such user",
+            "unknown recipient", "recipient unknown"};
+
+    private final boolean enabled;
+    private final Path directory;
+    private final Set<Integer> hardBounceCodes;
+    private final int compactThreshold;
+    private final BloomFilter bloomFilter;
+    private final Set<Fingerprint> pending = ConcurrentHashMap.newKeySet();
+    private final Object journalLock = new Object();
+    private final ReentrantLock compactLock = new ReentrantLock();
+    private final AtomicBoolean compactScheduled = new AtomicBoolean();
+    private final Executor compactExecutor;
+    // Executor created by this store, shut down on close (null when supplied by the caller)
+    private final ExecutorService ownedCompactExecutor;
+
+    private volatile SortedFingerprintFile sortedFile;
+    private BufferedWriter journalWriter;
+    private boolean closed;
+
+    private BounceSuppressionStore() {
+        this.enabled = false;
+        this.directory = null;
+        this.hardBounceCodes = Set.of();
+        this.compactThreshold = Integer.MAX_VALUE;
+        this.bloomFilter = null;
+        this.compactExecutor = null;
+        this.ownedCompactExecutor = null;
+    }
+
+    /**
+     * Opens (or creates) the store in {@code directory}, loading the sorted file and replaying the journal.
+     *
+     * @param directory         Directory holding the store files
+     * @param hardBounceCodes   Enhanced status codes treated as hard bounces (e.g. 5.1.1)
+     * @param expectedEntries   Number of suppressed addresses the Bloom filter is sized for
+     * @param falsePositiveRate Bloom filter false positive rate at {@code expectedEntries}
+     * @param compactThreshold  Journal size that triggers a merge into the sorted file
+     */
+    public BounceSuppressionStore(Path directory, List<String> hardBounceCodes, long expectedEntries,
+                                  double falsePositiveRate, int compactThreshold) throws IOException {
+        this(directory, hardBounceCodes, expectedEntries, falsePositiveRate, compactThreshold, null);
+    }
+
+    /**
+     * @param compactExecutor Runs threshold-triggered compactions (null: a dedicated daemon thread of this store)
+     */
+    BounceSuppressionStore(Path directory, List<String> hardBounceCodes, long expectedEntries,
+                           double falsePositiveRate, int compactThreshold, Executor compactExecutor) throws IOException {
+        this.enabled = true;
+        // The thread starts with the first compaction, so a failed open leaves nothing running
+        this.ownedCompactExecutor = compactExecutor == null
+                ? Executors.newSingleThreadExecutor(Thread.ofPlatform().name("bounce-suppression-compact").daemon().factory())
+                : null;
+        this.compactExecutor = compactExecutor != null ? compactExecutor : ownedCompactExecutor;
+        this.directory = directory;
+        this.hardBounceCodes = parseEnhancedCodes(hardBounceCodes);
+        this.compactThreshold = Math.max(1, compactThreshold);
+        this.bloomFilter = new BloomFilter(expectedEntries, falsePositiveRate);
+
+        Files.createDirectories(directory);
+        this.sortedFile = SortedFingerprintFile.open(directory.resolve(SORTED_FILE_NAME));
+        sortedFile.forEach(bloomFilter::put);
+        int replayed = replayJournal(directory.resolve(ROTATED_JOURNAL_FILE_NAME)) + replayJournal(directory.resolve(JOURNAL_FILE_NAME));
+        this.journalWriter = openJournal();
+        log.info("Bounce suppression store opened. dir={}, sorted={}, journal={}, bloomHashes={}",
+                directory, sortedFile.size(), replayed, bloomFilter.hashCount());
+    }
+
+    /**
+     * Returns a store that suppresses nothing and records nothing.
+     */
+    public static BounceSuppressionStore disabled() {
+        return new BounceSuppressionStore();
+    }
+
+    /**
+     * Creates the store under {@code <spoolDir>/suppression}, or a disabled store if suppression is off or cannot be opened.
+     */
+    public static BounceSuppressionStore fromSendConfig(EmailConfig.Send sendConfig) {
+        if (!sendConfig.isBounceSuppressionEnabled()) {
+            return disabled();
+        }
+        if (sendConfig.getSpoolDir() == null || sendConfig.getSpoolDir().isBlank()) {
+            log.warn("Bounce suppression is enabled but spoolDir is not set; suppression disabled");
+            return disabled();
+        }
+        try {
+            return new BounceSuppressionStore(Paths.get(sendConfig.getSpoolDir(), "suppression"),
+                    sendConfig.getBounceSuppressionEnhancedCodes(), sendConfig.getBounceSuppressionExpectedEntries(),
+                    sendConfig.getBounceSuppressionFalsePositiveRate(), sendConfig.getBounceSuppressionCompactThreshold());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to open bounce suppression store; suppression disabled. spoolDir={}", sendConfig.getSpoolDir(), e);
+            return disabled();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns whether the address hard-bounced before.
+     */
+    public boolean isSuppressed(String email) {
+        if (!enabled || email == null) {
+            return false;
+        }
+        Fingerprint fingerprint = Fingerprint.of(email);
+        if (!bloomFilter.mightContain(fingerprint.h1(), fingerprint.h2())) {
+            return false;
+        }
+        return pending.contains(fingerprint) || sortedFile.contains(fingerprint.h1(), fingerprint.h2());
+    }
+
+    /**
+     * Records a send result; hard bounces are added to the store.
+     *
+     * @return Whether the address was newly suppressed
+     */
+    public boolean recordResult(String email, int statusCode, String message) {
+        if (!enabled || email == null || !isHardBounce(statusCode, message)) {
+            return false;
+        }
+        Fingerprint fingerprint = Fingerprint.of(email);
+        if (bloomFilter.mightContain(fingerprint.h1(), fingerprint.h2())
+                && (pending.contains(fingerprint) || sortedFile.contains(fingerprint.h1(), fingerprint.h2()))) {
+            return false;
+        }
+        synchronized (journalLock) {
+            if (closed || !pending.add(fingerprint)) {
+                return false;
+            }
+            bloomFilter.put(fingerprint.h1(), fingerprint.h2());
+            try {
+                journalWriter.write(fingerprint.toHex() + " " + statusCode + " " + System.currentTimeMillis());
+                journalWriter.newLine();
+                journalWriter.flush();
+            } catch (IOException e) {
+                log.warn("Failed to append bounce suppression journal. dir={}", directory, e);
+            }
+        }
+        if (pending.size() >= compactThreshold) {
+            scheduleCompaction();
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the reply is a permanent recipient failure.
+     * <p>
+     * A 5xx reply counts if its enhanced code is configured, or if it has no enhanced code and names an unknown user.
+     */
+    boolean isHardBounce(int statusCode, String message) {
+        if (statusCode < 500 || statusCode >= 600) {
+            return false;
+        }
+        int enhancedCode = parseEnhancedCode(message);
+        if (enhancedCode != EnhancedStatusCode.NONE) {
+            return hardBounceCodes.contains(enhancedCode);
+        }
+        if (message == null) {
+            return false;
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        for (String phrase : UNKNOWN_USER_PHRASES) {
+            if (lower.contains(phrase)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges the journal into the sorted file. Skipped if another merge is running.
+     */
+    public void compact() {
+        if (!enabled || !compactLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Fingerprint> snapshot;
+            synchronized (journalLock) {
+                if (closed || pending.isEmpty()) {
+                    return;
+                }
+                snapshot = new ArrayList<>(pending);
+                journalWriter.close();
+                try {
+                    rotateJournal();
+                } finally {
+                    journalWriter = openJournal();
+                }
+            }
+            mergeIntoSortedFile(snapshot);
+            Files.deleteIfExists(directory.resolve(ROTATED_JOURNAL_FILE_NAME));
+        } catch (IOException e) {
+            log.warn("Failed to compact bounce suppression store. dir={}", directory, e);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * Queues {@link #compact()} on the compaction executor; at most one compaction is queued at a time.
+     */
+    private void scheduleCompaction() {
+        if (!compactScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactExecutor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compactScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closing; close() merges what is pending
+            compactScheduled.set(false);
+        }
+    }
+
+    long suppressedCountOnDisk() {
+        return sortedFile == null ? 0L : sortedFile.size();
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        compact();
+        compactLock.lock();
+        try {
+            synchronized (journalLock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                journalWriter.close();
+            }
+            sortedFile.close();
+        } finally {
+            compactLock.unlock();
+            if (ownedCompactExecutor != null) {
+                ownedCompactExecutor.shutdown();
+            }
+        }
+    }
+
+    private void mergeIntoSortedFile(List<Fingerprint> snapshot) throws IOException {
+        long[] additions = new long[snapshot.size() * 2];
+        snapshot.sort((a, b) -> SortedFingerprintFile.compare(a.h1(), a.h2(), b.h1(), b.h2()));
+        for (int i = 0; i < snapshot.size(); i++) {
+            additions[i * 2] = snapshot.get(i).h1();
+            additions[i * 2 + 1] = snapshot.get(i).h2();
+        }
+        Path target = directory.resolve(SORTED_FILE_NAME);
+        SortedFingerprintFile previous = sortedFile;
+        long written = previous.mergeTo(additions, target);
+        sortedFile = SortedFingerprintFile.open(target);
+        // Drop merged entries only after the new file is visible, so lookups never miss them
+        snapshot.forEach(pending::remove);
+        // Closing the channel does not unmap the buffer, so in-flight lookups on the previous file stay valid
+        previous.close();
+        log.info("Bounce suppression store compacted. dir={}, merged={}, total={}", directory, snapshot.size(), written);
+    }
+
+    private int replayJournal(Path journal) throws IOException {
+        if (!Files.exists(journal)) {
+            return 0;
+        }
+        int replayed = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Fingerprint fingerprint = Fingerprint.parseHex(line);
+                if (fingerprint == null) {
+                    // A torn last line after a crash
+                    continue;
+                }
+                if (!sortedFile.contains(fingerprint.h1(), fingerprint.h2()) && pending.add(fingerprint)) {
+                    bloomFilter.put(fingerprint.h1(), fingerprint.h2());
+                    replayed++;
+                }
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Moves the live journal aside for a merge. A rotated journal left by a failed merge still holds pending entries
+     * that no sorted file covers yet, so the live journal is appended to it instead of replacing it.
+     */
+    private void rotateJournal() throws IOException {
+        Path journal = directory.resolve(JOURNAL_FILE_NAME);
+        Path rotated = directory.resolve(ROTATED_JOURNAL_FILE_NAME);
+        if (!Files.exists(rotated)) {
+            Files.move(journal, rotated, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(journal, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(rotated, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // Starts a new line in case the rotated journal ends with a line torn by a crash
+            out.write(ByteBuffer.wrap(System.lineSeparator().getBytes(StandardCharsets.UTF_8)));
+            long position = 0L;
+            long size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            out.force(true);
+        }
+        Files.delete(journal);
+    }
+
+    private BufferedWriter openJournal() throws IOException {
+        return Files.newBufferedWriter(directory.resolve(JOURNAL_FILE_NAME), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static Set<Integer> parseEnhancedCodes(List<String> codes) {
+        Set<Integer> parsed = new HashSet<>();
+        if (codes != null) {
+            for (String code : codes) {
+                int enhancedCode = parseEnhancedCode(code);
+                if (enhancedCode == EnhancedStatusCode.NONE) {
+                    throw new IllegalArgumentException("Invalid hard bounce enhanced code: " + code);
+                }
+                parsed.add(enhancedCode);
+            }
+        }
+        return Set.copyOf(parsed);
+    }
+
+    private static int parseEnhancedCode(String message) {
+        return EnhancedStatusCode.parse(message);
+    }
+
+    /**
+     * 128-bit fingerprint of a normalized address, made of two independently seeded 64-bit hashes.
+     */
+    record Fingerprint(long h1, long h2) {
+
+        static Fingerprint of(String email) {
+            byte[] bytes = email.trim().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+            return new Fingerprint(hash(bytes, SEED_1), hash(bytes, SEED_2));
+        }
+
+        static Fingerprint parseHex(String line) {
+            int end = line.indexOf(' ');
+            String hex = end < 0 ? line : line.substring(0, end);
+            if (hex.length() != 32) {
+                return null;
+            }
+            try {
+                return new Fingerprint(Long.parseUnsignedLong(hex, 0, 16, 16), Long.parseUnsignedLong(hex, 16, 32, 16));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        String toHex() {
+            return String.format("%016x%016x", h1, h2);
+        }
+
+        private static long hash(byte[] bytes, long seed) {
+            long h = seed ^ (bytes.length * 0xFF51AFD7ED558CCDL);
+            for (byte b : bytes) {
+                h = (h ^ (b & 0xFF)) * 0x100000001B3L;
+                h = Long.rotateLeft(h, 31) * 0x9E3779B97F4A7C15L;
+            }
+            return fmix64(h);
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xFF51AFD7ED558CCDL;
+            k ^= k >>> 33;
+            k *= 0xC4CEB9FE1A85EC53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.suppression;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable on-disk set of 128-bit fingerprints sorted by (h1, h2), memory-mapped and searched by binary search.
+ * <p>
+ * Layout: 8-byte magic, 8-byte entry count, then 16 bytes (h1, h2) per entry.
+ * A single mapping limits the file to about 134 million entries.
+ */
+final class SortedFingerprintFile implements Closeable {
+
+    private static final long MAGIC = 0x5355505052455353L; // "SUPPRESS"
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 16;
+    private static final long MAX_ENTRIES = (Integer.MAX_VALUE - HEADER_BYTES) / ENTRY_BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long size;
+
+    private SortedFingerprintFile(FileChannel channel, MappedByteBuffer buffer, long size) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    /**
+     * Opens the file, or returns an empty set if it does not exist.
+     */
+    static SortedFingerprintFile open(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return new SortedFingerprintFile(null, null, 0L);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException("Truncated suppression file: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, fileSize);
+            long count = buffer.getLong(8);
+            if (buffer.getLong(0) != MAGIC || count < 0 || HEADER_BYTES + count * ENTRY_BYTES != fileSize) {
+                throw new IOException("Corrupt suppression file: " + path);
+            }
+            return new SortedFingerprintFile(channel, buffer, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    boolean contains(long h1, long h2) {
+        long low = 0L;
+        long high = size - 1;
+        while (low <= high) {
+            long mid = (low + high) >>> 1;
+            int offset = (int) (HEADER_BYTES + mid * ENTRY_BYTES);
+            int cmp = compare(buffer.getLong(offset), buffer.getLong(offset + 8), h1, h2);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void forEach(FingerprintConsumer consumer) {
+        for (long i = 0; i < size; i++) {
+            int offset = (int) (HEADER_BYTES + i * ENTRY_BYTES);
+            consumer.accept(buffer.getLong(offset), buffer.getLong(offset + 8));
+        }
+    }
+
+    /**
+     * Writes the union of this set and {@code additions} (sorted pairs h1, h2, ...) to {@code target} atomically.
+     *
+     * @return Number of entries written
+     */
+    long mergeTo(long[] additions, Path target) throws IOException {
+        long total = size + additions.length / 2;
+        if (total > MAX_ENTRIES) {
+            throw new IOException("Suppression set exceeds " + MAX_ENTRIES + " entries");
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long written = 0L;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16))) {
+            data.writeLong(MAGIC);
+            data.writeLong(0L);
+            long i = 0L;
+            int j = 0;
+            long lastH1 = 0L;
+            long lastH2 = 0L;
+            while (i < size || j < additions.length) {
+                long h1;
+                long h2;
+                boolean takeExisting;
+                if (i >= size) {
+                    takeExisting = false;
+                } else if (j >= additions.length) {
+                    takeExisting = true;
+                } else {
+                    int offset = (int) (HEADER_BYTES + i * ENTRY_BYTES);
+                    takeExisting = compare(buffer.getLong(offset), buffer.getLong(offset + 8), additions[j], additions[j + 1]) <= 0;
+                }
+                if (takeExisting) {
+                    int offset = (int) (HEADER_BYTES + i * ENTRY_BYTES);
+                    h1 = buffer.getLong(offset);
+                    h2 = buffer.getLong(offset + 8);
+                    i++;
+                } else {
+                    h1 = additions[j];
+                    h2 = additions[j + 1];
+                    j += 2;
+                }
+                if (written > 0 && lastH1 == h1 && lastH2 == h2) {
+                    continue;
+                }
+                data.writeLong(h1);
+                data.writeLong(h2);
+                lastH1 = h1;
+                lastH2 = h2;
+                written++;
+            }
+            data.flush();
+            out.write(ByteBuffer.allocate(8).putLong(0, written), 8L);
+            out.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    static int compare(long a1, long a2, long b1, long b2) {
+        int cmp = Long.compare(a1, b1);
+        return cmp != 0 ? cmp : Long.compare(a2, b2);
+    }
+
+    @FunctionalInterface
+    interface FingerprintConsumer {
+        void accept(long h1, long h2);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
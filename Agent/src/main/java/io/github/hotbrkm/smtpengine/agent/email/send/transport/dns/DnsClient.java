@@ -91,6 +91,8 @@ public class DnsClient {
             return getEmptyRecordResult("600 DNS.error. domain is empty");
         }
 
+        // NXDOMAIN from any server is kept so callers can tell it from transient failures
+        DnsQueryResult definitiveFailure = null;
         for (String dnsServer : dnsServerArray) {
             for (int i = 0; i < retryCount; i++) {
                 Lookup lookup = new Lookup(domain, Type.MX);
@@ -111,6 +113,9 @@ public class DnsClient {
                 if (queryResult.isSuccess() || queryResult.isTypeNotFound()) {
                     return queryResult;
                 }
+                if (status == DnsQueryStatus.HOST_NOT_FOUND) {
+                    definitiveFailure = queryResult;
+                }
 
                 if (isNotTryAgain(result)) {
                     break;
@@ -118,7 +123,7 @@ public class DnsClient {
             }
         }
 
-        return getEmptyRecordResult(getErrorMessage(-1, domain, MX_RECORD));
+        return definitiveFailure != null ? definitiveFailure : getEmptyRecordResult(getErrorMessage(-1, domain, MX_RECORD));
     }
 
     private boolean isNotTryAgain(int result) {
@@ -179,6 +184,8 @@ public class DnsClient {
             return getEmptyRecordResult("600 DNS.error. domain is empty");
         }
 
+        // NXDOMAIN or "no A records" from any server is kept so callers can tell it from transient failures
+        DnsQueryResult definitiveFailure = null;
         for (String dnsServer : dnsServerArray) {
             for (int i = 0; i < retryCount; i++) {
                 Lookup lookup = new Lookup(domain, Type.A);
@@ -199,6 +206,9 @@ public class DnsClient {
                 if (queryResult.isSuccess()) {
                     return queryResult;
                 }
+                if (queryResult.isDomainUnresolvable()) {
+                    definitiveFailure = queryResult;
+                }
 
                 if (isNotTryAgain(result)) {
                     break;
@@ -206,7 +216,7 @@ public class DnsClient {
             }
         }
 
-        return getEmptyRecordResult(getErrorMessage(-1, domain, A_RECORD));
+        return definitiveFailure != null ? definitiveFailure : getEmptyRecordResult(getErrorMessage(-1, domain, A_RECORD));
     }
 
     private List<String> extractIpAddresses(Lookup lookup) {
@@ -39,4 +39,12 @@ public class DnsQueryResult {
     public boolean isTypeNotFound() {
         return status.equals(DnsQueryStatus.TYPE_NOT_FOUND);
     }
+
+    /**
+     * Returns whether the lookup definitively failed: the domain does not exist (NXDOMAIN),
+     * or an address lookup found no records of the type (no MX and no A).
+     */
+    public boolean isDomainUnresolvable() {
+        return status.equals(DnsQueryStatus.HOST_NOT_FOUND) || status.equals(DnsQueryStatus.TYPE_NOT_FOUND);
+    }
 }
\ No newline at end of file
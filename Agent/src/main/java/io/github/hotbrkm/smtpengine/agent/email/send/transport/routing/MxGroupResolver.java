@@ -0,0 +1,255 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.transport.routing;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Maps recipient domains to the MX group (receiving MX farm) that hosts them.
+ * <p>
+ * Resolution order:
+ * 1) Configured groups: an MX host ending with one of the group's suffixes maps the domain to the group name
+ * 2) Derived groups: the registrable domain of the primary MX host (e.g. aspmx.l.google.com → google.com)
+ * 3) Otherwise the domain itself
+ * <p>
+ * Results are cached per domain for {@code cacheTtlMs}, up to {@code maxCacheEntries} domains. When disabled, every domain
+ * is its own group.
+ * <p>
+ * Lookups never block the caller: a missing or expired entry is resolved on the lookup executor, and the caller gets the
+ * previous group (or the domain itself) until the resolution lands.
+ */
+@Slf4j
+public class MxGroupResolver {
+
+    public static final int DEFAULT_MAX_CACHE_ENTRIES = 100_000;
+
+    private static final Set<String> SECOND_LEVEL_LABELS = Set.of("co", "or", "ne", "go", "ac", "re", "com", "net", "org", "gov", "edu");
+
+    private final Function<String, List<String>> mxHostLookup;
+    private final boolean enabled;
+    private final Map<String, String> groupBySuffix;
+    private final boolean deriveFromMxHost;
+    private final boolean sharedSessions;
+    private final long cacheTtlMs;
+    private final int maxCacheEntries;
+    private final Executor lookupExecutor;
+    private final Map<String, CachedGroup> cache = new ConcurrentHashMap<>();
+    // Domains with a resolution queued or running, so one domain is looked up once at a time
+    private final Set<String> resolving = ConcurrentHashMap.newKeySet();
+
+    public MxGroupResolver(RoutingService routingService, EmailConfig.Send sendConfig) {
+        this(Objects.requireNonNull(routingService, "routingService must not be null")::resolveMxHosts,
+                sendConfig.isMxGroupRoutingEnabled(), sendConfig.getMxGroups(), sendConfig.isMxGroupDeriveFromMxHost(),
+                sendConfig.isMxGroupSharedSessions(), sendConfig.getMxGroupCacheTtlMs(), sendConfig.getMxGroupCacheMaxEntries(),
+                Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Creates a resolver that looks up MX hosts on the calling thread.
+     *
+     * @param mxHostLookup     Returns MX hosts of a domain in preference order
+     * @param enabled          Whether domains are grouped at all
+     * @param groups           Group name → MX host suffixes
+     * @param deriveFromMxHost Whether unconfigured domains are grouped by the registrable domain of their primary MX host
+     * @param sharedSessions   Whether domains of the same configured group may share one SMTP session
+     * @param cacheTtlMs       Cache duration of a resolution
+     */
+    public MxGroupResolver(Function<String, List<String>> mxHostLookup, boolean enabled, Map<String, List<String>> groups,
+                           boolean deriveFromMxHost, boolean sharedSessions, long cacheTtlMs) {
+        this(mxHostLookup, enabled, groups, deriveFromMxHost, sharedSessions, cacheTtlMs, DEFAULT_MAX_CACHE_ENTRIES, Runnable::run);
+    }
+
+    /**
+     * @param mxHostLookup     Returns MX hosts of a domain in preference order
+     * @param enabled          Whether domains are grouped at all
+     * @param groups           Group name → MX host suffixes
+     * @param deriveFromMxHost Whether unconfigured domains are grouped by the registrable domain of their primary MX host
+     * @param sharedSessions   Whether domains of the same configured group may share one SMTP session
+     * @param cacheTtlMs       Cache duration of a resolution
+     * @param maxCacheEntries  Most domains kept in the cache
+     * @param lookupExecutor   Runs MX lookups off the caller's thread
+     */
+    public MxGroupResolver(Function<String, List<String>> mxHostLookup, boolean enabled, Map<String, List<String>> groups,
+                           boolean deriveFromMxHost, boolean sharedSessions, long cacheTtlMs, int maxCacheEntries,
+                           Executor lookupExecutor) {
+        this.mxHostLookup = Objects.requireNonNull(mxHostLookup, "mxHostLookup must not be null");
+        this.enabled = enabled;
+        this.groupBySuffix = normalizeGroups(groups);
+        this.deriveFromMxHost = deriveFromMxHost;
+        this.sharedSessions = sharedSessions;
+        this.cacheTtlMs = Math.max(0L, cacheTtlMs);
+        this.maxCacheEntries = Math.max(1, maxCacheEntries);
+        this.lookupExecutor = Objects.requireNonNull(lookupExecutor, "lookupExecutor must not be null");
+    }
+
+    /**
+     * Returns a resolver that keeps every domain in its own group.
+     */
+    public static MxGroupResolver disabled() {
+        return new MxGroupResolver(domain -> List.of(), false, Map.of(), false, false, 0L);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the MX group key used to schedule and cap sessions for the domain. Does not wait for an MX lookup.
+     *
+     * @param domain Recipient domain
+     * @return Group name, derived MX domain, or the domain itself while unresolved
+     */
+    public String resolveGroup(String domain) {
+        CachedGroup cached = lookup(domain);
+        return cached == null ? domain : cached.group();
+    }
+
+    /**
+     * Returns the group whose member domains may share one SMTP session, or {@code null} if the domain must use its own sessions.
+     * Only configured groups are trusted to accept recipients of all member domains on one connection.
+     */
+    public String resolveSharedSessionGroup(String domain) {
+        if (!sharedSessions) {
+            return null;
+        }
+        CachedGroup cached = lookup(domain);
+        return cached != null && cached.configured() ? cached.group() : null;
+    }
+
+    private CachedGroup lookup(String domain) {
+        if (!enabled || domain == null || domain.isBlank()) {
+            return null;
+        }
+        CachedGroup cached = cache.get(domain);
+        if (cached != null && cached.expiresAt() > System.currentTimeMillis()) {
+            return cached;
+        }
+        scheduleResolve(domain);
+        // A same-thread executor has already stored the result; otherwise keep the stale entry until it lands
+        CachedGroup latest = cache.get(domain);
+        return latest != null ? latest : cached;
+    }
+
+    private void scheduleResolve(String domain) {
+        if (!resolving.add(domain)) {
+            return;
+        }
+        try {
+            lookupExecutor.execute(() -> {
+                try {
+                    store(domain, resolve(domain, System.currentTimeMillis()));
+                } finally {
+                    resolving.remove(domain);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            resolving.remove(domain);
+            log.warn("MX group resolution rejected. domain={}", domain);
+        }
+    }
+
+    private void store(String domain, CachedGroup resolved) {
+        if (cache.size() >= maxCacheEntries && !cache.containsKey(domain)) {
+            evict();
+        }
+        cache.put(domain, resolved);
+    }
+
+    /**
+     * Drops expired entries, or an arbitrary one if none has expired, so the cache stays within its bound.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(cached -> cached.expiresAt() <= now);
+        Iterator<String> domains = cache.keySet().iterator();
+        while (cache.size() >= maxCacheEntries && domains.hasNext()) {
+            domains.next();
+            domains.remove();
+        }
+    }
+
+    private CachedGroup resolve(String domain, long now) {
+        long expiresAt = now + cacheTtlMs;
+        List<String> mxHosts;
+        try {
+            mxHosts = mxHostLookup.apply(domain);
+        } catch (RuntimeException e) {
+            log.warn("MX group resolution failed. domain={}", domain, e);
+            return new CachedGroup(domain, false, expiresAt);
+        }
+        if (mxHosts == null || mxHosts.isEmpty()) {
+            return new CachedGroup(domain, false, expiresAt);
+        }
+
+        for (String mxHost : mxHosts) {
+            String host = normalizeHost(mxHost);
+            for (Map.Entry<String, String> entry : groupBySuffix.entrySet()) {
+                if (host.equals(entry.getKey()) || host.endsWith("." + entry.getKey())) {
+                    return new CachedGroup(entry.getValue(), true, expiresAt);
+                }
+            }
+        }
+
+        if (deriveFromMxHost) {
+            String derived = registrableDomain(normalizeHost(mxHosts.getFirst()));
+            if (derived != null) {
+                return new CachedGroup(derived, false, expiresAt);
+            }
+        }
+        return new CachedGroup(domain, false, expiresAt);
+    }
+
+    private static Map<String, String> normalizeGroups(Map<String, List<String>> groups) {
+        Map<String, String> normalized = new HashMap<>();
+        if (groups == null) {
+            return normalized;
+        }
+        for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+            if (entry.getKey() == null || entry.getKey().isBlank() || entry.getValue() == null) {
+                continue;
+            }
+            String group = entry.getKey().trim().toLowerCase(Locale.ROOT);
+            for (String suffix : entry.getValue()) {
+                if (suffix != null && !suffix.isBlank()) {
+                    normalized.put(normalizeHost(suffix), group);
+                }
+            }
+        }
+        return normalized;
+    }
+
+    private static String normalizeHost(String host) {
+        String value = host.trim().toLowerCase(Locale.ROOT);
+        return value.endsWith(".") ? value.substring(0, value.length() - 1) : value;
+    }
+
+    /**
+     * Returns the last two labels of the host, or three for country-code second-level domains (e.g. daum.co.kr).
+     */
+    private static String registrableDomain(String host) {
+        String[] labels = host.split("\\.");
+        if (labels.length < 2) {
+            return null;
+        }
+        int count = 2;
+        if (labels.length >= 3 && labels[labels.length - 1].length() == 2 && SECOND_LEVEL_LABELS.contains(labels[labels.length - 2])) {
+            count = 3;
+        }
+        return String.join(".", List.of(labels).subList(labels.length - count, labels.length));
+    }
+
+    private record CachedGroup(String group, boolean configured, long expiresAt) {
+    }
+}
@@ -20,6 +20,8 @@ import java.util.Objects;
  * 3) Fixed IP mapping (fixedIpOfDomain)
  * 4) Block excluded domains (excludedDomain)
  * 5) DNS lookup (MX → A)
+ * <p>
+ * {@link #resolveMxHosts(String)} exposes the MX hosts themselves for MX-group resolution.
  */
 public class RoutingService {
     private final EmailConfig.Send sendConfig;
@@ -39,25 +41,34 @@ public class RoutingService {
      * Returned strings can be IPv4 literals ("1.2.3.4") or "host:port" format.
      */
     public List<String> resolveTargets(String domain) {
+        return resolveTargetResult(domain).getRecords();
+    }
+
+    /**
+     * Returns transport target candidates for a domain together with the lookup outcome,
+     * so callers can tell a definitive DNS failure ({@link DnsQueryResult#isDomainUnresolvable()}) from a transient one.
+     * Policy routes (simulator, IP literal, fixed IP) are always successful.
+     */
+    public DnsQueryResult resolveTargetResult(String domain) {
         if (domain == null || domain.isBlank()) {
-            return Collections.emptyList();
+            return DnsQueryResult.emptyRecord("600 DNS.error. domain is empty");
         }
 
         // 1) Simulator forced
         if (sendConfig.isSimulatorEnabled() && sendConfig.getSimulatorServer() != null) {
-            return Collections.singletonList(sendConfig.getSimulatorServer());
+            return DnsQueryResult.success(Collections.singletonList(sendConfig.getSimulatorServer()));
         }
 
         // 2) Use IP literal as-is
         if (IpUtil.isIpLiteral(domain)) {
-            return Collections.singletonList(domain);
+            return DnsQueryResult.success(Collections.singletonList(domain));
         }
 
         // 3) Fixed IP mapping
         Map<String, String> fixed = sendConfig.getFixedIpOfDomain();
         String fixedIp = (fixed == null) ? null : fixed.get(domain.toLowerCase(Locale.ROOT));
         if (fixedIp != null) {
-            return Collections.singletonList(fixedIp);
+            return DnsQueryResult.success(Collections.singletonList(fixedIp));
         }
 
         // 4) Block excluded domain
@@ -67,10 +78,40 @@ public class RoutingService {
         }
 
         // 5) DNS lookup (MX → A)
-        DnsQueryResult queryResult = dnsClient.resolveDomainToIpAddresses(domain);
-        return queryResult.getRecords();
+        return dnsClient.resolveDomainToIpAddresses(domain);
     }
 
+    /**
+     * Returns MX host names of a domain in preference order.
+     * Domains routed by policy (simulator, IP literal, fixed IP, excluded) and lookup failures return an empty list.
+     */
+    public List<String> resolveMxHosts(String domain) {
+        if (domain == null || domain.isBlank()) {
+            return Collections.emptyList();
+        }
+        if (sendConfig.isSimulatorEnabled() && sendConfig.getSimulatorServer() != null) {
+            return Collections.emptyList();
+        }
+        if (IpUtil.isIpLiteral(domain)) {
+            return Collections.emptyList();
+        }
+        String normalized = domain.toLowerCase(Locale.ROOT);
+        Map<String, String> fixed = sendConfig.getFixedIpOfDomain();
+        if (fixed != null && fixed.containsKey(normalized)) {
+            return Collections.emptyList();
+        }
+        List<String> excluded = sendConfig.getExcludedDomain();
+        if (excluded != null && excluded.contains(normalized)) {
+            return Collections.emptyList();
+        }
+
+        try {
+            DnsQueryResult queryResult = dnsClient.queryMxRecords(domain);
+            return queryResult.isSuccess() ? queryResult.getRecords() : Collections.emptyList();
+        } catch (Exception e) {
+            return Collections.emptyList();
+        }
+    }
 
 
     private static DnsClient createDnsClient(EmailConfig emailConfig) {
@@ -31,6 +31,12 @@ public class SmtpClient {
     @Getter
     private String helo;
 
+    /**
+     * Target address (IP or IP:port) of the current connection, or null if not connected.
+     */
+    @Getter
+    private String connectedAddress;
+
     public SmtpClient(SocketConfig socketConfig, SmtpTlsConfig smtpTlsConfig) {
         this(socketConfig, smtpTlsConfig, false);
     }
@@ -81,6 +87,7 @@ public class SmtpClient {
             smtpCommandHandler.addSmtpCommandResponse(connectResponse);
 
             if (connectResponse.isSuccess()) {
+                connectedAddress = ipAddress;
                 return readInitResponse();
             } else {
                 sessionInfo.closeSocket();
@@ -241,6 +248,15 @@ public class SmtpClient {
         return smtpCommandHandler.sendRset();
     }
 
+    /**
+     * Sends the NOOP command.
+     *
+     * @return SMTP command response
+     */
+    public SmtpCommandResponse sendNoop() {
+        return smtpCommandHandler.sendNoop();
+    }
+
     /**
      * Sends the QUIT command.
      *
@@ -16,6 +16,7 @@ public enum SmtpCommand {
     DATA("DATA", 354),
     DATA_END("DATA_END", 250),  // Response after message transmission (250)
     RSET("RSET", 250),
+    NOOP("NOOP", 250),
     QUIT("QUIT", 221);
 
     private final String command;
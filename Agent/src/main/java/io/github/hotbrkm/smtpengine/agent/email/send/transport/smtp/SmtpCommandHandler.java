@@ -17,6 +17,7 @@ import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpC
 import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand.HELO;
 import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand.INIT;
 import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand.MAIL_FROM;
+import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand.NOOP;
 import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand.QUIT;
 import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand.RCPT_TO;
 import static io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand.RSET;
@@ -179,6 +180,13 @@ public class SmtpCommandHandler {
         return smtpCommandResponse;
     }
 
+    /**
+     * Sends NOOP. The response is not added to the history, so a session kept alive for long does not grow it.
+     */
+    public SmtpCommandResponse sendNoop() {
+        return new SmtpCommandResponse(NOOP, sendCommand(NOOP.getCommand()));
+    }
+
     public SmtpCommandResponse sendQuit() {
         List<String> responseStrings = sendCommand(QUIT.getCommand());
         SmtpCommandResponse smtpCommandResponse = new SmtpCommandResponse(QUIT, responseStrings);
@@ -2,11 +2,13 @@ package io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp;
 
 import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
 import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.dns.DnsQueryResult;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.routing.RoutingService;
 import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.network.SocketConfig;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
@@ -15,6 +17,8 @@ public class SmtpSessionManager {
     private final EmailConfig.Send sendConfig;
     private SmtpSession session;
     private SmtpClient smtpClient;
+    // Mail transactions (MAIL FROM) started on the current session
+    private int sessionTransactions;
     private final EmailDomainManager emailDomainManager;
     private final RoutingService routingService;
 
@@ -83,6 +87,7 @@ public class SmtpSessionManager {
      *
      * @param domain Domain name
      * @param bindIp Local socket bind IP
+     * @throws SmtpSessionOpenException if the session cannot be opened; flagged as unresolvable when DNS definitively failed
      */
     public void openSession(String domain, String bindIp) {
         if (session != null) {
@@ -90,12 +95,57 @@ public class SmtpSessionManager {
             closeSession();
         }
 
-        List<String> ipAddresses = resolveDomainToIpAddresses(domain);
+        DnsQueryResult routingResult = routingService.resolveTargetResult(domain);
+        if (routingResult.isDomainUnresolvable()) {
+            String message = routingResult.getMessage();
+            throw new SmtpSessionOpenException(parseStatusCode(message), message, bindIp, false, true);
+        }
+        List<String> ipAddresses = routingResult.getRecords();
         smtpClient = getSmtpConnector(domain, bindIp);
         session = smtpClient.createSession(ipAddresses, smtpConfig.getHelo());
         assertSessionValid(bindIp);
     }
 
+    /**
+     * Replaces a broken session with a new one, trying the remaining MX addresses before the one that failed.
+     * <p>
+     * The failed address is moved to the end of the list, so single-MX domains still get a plain reconnect.
+     * Connect and each handshake read (greeting, EHLO, STARTTLS) wait at most {@code timeoutMillis}; the domain read
+     * timeout applies again once the session is open.
+     *
+     * @param domain        Domain name
+     * @param bindIp        Local socket bind IP
+     * @param timeoutMillis Upper bound of the connect and handshake timeouts, e.g. the caller's remaining time budget
+     * @throws SmtpSessionOpenException if no address accepts the session
+     */
+    public void reopenSession(String domain, String bindIp, long timeoutMillis) {
+        String failedAddress = smtpClient != null ? smtpClient.getConnectedAddress() : null;
+        closeSession();
+
+        List<String> ipAddresses = moveToEnd(resolveDomainToIpAddresses(domain), failedAddress);
+        int limit = (int) Math.min(Math.max(1L, timeoutMillis), Integer.MAX_VALUE);
+        int readTimeout = getReadTimeout(domain);
+        SocketConfig socketConfig = getSocketConfig(Math.min(getConnectionTimeout(domain), limit), Math.min(readTimeout, limit), bindIp);
+        boolean traceLog = sendConfig.isDnsTrace() || sendConfig.isSmtpTrace();
+        smtpClient = new SmtpClient(socketConfig, getSmtpTlsConfig(domain), traceLog);
+        session = smtpClient.createSession(ipAddresses, smtpConfig.getHelo());
+        assertSessionValid(bindIp);
+        session.setSoTimeout(readTimeout);
+        log.info("SMTP session reopened for domain: {} with bindIp={} (failed address: {}, new address: {})",
+                domain, bindIp, failedAddress, smtpClient.getConnectedAddress());
+    }
+
+    private static List<String> moveToEnd(List<String> ipAddresses, String address) {
+        int index = address != null ? ipAddresses.indexOf(address) : -1;
+        if (index < 0 || ipAddresses.size() < 2) {
+            return ipAddresses;
+        }
+        List<String> reordered = new ArrayList<>(ipAddresses.size());
+        reordered.addAll(ipAddresses.subList(index + 1, ipAddresses.size()));
+        reordered.addAll(ipAddresses.subList(0, index + 1));
+        return reordered;
+    }
+
     private void assertSessionValid(String bindIp) {
         if (!isSessionValid()) {
             String message = smtpClient.getCommandHandler().getCurrentMessage();
@@ -124,6 +174,21 @@ public class SmtpSessionManager {
         }
         session = null;
         smtpClient = null;
+        sessionTransactions = 0;
+    }
+
+    /**
+     * Checks whether the current session can carry {@code count} more messages within the domain's sendCountPerSession,
+     * the per-connection message cap MXs enforce.
+     *
+     * @param domain Domain name
+     * @param count  Messages to send
+     * @return true if the transactions already started on the session plus {@code count} stay within the cap
+     */
+    public boolean hasTransactionsLeft(String domain, int count) {
+        EmailDomain emailDomain = emailDomainManager.getEmailDomain(domain.toUpperCase());
+        int limit = Math.max(1, emailDomain.getSendCountPerSession());
+        return sessionTransactions + count <= limit;
     }
 
     /**
@@ -146,6 +211,7 @@ public class SmtpSessionManager {
         if (smtpClient == null) {
             throw new IllegalStateException("SMTP session is not open. Call openSession() first.");
         }
+        sessionTransactions++;
         return smtpClient.sendMailFrom(mailFrom);
     }
 
@@ -216,6 +282,18 @@ public class SmtpSessionManager {
         return smtpClient.sendRset();
     }
 
+    /**
+     * Sends NOOP command, used to keep an idle session alive.
+     *
+     * @return SMTP command response
+     */
+    public SmtpCommandResponse sendNoop() {
+        if (smtpClient == null) {
+            throw new IllegalStateException("SMTP session is not open. Call openSession() first.");
+        }
+        return smtpClient.sendNoop();
+    }
+
     /**
      * Sends QUIT command.
      *
@@ -11,12 +11,20 @@ public class SmtpSessionOpenException extends RuntimeException {
     private final String originalMessage;
     private final String bindIp;
     private final boolean localBindError;
+    /** The recipient domain does not resolve (NXDOMAIN, or no MX and no A), so no session can be opened */
+    private final boolean unresolvableDomain;
 
     public SmtpSessionOpenException(int statusCode, String originalMessage, String bindIp, boolean localBindError) {
+        this(statusCode, originalMessage, bindIp, localBindError, false);
+    }
+
+    public SmtpSessionOpenException(int statusCode, String originalMessage, String bindIp, boolean localBindError,
+                                    boolean unresolvableDomain) {
         super(originalMessage);
         this.statusCode = statusCode;
         this.originalMessage = originalMessage;
         this.bindIp = bindIp;
         this.localBindError = localBindError;
+        this.unresolvableDomain = unresolvableDomain;
     }
 }
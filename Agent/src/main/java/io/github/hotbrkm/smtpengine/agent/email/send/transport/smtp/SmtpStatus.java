@@ -16,6 +16,12 @@ public final class SmtpStatus {
     public static final int SESSION_INVALID = 888;
     /** MIME build failed */
     public static final int MIME_BUILD_FAILED = 900;
+    /** Local send rate limit reached (retry) */
+    public static final int RATE_LIMITED = 706;
+    /** Recipient skipped because it hard-bounced before */
+    public static final int SUPPRESSED = 707;
+    /** Domain is within its configured block window */
+    public static final int DOMAIN_BLOCKED = 708;
     /** Unknown error (default) */
     public static final int UNKNOWN_ERROR = 700;
 
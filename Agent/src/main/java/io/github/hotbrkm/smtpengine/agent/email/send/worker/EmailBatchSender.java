@@ -2,6 +2,8 @@ package io.github.hotbrkm.smtpengine.agent.email.send.worker;
 
 import io.github.hotbrkm.smtpengine.agent.email.mime.EmailMimeComposer;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.SendRateLimiter;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommandResponse;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManager;
@@ -16,7 +18,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -35,8 +39,19 @@ public class EmailBatchSender implements Callable<Integer> {
     private final SmtpSessionManager smtpSessionManager;
     private final EmailMimeComposer emailMimeComposer;
     private final ResultApplier resultApplier;
-    private final List<String> retryExcludeCode;
+    private final RetryPolicy retryPolicy;
     private final DomainSendMetrics domainSendMetrics;
+    private final SendRateLimiter sendRateLimiter;
+    private final long maxPacingWaitNanos;
+    private final SessionDegradationPolicy degradationPolicy;
+    private final SessionFailoverPolicy failoverPolicy;
+    // Pool that composes messages ahead of the SMTP exchange (null composes inline)
+    private final Executor composeExecutor;
+    private final int composeLookahead;
+    // Takes the open session back after a clean batch instead of closing it (null always closes)
+    private final Predicate<SmtpSessionManager> sessionReturn;
+    private MimePrecomposer precomposer;
+    private boolean sessionReusable = false;
 
     // State for session-level error propagation
     private boolean sessionBroken = false;
@@ -46,24 +61,54 @@ public class EmailBatchSender implements Callable<Integer> {
     private String lastErrorMessage = SmtpStatus.UNKNOWN_ERROR + " Unknown error";
     @Getter
     private boolean localBindFailure = false;
+    // The domain did not resolve (NXDOMAIN, or no MX and no A) when the session was opened
+    @Getter
+    private boolean unresolvableDomain = false;
     private boolean hasAnySuccess = false;
+    // Index of the first target handed back to the engine because the session degraded (-1 if none)
+    private int handoffFromIndex = -1;
+    // Start of the SMTP exchange of the current message, after MIME composition (-1 if it never reached SMTP)
+    private long smtpStartNanos = -1L;
+    // Session reopens performed for this batch and the deadline for starting another one
+    @Getter
+    private int failoverCount = 0;
+    private long failoverDeadlineNanos;
 
     /**
-     * Constructor that receives all dependencies needed for batch transmission.
+     * Constructor that receives all dependencies needed for batch transmission, with every optional behavior off.
      * <p>
      * In the Engine layer, it is recommended to call this constructor through {@link EmailBatchSenderFactory}.
      */
     public EmailBatchSender(List<EmailSendTarget> batch, String domain, String bindIp, SmtpSessionManager smtpSessionManager,
                             EmailMimeComposer emailMimeComposer, ResultApplier resultApplier, List<String> retryExcludeCode,
                             DomainSendMetrics domainSendMetrics) {
+        this(batch, domain, bindIp, smtpSessionManager, emailMimeComposer, resultApplier, domainSendMetrics,
+                EmailBatchSenderOptions.defaults(retryExcludeCode));
+    }
+
+    /**
+     * Constructor with the optional behavior (retry rules, pacing, handoff, failover, look-ahead composition,
+     * session return) assembled by {@link EmailBatchSenderFactory}.
+     */
+    public EmailBatchSender(List<EmailSendTarget> batch, String domain, String bindIp, SmtpSessionManager smtpSessionManager,
+                            EmailMimeComposer emailMimeComposer, ResultApplier resultApplier, DomainSendMetrics domainSendMetrics,
+                            EmailBatchSenderOptions options) {
+        Objects.requireNonNull(options, "options must not be null");
         this.batch = Objects.requireNonNull(batch, "batch must not be null");
         this.domain = Objects.requireNonNull(domain, "domain must not be null");
         this.bindIp = Objects.requireNonNull(bindIp, "bindIp must not be null");
         this.smtpSessionManager = Objects.requireNonNull(smtpSessionManager, "smtpHelper must not be null");
         this.emailMimeComposer = Objects.requireNonNull(emailMimeComposer, "emailMimeComposer must not be null");
         this.resultApplier = Objects.requireNonNull(resultApplier, "resultApplier must not be null");
-        this.retryExcludeCode = retryExcludeCode != null ? retryExcludeCode : Collections.emptyList();
         this.domainSendMetrics = Objects.requireNonNull(domainSendMetrics, "domainSendMetrics must not be null");
+        this.retryPolicy = options.retryPolicy();
+        this.sendRateLimiter = options.sendRateLimiter();
+        this.maxPacingWaitNanos = TimeUnit.MILLISECONDS.toNanos(options.maxPacingWaitMs());
+        this.degradationPolicy = options.degradationPolicy();
+        this.failoverPolicy = options.failoverPolicy();
+        this.composeExecutor = options.composeExecutor();
+        this.composeLookahead = options.composeLookahead();
+        this.sessionReturn = options.sessionReturn();
     }
 
     /**
@@ -99,6 +144,7 @@ public class EmailBatchSender implements Callable<Integer> {
                 if (e instanceof SmtpSessionOpenException sessionOpenException) {
                     captureLastError(sessionOpenException.getStatusCode(), sessionOpenException.getOriginalMessage());
                     localBindFailure = sessionOpenException.isLocalBindError();
+                    unresolvableDomain = sessionOpenException.isUnresolvableDomain();
                 } else {
                     captureLastError(600, e.getMessage());
                 }
@@ -108,14 +154,25 @@ public class EmailBatchSender implements Callable<Integer> {
                 return 0;
             }
 
+            long slowMessageThresholdMs = resolveSlowMessageThresholdMs();
+            startPrecomposer();
+
             // 2. Send email to each target
             for (int i = 0; i < batch.size(); i++) {
                 EmailSendTarget emailSendTarget = batch.get(i);
+                // Pace following messages; defer the rest of the batch to retry if the rate limit wait is too long
+                if (i > 0 && !awaitSendRate()) {
+                    captureLastError(SmtpStatus.RATE_LIMITED, "Send rate limit reached for domain " + domain + " with bindIp=" + bindIp);
+                    propagateFailureToRemaining(i, lastErrorStatusCode, lastErrorMessage);
+                    log.info("Send rate limit deferred {} targets of domain '{}' to retry", batch.size() - i, domain);
+                    break;
+                }
+                smtpStartNanos = -1L;
                 try {
                     // Send only new data (retry_count == 0) or retry targets (retry_count > 0)
                     int retryCount = emailSendTarget.retryCount();
                     if (retryCount >= 0) {
-                        boolean sent = sendEmail(emailSendTarget);
+                        boolean sent = sendEmail(emailSendTarget, i);
                         if (sent) {
                             successCount++;
                             hasAnySuccess = true;
@@ -134,19 +191,35 @@ public class EmailBatchSender implements Callable<Integer> {
                     handleSendFailure(emailSendTarget, e);
                 }
 
-                // If session is broken, propagate same code to remaining unprocessed (701) items and break loop
+                // If session is broken, try another MX address; otherwise propagate same code to remaining unprocessed (701) items and break loop
                 if (sessionBroken) {
-                    propagateFailureToRemaining(i + 1, lastErrorStatusCode, lastErrorMessage);
                     domainSendMetrics.recordSessionFailure(domain);
+                    if (i + 1 < batch.size() && failOver()) {
+                        continue;
+                    }
+                    propagateFailureToRemaining(i + 1, lastErrorStatusCode, lastErrorMessage);
+                    break;
+                }
+
+                // If the session has degraded, hand the unprocessed tail back instead of holding it behind this connection
+                if (shouldHandOff(i, slowMessageThresholdMs)) {
+                    handoffFromIndex = i + 1;
+                    log.warn("Session degraded for domain '{}' with bindIp={} (message took > {} ms). Handing off {} targets",
+                            domain, bindIp, slowMessageThresholdMs, batch.size() - handoffFromIndex);
                     break;
                 }
             }
+            // Report the batch only once its results are persisted (asynchronous writers commit in groups)
+            resultApplier.flush();
+            sessionReusable = !sessionBroken && handoffFromIndex < 0;
             log.info("Batch send completed for domain '{}'. Success: {}/{}", domain, successCount, batch.size());
         } catch (ResultPersistenceException e) {
             log.error("Batch send aborted due to result persistence failure", e);
             throw e;
         } catch (Exception e) {
             log.error("Batch send failed", e);
+            // Results applied before the failure are reported with the batch too
+            resultApplier.flush();
         } finally {
             // Ensure session cleanup in all paths including ResultPersistenceException
             finalizeSend();
@@ -162,6 +235,11 @@ public class EmailBatchSender implements Callable<Integer> {
     private void prepareSend() {
         log.debug("Preparing to send batch for domain: {}", domain);
 
+        if (smtpSessionManager.isSessionValid()) {
+            log.debug("Using standby SMTP session for domain: {} with bindIp={}", domain, bindIp);
+            return;
+        }
+
         try {
             smtpSessionManager.openSession(domain, bindIp);
             log.debug("SMTP session created successfully for domain: {} with bindIp={}", domain, bindIp);
@@ -173,13 +251,120 @@ public class EmailBatchSender implements Callable<Integer> {
         }
     }
 
+    /**
+     * Starts composing the first messages ahead when a compose pool is configured and the batch has more than one target.
+     */
+    private void startPrecomposer() {
+        if (composeExecutor == null || composeLookahead <= 0 || batch.size() < 2) {
+            return;
+        }
+        precomposer = new MimePrecomposer(batch, emailMimeComposer, composeExecutor, composeLookahead);
+        precomposer.start();
+    }
+
+    /**
+     * Returns the message of the target at {@code index}, from the precomposer if running.
+     */
+    private String composeMessage(EmailSendTarget emailSendTarget, int index) throws Exception {
+        if (precomposer != null) {
+            return precomposer.take(index);
+        }
+        return emailMimeComposer.makeMime(emailSendTarget);
+    }
+
+    /**
+     * Reopens the broken session within the failover policy limits.
+     * The target that hit the failure keeps its result and goes through the normal retry path.
+     * <p>
+     * The reopen tries the domain's other MX addresses but keeps the bind IP: the IP is the one the execution permit
+     * leased, and the engine releases, cools down and counts sessions against that lease. Moving to another bind IP
+     * is left to the retry lane, which acquires a new lease. The connect and handshake timeouts are capped at the
+     * remaining budget, so a reopen cannot run far past it.
+     *
+     * @return true if a new session is open and the remaining targets can be sent on it
+     */
+    private boolean failOver() {
+        if (!failoverPolicy.enabled() || failoverCount >= failoverPolicy.maxAttempts()) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (failoverCount == 0) {
+            failoverDeadlineNanos = now + TimeUnit.MILLISECONDS.toNanos(failoverPolicy.budgetMs());
+        }
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(failoverDeadlineNanos - now);
+        if (remainingMs <= 0) {
+            return false;
+        }
+        failoverCount++;
+
+        try {
+            smtpSessionManager.reopenSession(domain, bindIp, remainingMs);
+            sessionBroken = false;
+            log.info("Failed over SMTP session for domain '{}' with bindIp={} after: {} (attempt {}/{})",
+                    domain, bindIp, lastErrorMessage, failoverCount, failoverPolicy.maxAttempts());
+            return true;
+        } catch (Exception e) {
+            log.warn("SMTP session failover failed for domain '{}' with bindIp={} (attempt {}/{})",
+                    domain, bindIp, failoverCount, failoverPolicy.maxAttempts(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the per-message latency threshold for this batch, based on the domain's recent average response time.
+     */
+    private long resolveSlowMessageThresholdMs() {
+        if (!degradationPolicy.enabled()) {
+            return Long.MAX_VALUE;
+        }
+        double baselineMs = domainSendMetrics.snapshot(domain, degradationPolicy.baselineSeconds()).avgResponseTimeMs();
+        return degradationPolicy.thresholdMs(baselineMs);
+    }
+
+    /**
+     * Compares the SMTP time of the current message with the threshold; like the baseline, it excludes MIME composition.
+     */
+    private boolean shouldHandOff(int index, long slowMessageThresholdMs) {
+        if (!degradationPolicy.enabled() || smtpStartNanos < 0 || batch.size() - (index + 1) < degradationPolicy.minRemaining()) {
+            return false;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - smtpStartNanos);
+        return elapsedMs > slowMessageThresholdMs;
+    }
+
+    /**
+     * Reserves a send rate token for the next message and waits until it can be used.
+     *
+     * @return false if the wait would exceed the pacing limit or was interrupted
+     */
+    private boolean awaitSendRate() {
+        if (sendRateLimiter == null) {
+            return true;
+        }
+        long waitNanos = sendRateLimiter.reserve(domain, bindIp, maxPacingWaitNanos);
+        if (waitNanos < 0) {
+            return false;
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                // Cancelled or shutting down: stop the batch instead of sending unpaced
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Sends email to individual target.
      *
      * @param emailSendTarget Target data (includes target_email, target_id, etc.)
+     * @param index           Position of the target in the batch
      * @return Whether sending succeeded
      */
-    private boolean sendEmail(EmailSendTarget emailSendTarget) {
+    private boolean sendEmail(EmailSendTarget emailSendTarget, int index) {
         String email = emailSendTarget.getTargetEmail();
         String message;
 
@@ -197,7 +382,7 @@ public class EmailBatchSender implements Callable<Integer> {
 
             // 0. Content creation
             try {
-                message = emailMimeComposer.makeMime(emailSendTarget);
+                message = composeMessage(emailSendTarget, index);
             } catch (Exception makeEx) {
                 log.error("Failed to make MIME for: {}", email, makeEx);
                 captureLastError(SmtpStatus.MIME_BUILD_FAILED, makeEx.getMessage());
@@ -207,6 +392,7 @@ public class EmailBatchSender implements Callable<Integer> {
 
             // Start SMTP I/O time measurement (excluding MIME creation)
             long startNanos = System.nanoTime();
+            smtpStartNanos = startNanos;
 
             // 1. Send MAIL FROM command
             SmtpCommandResponse mailFromResponse = smtpSessionManager.sendMailFrom(emailSendTarget.getSenderEmail());
@@ -356,30 +542,30 @@ public class EmailBatchSender implements Callable<Integer> {
     private void propagateFailureToRemaining(int startIndex, int statusCode, String originalMessage) {
         for (int i = startIndex; i < batch.size(); i++) {
             EmailSendTarget req = batch.get(i);
-            String code = req.getSendCode();
-            if (isUnprocessed(code)) {
+            if (req.isUnprocessed()) {
                 resultApplier.apply(req, SendResult.failure(statusCode, originalMessage));
             }
         }
     }
 
-    /**
-     * Checks if target's send_code is unprocessed (701).
-     */
-    private boolean isUnprocessed(String sendCode) {
-        if (sendCode == null) {
-            return true;
-        }
-        return "701".equals(sendCode);
-    }
-
     /**
      * Performs post-send cleanup tasks.
-     * Closes SMTP session.
+     * Cancels look-ahead composition and closes SMTP session, unless the session return keeps it open.
      */
     private void finalizeSend() {
         log.debug("Finalizing batch send for domain: {}", domain);
 
+        if (precomposer != null) {
+            // Drop messages composed for targets that were deferred or handed off
+            precomposer.close();
+            precomposer = null;
+        }
+
+        if (sessionReusable && sessionReturn != null && smtpSessionManager.isSessionValid() && sessionReturn.test(smtpSessionManager)) {
+            log.debug("SMTP session kept as standby for domain: {} with bindIp={}", domain, bindIp);
+            return;
+        }
+
         try {
             if (smtpSessionManager.isSessionValid()) {
                 SmtpCommandResponse quitResponse = smtpSessionManager.sendQuit();
@@ -401,9 +587,9 @@ public class EmailBatchSender implements Callable<Integer> {
     }
 
     /**
-     * Extracts targets not included in retry exclude codes as retry targets.
+     * Extracts targets whose failure the retry policy retries as retry targets.
      * <p>
-     * - Codes included in retryExcludeCode: do not retry (treat as completed)
+     * - Codes the policy does not retry (e.g. retryExcludeCode): treat as completed
      * - Other codes: retry targets
      *
      * @return Retry target list
@@ -412,18 +598,26 @@ public class EmailBatchSender implements Callable<Integer> {
         if (localBindFailure) {
             return Collections.emptyList();
         }
-        return batch.stream()
-                .filter(req -> {
-                    String code = req.getSendCode();
-                    if (code == null) {
-                        return false;
-                    }
-                    // If included in retry exclude codes, not a retry target
-                    return !retryExcludeCode.contains(code);
-                })
+        // Handed-off targets were never attempted here and are sent by the handoff task instead.
+        List<EmailSendTarget> attempted = handoffFromIndex >= 0 ? batch.subList(0, handoffFromIndex) : batch;
+        return attempted.stream()
+                .filter(retryPolicy::shouldRetry)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the unprocessed targets handed back because the session degraded.
+     * These targets carry no result and must be sent by another task.
+     *
+     * @return Handoff target list (empty if the batch ran to the end)
+     */
+    public List<EmailSendTarget> extractHandoffTargets() {
+        if (handoffFromIndex < 0 || handoffFromIndex >= batch.size()) {
+            return Collections.emptyList();
+        }
+        return List.copyOf(batch.subList(handoffFromIndex, batch.size()));
+    }
+
     /**
      * Increments retry_count for retry targets.
      * Engine layer uses this method to update state before creating retry batch.
@@ -2,14 +2,23 @@ package io.github.hotbrkm.smtpengine.agent.email.send.worker;
 
 import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
 import io.github.hotbrkm.smtpengine.agent.email.mime.EmailMimeComposer;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.journal.QueueJournal;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.SendRateLimiter;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManager;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManagerFactory;
 
-import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * Default {@link EmailBatchSenderFactory} implementation.
@@ -21,12 +30,27 @@ public class EmailBatchSenderFactory {
     private final EmailConfig emailConfig;
     private final SmtpSessionManagerFactory smtpSessionManagerFactory;
     private volatile DomainSendMetrics domainSendMetrics;
+    private volatile SendRateLimiter sendRateLimiter;
+    private volatile RetryPolicy retryPolicy;
+    private volatile BounceSuppressionStore bounceSuppressionStore;
+    private volatile Executor composeExecutor;
+    private volatile QueueJournal queueJournal;
+    private volatile StandbySessionPool standbySessionPool;
+    // Retry budget injected at engine assembly (negative: batchMaxRetryCount of the config)
+    private volatile int maxRetryCount = -1;
 
     public EmailBatchSenderFactory(EmailConfig emailConfig, SmtpSessionManagerFactory smtpSessionManagerFactory) {
         this.emailConfig = emailConfig;
         this.smtpSessionManagerFactory = smtpSessionManagerFactory;
     }
 
+    /**
+     * Injects the engine's retry budget during engine assembly; a session handoff is charged one retry.
+     */
+    public void setMaxRetryCount(int maxRetryCount) {
+        this.maxRetryCount = maxRetryCount;
+    }
+
     /**
      * Injects DomainSendMetrics during engine assembly.
      * Should be called once before engine starts.
@@ -35,19 +59,110 @@ public class EmailBatchSenderFactory {
         this.domainSendMetrics = Objects.requireNonNull(domainSendMetrics, "domainSendMetrics must not be null");
     }
 
+    /**
+     * Injects the send rate limiter used for per-message pacing during engine assembly.
+     */
+    public void setSendRateLimiter(SendRateLimiter sendRateLimiter) {
+        this.sendRateLimiter = Objects.requireNonNull(sendRateLimiter, "sendRateLimiter must not be null");
+    }
+
+    /**
+     * Injects the compiled retry policy during engine assembly.
+     * Without it, senders fall back to retryExcludeCode.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = Objects.requireNonNull(retryPolicy, "retryPolicy must not be null");
+    }
+
+    /**
+     * Injects the store that hard bounces are recorded into during engine assembly.
+     */
+    public void setBounceSuppressionStore(BounceSuppressionStore bounceSuppressionStore) {
+        this.bounceSuppressionStore = Objects.requireNonNull(bounceSuppressionStore, "bounceSuppressionStore must not be null");
+    }
+
+    /**
+     * Injects the CPU pool that composes messages ahead of the SMTP exchange during engine assembly.
+     * Without it, senders compose each message inline.
+     */
+    public void setComposeExecutor(Executor composeExecutor) {
+        this.composeExecutor = Objects.requireNonNull(composeExecutor, "composeExecutor must not be null");
+    }
+
+    /**
+     * Injects the queue journal during engine assembly; senders then journal each target result.
+     */
+    public void setQueueJournal(QueueJournal queueJournal) {
+        this.queueJournal = Objects.requireNonNull(queueJournal, "queueJournal must not be null");
+    }
+
+    /**
+     * Creates the standby session pool for hot realtime domains during engine assembly, after DomainSendMetrics is injected.
+     * REALTIME_FRESH senders created afterwards take and return its sessions.
+     *
+     * @param sessionAllocator Allocator whose per-IP session limits standby sessions count against
+     * @param limitKeyResolver Resolves a domain to the key the allocator limits its sessions by
+     * @return Pool the engine maintains and closes, or null when realtimeStandbySessionsPerDomain is 0
+     */
+    public StandbySessionPool initStandbySessionPool(BindIpSessionAllocator sessionAllocator, UnaryOperator<String> limitKeyResolver) {
+        EmailConfig.Send send = emailConfig.getSend();
+        if (send.getRealtimeStandbySessionsPerDomain() <= 0) {
+            return null;
+        }
+        Objects.requireNonNull(domainSendMetrics, "domainSendMetrics must be injected before the standby session pool");
+        Objects.requireNonNull(sessionAllocator, "sessionAllocator must not be null");
+        Objects.requireNonNull(limitKeyResolver, "limitKeyResolver must not be null");
+        standbySessionPool = new StandbySessionPool(smtpSessionManagerFactory::create, domainSendMetrics, sessionAllocator, limitKeyResolver,
+                send.getRealtimeStandbySessionsPerDomain(), send.getRealtimeStandbyTopDomains(),
+                send.getRealtimeStandbyVolumeWindowSeconds(), send.getRealtimeStandbyKeepaliveMs(), send.getRealtimeStandbyMaxAgeMs());
+        return standbySessionPool;
+    }
+
     public EmailBatchSender create(DomainBatchTask domainBatchTask, String bindIp) {
         Objects.requireNonNull(domainBatchTask, "domainBatchTask must not be null");
         Objects.requireNonNull(bindIp, "bindIp must not be null");
 
-        SmtpSessionManager smtpSessionManager = smtpSessionManagerFactory.create();
+        String domain = domainBatchTask.getDomain();
+        StandbySessionPool pool = domainBatchTask.getDispatchLane() == DispatchLane.REALTIME_FRESH ? standbySessionPool : null;
+        SmtpSessionManager standby = pool != null ? pool.take(domain, bindIp, domainBatchTask.getBatch().size()) : null;
+        SmtpSessionManager smtpSessionManager = standby != null ? standby : smtpSessionManagerFactory.create();
+        Predicate<SmtpSessionManager> sessionReturn = pool != null ? manager -> pool.offer(domain, bindIp, manager) : null;
 
         EmailSendContext emailSendContext = domainBatchTask.getEmailSendContext();
         EmailMimeComposer emailMimeComposer = new EmailMimeComposer(emailConfig, emailSendContext, emailConfig.getSend().getSpoolDir());
 
-        ResultApplier resultApplier = new ResultApplier(domainBatchTask.getRunnerId(), domainBatchTask.getResultWriter(), domainSendMetrics);
-        List<String> retryExcludeCode = emailConfig.getSend().getRetryExcludeCode();
+        EmailBatchResultWriter resultWriter = queueJournal != null
+                ? queueJournal.resultWriter(domainBatchTask, domainBatchTask.getResultWriter())
+                : domainBatchTask.getResultWriter();
+        ResultApplier resultApplier = new ResultApplier(domainBatchTask.getRunnerId(), resultWriter, domainSendMetrics,
+                bounceSuppressionStore);
+        EmailConfig.Send send = emailConfig.getSend();
+        EmailBatchSenderOptions options = EmailBatchSenderOptions.builder()
+                .retryPolicy(retryPolicy != null ? retryPolicy : RetryPolicy.ofExcludedCodes(send.getRetryExcludeCode()))
+                .sendRateLimiter(sendRateLimiter)
+                .maxPacingWaitMs(send.getSendRateMaxPacingWaitMs())
+                .degradationPolicy(resolveDegradationPolicy(domainBatchTask))
+                .failoverPolicy(new SessionFailoverPolicy(send.getSessionFailoverMaxAttempts(), send.getSessionFailoverBudgetMs()))
+                .composeExecutor(composeExecutor)
+                .composeLookahead(send.getMimeComposeLookahead())
+                .sessionReturn(sessionReturn)
+                .build();
 
-        return new EmailBatchSender(domainBatchTask.getBatch(), domainBatchTask.getDomain(), bindIp, smtpSessionManager,
-                emailMimeComposer, resultApplier, retryExcludeCode, domainSendMetrics);
+        return new EmailBatchSender(domainBatchTask.getBatch(), domain, bindIp, smtpSessionManager,
+                emailMimeComposer, resultApplier, domainSendMetrics, options);
+    }
+
+    /**
+     * A handed-off tail is charged one retry, so tasks that have used up their retry budget keep their tail.
+     */
+    private SessionDegradationPolicy resolveDegradationPolicy(DomainBatchTask domainBatchTask) {
+        EmailConfig.Send send = emailConfig.getSend();
+        int retryBudget = maxRetryCount >= 0 ? maxRetryCount : send.resolveBatchMaxRetryCount();
+        if (!send.isSessionDegradationHandoffEnabled() || domainBatchTask.getRetryCount() >= retryBudget) {
+            return SessionDegradationPolicy.disabled();
+        }
+        return new SessionDegradationPolicy(true, send.getSessionDegradationLatencyMultiplier(),
+                send.getSessionDegradationMinLatencyMs(), send.getSessionDegradationMinRemaining(),
+                send.getSessionDegradationBaselineSeconds());
     }
 }
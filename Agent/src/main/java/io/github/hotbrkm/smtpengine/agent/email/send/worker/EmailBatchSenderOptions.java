@@ -0,0 +1,48 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.worker;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.SendRateLimiter;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManager;
+import lombok.Builder;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * Optional behavior of an {@link EmailBatchSender}, assembled per batch by {@link EmailBatchSenderFactory}.
+ * Unset options leave the behavior off.
+ *
+ * @param retryPolicy       Compiled retry rules (null: no status code is excluded from retry)
+ * @param sendRateLimiter   Paces the messages after the first; the first is covered by the batch-level token taken at
+ *                          permit acquisition (null: no pacing)
+ * @param maxPacingWaitMs   Longest pacing wait before the rest of the batch is deferred to retry
+ * @param degradationPolicy Hands the unprocessed tail back to the engine when a message is too slow
+ * @param failoverPolicy    Reopens a session that broke mid-batch before deferring the rest to retry
+ * @param composeExecutor   Pool that composes and signs the following messages while the current one is exchanged
+ *                          (null composes inline)
+ * @param composeLookahead  Messages composed ahead on {@code composeExecutor} (0 composes inline)
+ * @param sessionReturn     Takes the open session back after a clean batch instead of closing it (null always closes);
+ *                          a session manager whose session is already open is used as is
+ */
+@Builder
+public record EmailBatchSenderOptions(RetryPolicy retryPolicy, SendRateLimiter sendRateLimiter, long maxPacingWaitMs,
+                                      SessionDegradationPolicy degradationPolicy, SessionFailoverPolicy failoverPolicy,
+                                      Executor composeExecutor, int composeLookahead,
+                                      Predicate<SmtpSessionManager> sessionReturn) {
+
+    public EmailBatchSenderOptions {
+        retryPolicy = retryPolicy != null ? retryPolicy : RetryPolicy.ofExcludedCodes(List.of());
+        maxPacingWaitMs = Math.max(0L, maxPacingWaitMs);
+        degradationPolicy = degradationPolicy != null ? degradationPolicy : SessionDegradationPolicy.disabled();
+        failoverPolicy = failoverPolicy != null ? failoverPolicy : SessionFailoverPolicy.disabled();
+        composeLookahead = Math.max(0, composeLookahead);
+    }
+
+    /**
+     * Returns options with every optional behavior off, retrying all codes except {@code retryExcludeCode}.
+     */
+    public static EmailBatchSenderOptions defaults(List<String> retryExcludeCode) {
+        return builder().retryPolicy(RetryPolicy.ofExcludedCodes(retryExcludeCode)).build();
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.worker;
+
+import io.github.hotbrkm.smtpengine.agent.email.mime.EmailMimeComposer;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Composes (and DKIM-signs) the messages of a batch ahead of the sender on a CPU pool.
+ * <p>
+ * At most {@code lookahead} messages are in flight: taking message i schedules message i + lookahead,
+ * so the SMTP thread only waits for composition when the pool falls behind the protocol exchange.
+ * Not thread-safe; {@link #take(int)} and {@link #close()} are called by the sending thread only.
+ */
+final class MimePrecomposer implements AutoCloseable {
+
+    private final List<EmailSendTarget> batch;
+    private final EmailMimeComposer emailMimeComposer;
+    private final Executor executor;
+    private final int lookahead;
+    private final CompletableFuture<String>[] pending;
+    private int nextToSchedule = 0;
+
+    @SuppressWarnings("unchecked")
+    MimePrecomposer(List<EmailSendTarget> batch, EmailMimeComposer emailMimeComposer, Executor executor, int lookahead) {
+        this.batch = batch;
+        this.emailMimeComposer = emailMimeComposer;
+        this.executor = executor;
+        this.lookahead = Math.max(1, lookahead);
+        this.pending = new CompletableFuture[batch.size()];
+    }
+
+    /**
+     * Starts composing the first {@code lookahead} messages.
+     */
+    void start() {
+        scheduleUpTo(lookahead);
+    }
+
+    /**
+     * Returns the composed message of the target at {@code index}, waiting for it if still in progress.
+     *
+     * @throws Exception The exception thrown by {@link EmailMimeComposer#makeMime(EmailSendTarget)}
+     */
+    String take(int index) throws Exception {
+        scheduleUpTo(index + 1);
+        CompletableFuture<String> future = pending[index];
+        pending[index] = null;
+        // Keep the window full while this message goes out
+        scheduleUpTo(index + 1 + lookahead);
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (CancellationException e) {
+            throw new IllegalStateException("MIME composition cancelled for index " + index, e);
+        }
+    }
+
+    /**
+     * Cancels messages composed for targets that will not be sent (handoff, broken session) and drops their payloads.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < pending.length; i++) {
+            if (pending[i] != null) {
+                pending[i].cancel(false);
+                pending[i] = null;
+            }
+        }
+        nextToSchedule = pending.length;
+    }
+
+    private void scheduleUpTo(int endExclusive) {
+        int end = Math.min(endExclusive, batch.size());
+        while (nextToSchedule < end) {
+            EmailSendTarget target = batch.get(nextToSchedule);
+            pending[nextToSchedule] = CompletableFuture.supplyAsync(() -> compose(target), executor);
+            nextToSchedule++;
+        }
+    }
+
+    private String compose(EmailSendTarget target) {
+        try {
+            return emailMimeComposer.makeMime(target);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -4,8 +4,8 @@ import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMe
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.suppression.BounceSuppressionStore;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Objects;
 
@@ -17,23 +17,31 @@ import java.util.Objects;
  */
 public class ResultApplier {
 
-    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
-
     private final String runnerId;
     private final EmailBatchResultWriter resultWriter;
     private final DomainSendMetrics domainSendMetrics;
+    private final BounceSuppressionStore bounceSuppressionStore;
 
     public ResultApplier(String runnerId, EmailBatchResultWriter resultWriter, DomainSendMetrics domainSendMetrics) {
+        this(runnerId, resultWriter, domainSendMetrics, null);
+    }
+
+    /**
+     * @param bounceSuppressionStore Store that hard bounces are recorded into (may be null)
+     */
+    public ResultApplier(String runnerId, EmailBatchResultWriter resultWriter, DomainSendMetrics domainSendMetrics,
+                         BounceSuppressionStore bounceSuppressionStore) {
         this.runnerId = runnerId;
         this.resultWriter = resultWriter;
         this.domainSendMetrics = Objects.requireNonNull(domainSendMetrics, "domainSendMetrics must not be null");
+        this.bounceSuppressionStore = bounceSuppressionStore;
     }
 
     /**
      * Reflects the result. (send_code/send_status/error_message etc.)
      */
     public void apply(EmailSendTarget emailSendTarget, SendResult sendResult) {
-        emailSendTarget.applySendResult(sendResult, LocalDateTime.now().format(DATETIME_FORMATTER), emailSendTarget.getDomain());
+        emailSendTarget.applySendResult(sendResult, EmailSendTarget.packDateTime(LocalDateTime.now()), emailSendTarget.getDomain());
 
         if (runnerId != null && resultWriter != null) {
             resultWriter.writeResult(emailSendTarget.toProgress());
@@ -46,6 +54,18 @@ public class ResultApplier {
             domainSendMetrics.recordSuccess(domain);
         } else {
             domainSendMetrics.recordFailure(domain, statusCode);
+            if (bounceSuppressionStore != null) {
+                bounceSuppressionStore.recordResult(emailSendTarget.getTargetEmail(), statusCode, sendResult.errorMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits until the results written so far are persisted (no-op for synchronous writers).
+     */
+    public void flush() {
+        if (runnerId != null && resultWriter != null) {
+            resultWriter.flush();
         }
     }
 
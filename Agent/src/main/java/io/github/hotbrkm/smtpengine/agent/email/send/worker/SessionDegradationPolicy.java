@@ -0,0 +1,44 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.worker;
+
+/**
+ * Defines when a sender treats its session as degraded (e.g. tarpitted) and hands the unprocessed tail back to the engine.
+ *
+ * @param enabled           Whether the tail is handed off on a slow message
+ * @param latencyMultiplier Multiple of the domain's average response time that counts as slow
+ * @param minLatencyMs      Lowest latency that counts as slow, also used when the domain has no baseline yet
+ * @param minRemaining      Minimum number of unprocessed targets worth handing off
+ * @param baselineSeconds   Metrics window the domain's average response time is taken from
+ */
+public record SessionDegradationPolicy(boolean enabled,
+                                       int latencyMultiplier,
+                                       long minLatencyMs,
+                                       int minRemaining,
+                                       int baselineSeconds) {
+
+    public SessionDegradationPolicy {
+        latencyMultiplier = Math.max(1, latencyMultiplier);
+        minLatencyMs = Math.max(1L, minLatencyMs);
+        minRemaining = Math.max(1, minRemaining);
+        baselineSeconds = Math.max(1, baselineSeconds);
+    }
+
+    /**
+     * Returns a policy that never hands off.
+     */
+    public static SessionDegradationPolicy disabled() {
+        return new SessionDegradationPolicy(false, 1, Long.MAX_VALUE, Integer.MAX_VALUE, 60);
+    }
+
+    /**
+     * Returns the per-message latency above which the session is considered degraded.
+     *
+     * @param baselineMs Average response time of the domain (0 if unknown)
+     */
+    public long thresholdMs(double baselineMs) {
+        if (baselineMs <= 0) {
+            return minLatencyMs;
+        }
+        double scaled = baselineMs * latencyMultiplier;
+        return scaled >= Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(minLatencyMs, (long) scaled);
+    }
+}
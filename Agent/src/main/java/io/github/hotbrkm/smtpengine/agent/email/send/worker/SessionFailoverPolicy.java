@@ -0,0 +1,27 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.worker;
+
+/**
+ * Defines how a sender reopens a session that broke mid-batch before deferring the remaining targets to retry.
+ *
+ * @param maxAttempts Maximum number of session reopens per batch (0 disables failover)
+ * @param budgetMs    Time after the first reopen during which reopens may start; also caps each reopen's connect and
+ *                    handshake timeouts
+ */
+public record SessionFailoverPolicy(int maxAttempts, long budgetMs) {
+
+    public SessionFailoverPolicy {
+        maxAttempts = Math.max(0, maxAttempts);
+        budgetMs = Math.max(0L, budgetMs);
+    }
+
+    /**
+     * Returns a policy that never reopens a session.
+     */
+    public static SessionFailoverPolicy disabled() {
+        return new SessionFailoverPolicy(0, 0L);
+    }
+
+    public boolean enabled() {
+        return maxAttempts > 0;
+    }
+}
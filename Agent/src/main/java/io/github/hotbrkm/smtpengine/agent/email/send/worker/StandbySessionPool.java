@@ -0,0 +1,357 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.worker;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainMetricSnapshot;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Pre-opened SMTP sessions for the realtime domains with the highest send volume.
+ * <p>
+ * - Domains become candidates when a REALTIME_FRESH batch is dispatched to them; the {@code topDomains} candidates
+ *   with the highest {@link DomainSendMetrics} volume are hot.
+ * - Each hot domain keeps up to {@code sessionsPerDomain} open sessions on the bind IP it was last dispatched on.
+ * - A REALTIME_FRESH sender takes a standby session instead of opening one and gives it back when its batch ends
+ *   cleanly, so a realtime message pays one mail transaction instead of connect, EHLO and STARTTLS.
+ * - A session is only taken for a batch that fits in what is left of the domain's sendCountPerSession on it, and is
+ *   only taken back while something is left, so no connection carries more messages than the cap.
+ * - {@link #maintain()} sends NOOP to sessions idle for {@code keepaliveMillis}, closes sessions that failed it,
+ *   are older than {@code maxAgeMillis} or belong to domains that are no longer hot, and opens missing sessions.
+ * - Every standby session holds a slot of the domain's per-IP session limit in {@link BindIpSessionAllocator}, so open
+ *   connections never exceed the limit. One slot is always left for dispatch; a domain limited to one session per IP
+ *   keeps no standby sessions. A taken session gives its slot back, as the sender's own lease covers it.
+ */
+@Slf4j
+public class StandbySessionPool {
+
+    private final Supplier<SmtpSessionManager> sessionManagerSupplier;
+    private final DomainSendMetrics domainSendMetrics;
+    private final BindIpSessionAllocator sessionAllocator;
+    private final UnaryOperator<String> limitKeyResolver;
+    private final int sessionsPerDomain;
+    private final int topDomains;
+    private final int volumeWindowSeconds;
+    private final long keepaliveMillis;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+
+    // Realtime domains seen at dispatch, with the bind IP they were last dispatched on
+    private final Map<String, String> realtimeBindIps = new ConcurrentHashMap<>();
+    private final Map<SessionKey, Deque<StandbySession>> sessions = new HashMap<>();
+    private volatile Set<String> hotDomains = Set.of();
+    private volatile boolean closed = false;
+
+    /**
+     * @param sessionManagerSupplier Creates the session managers standby sessions are opened with
+     * @param domainSendMetrics      Source of the send volume hot domains are ranked by
+     * @param sessionAllocator       Allocator whose per-IP session limits standby sessions count against
+     * @param limitKeyResolver       Resolves a domain to the key its sessions are limited by (its MX group)
+     * @param sessionsPerDomain      Standby sessions kept per domain and bind IP
+     * @param topDomains             Number of hot domains
+     * @param volumeWindowSeconds    Window of the send volume ranking
+     * @param keepaliveMillis        Idle time after which a standby session is checked with NOOP
+     * @param maxAgeMillis           Time in the pool after which a standby session is closed
+     */
+    public StandbySessionPool(Supplier<SmtpSessionManager> sessionManagerSupplier, DomainSendMetrics domainSendMetrics,
+                              BindIpSessionAllocator sessionAllocator, UnaryOperator<String> limitKeyResolver,
+                              int sessionsPerDomain, int topDomains, int volumeWindowSeconds, long keepaliveMillis,
+                              long maxAgeMillis) {
+        this(sessionManagerSupplier, domainSendMetrics, sessionAllocator, limitKeyResolver, sessionsPerDomain, topDomains,
+                volumeWindowSeconds, keepaliveMillis, maxAgeMillis, System::currentTimeMillis);
+    }
+
+    StandbySessionPool(Supplier<SmtpSessionManager> sessionManagerSupplier, DomainSendMetrics domainSendMetrics,
+                       BindIpSessionAllocator sessionAllocator, UnaryOperator<String> limitKeyResolver,
+                       int sessionsPerDomain, int topDomains, int volumeWindowSeconds, long keepaliveMillis,
+                       long maxAgeMillis, LongSupplier clock) {
+        this.sessionManagerSupplier = sessionManagerSupplier;
+        this.domainSendMetrics = domainSendMetrics;
+        this.sessionAllocator = sessionAllocator;
+        this.limitKeyResolver = limitKeyResolver;
+        this.sessionsPerDomain = Math.max(0, sessionsPerDomain);
+        this.topDomains = Math.max(0, topDomains);
+        this.volumeWindowSeconds = Math.max(1, volumeWindowSeconds);
+        this.keepaliveMillis = Math.max(0L, keepaliveMillis);
+        this.maxAgeMillis = Math.max(0L, maxAgeMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * Takes an open standby session of the domain on the bind IP and marks the domain as a realtime candidate.
+     *
+     * @param messageCount Messages the batch sends on the session
+     * @return Session manager with an open session that can carry {@code messageCount} more messages, or null if none is available
+     */
+    public SmtpSessionManager take(String domain, String bindIp, int messageCount) {
+        realtimeBindIps.put(domain, bindIp);
+        SessionKey key = new SessionKey(domain, bindIp);
+        List<StandbySession> stale = new ArrayList<>();
+        SmtpSessionManager taken = null;
+        synchronized (sessions) {
+            Deque<StandbySession> deque = sessions.get(key);
+            Iterator<StandbySession> standbys = deque != null ? deque.iterator() : null;
+            while (standbys != null && standbys.hasNext()) {
+                StandbySession standby = standbys.next();
+                if (!standby.manager.isSessionValid()) {
+                    standbys.remove();
+                    stale.add(standby);
+                } else if (standby.manager.hasTransactionsLeft(domain, messageCount)) {
+                    // Sessions too used for this batch stay for smaller ones until they age out
+                    standbys.remove();
+                    taken = standby.manager;
+                    releaseSlot(standby);
+                    break;
+                }
+            }
+            if (deque != null && deque.isEmpty()) {
+                sessions.remove(key);
+            }
+        }
+        stale.forEach(this::quit);
+        return taken;
+    }
+
+    /**
+     * Keeps the session of a cleanly finished REALTIME_FRESH batch if its domain is hot and has room, and the session
+     * can still carry a message within the domain's sendCountPerSession.
+     * <p>
+     * Called while the sender still holds its lease, which is released right after and frees the slot the session keeps.
+     *
+     * @return true if the pool took the session; the caller must then leave it open
+     */
+    public boolean offer(String domain, String bindIp, SmtpSessionManager manager) {
+        realtimeBindIps.put(domain, bindIp);
+        if (!hotDomains.contains(domain) || !manager.isSessionValid() || !manager.hasTransactionsLeft(domain, 1)) {
+            return false;
+        }
+        StandbySession standby = new StandbySession(new SessionKey(domain, bindIp), limitKeyResolver.apply(domain), manager,
+                clock.getAsLong());
+        if (!sessionAllocator.tryReserveStandby(standby.limitKey, bindIp, true)) {
+            return false;
+        }
+        if (!add(standby)) {
+            releaseSlot(standby);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ranks the hot domains again, keeps their standby sessions alive and opens the missing ones.
+     * <p>
+     * Opening sessions blocks, so this runs on its own periodic task.
+     */
+    public void maintain() {
+        if (closed) {
+            return;
+        }
+        Set<String> hot = selectHotDomains();
+        hotDomains = hot;
+
+        long now = clock.getAsLong();
+        List<StandbySession> expired = new ArrayList<>();
+        List<StandbySession> idle = new ArrayList<>();
+        synchronized (sessions) {
+            Iterator<Map.Entry<SessionKey, Deque<StandbySession>>> entries = sessions.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<SessionKey, Deque<StandbySession>> entry = entries.next();
+                boolean hotDomain = hot.contains(entry.getKey().domain());
+                Iterator<StandbySession> standbys = entry.getValue().iterator();
+                while (standbys.hasNext()) {
+                    StandbySession standby = standbys.next();
+                    if (!hotDomain || now - standby.addedAt >= maxAgeMillis || !standby.manager.isSessionValid()) {
+                        standbys.remove();
+                        expired.add(standby);
+                    } else if (now - standby.lastActiveAt >= keepaliveMillis) {
+                        // Checked outside the lock, so takers never wait on a NOOP round trip
+                        standbys.remove();
+                        idle.add(standby);
+                    }
+                }
+                if (entry.getValue().isEmpty()) {
+                    entries.remove();
+                }
+            }
+        }
+        expired.forEach(this::quit);
+
+        for (StandbySession standby : idle) {
+            if (keepAlive(standby.manager)) {
+                standby.lastActiveAt = clock.getAsLong();
+                if (add(standby)) {
+                    continue;
+                }
+            }
+            quit(standby);
+        }
+
+        for (String domain : hot) {
+            String bindIp = realtimeBindIps.get(domain);
+            if (bindIp != null) {
+                refill(new SessionKey(domain, bindIp));
+            }
+        }
+    }
+
+    /**
+     * Returns the domains standby sessions are currently kept for.
+     */
+    public Set<String> getHotDomains() {
+        return hotDomains;
+    }
+
+    /**
+     * Returns the number of open standby sessions.
+     */
+    public int getStandbyCount() {
+        synchronized (sessions) {
+            return sessions.values().stream().mapToInt(Deque::size).sum();
+        }
+    }
+
+    /**
+     * Closes all standby sessions; sessions offered afterwards are refused.
+     */
+    public void close() {
+        closed = true;
+        List<StandbySession> all = new ArrayList<>();
+        synchronized (sessions) {
+            sessions.values().forEach(all::addAll);
+            sessions.clear();
+        }
+        all.forEach(this::quit);
+        log.info("Standby session pool closed. closedSessions={}", all.size());
+    }
+
+    /**
+     * Ranks realtime candidates by send volume; candidates without volume in the window are dropped.
+     */
+    private Set<String> selectHotDomains() {
+        if (sessionsPerDomain == 0 || topDomains == 0) {
+            return Set.of();
+        }
+        Map<String, Long> volumes = new HashMap<>();
+        for (String domain : realtimeBindIps.keySet()) {
+            DomainMetricSnapshot snapshot = domainSendMetrics.snapshot(domain, volumeWindowSeconds);
+            long volume = snapshot.successCount() + snapshot.failureCount();
+            if (volume > 0) {
+                volumes.put(domain, volume);
+            } else {
+                realtimeBindIps.remove(domain);
+            }
+        }
+        return volumes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                .limit(topDomains)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private void refill(SessionKey key) {
+        int missing;
+        synchronized (sessions) {
+            Deque<StandbySession> deque = sessions.get(key);
+            missing = sessionsPerDomain - (deque != null ? deque.size() : 0);
+        }
+        String limitKey = limitKeyResolver.apply(key.domain());
+        for (int i = 0; i < missing && !closed; i++) {
+            if (!sessionAllocator.tryReserveStandby(limitKey, key.bindIp(), false)) {
+                // The domain's session limit leaves no room beside dispatch
+                return;
+            }
+            SmtpSessionManager manager = sessionManagerSupplier.get();
+            StandbySession standby = new StandbySession(key, limitKey, manager, clock.getAsLong());
+            try {
+                manager.openSession(key.domain(), key.bindIp());
+            } catch (RuntimeException e) {
+                log.debug("Failed to open standby session for domain: {} with bindIp={}: {}", key.domain(), key.bindIp(), e.getMessage());
+                manager.closeSession();
+                releaseSlot(standby);
+                return;
+            }
+            if (!add(standby)) {
+                quit(standby);
+                return;
+            }
+            log.debug("Opened standby session for domain: {} with bindIp={}", key.domain(), key.bindIp());
+        }
+    }
+
+    private boolean add(StandbySession standby) {
+        synchronized (sessions) {
+            if (closed || !hotDomains.contains(standby.key.domain())) {
+                return false;
+            }
+            Deque<StandbySession> deque = sessions.computeIfAbsent(standby.key, key -> new ArrayDeque<>());
+            if (deque.size() >= sessionsPerDomain) {
+                return false;
+            }
+            // Most recently active first, so the oldest sessions go idle and age out
+            deque.addFirst(standby);
+            return true;
+        }
+    }
+
+    private static boolean keepAlive(SmtpSessionManager manager) {
+        try {
+            return manager.sendNoop().isSuccess();
+        } catch (Exception e) {
+            log.debug("Standby session keepalive failed", e);
+            return false;
+        }
+    }
+
+    private void releaseSlot(StandbySession standby) {
+        sessionAllocator.releaseStandby(standby.limitKey, standby.key.bindIp());
+    }
+
+    private void quit(StandbySession standby) {
+        SmtpSessionManager manager = standby.manager;
+        try {
+            if (manager.isSessionValid()) {
+                manager.sendQuit();
+            }
+        } catch (Exception e) {
+            // QUIT failure is compensated by socket close
+            log.debug("Failed to send QUIT to standby session for domain: {}", standby.key.domain(), e);
+        }
+        manager.closeSession();
+        releaseSlot(standby);
+    }
+
+    private record SessionKey(String domain, String bindIp) {
+    }
+
+    private static final class StandbySession {
+        private final SessionKey key;
+        // Key of the per-IP session limit the session counts against
+        private final String limitKey;
+        private final SmtpSessionManager manager;
+        private final long addedAt;
+        private long lastActiveAt;
+
+        private StandbySession(SessionKey key, String limitKey, SmtpSessionManager manager, long now) {
+            this.key = key;
+            this.limitKey = limitKey;
+            this.manager = manager;
+            this.addedAt = now;
+            this.lastActiveAt = now;
+        }
+    }
+}
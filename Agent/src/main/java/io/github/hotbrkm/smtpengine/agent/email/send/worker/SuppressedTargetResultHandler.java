@@ -0,0 +1,53 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.worker;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchSpec;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpStatus;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class responsible for reflecting results for batches of recipients suppressed after an earlier hard bounce.
+ * <p>
+ * Suppressed targets are never sent; each is marked as a failure with {@link SmtpStatus#SUPPRESSED}
+ * through {@link ResultApplier}, the same way as INVALID domain targets.
+ */
+public class SuppressedTargetResultHandler {
+
+    /** Default error message to use for suppressed targets */
+    private static final String SUPPRESSED_MESSAGE = SmtpStatus.SUPPRESSED + " Recipient suppressed after previous hard bounce";
+
+    private final DomainSendMetrics domainSendMetrics;
+
+    public SuppressedTargetResultHandler(DomainSendMetrics domainSendMetrics) {
+        this.domainSendMetrics = Objects.requireNonNull(domainSendMetrics, "domainSendMetrics must not be null");
+    }
+
+    /**
+     * Processes a suppressed batch and reflects failure results to each target.
+     *
+     * @param spec Suppressed batch spec
+     * @return Suppressed batch processing result
+     */
+    public EmailBatchResult handle(EmailBatchSpec spec) {
+        Objects.requireNonNull(spec, "spec must not be null");
+
+        List<EmailSendTarget> targets = spec.getEmailSendTargetList();
+        int totalTargets = (targets == null) ? 0 : targets.size();
+        if (totalTargets == 0) {
+            return EmailBatchResult.failure(spec.getBatchId(), spec.getDomain(), 0,
+                new IllegalArgumentException("Empty suppressed batch"));
+        }
+
+        ResultApplier applier = new ResultApplier(spec.getRunnerId(), spec.getResultWriter(), domainSendMetrics);
+        for (EmailSendTarget target : targets) {
+            applier.apply(target, SendResult.failure(SmtpStatus.SUPPRESSED, SUPPRESSED_MESSAGE));
+        }
+
+        return EmailBatchResult.success(spec.getBatchId(), spec.getDomain(), totalTargets, 0);
+    }
+}
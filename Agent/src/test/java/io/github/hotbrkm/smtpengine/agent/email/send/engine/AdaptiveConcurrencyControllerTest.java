@@ -0,0 +1,142 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainMetricSnapshot;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.AdaptiveConcurrencyController;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.AdaptiveConcurrencyPolicy;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpCooldownPolicy;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("AdaptiveConcurrencyController behavior verification")
+class AdaptiveConcurrencyControllerTest {
+
+    private static final String DOMAIN = "example.com";
+
+    @Test
+    @DisplayName("Healthy domains increase by one up to the ceiling")
+    void healthyDomain_increasesAdditivelyUpToCeiling() {
+        AdaptiveConcurrencyController controller = controller(domainManager(2), 0L);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(100, 0, Map.of(250, 100L), 0, 0)));
+        assertThat(controller.effectiveLimit(DOMAIN, 2)).isEqualTo(3);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(100, 0, Map.of(250, 100L), 0, 0)));
+        controller.adjust(Map.of(DOMAIN, snapshot(100, 0, Map.of(250, 100L), 0, 0)));
+        assertThat(controller.effectiveLimit(DOMAIN, 2)).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Throttle codes and session failures halve the limit down to the floor")
+    void throttledDomain_decreasesMultiplicativelyToFloor() {
+        AdaptiveConcurrencyController controller = controller(domainManager(8), 0L);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(80, 20, Map.of(421, 20L), 0, 0)));
+        assertThat(controller.effectiveLimit(DOMAIN, 8)).isEqualTo(4);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(90, 0, Map.of(), 10, 0)));
+        controller.adjust(Map.of(DOMAIN, snapshot(90, 0, Map.of(), 10, 0)));
+        controller.adjust(Map.of(DOMAIN, snapshot(90, 0, Map.of(), 10, 0)));
+        assertThat(controller.effectiveLimit(DOMAIN, 8)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Slow responses decrease the limit and sparse samples leave it unchanged")
+    void slowResponseAndSparseSamples() {
+        AdaptiveConcurrencyController controller = controller(domainManager(4), 1_000L);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(5, 0, Map.of(421, 5L), 0, 0)));
+        assertThat(controller.effectiveLimit(DOMAIN, 4)).isEqualTo(4);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(100, 0, Map.of(), 0, 3_000L)));
+        assertThat(controller.effectiveLimit(DOMAIN, 4)).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A cut limit recovers toward the static limit in idle or sparse windows and is then dropped")
+    void cutLimit_recoversWithoutSamples() {
+        AdaptiveConcurrencyController controller = controller(domainManager(8), 0L);
+        controller.adjust(Map.of(DOMAIN, snapshot(80, 20, Map.of(421, 20L), 0, 0)));
+        controller.adjust(Map.of(DOMAIN, snapshot(80, 20, Map.of(421, 20L), 0, 0)));
+        assertThat(controller.effectiveLimit(DOMAIN, 8)).isEqualTo(2);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(3, 0, Map.of(), 0, 0)));
+        assertThat(controller.effectiveLimit(DOMAIN, 8)).isEqualTo(3);
+        controller.adjust(Map.of());
+        assertThat(controller.effectiveLimit(DOMAIN, 8)).isEqualTo(4);
+
+        for (int i = 0; i < 4; i++) {
+            controller.adjust(Map.of());
+        }
+        assertThat(controller.effectiveLimit(DOMAIN, 8)).isEqualTo(8);
+        assertThat(controller.getAdjustedDomainCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Allocator applies the adjusted limit per bind IP")
+    void allocator_usesAdjustedLimit() {
+        EmailDomainManager domainManager = domainManager(2);
+        AdaptiveConcurrencyController controller = controller(domainManager, 0L);
+        BindIpSessionAllocator allocator = new BindIpSessionAllocator(List.of("10.0.0.1"), domainManager,
+                new BindIpCooldownPolicy(Set.of(), code -> 1, 0L), controller);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(80, 20, Map.of(451, 20L), 0, 0)));
+
+        assertThat(allocator.tryAcquire(DOMAIN)).isPresent();
+        assertThat(allocator.tryAcquire(DOMAIN)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Limits are learned per limit key from the summed metrics of its domains")
+    void limitKey_sumsDomainMetrics() {
+        AdaptiveConcurrencyPolicy policy = new AdaptiveConcurrencyPolicy(true, Set.of(421), 1, 200, 5, 50, 0L, 20L, 60_000L);
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(policy, new DomainSendMetrics(5, 60),
+                key -> 4, domain -> "google");
+
+        // Neither domain has enough samples alone; together they are throttled
+        controller.adjust(Map.of("gmail.com", snapshot(8, 2, Map.of(421, 2L), 0, 0),
+                "customer.com", snapshot(8, 2, Map.of(421, 2L), 0, 0)));
+
+        assertThat(controller.effectiveLimit("google", 4)).isEqualTo(2);
+        assertThat(controller.effectiveLimit("gmail.com", 4)).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Disabled policy keeps the static limit")
+    void disabledPolicy_keepsStaticLimit() {
+        AdaptiveConcurrencyPolicy policy = new AdaptiveConcurrencyPolicy(false, Set.of(421), 1, 200, 5, 50, 0L, 1L, 60_000L);
+        AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController(policy, new DomainSendMetrics(5, 60),
+                domain -> 4);
+
+        controller.adjust(Map.of(DOMAIN, snapshot(0, 100, Map.of(421, 100L), 0, 0)));
+
+        assertThat(controller.effectiveLimit(DOMAIN, 4)).isEqualTo(4);
+    }
+
+    private AdaptiveConcurrencyController controller(EmailDomainManager domainManager, long slowResponseMs) {
+        AdaptiveConcurrencyPolicy policy = new AdaptiveConcurrencyPolicy(true, Set.of(421, 451), 1, 200, 5, 50,
+                slowResponseMs, 20L, 60_000L);
+        return new AdaptiveConcurrencyController(policy, new DomainSendMetrics(5, 60), domainManager::getSessionLimit);
+    }
+
+    private DomainMetricSnapshot snapshot(long success, long failure, Map<Integer, Long> codes, long sessionFailure, long avgResponseMs) {
+        long samples = success + failure;
+        return new DomainMetricSnapshot(DOMAIN, 60, success, failure, codes, 0, sessionFailure,
+                avgResponseMs * samples, samples, 0);
+    }
+
+    private EmailDomainManager domainManager(int sessionCount) {
+        EmailDomain defaultDomain = new EmailDomain("default", sessionCount, 10, 60, 60, "");
+        return new EmailDomainManager(List.of(defaultDomain), LocalDateTime.now());
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.ResultPersistenceException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@DisplayName("BatchResultFinalizer behavior verification")
+class BatchResultFinalizerTest {
+
+    private static final String DOMAIN = "example.com";
+
+    private final EngineRuntimeState runtimeState = new EngineRuntimeState(createOptions());
+    private final BatchResultFinalizer finalizer = new BatchResultFinalizer(runtimeState, task -> {
+    });
+
+    @Test
+    @DisplayName("Handoff parts complete their own futures; the original batch is counted once")
+    void handoffPartsAreCountedOnceThroughTheirBatch() {
+        DomainBatchTask original = task("b1", 3, 0);
+        List<EmailSendTarget> targets = original.getBatch();
+        DomainBatchTask head = original.handoffPart(targets.subList(0, 1), "b1", new CompletableFuture<>(), 0);
+        DomainBatchTask tail = original.handoffPart(targets.subList(1, 3), "b1-handoff", new CompletableFuture<>(), 1);
+
+        finalizer.handleBatchCompletion(head, 1, 0);
+        finalizer.completeTaskAsFailure(tail, new IllegalStateException("Runner cancelled"), "test_cancel");
+
+        assertThat(head.getResultFuture()).isDone();
+        assertThat(tail.getResultFuture()).isDone();
+        assertThat(runtimeState.completedBatches()).isZero();
+        assertThat(runtimeState.failedBatches()).isZero();
+
+        EmailBatchResult combined = EmailBatchResult.combine("b1", head.getResultFuture().join(), tail.getResultFuture().join());
+        finalizer.completeHandedOff(original, combined);
+        finalizer.completeHandedOff(original, combined);
+
+        assertThat(original.getResultFuture().join().totalTargets()).isEqualTo(3);
+        assertThat(runtimeState.failedBatches()).isEqualTo(1);
+        assertThat(runtimeState.completedBatches()).isZero();
+    }
+
+    @Test
+    @DisplayName("Retries of a handoff part stay parts and keep the original future")
+    void retriesOfHandoffPartStayParts() {
+        DomainBatchTask original = task("b1", 2, 0);
+        DomainBatchTask head = original.handoffPart(original.getBatch().subList(0, 1), "b1", new CompletableFuture<>(), 0);
+
+        DomainBatchTask retry = head.derive(head.getBatch(), "b1-retry1", head.getResultFuture(), 1, DispatchLane.BATCH_RETRY);
+
+        assertThat(retry.isHandoffPart()).isTrue();
+        assertThat(retry.getResultFuture()).isSameAs(head.getResultFuture());
+        assertThat(original.derive(original.getBatch(), "b1-retry1", original.getResultFuture(), 1,
+                DispatchLane.BATCH_RETRY).isHandoffPart()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Results are flushed before the batch completes; a failed flush reports the batch as failed")
+    void completionShouldFlushResultsFirst() {
+        EmailBatchResultWriter writer = mock(EmailBatchResultWriter.class);
+        DomainBatchTask flushed = task("b1", 1, 0, writer);
+
+        finalizer.handleBatchCompletion(flushed, 1, 0);
+
+        verify(writer).flush();
+        assertThat(flushed.getResultFuture().join().success()).isTrue();
+
+        EmailBatchResultWriter failing = mock(EmailBatchResultWriter.class);
+        doThrow(new ResultPersistenceException("disk full")).when(failing).flush();
+        DomainBatchTask unpersisted = task("b2", 1, 0, failing);
+
+        finalizer.handleBatchCompletion(unpersisted, 1, 0);
+
+        assertThat(unpersisted.getResultFuture().join().success()).isFalse();
+        assertThat(runtimeState.completedBatches()).isEqualTo(1);
+        assertThat(runtimeState.failedBatches()).isEqualTo(1);
+    }
+
+    private DomainBatchTask task(String batchId, int targetCount, int retryCount) {
+        return task(batchId, targetCount, retryCount, null);
+    }
+
+    private DomainBatchTask task(String batchId, int targetCount, int retryCount, EmailBatchResultWriter writer) {
+        List<EmailSendTarget> batch = new ArrayList<>();
+        for (int i = 0; i < targetCount; i++) {
+            batch.add(EmailSendTarget.builder().targetEmail(batchId + i + "@" + DOMAIN).targetData(Collections.emptyMap()).build());
+        }
+        return new DomainBatchTask(batch, DOMAIN, batchId, new CompletableFuture<>(), retryCount, "runner-1", writer, null,
+                ExecutionMode.BATCH, DispatchLane.BATCH_FRESH);
+    }
+
+    private EngineRuntimeOptions createOptions() {
+        EmailConfig.Send send = new EmailConfig.Send();
+        send.setBindAddresses(List.of("127.0.0.1"));
+        return EngineRuntimeOptions.fromExplicit(send, 1, 100, 1, 100L,
+                1_000L, EmailConfig.Send.DEFAULT_BATCH_RETRY_BACKOFF_MULTIPLIER);
+    }
+}
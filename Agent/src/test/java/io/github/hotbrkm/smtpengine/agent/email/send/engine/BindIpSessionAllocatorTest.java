@@ -62,6 +62,28 @@ class BindIpSessionAllocatorTest {
         assertThat(second).isTrue();
     }
 
+    @Test
+    @DisplayName("Standby reservations count against the per-IP limit and always leave one slot for dispatch")
+    void testStandbyReservationCountsAgainstLimit() {
+        BindIpSessionAllocator allocator = new BindIpSessionAllocator(List.of("10.0.0.1"), domainManager(3));
+
+        assertThat(allocator.tryReserveStandby("example.com", "10.0.0.1", false)).isTrue();
+        assertThat(allocator.tryReserveStandby("example.com", "10.0.0.1", false)).isTrue();
+        assertThat(allocator.tryReserveStandby("example.com", "10.0.0.1", false)).isFalse();
+        assertThat(allocator.getTotalActiveSessionCount()).isZero();
+
+        BindIpLease lease = allocator.tryAcquire("example.com").orElseThrow();
+        assertThat(allocator.tryAcquire("example.com")).isEmpty();
+        assertThat(allocator.tryReserveStandby("example.com", "10.0.0.1", true)).isFalse();
+        assertThat(allocator.getTotalActiveSessionCount()).isEqualTo(1);
+
+        allocator.releaseStandby("example.com", "10.0.0.1");
+        assertThat(allocator.tryReserveStandby("example.com", "10.0.0.1", true)).isTrue();
+        allocator.release(lease);
+        assertThat(allocator.tryAcquire("example.com")).isPresent();
+        assertThat(allocator.tryAcquire("example.com")).isEmpty();
+    }
+
     private EmailDomainManager domainManager(int sessionCount) {
         EmailDomain defaultDomain = new EmailDomain("default", sessionCount, 10, 60, 60, "");
         return new EmailDomainManager(List.of(defaultDomain), LocalDateTime.now());
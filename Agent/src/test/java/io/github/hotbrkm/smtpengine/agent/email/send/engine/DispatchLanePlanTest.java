@@ -0,0 +1,92 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLaneProfile;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("DispatchLanePlan")
+class DispatchLanePlanTest {
+
+    @Test
+    @DisplayName("Built-in lanes keep the legacy priority order and retry caps")
+    void builtInLanes_mirrorLegacySettings() {
+        EmailConfig.Send send = new EmailConfig.Send();
+        send.setRealtimeRetryMaxPercent(20);
+        send.setBatchHoldMaxMs(500L);
+
+        DispatchLanePlan plan = DispatchLanePlan.fromSendConfig(send);
+
+        assertThat(plan.tiers()).extracting(tier -> tier.getFirst().lane())
+                .containsExactly(DispatchLane.REALTIME_FRESH, DispatchLane.REALTIME_RETRY, DispatchLane.BATCH_FRESH, DispatchLane.BATCH_RETRY);
+        assertThat(plan.profile(DispatchLane.REALTIME_RETRY).maxInFlightPercent()).isEqualTo(20);
+        assertThat(plan.profile(DispatchLane.REALTIME_FRESH).preemptsHold()).isTrue();
+        assertThat(plan.profile(DispatchLane.BATCH_FRESH).holdable()).isTrue();
+        assertThat(plan.profile(DispatchLane.BATCH_FRESH).holdMaxMs()).isEqualTo(500L);
+    }
+
+    @Test
+    @DisplayName("Configured lanes route message types and share tiers with built-in lanes")
+    void configuredLane_routesByMessageType() {
+        EmailConfig.Send send = new EmailConfig.Send();
+        send.setDispatchLanes(List.of(lane("otp", "REALTIME", "OTP", 0, 3)));
+
+        DispatchLanePlan plan = DispatchLanePlan.fromSendConfig(send);
+        DispatchLane otpLane = plan.freshLaneFor(ExecutionMode.REALTIME, "OTP");
+
+        assertThat(otpLane.name()).isEqualTo("OTP");
+        assertThat(otpLane.isRealtime()).isTrue();
+        assertThat(plan.retryLaneFor(otpLane, ExecutionMode.REALTIME).name()).isEqualTo("OTP_RETRY");
+        assertThat(plan.tiers().getFirst()).extracting(DispatchLaneProfile::lane)
+                .containsExactly(DispatchLane.REALTIME_FRESH, otpLane);
+        // A mode mismatch falls back to the built-in lane.
+        assertThat(plan.freshLaneFor(ExecutionMode.BATCH, "OTP")).isEqualTo(DispatchLane.BATCH_FRESH);
+        assertThat(plan.freshLaneFor(ExecutionMode.REALTIME, "NOTICE")).isEqualTo(DispatchLane.REALTIME_FRESH);
+    }
+
+    @Test
+    @DisplayName("Unknown lanes fall back to the built-in profile of the same mode")
+    void unknownLane_fallsBackToBuiltInProfile() {
+        DispatchLanePlan plan = DispatchLanePlan.fromSendConfig(new EmailConfig.Send());
+
+        DispatchLaneProfile profile = plan.profile(DispatchLane.of("unregistered", ExecutionMode.BATCH, true));
+
+        assertThat(profile.lane()).isEqualTo(DispatchLane.BATCH_RETRY);
+    }
+
+    @Test
+    @DisplayName("Invalid lane definitions are rejected")
+    void invalidLane_isRejected() {
+        EmailConfig.Send builtInName = new EmailConfig.Send();
+        builtInName.setDispatchLanes(List.of(lane("batch_fresh", "BATCH", "BULK", 20, 1)));
+        assertThatThrownBy(() -> DispatchLanePlan.fromSendConfig(builtInName))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        EmailConfig.Send duplicateType = new EmailConfig.Send();
+        duplicateType.setDispatchLanes(List.of(lane("a", "BATCH", "BULK", 20, 1), lane("b", "BATCH", "BULK", 25, 1)));
+        assertThatThrownBy(() -> DispatchLanePlan.fromSendConfig(duplicateType))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        EmailConfig.Send invalidMode = new EmailConfig.Send();
+        invalidMode.setDispatchLanes(List.of(lane("c", "SOMETIMES", "BULK", 20, 1)));
+        assertThatThrownBy(() -> DispatchLanePlan.fromSendConfig(invalidMode))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private EmailConfig.Send.LaneConfig lane(String name, String mode, String messageType, int priority, int weight) {
+        EmailConfig.Send.LaneConfig laneConfig = new EmailConfig.Send.LaneConfig();
+        laneConfig.setName(name);
+        laneConfig.setExecutionMode(mode);
+        laneConfig.setMessageTypes(List.of(messageType));
+        laneConfig.setPriority(priority);
+        laneConfig.setWeight(weight);
+        return laneConfig;
+    }
+}
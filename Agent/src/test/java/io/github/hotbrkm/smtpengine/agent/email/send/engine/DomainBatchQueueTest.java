@@ -1,5 +1,6 @@
 package io.github.hotbrkm.smtpengine.agent.email.send.engine;
 
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
@@ -8,8 +9,10 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -79,6 +82,19 @@ class DomainBatchQueueTest {
             assertThat(remaining.getDomain()).isEqualTo("a.com");
             assertThat(queue.isEmpty()).isTrue();
         }
+
+        @Test
+        @DisplayName("Should exclude every domain of an MX group when the group has no slot")
+        void testExcludedMxGroup() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            queue.offer(groupTask("gmail.com", "google"));
+            queue.offer(groupTask("customer.com", "google"));
+            queue.offer(task("b.com", 1));
+
+            assertThat(queue.poll(Set.of("google")).getDomain()).isEqualTo("b.com");
+            assertThat(queue.poll(Set.of("google"))).isNull();
+            assertThat(queue.poll(Collections.emptySet()).getMxGroup()).isEqualTo("google");
+        }
     }
 
     @Nested
@@ -115,6 +131,27 @@ class DomainBatchQueueTest {
             assertThat(polled).containsExactly("a.com", "b.com", "c.com", "d.com");
         }
 
+        @Test
+        @DisplayName("Configured lanes are polled in the given priority order")
+        void testConfiguredLaneOrder() {
+            DispatchLane alerts = DispatchLane.of("ALERTS", ExecutionMode.REALTIME, false);
+            DispatchLane bulk = DispatchLane.of("BULK", ExecutionMode.BATCH, false);
+            DomainBatchQueue queue = new DomainBatchQueue(List.of(DispatchLane.REALTIME_FRESH, alerts,
+                    DispatchLane.REALTIME_RETRY, DispatchLane.BATCH_FRESH, DispatchLane.BATCH_RETRY, bulk));
+            queue.offer(task("bulk.com", ExecutionMode.BATCH, bulk));
+            queue.offer(task("batch.com", ExecutionMode.BATCH, DispatchLane.BATCH_FRESH));
+            queue.offer(task("alerts.com", ExecutionMode.REALTIME, alerts));
+            queue.offer(task("rt.com", ExecutionMode.REALTIME, DispatchLane.REALTIME_FRESH));
+
+            List<String> polled = new ArrayList<>();
+            DomainBatchTask task;
+            while ((task = queue.poll(Collections.emptySet())) != null) {
+                polled.add(task.getDomain());
+            }
+
+            assertThat(polled).containsExactly("rt.com", "alerts.com", "batch.com", "bulk.com");
+        }
+
         @Test
         @DisplayName("Round-robin is maintained within the same priority lane")
         void testRoundRobinWithinSameLane() {
@@ -244,6 +281,230 @@ class DomainBatchQueueTest {
             assertThat(queue.getTotalBatchCount(DispatchLane.REALTIME_FRESH)).isEqualTo(1);
             assertThat(queue.getTotalBatchCount(DispatchLane.BATCH_FRESH)).isZero();
         }
+
+        @Test
+        @DisplayName("Removing a whole runner should keep domain counts of other runners and their dispatch intact")
+        void testRemoveWholeRunnerKeepsOtherRunners() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            EmailBatchResultWriter runnerTokenA = createMockWriter();
+            EmailBatchResultWriter runnerTokenB = createMockWriter();
+            try {
+                queue.offer(task("a.com", "runner-1", runnerTokenA));
+                queue.offer(task("a.com", "runner-1", runnerTokenA));
+                queue.offer(task("b.com", "runner-1", runnerTokenA));
+                DomainBatchTask kept = task("a.com", "runner-2", runnerTokenB);
+                queue.offer(kept);
+
+                List<DomainBatchTask> removed = queue.removeByRunnerId("runner-1", runnerTokenA);
+
+                assertThat(removed).hasSize(3);
+                assertThat(removed).extracting(DomainBatchTask::getRunnerId).containsOnly("runner-1");
+                assertThat(queue.getTotalBatchCount()).isEqualTo(1);
+                assertThat(queue.getDomainBatchCount("a.com")).isEqualTo(1);
+                assertThat(queue.getDomainBatchCount("b.com")).isZero();
+                assertThat(queue.getActiveDomainCount()).isEqualTo(1);
+                assertThat(queue.poll(Collections.emptySet())).isSameAs(kept);
+                assertThat(queue.isEmpty()).isTrue();
+            } finally {
+                runnerTokenA.close();
+                runnerTokenB.close();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Runner fairness")
+    class RunnerFairness {
+
+        @Test
+        @DisplayName("A runner submitted later should not wait behind the backlog of an earlier runner")
+        void testLateRunnerIsNotStarved() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            for (int i = 0; i < 10; i++) {
+                queue.offer(task("a.com", "big-runner", null));
+            }
+            queue.offer(task("a.com", "small-runner", null));
+            queue.offer(task("a.com", "small-runner", null));
+
+            List<String> polledRunners = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                polledRunners.add(queue.poll(Collections.emptySet()).getRunnerId());
+            }
+
+            assertThat(polledRunners).containsExactly("big-runner", "small-runner", "big-runner", "small-runner");
+            assertThat(queue.getTotalBatchCount()).isEqualTo(8);
+        }
+
+        @Test
+        @DisplayName("Dispatch share should follow runner weights")
+        void testWeightedShare() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            queue.setRunnerWeight("heavy", 3);
+            for (int i = 0; i < 12; i++) {
+                queue.offer(task("a.com", "heavy", null));
+                queue.offer(task("a.com", "light", null));
+            }
+
+            int heavyCount = 0;
+            for (int i = 0; i < 8; i++) {
+                if ("heavy".equals(queue.poll(Collections.emptySet()).getRunnerId())) {
+                    heavyCount++;
+                }
+            }
+
+            assertThat(heavyCount).isEqualTo(6);
+            assertThat(queue.getRunnerWeight("heavy")).isEqualTo(3);
+            assertThat(queue.getRunnerWeight("light")).isEqualTo(DomainBatchQueue.DEFAULT_RUNNER_WEIGHT);
+        }
+
+        @Test
+        @DisplayName("A runner whose domains are all excluded should yield to other runners")
+        void testExcludedDomainSkipsRunner() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            queue.offer(task("a.com", "runner-a", null));
+            queue.offer(task("b.com", "runner-b", null));
+
+            DomainBatchTask polled = queue.poll(Set.of("a.com"));
+
+            assertThat(polled.getRunnerId()).isEqualTo("runner-b");
+            assertThat(queue.getDomainBatchCount("a.com")).isEqualTo(1);
+            assertThat(queue.getDomainBatchCount("b.com")).isZero();
+        }
+
+        @Test
+        @DisplayName("Runners with equal virtual time should be served in arrival order, also after removals")
+        void testEqualVirtualTimeKeepsArrivalOrder() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            for (String runnerId : List.of("runner-1", "runner-2", "runner-3")) {
+                queue.offer(task("a.com", runnerId, null));
+                queue.offer(task("a.com", runnerId, null));
+            }
+            queue.removeByRunnerId("runner-2");
+
+            List<String> polledRunners = new ArrayList<>();
+            DomainBatchTask task;
+            while ((task = queue.poll(Collections.emptySet())) != null) {
+                polledRunners.add(task.getRunnerId());
+            }
+
+            assertThat(polledRunners).containsExactly("runner-1", "runner-3", "runner-1", "runner-3");
+        }
+    }
+
+    @Nested
+    @DisplayName("Runner gate")
+    class RunnerGate {
+
+        @Test
+        @DisplayName("Batches of a gated runner stay queued and are skipped until the gate opens")
+        void testGatedRunnerIsSkippedAndKeepsBatches() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            Set<String> pausedRunners = new HashSet<>(Set.of("paused-runner"));
+            queue.setRunnerGate(runnerId -> !pausedRunners.contains(runnerId));
+            queue.offer(task("a.com", "paused-runner", null));
+            queue.offer(task("b.com", "open-runner", null));
+
+            assertThat(queue.poll(Collections.emptySet()).getRunnerId()).isEqualTo("open-runner");
+            assertThat(queue.hasAvailableBatch(Collections.emptySet())).isFalse();
+            assertThat(queue.poll(Collections.emptySet())).isNull();
+            assertThat(queue.getTotalBatchCount()).isEqualTo(1);
+
+            pausedRunners.clear();
+            queue.refreshRunnerGate();
+
+            assertThat(queue.hasAvailableBatch(Collections.emptySet())).isTrue();
+            assertThat(queue.poll(Collections.emptySet()).getRunnerId()).isEqualTo("paused-runner");
+            assertThat(queue.isEmpty()).isTrue();
+        }
+
+        @Test
+        @DisplayName("Availability checks should evaluate the gate once per runner per cycle")
+        void testGateEvaluatedOncePerCycle() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            AtomicInteger gateCalls = new AtomicInteger();
+            queue.setRunnerGate(runnerId -> {
+                gateCalls.incrementAndGet();
+                return !"paused-runner".equals(runnerId);
+            });
+            queue.offer(task("a.com", "paused-runner", null));
+            queue.offer(task("b.com", "paused-runner", null));
+            queue.offer(task("c.com", "open-runner", null));
+
+            for (int i = 0; i < 5; i++) {
+                assertThat(queue.hasAvailableBatch(Set.of("a.com"))).isTrue();
+                assertThat(queue.hasAvailableBatch(Set.of("c.com"))).isFalse();
+            }
+            assertThat(gateCalls.get()).isEqualTo(2);
+
+            queue.refreshRunnerGate();
+            assertThat(queue.hasAvailableBatch(Collections.emptySet())).isTrue();
+            assertThat(gateCalls.get()).isGreaterThan(2);
+        }
+    }
+
+    @Nested
+    @DisplayName("Earliest deadline first")
+    class EarliestDeadlineFirst {
+
+        @Test
+        @DisplayName("Realtime lane should serve the earliest deadline across domains regardless of arrival order")
+        void testRealtimeLaneOrdersByDeadline() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            Instant now = Instant.now();
+            queue.offer(deadlineTask("a.com", DispatchLane.REALTIME_FRESH, now.plusSeconds(30)));
+            queue.offer(deadlineTask("b.com", DispatchLane.REALTIME_FRESH, now.plusSeconds(5)));
+            queue.offer(deadlineTask("c.com", DispatchLane.REALTIME_FRESH, null));
+            queue.offer(deadlineTask("d.com", DispatchLane.REALTIME_FRESH, now.plusSeconds(10)));
+
+            List<String> polled = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                polled.add(queue.poll(DispatchLane.REALTIME_FRESH, Collections.emptySet()).getDomain());
+            }
+
+            assertThat(polled).containsExactly("b.com", "d.com", "a.com", "c.com");
+        }
+
+        @Test
+        @DisplayName("Excluded domains should be skipped when selecting the earliest deadline")
+        void testDeadlineRespectsExcludedDomains() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            Instant now = Instant.now();
+            queue.offer(deadlineTask("a.com", DispatchLane.REALTIME_FRESH, now.plusSeconds(1)));
+            queue.offer(deadlineTask("b.com", DispatchLane.REALTIME_FRESH, now.plusSeconds(60)));
+
+            DomainBatchTask polled = queue.poll(DispatchLane.REALTIME_FRESH, Set.of("a.com"));
+
+            assertThat(polled.getDomain()).isEqualTo("b.com");
+        }
+
+        @Test
+        @DisplayName("Deadlines outside the risk window should not preempt batches without a deadline")
+        void testDeadlineOutsideRiskWindowWaitsItsTurn() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            queue.setDeadlineRiskWindowMillis(10_000L);
+            Instant now = Instant.now();
+            queue.offer(deadlineTask("c.com", DispatchLane.REALTIME_FRESH, null));
+            queue.offer(deadlineTask("a.com", DispatchLane.REALTIME_FRESH, now.plusSeconds(120)));
+            queue.offer(deadlineTask("b.com", DispatchLane.REALTIME_FRESH, now.plusSeconds(5)));
+
+            List<String> polled = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                polled.add(queue.poll(DispatchLane.REALTIME_FRESH, Collections.emptySet()).getDomain());
+            }
+
+            assertThat(polled).containsExactly("b.com", "c.com", "a.com");
+        }
+
+        @Test
+        @DisplayName("Batch lanes should keep round-robin order even when deadlines are present")
+        void testBatchLaneIgnoresDeadline() {
+            DomainBatchQueue queue = new DomainBatchQueue();
+            Instant now = Instant.now();
+            queue.offer(deadlineTask("a.com", DispatchLane.BATCH_FRESH, now.plusSeconds(30)));
+            queue.offer(deadlineTask("b.com", DispatchLane.BATCH_FRESH, now.plusSeconds(5)));
+
+            assertThat(queue.poll(DispatchLane.BATCH_FRESH, Collections.emptySet()).getDomain()).isEqualTo("a.com");
+        }
     }
 
     @Nested
@@ -382,6 +643,19 @@ class DomainBatchQueueTest {
         return new DomainBatchTask(batch, domain, domain + "-id", null, 0, "test-runner", null, null, mode, lane);
     }
 
+    private DomainBatchTask groupTask(String domain, String mxGroup) {
+        List<EmailSendTarget> batch = List.of(EmailSendTarget.builder().targetEmail("t@" + domain).targetData(Collections.emptyMap()).build());
+        return new DomainBatchTask(batch, domain, mxGroup, domain + "-id", null, 0, "test-runner", null, null,
+                ExecutionMode.BATCH, DispatchLane.BATCH_FRESH);
+    }
+
+    private DomainBatchTask deadlineTask(String domain, DispatchLane lane, Instant deadline) {
+        List<EmailSendTarget> batch = List.of(EmailSendTarget.builder().targetEmail("t@" + domain).targetData(Collections.emptyMap()).build());
+        ExecutionMode mode = lane.isRealtime() ? ExecutionMode.REALTIME : ExecutionMode.BATCH;
+        EmailSendContext context = new EmailSendContext(1L, 1L, 1, "OTP", "GENERAL", mode, deadline);
+        return new DomainBatchTask(batch, domain, domain + "-id", null, 0, "test-runner", null, context, mode, lane);
+    }
+
     private EmailBatchResultWriter createMockWriter() {
         return new EmailBatchResultWriter() {
             @Override public void writeResult(EmailSendProgress progress) {}
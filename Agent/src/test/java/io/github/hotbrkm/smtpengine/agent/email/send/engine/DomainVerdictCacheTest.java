@@ -0,0 +1,103 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpStatus;
+import io.github.hotbrkm.smtpengine.agent.email.send.worker.ResultApplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("DomainVerdictCache behavior verification")
+class DomainVerdictCacheTest {
+
+    private static final String NXDOMAIN_MESSAGE = "610 DNS.query failure UnknownHost. Domain: gmial.com, Type: MX";
+
+    @Test
+    @DisplayName("A DNS failure verdict applies to the domain until its TTL expires")
+    void dnsVerdictExpires() throws InterruptedException {
+        // Given
+        DomainVerdictCache cache = new DomainVerdictCache(domainManager(), true, 50L);
+
+        // When
+        cache.recordDnsFailure("GMIAL.com", 610, NXDOMAIN_MESSAGE);
+
+        // Then
+        DomainVerdictCache.DomainVerdict verdict = cache.find("gmial.com");
+        assertThat(verdict).isNotNull();
+        assertThat(verdict.statusCode()).isEqualTo(610);
+        assertThat(verdict.message()).isEqualTo(NXDOMAIN_MESSAGE);
+        assertThat(cache.find("gmail.com")).isNull();
+
+        Thread.sleep(80L);
+        assertThat(cache.find("gmial.com")).isNull();
+    }
+
+    @Test
+    @DisplayName("A domain inside its block window has a verdict; the default entry's window does not count")
+    void blockWindowVerdict() {
+        // Given
+        String blockEnd = LocalDateTime.now().plusHours(1).format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        EmailDomainManager manager = new EmailDomainManager(List.of(
+                new EmailDomain("default", 1, 10, 60, 60, blockEnd),
+                new EmailDomain("blocked.com", 1, 10, 60, 60, blockEnd),
+                new EmailDomain("open.com", 1, 10, 60, 60, "")), LocalDateTime.now());
+        DomainVerdictCache cache = new DomainVerdictCache(manager, true, 60_000L);
+
+        // When & Then
+        assertThat(cache.find("blocked.com")).isNotNull()
+                .extracting(DomainVerdictCache.DomainVerdict::statusCode).isEqualTo(SmtpStatus.DOMAIN_BLOCKED);
+        assertThat(cache.find("open.com")).isNull();
+        assertThat(cache.find("unknown.com")).isNull();
+    }
+
+    @Test
+    @DisplayName("A disabled cache never returns a verdict")
+    void disabledCache() {
+        DomainVerdictCache cache = new DomainVerdictCache(domainManager(), false, 60_000L);
+
+        cache.recordDnsFailure("gmial.com", 610, NXDOMAIN_MESSAGE);
+
+        assertThat(cache.find("gmial.com")).isNull();
+    }
+
+    @Test
+    @DisplayName("Applying a verdict marks every undelivered target and keeps delivered ones")
+    void applyMarksUndeliveredTargets() {
+        // Given
+        EmailSendTarget delivered = target("a@gmial.com");
+        delivered.applySendResult(SendResult.success(250), "now", "gmial.com");
+        EmailSendTarget retried = target("b@gmial.com");
+        retried.applySendResult(SendResult.failure(421, "421 Try later"), "now", "gmial.com");
+        EmailSendTarget fresh = target("c@gmial.com");
+        ResultApplier applier = new ResultApplier(null, null, new DomainSendMetrics(5, 60));
+
+        // When
+        int applied = DomainVerdictCache.applyTo(List.of(delivered, retried, fresh), applier,
+                new DomainVerdictCache.DomainVerdict(610, NXDOMAIN_MESSAGE, Long.MAX_VALUE));
+
+        // Then
+        assertThat(applied).isEqualTo(2);
+        assertThat(delivered.getSendCode()).isEqualTo("250");
+        assertThat(retried.getSendCode()).isEqualTo("610");
+        assertThat(fresh.getSendCode()).isEqualTo("610");
+        assertThat(fresh.getErrorMessage()).isEqualTo(NXDOMAIN_MESSAGE);
+    }
+
+    private EmailDomainManager domainManager() {
+        return new EmailDomainManager(List.of(new EmailDomain("default", 1, 10, 60, 60, "")), LocalDateTime.now());
+    }
+
+    private EmailSendTarget target(String email) {
+        return EmailSendTarget.builder().targetEmail(email).targetData(Collections.emptyMap()).build();
+    }
+}
@@ -143,6 +143,66 @@ class EmailSendEngineRunnerControlTest {
         }
     }
 
+    @Test
+    @DisplayName("cancelRunner fails queued batches of the active run and leaves other runners queued")
+    void cancelRunner_failsQueuedTasksOfActiveRun() {
+        EmailSendEngine engine = createEngine();
+        EmailBatchResultWriter runnerToken = createMockWriter();
+        EmailBatchResultWriter otherRunnerToken = createMockWriter();
+
+        try {
+            engine.registerRunner("runner-1", runnerToken);
+            engine.registerRunner("runner-2", otherRunnerToken);
+            CompletableFuture<EmailBatchResult> cancelledFuture = engine.submitBatchAsync(createSpec("batch-1", "example.com", "runner-1", runnerToken));
+            CompletableFuture<EmailBatchResult> keepFuture = engine.submitBatchAsync(createSpec("batch-2", "example.com", "runner-2", otherRunnerToken));
+            assertThat(engine.getQueuedBatches()).isEqualTo(2);
+
+            boolean cancelled = engine.cancelRunner("runner-1");
+
+            assertThat(cancelled).isTrue();
+            assertThat(engine.getQueuedBatches()).isEqualTo(1);
+            EmailBatchResult result = cancelledFuture.join();
+            assertThat(result.success()).isFalse();
+            assertThat(result.exception()).isInstanceOf(IllegalStateException.class);
+            assertThat(result.exception().getMessage()).contains("Runner cancelled");
+            assertThat(keepFuture).isNotDone();
+            assertThat(engine.cancelRunner("unknown-runner")).isFalse();
+        } finally {
+            runnerToken.close();
+            otherRunnerToken.close();
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Retries waiting for their delay are cancelled through the runner index and marked as failed")
+    void cancelScheduled_failsDelayedRetriesOfRun() throws Exception {
+        EmailSendEngine engine = createEngine();
+        EmailBatchResultWriter runnerToken = createMockWriter();
+        EmailBatchResultWriter otherRunToken = createMockWriter();
+
+        try {
+            RetryScheduler retryScheduler = fixtureOf(engine).retryScheduler();
+            CompletableFuture<EmailBatchResult> retryFuture = new CompletableFuture<>();
+            CompletableFuture<EmailBatchResult> otherRunFuture = new CompletableFuture<>();
+            retryScheduler.scheduleRecoveredRetryBatch(createTask("batch-1-retry1", "example.com", "runner-1", runnerToken, retryFuture), 60_000L);
+            retryScheduler.scheduleRecoveredRetryBatch(createTask("batch-2-retry1", "example.com", "runner-1", otherRunToken, otherRunFuture), 60_000L);
+
+            int cancelled = retryScheduler.cancelScheduled("runner-1", runnerToken, new IllegalStateException("Runner cancelled"), "test_cancel");
+
+            assertThat(cancelled).isEqualTo(1);
+            EmailBatchResult result = retryFuture.get(2, TimeUnit.SECONDS);
+            assertThat(result.success()).isFalse();
+            assertThat(result.exception().getMessage()).contains("Runner cancelled");
+            assertThat(otherRunFuture).isNotDone();
+            assertThat(retryScheduler.cancelScheduled("runner-1", runnerToken, new IllegalStateException("again"), "test_cancel")).isZero();
+        } finally {
+            runnerToken.close();
+            otherRunToken.close();
+            engine.shutdown();
+        }
+    }
+
     @Test
     @DisplayName("Request with missing execution_mode returns failed result Future")
     void submitBatchAsync_missingExecutionMode_returnsFailedFuture() {
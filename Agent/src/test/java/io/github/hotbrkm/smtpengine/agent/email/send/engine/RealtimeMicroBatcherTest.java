@@ -0,0 +1,114 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import io.github.hotbrkm.smtpengine.agent.email.send.planning.EmailBatchSpec;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RealtimeMicroBatcher behavior verification")
+class RealtimeMicroBatcherTest {
+
+    private static final EmailSendContext CONTEXT = new EmailSendContext(1L, 1L, 1, "OTP", "GENERAL", ExecutionMode.REALTIME);
+
+    private final EngineExecutors engineExecutors = new EngineExecutors(1);
+    private final List<EmailBatchSpec> submitted = new CopyOnWriteArrayList<>();
+    private final Map<String, CompletableFuture<EmailBatchResult>> batchFutures = new ConcurrentHashMap<>();
+    private final List<String> releasedRunners = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        engineExecutors.shutdown();
+    }
+
+    @Test
+    @DisplayName("Messages of the same domain are submitted together once they fill a session")
+    void groupsUpToSessionSize() {
+        RealtimeMicroBatcher batcher = batcher(60_000L, 2);
+
+        batcher.submit(target(1, "a@example.com"), CONTEXT);
+        batcher.submit(target(2, "b@other.com"), CONTEXT);
+        assertThat(submitted).isEmpty();
+
+        batcher.submit(target(3, "c@example.com"), CONTEXT);
+
+        assertThat(submitted).hasSize(1);
+        EmailBatchSpec spec = submitted.getFirst();
+        assertThat(spec.getDomain()).isEqualTo("example.com");
+        assertThat(spec.getEmailSendTargetList()).extracting(EmailSendTarget::getListSeq).containsExactly(1, 3);
+        assertThat(spec.getRunnerId()).startsWith(RealtimeMicroBatcher.RUNNER_ID_PREFIX);
+        assertThat(batcher.pendingMessageCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Each message completes with its own result and the group's runner is released with the batch")
+    void completesPerMessageFutures() {
+        RealtimeMicroBatcher batcher = batcher(60_000L, 2);
+        CompletableFuture<EmailSendProgress> first = batcher.submit(target(1, "a@example.com"), CONTEXT);
+        CompletableFuture<EmailSendProgress> second = batcher.submit(target(2, "b@example.com"), CONTEXT);
+        EmailBatchSpec spec = submitted.getFirst();
+
+        spec.getResultWriter().writeResult(progress(1, "a@example.com", "250", "SUCCESS"));
+        spec.getResultWriter().writeResult(progress(2, "b@example.com", "550", "FAILURE"));
+
+        assertThat(first).isCompletedWithValueMatching(progress -> "250".equals(progress.sendCode()));
+        assertThat(second).isNotDone();
+        assertThat(releasedRunners).isEmpty();
+
+        batchFutures.get(spec.getBatchId()).complete(EmailBatchResult.success(spec.getBatchId(), "example.com", 2, 1));
+
+        assertThat(second).isCompletedWithValueMatching(progress -> "550".equals(progress.sendCode()));
+        assertThat(releasedRunners).containsExactly(spec.getRunnerId());
+    }
+
+    @Test
+    @DisplayName("A partial group is submitted when the window elapses, and a repeated listSeq starts a new group")
+    void flushesAfterWindowAndSplitsRepeatedListSeq() throws InterruptedException {
+        RealtimeMicroBatcher batcher = batcher(20L, 10);
+
+        batcher.submit(target(1, "a@example.com"), CONTEXT);
+        batcher.submit(target(1, "b@example.com"), CONTEXT);
+        assertThat(submitted).hasSize(1);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(2);
+        while (submitted.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+
+        assertThat(submitted).hasSize(2);
+        assertThat(submitted).extracting(spec -> spec.getEmailSendTargetList().getFirst().getTargetEmail())
+                .containsExactly("a@example.com", "b@example.com");
+        assertThat(batcher.pendingMessageCount()).isZero();
+    }
+
+    private RealtimeMicroBatcher batcher(long windowMillis, int sessionSize) {
+        return new RealtimeMicroBatcher(windowMillis, domain -> sessionSize, engineExecutors, spec -> {
+            submitted.add(spec);
+            CompletableFuture<EmailBatchResult> future = new CompletableFuture<>();
+            batchFutures.put(spec.getBatchId(), future);
+            return future;
+        }, releasedRunners::add, null);
+    }
+
+    private static EmailSendTarget target(int listSeq, String email) {
+        return EmailSendTarget.builder().targetEmail(email).listSeq(listSeq).targetData(Collections.emptyMap()).build();
+    }
+
+    private static EmailSendProgress progress(int listSeq, String email, String sendCode, String sendStatus) {
+        return new EmailSendProgress(listSeq, email, sendCode, sendStatus, null, "20260304050607", "example.com", 0);
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@DisplayName("RetryCoalescer behavior verification")
+class RetryCoalescerTest {
+
+    private static final String DOMAIN = "example.com";
+
+    private final EngineExecutors engineExecutors = new EngineExecutors(1);
+    private final List<DomainBatchTask> emitted = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        engineExecutors.shutdown();
+    }
+
+    @Test
+    @DisplayName("Small retries are merged as soon as they fill a session")
+    void mergesUpToSessionSize() {
+        RetryCoalescer coalescer = new RetryCoalescer(60_000L, domain -> 3, engineExecutors, emitted::add);
+
+        coalescer.offer(retryTask("b1", "runner-1", 1));
+        coalescer.offer(retryTask("b2", "runner-1", 1));
+        assertThat(emitted).isEmpty();
+
+        coalescer.offer(retryTask("b3", "runner-1", 1));
+
+        assertThat(emitted).hasSize(1);
+        DomainBatchTask merged = emitted.getFirst();
+        assertThat(merged.isCoalesced()).isTrue();
+        assertThat(merged.getSize()).isEqualTo(3);
+        assertThat(merged.getCoalescedTasks()).extracting(DomainBatchTask::getBatchId).containsExactly("b1", "b2", "b3");
+        assertThat(coalescer.pendingTaskCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Partial buffers are flushed when the window elapses")
+    void flushesAfterWindow() throws InterruptedException {
+        RetryCoalescer coalescer = new RetryCoalescer(50L, domain -> 10, engineExecutors, emitted::add);
+
+        coalescer.offer(retryTask("b1", "runner-1", 2));
+        coalescer.offer(retryTask("b2", "runner-1", 1));
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(2);
+        while (emitted.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertThat(emitted).hasSize(1);
+        assertThat(emitted.getFirst().getSize()).isEqualTo(3);
+        assertThat(emitted.getFirst().getCoalescedTasks()).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Tasks of different runners, and full-size tasks, are forwarded separately")
+    void keepsIncompatibleTasksApart() {
+        RetryCoalescer coalescer = new RetryCoalescer(60_000L, domain -> 2, engineExecutors, emitted::add);
+
+        coalescer.offer(retryTask("full", "runner-1", 2));
+        coalescer.offer(retryTask("a1", "runner-1", 1));
+        coalescer.offer(retryTask("b1", "runner-2", 1));
+
+        assertThat(emitted).extracting(DomainBatchTask::getBatchId).containsExactly("full");
+        assertThat(coalescer.pendingTaskCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("A window flush of an emitted buffer leaves the next buffer of the same key waiting")
+    void staleFlushKeepsNewerBuffer() throws InterruptedException {
+        RetryCoalescer coalescer = new RetryCoalescer(500L, domain -> 2, engineExecutors, emitted::add);
+
+        coalescer.offer(retryTask("b1", "runner-1", 1));
+        coalescer.offer(retryTask("b2", "runner-1", 1));
+        Thread.sleep(250L);
+        coalescer.offer(retryTask("b3", "runner-1", 1));
+        Thread.sleep(350L);
+
+        assertThat(emitted).hasSize(1);
+        assertThat(coalescer.pendingTaskCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Removing a runner run returns only its buffered tasks")
+    void removeByRunnerReturnsOnlyThatRun() {
+        RetryCoalescer coalescer = new RetryCoalescer(60_000L, domain -> 10, engineExecutors, emitted::add);
+        EmailBatchResultWriter runToken = mock(EmailBatchResultWriter.class);
+        EmailBatchResultWriter otherRunToken = mock(EmailBatchResultWriter.class);
+
+        coalescer.offer(retryTask("a1", "runner-1", 1, runToken));
+        coalescer.offer(retryTask("a2", "runner-1", 1, runToken));
+        coalescer.offer(retryTask("old", "runner-1", 1, otherRunToken));
+        coalescer.offer(retryTask("b1", "runner-2", 1, runToken));
+
+        List<DomainBatchTask> removed = coalescer.removeByRunner("runner-1", runToken);
+
+        assertThat(removed).extracting(DomainBatchTask::getBatchId).containsExactly("a1", "a2");
+        assertThat(coalescer.pendingTaskCount()).isEqualTo(2);
+        assertThat(coalescer.removeByRunner("runner-1", runToken)).isEmpty();
+        assertThat(emitted).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Completing a merged task completes each original batch with its own counts")
+    void finalizerCompletesMembersIndividually() {
+        DomainBatchTask first = retryTask("b1", "runner-1", 2);
+        DomainBatchTask second = retryTask("b2", "runner-1", 1);
+        first.getBatch().getFirst().applySendResult(SendResult.success(250), "now", DOMAIN);
+        DomainBatchTask merged = DomainBatchTask.coalesce("b1-coalesced2", List.of(first, second));
+
+        BatchResultFinalizer finalizer = new BatchResultFinalizer(new EngineRuntimeState(createOptions()), task -> {
+        });
+        finalizer.handleBatchCompletion(merged, 1, 2);
+
+        EmailBatchResult firstResult = first.getResultFuture().join();
+        EmailBatchResult secondResult = second.getResultFuture().join();
+        assertThat(firstResult.batchId()).isEqualTo("b1");
+        assertThat(firstResult.totalTargets()).isEqualTo(2);
+        assertThat(firstResult.successCount()).isEqualTo(1);
+        assertThat(secondResult.totalTargets()).isEqualTo(1);
+        assertThat(secondResult.successCount()).isZero();
+        assertThat(merged.getResultFuture()).isDone();
+    }
+
+    private DomainBatchTask retryTask(String batchId, String runnerId, int targetCount) {
+        return retryTask(batchId, runnerId, targetCount, null);
+    }
+
+    private DomainBatchTask retryTask(String batchId, String runnerId, int targetCount, EmailBatchResultWriter runnerToken) {
+        List<EmailSendTarget> batch = new ArrayList<>();
+        for (int i = 0; i < targetCount; i++) {
+            batch.add(EmailSendTarget.builder().targetEmail(batchId + i + "@" + DOMAIN).targetData(Collections.emptyMap()).build());
+        }
+        return new DomainBatchTask(batch, DOMAIN, batchId, new CompletableFuture<>(), 1, runnerId, runnerToken, null,
+                ExecutionMode.BATCH, DispatchLane.BATCH_RETRY);
+    }
+
+    private EngineRuntimeOptions createOptions() {
+        EmailConfig.Send send = new EmailConfig.Send();
+        send.setBindAddresses(List.of("127.0.0.1"));
+        return EngineRuntimeOptions.fromExplicit(send, 1, 100, 1, 100L,
+                1_000L, EmailConfig.Send.DEFAULT_BATCH_RETRY_BACKOFF_MULTIPLIER);
+    }
+}
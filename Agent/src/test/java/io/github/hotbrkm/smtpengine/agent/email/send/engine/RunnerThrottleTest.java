@@ -0,0 +1,77 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.RunnerLimits;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.RunnerThrottle;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RunnerThrottle behavior verification")
+class RunnerThrottleTest {
+
+    private static final String RUNNER_ID = "1-1-1";
+
+    @Test
+    @DisplayName("Unregistered and uncapped runners are never held back")
+    void uncappedRunner_isNeverHeldBack() {
+        RunnerThrottle throttle = new RunnerThrottle(1);
+        assertThat(throttle.canDispatch("unknown")).isTrue();
+
+        throttle.register(RUNNER_ID, RunnerLimits.UNLIMITED);
+        for (int i = 0; i < 100; i++) {
+            throttle.onStarted(RUNNER_ID, 1_000);
+        }
+
+        assertThat(throttle.canDispatch(RUNNER_ID)).isTrue();
+        assertThat(throttle.getInFlight(RUNNER_ID)).isEqualTo(100);
+    }
+
+    @Test
+    @DisplayName("Concurrency cap holds the runner back until a batch finishes")
+    void concurrencyCap_holdsUntilFinished() {
+        RunnerThrottle throttle = new RunnerThrottle(1);
+        throttle.register(RUNNER_ID, new RunnerLimits(0, 2));
+
+        throttle.onStarted(RUNNER_ID, 10);
+        assertThat(throttle.canDispatch(RUNNER_ID)).isTrue();
+        throttle.onStarted(RUNNER_ID, 10);
+        assertThat(throttle.canDispatch(RUNNER_ID)).isFalse();
+
+        throttle.onFinished(RUNNER_ID);
+        assertThat(throttle.canDispatch(RUNNER_ID)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Rate cap is charged by target count and can be lifted live")
+    void rateCap_isChargedByTargetCount() {
+        // 60/min with 1 second burst: a 10-target batch puts the runner about 9 seconds in debt
+        RunnerThrottle throttle = new RunnerThrottle(1);
+        throttle.register(RUNNER_ID, new RunnerLimits(60, 0));
+        assertThat(throttle.canDispatch(RUNNER_ID)).isTrue();
+
+        throttle.onStarted(RUNNER_ID, 10);
+        assertThat(throttle.canDispatch(RUNNER_ID)).isFalse();
+
+        assertThat(throttle.setLimits(RUNNER_ID, RunnerLimits.UNLIMITED)).isTrue();
+        assertThat(throttle.canDispatch(RUNNER_ID)).isTrue();
+        assertThat(throttle.setLimits("unknown", RunnerLimits.UNLIMITED)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Paused runner is held back until resumed, and registering a new run clears the pause")
+    void pause_holdsUntilResumed() {
+        RunnerThrottle throttle = new RunnerThrottle(1);
+        throttle.register(RUNNER_ID, RunnerLimits.UNLIMITED);
+
+        assertThat(throttle.setPaused(RUNNER_ID, true)).isTrue();
+        assertThat(throttle.canDispatch(RUNNER_ID)).isFalse();
+        assertThat(throttle.setPaused(RUNNER_ID, false)).isTrue();
+        assertThat(throttle.canDispatch(RUNNER_ID)).isTrue();
+
+        throttle.setPaused(RUNNER_ID, true);
+        throttle.register(RUNNER_ID, RunnerLimits.UNLIMITED);
+        assertThat(throttle.isPaused(RUNNER_ID)).isFalse();
+        assertThat(throttle.setPaused("unknown", true)).isFalse();
+    }
+}
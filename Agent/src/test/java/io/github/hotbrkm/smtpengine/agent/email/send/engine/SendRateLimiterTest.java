@@ -0,0 +1,102 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine;
+
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.SendRateLimiter;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("SendRateLimiter behavior verification")
+class SendRateLimiterTest {
+
+    private static final String DOMAIN = "example.com";
+
+    @Test
+    @DisplayName("Domains without rate limits never wait and keep no buckets")
+    void unlimitedDomain_neverWaits() {
+        SendRateLimiter limiter = new SendRateLimiter(domainManager(0, 0), 1);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(limiter.tryAcquire(DOMAIN, "10.0.0.1")).isZero();
+        }
+        assertThat(limiter.reserve(DOMAIN, "10.0.0.1", 0L)).isZero();
+        assertThat(limiter.getBucketCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Domain limit is shared across bind IPs and allows one burst")
+    void domainLimit_isSharedAcrossBindIps() {
+        // 120/min with 1 second burst: capacity 2, one token per 500ms
+        SendRateLimiter limiter = new SendRateLimiter(domainManager(120, 0), 1);
+
+        assertThat(limiter.tryAcquire(DOMAIN, "10.0.0.1")).isZero();
+        assertThat(limiter.tryAcquire(DOMAIN, "10.0.0.2")).isZero();
+
+        long waitMs = limiter.tryAcquire(DOMAIN, "10.0.0.3");
+        assertThat(waitMs).isPositive().isLessThanOrEqualTo(500L);
+    }
+
+    @Test
+    @DisplayName("Bind IP limit applies per IP and does not consume the domain token on rejection")
+    void bindIpLimit_appliesPerIp() {
+        // Domain 120/min (capacity 2), per IP 60/min (capacity 1)
+        SendRateLimiter limiter = new SendRateLimiter(domainManager(120, 60), 1);
+
+        assertThat(limiter.tryAcquire(DOMAIN, "10.0.0.1")).isZero();
+        assertThat(limiter.tryAcquire(DOMAIN, "10.0.0.1")).isPositive();
+        // The refunded domain token is still available to another IP.
+        assertThat(limiter.tryAcquire(DOMAIN, "10.0.0.2")).isZero();
+    }
+
+    @Test
+    @DisplayName("Pacing reserves future tokens up to the max wait")
+    void reserve_pacesUpToMaxWait() {
+        // 60/min: one token per second
+        SendRateLimiter limiter = new SendRateLimiter(domainManager(60, 0), 1);
+        assertThat(limiter.tryAcquire(DOMAIN, "10.0.0.1")).isZero();
+
+        long maxWait = TimeUnit.SECONDS.toNanos(2);
+        long firstWait = limiter.reserve(DOMAIN, "10.0.0.1", maxWait);
+        long secondWait = limiter.reserve(DOMAIN, "10.0.0.1", maxWait);
+
+        assertThat(firstWait).isPositive().isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+        assertThat(secondWait).isGreaterThan(firstWait);
+        assertThat(limiter.reserve(DOMAIN, "10.0.0.1", maxWait)).isEqualTo(-1L);
+    }
+
+    @Test
+    @DisplayName("Idle eviction keeps buckets that still carry state")
+    void evictIdle_keepsBusyBuckets() {
+        SendRateLimiter limiter = new SendRateLimiter(domainManager(60, 60), 1);
+        limiter.tryAcquire(DOMAIN, "10.0.0.1");
+
+        limiter.evictIdle();
+
+        assertThat(limiter.getBucketCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Pacing recreates buckets evicted while a batch was running")
+    void reserve_recreatesEvictedBuckets() {
+        // 60/min: capacity 1, one token per second
+        SendRateLimiter limiter = new SendRateLimiter(domainManager(60, 0), 1);
+        // The bucket of the batch-level check was evicted before the next message
+        limiter.evictIdle();
+
+        long maxWait = TimeUnit.SECONDS.toNanos(2);
+        assertThat(limiter.reserve(DOMAIN, "10.0.0.1", maxWait)).isZero();
+        assertThat(limiter.reserve(DOMAIN, "10.0.0.1", maxWait)).isPositive();
+        assertThat(limiter.getBucketCount()).isEqualTo(1);
+    }
+
+    private EmailDomainManager domainManager(int messagesPerMinute, int messagesPerMinutePerIp) {
+        EmailDomain defaultDomain = new EmailDomain("default", 10, 10, 60, 60, "", messagesPerMinute, messagesPerMinutePerIp);
+        return new EmailDomainManager(List.of(defaultDomain), LocalDateTime.now());
+    }
+}
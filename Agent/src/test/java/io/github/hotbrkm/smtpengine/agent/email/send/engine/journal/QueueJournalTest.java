@@ -0,0 +1,164 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.mime.AttachmentMedia;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DispatchLane;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.dispatch.DomainBatchTask;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendContext;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.ExecutionMode;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResultWriter;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Queue journal test")
+class QueueJournalTest {
+
+    private static final EmailSendContext CONTEXT = new EmailSendContext(1L, 2L, 3, "INFO", "GENERAL", ExecutionMode.BATCH);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("An uncompleted batch is recovered with its targets, last results and undispatched retries")
+    void shouldRecoverUncompletedBatch() throws IOException {
+        // Given
+        QueueJournal journal = new QueueJournal(tempDir, 200L, Long.MAX_VALUE);
+        DomainBatchTask task = task("1-2-3-batch-1", 0, List.of(target(1), target(2), target(3)));
+        journal.recordSubmitted(task);
+        RecordingWriter runnerWriter = new RecordingWriter();
+        EmailBatchResultWriter journaling = journal.resultWriter(task, runnerWriter);
+        journaling.writeResult(progress(1, "250", "SUCCESS", 0));
+        journaling.writeResult(progress(2, "421", "FAILURE", 0));
+        journal.recordRetryScheduled(retry(task, "1-2-3-batch-1-retry1", 2), 1_000L);
+
+        // When
+        journal.close();
+        QueueJournal reopened = new QueueJournal(tempDir, 200L, Long.MAX_VALUE);
+        List<RecoveredBatch> recovered = reopened.drainRecoveredBatches();
+
+        // Then
+        assertThat(runnerWriter.written).extracting(EmailSendProgress::listSeq).containsExactly(1, 2);
+        assertThat(recovered).hasSize(1);
+        RecoveredBatch batch = recovered.getFirst();
+        assertThat(batch.batchId()).isEqualTo("1-2-3-batch-1");
+        assertThat(batch.runnerId()).isEqualTo("1-2-3");
+        assertThat(batch.context()).isEqualTo(CONTEXT);
+        assertThat(batch.targets()).extracting(EmailSendTarget::getListSeq).containsExactly(1, 2, 3);
+        EmailSendTarget third = batch.targets().get(2);
+        assertThat(third.getTitle()).isEqualTo("title");
+        assertThat(third.getAttributeString("name")).isEqualTo("user3");
+        assertThat(third.getAttachments()).containsExactly(new AttachmentMedia("a.pdf", "/files/a.pdf"));
+        assertThat(batch.results()).containsOnlyKeys(1, 2);
+        assertThat(batch.results().get(2)).isEqualTo(progress(2, "421", "FAILURE", 0));
+        assertThat(batch.scheduledRetries())
+                .containsExactly(new RecoveredBatch.ScheduledRetry("1-2-3-batch-1-retry1", 1, 1_000L, Set.of(2)));
+        assertThat(reopened.drainRecoveredBatches()).isEmpty();
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("Completed batches are compacted away and not recovered")
+    void shouldDropCompletedBatchesOnCompaction() throws IOException {
+        // Given
+        QueueJournal journal = new QueueJournal(tempDir, 200L, 1L);
+        DomainBatchTask completed = task("1-2-3-batch-1", 0, List.of(target(1), target(2)));
+        DomainBatchTask open = task("1-2-3-batch-2", 0, List.of(target(3)));
+        journal.recordSubmitted(completed);
+        journal.recordSubmitted(open);
+        journal.recordDispatched(completed);
+        completed.getResultFuture().complete(EmailBatchResult.success("1-2-3-batch-1", "example.com", 2, 2));
+
+        // When
+        journal.sync();
+        long compactedSize = Files.size(tempDir.resolve(QueueJournal.JOURNAL_FILE_NAME));
+        journal.close();
+        List<RecoveredBatch> recovered = new QueueJournal(tempDir, 200L, Long.MAX_VALUE).drainRecoveredBatches();
+
+        // Then
+        assertThat(compactedSize).isLessThan(1024L);
+        assertThat(recovered).extracting(RecoveredBatch::batchId).containsExactly("1-2-3-batch-2");
+    }
+
+    @Test
+    @DisplayName("Events follow the task's root batch ID, even when a batch ID looks derived, across repeated compactions")
+    void shouldFollowExplicitRootBatchId() throws IOException {
+        // Given
+        QueueJournal journal = new QueueJournal(tempDir, 200L, 1L);
+        DomainBatchTask promo = task("promo", 0, List.of(target(1)));
+        DomainBatchTask promoRetry = task("promo-retry-batch-1", 0, List.of(target(2), target(3)));
+        journal.recordSubmitted(promo);
+        journal.recordSubmitted(promoRetry);
+        journal.sync();
+        journal.resultWriter(promoRetry, new RecordingWriter()).writeResult(progress(2, "421", "FAILURE", 0));
+        journal.recordRetryScheduled(retry(promoRetry, "promo-retry-batch-1-retry1", 2), 1_000L);
+
+        // When
+        journal.sync();
+        journal.close();
+        List<RecoveredBatch> recovered = new QueueJournal(tempDir, 200L, Long.MAX_VALUE).drainRecoveredBatches();
+
+        // Then
+        assertThat(recovered).extracting(RecoveredBatch::batchId).containsExactly("promo", "promo-retry-batch-1");
+        assertThat(recovered.getFirst().results()).isEmpty();
+        assertThat(recovered.getFirst().scheduledRetries()).isEmpty();
+        RecoveredBatch batch = recovered.get(1);
+        assertThat(batch.targets()).extracting(EmailSendTarget::getListSeq).containsExactly(2, 3);
+        assertThat(batch.targets().getFirst().getTitle()).isEqualTo("title");
+        assertThat(batch.results()).containsOnlyKeys(2);
+        assertThat(batch.scheduledRetries()).extracting(RecoveredBatch.ScheduledRetry::batchId)
+                .containsExactly("promo-retry-batch-1-retry1");
+    }
+
+    private static DomainBatchTask retry(DomainBatchTask task, String batchId, int listSeq) {
+        return task.derive(List.of(target(listSeq)), batchId, task.getResultFuture(), 1, DispatchLane.forRetry(ExecutionMode.BATCH));
+    }
+
+    private static DomainBatchTask task(String batchId, int retryCount, List<EmailSendTarget> targets) {
+        return new DomainBatchTask(targets, "example.com", batchId, new CompletableFuture<>(), retryCount, "1-2-3",
+                new RecordingWriter(), CONTEXT, ExecutionMode.BATCH,
+                retryCount > 0 ? DispatchLane.forRetry(ExecutionMode.BATCH) : DispatchLane.forFresh(ExecutionMode.BATCH));
+    }
+
+    private static EmailSendTarget target(int listSeq) {
+        return EmailSendTarget.builder()
+                .targetEmail("user" + listSeq + "@example.com")
+                .listSeq(listSeq)
+                .title("title")
+                .body("body")
+                .targetData(Map.of("name", "user" + listSeq))
+                .attachments(List.of(new AttachmentMedia("a.pdf", "/files/a.pdf")))
+                .build();
+    }
+
+    private static EmailSendProgress progress(int listSeq, String sendCode, String sendStatus, int retryCount) {
+        return new EmailSendProgress(listSeq, "user" + listSeq + "@example.com", sendCode, sendStatus, null,
+                "20260304050607", "example.com", retryCount);
+    }
+
+    private static final class RecordingWriter implements EmailBatchResultWriter {
+        private final List<EmailSendProgress> written = new ArrayList<>();
+
+        @Override
+        public void writeResult(EmailSendProgress progress) {
+            written.add(progress);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.retry;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Verify GreylistTracker behavior")
+class GreylistTrackerTest {
+
+    // Default reply of the Simulator's GreylistingRule
+    private static final String SIMULATOR_REPLY = "451 4.7.1 Greylisting in action. Try again later.";
+
+    @Test
+    @DisplayName("Should classify greylisting replies by keyword and learn the MX's reply signature")
+    void testIsGreylisted_keywordAndLearnedSignature() {
+        // Given
+        GreylistTracker sut = new GreylistTracker(true, 300_000L, 15_000L, 3_600_000L);
+
+        // When & Then
+        assertThat(sut.isGreylisted("mx.example", 451, "451 4.7.1 Please try again later")).isFalse();
+        assertThat(sut.isGreylisted("mx.example", 451, SIMULATOR_REPLY)).isTrue();
+        assertThat(sut.isGreylisted("mx.example", 451, "451 4.7.1 Please try again later")).isTrue();
+        assertThat(sut.isGreylisted("other.example", 451, "451 4.7.1 Please try again later")).isFalse();
+        assertThat(sut.isGreylisted("mx.example", 550, "550 5.7.1 Greylisted forever")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should use the delay stated in the reply when present")
+    void testRetryDelay_statedInReply() {
+        // Given
+        GreylistTracker sut = new GreylistTracker(true, 300_000L, 15_000L, 3_600_000L);
+        String isoReply = "451 4.7.1 Greylisted until " + Instant.now().plusSeconds(120) + ". Try again later.";
+
+        // When & Then
+        assertThat(sut.retryDelayMs("mx.example", "450 4.2.0 Greylisted, please try again in 60 seconds")).isEqualTo(75_000L);
+        assertThat(sut.retryDelayMs("mx.example", "451 Greylisted, wait 5 minutes")).isEqualTo(315_000L);
+        assertThat(sut.retryDelayMs("mx.example", isoReply)).isBetween(130_000L, 135_000L);
+    }
+
+    @Test
+    @DisplayName("Should schedule just after the learned window of the MX")
+    void testRetryDelay_learnedWindow() {
+        // Given
+        GreylistTracker sut = new GreylistTracker(true, 300_000L, 15_000L, 3_600_000L);
+
+        // When & Then
+        assertThat(sut.retryDelayMs("mx.example", SIMULATOR_REPLY)).isEqualTo(315_000L);
+
+        sut.recordRejected("mx.example", 315_000L);
+        assertThat(sut.retryDelayMs("mx.example", SIMULATOR_REPLY)).isEqualTo(630_000L);
+
+        sut.recordAccepted("mx.example", 630_000L);
+        sut.recordAccepted("mx.example", 700_000L);
+        assertThat(sut.retryDelayMs("mx.example", SIMULATOR_REPLY)).isEqualTo(630_000L);
+
+        // A later rejection beyond the accepted wait means the window grew
+        sut.recordRejected("mx.example", 640_000L);
+        assertThat(sut.retryDelayMs("mx.example", SIMULATOR_REPLY)).isEqualTo(1_280_000L);
+    }
+
+    @Test
+    @DisplayName("Should not classify anything when disabled")
+    void testDisabled() {
+        GreylistTracker sut = new GreylistTracker(false, 300_000L, 15_000L, 3_600_000L);
+
+        assertThat(sut.isGreylisted("mx.example", 451, SIMULATOR_REPLY)).isFalse();
+    }
+}
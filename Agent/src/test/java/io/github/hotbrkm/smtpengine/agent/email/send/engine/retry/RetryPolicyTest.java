@@ -0,0 +1,100 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.engine.retry;
+
+import io.github.hotbrkm.smtpengine.agent.email.config.EmailConfig;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("Verify RetryPolicy behavior")
+class RetryPolicyTest {
+
+    @Test
+    @DisplayName("Should parse enhanced status codes with or without the basic code")
+    void testEnhancedStatusCodeParse() {
+        assertThat(EnhancedStatusCode.format(EnhancedStatusCode.parse("452 4.2.2 Mailbox full"))).isEqualTo("4.2.2");
+        assertThat(EnhancedStatusCode.format(EnhancedStatusCode.parse("421-4.7.0 Try again later"))).isEqualTo("4.7.0");
+        assertThat(EnhancedStatusCode.format(EnhancedStatusCode.parse("5.1.1"))).isEqualTo("5.1.1");
+        assertThat(EnhancedStatusCode.parse("421 Service not available")).isEqualTo(EnhancedStatusCode.NONE);
+        assertThat(EnhancedStatusCode.parse("452 4.2.2x")).isEqualTo(EnhancedStatusCode.NONE);
+        assertThat(EnhancedStatusCode.parse(null)).isEqualTo(EnhancedStatusCode.NONE);
+    }
+
+    @Test
+    @DisplayName("Should pick the most specific rule: basic + enhanced, then enhanced, then basic")
+    void testDecide_mostSpecificRuleWins() {
+        // Given
+        RetryPolicy sut = RetryPolicy.of(List.of(), Map.of(
+                "452", rule(true, 60_000L, null),
+                "4.2.2", rule(true, 3_600_000L, null),
+                "451 4.7.1", rule(true, 300_000L, false)
+        ), Map.of());
+
+        // When & Then
+        assertThat(sut.decide("example.com", 452, "452 4.2.2 Mailbox full").delayMs()).isEqualTo(3_600_000L);
+        assertThat(sut.decide("example.com", 452, "452 4.3.1 Insufficient storage").delayMs()).isEqualTo(60_000L);
+        assertThat(sut.decide("example.com", 451, "451 4.7.1 Greylisted").coolBindIp()).isFalse();
+        assertThat(sut.decide("example.com", 451, "451 4.3.0 Temporary failure")).isEqualTo(RetryDecision.DEFAULT);
+    }
+
+    @Test
+    @DisplayName("Should apply retryExcludeCode unless a rule overrides the code, and domain rules before global rules")
+    void testDecide_excludedCodesAndDomainOverrides() {
+        // Given
+        RetryPolicy sut = RetryPolicy.of(List.of("250", "550"), Map.of(
+                "550 5.7.1", rule(true, -1L, true)
+        ), Map.of("Example.com", Map.of("4.7.0", rule(false, -1L, null))));
+
+        // When & Then
+        assertThat(sut.decide("other.com", 550, "550 5.1.1 User unknown").retry()).isFalse();
+        assertThat(sut.decide("other.com", 550, "550 5.7.1 Blocked").retry()).isTrue();
+        assertThat(sut.decide("example.com", 421, "421 4.7.0 Too many connections").retry()).isFalse();
+        assertThat(sut.decide("other.com", 421, "421 4.7.0 Too many connections").retry()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should select retry targets and use the longest requested delay for them")
+    void testTargetsAndDelay() {
+        // Given
+        RetryPolicy sut = RetryPolicy.of(List.of("250"), Map.of("4.2.2", rule(true, 3_600_000L, null)), Map.of());
+        EmailSendTarget sent = target("a@example.com", SendResult.success(250));
+        EmailSendTarget full = target("b@example.com", SendResult.failure(452, "452 4.2.2 Mailbox full"));
+        EmailSendTarget throttled = target("c@example.com", SendResult.failure(421, "421 4.7.0 Try again later"));
+        EmailSendTarget unprocessed = EmailSendTarget.builder().targetEmail("d@example.com").targetData(Collections.emptyMap()).build();
+
+        // When & Then
+        assertThat(sut.shouldRetry(sent)).isFalse();
+        assertThat(sut.shouldRetry(full)).isTrue();
+        assertThat(sut.shouldRetry(unprocessed)).isFalse();
+        assertThat(sut.resolveRetryDelayMs(List.of(throttled), 30_000L)).isEqualTo(30_000L);
+        assertThat(sut.resolveRetryDelayMs(List.of(throttled, full), 30_000L)).isEqualTo(3_600_000L);
+    }
+
+    @Test
+    @DisplayName("Should reject rule keys that are not status codes")
+    void testInvalidRuleKey() {
+        assertThatThrownBy(() -> RetryPolicy.of(List.of(), Map.of("mailbox-full", rule(false, -1L, null)), Map.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static EmailConfig.Send.RetryRule rule(boolean retry, long delayMs, Boolean coolBindIp) {
+        EmailConfig.Send.RetryRule rule = new EmailConfig.Send.RetryRule();
+        rule.setRetry(retry);
+        rule.setDelayMs(delayMs);
+        rule.setCoolBindIp(coolBindIp);
+        return rule;
+    }
+
+    private static EmailSendTarget target(String email, SendResult result) {
+        EmailSendTarget target = EmailSendTarget.builder().targetEmail(email).targetData(Collections.emptyMap()).build();
+        target.applySendResult(result, "now", "example.com");
+        return target;
+    }
+}
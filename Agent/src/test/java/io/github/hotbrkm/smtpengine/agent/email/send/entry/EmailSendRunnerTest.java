@@ -14,6 +14,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
 import java.util.Collections;
 import java.util.List;
@@ -133,6 +134,85 @@ class EmailSendRunnerTest {
         }
     }
 
+    @DisplayName("Streaming mode submits full batches as domain buffers fill and flushes the rest at the end")
+    @Test
+    void testExecuteStreamingSubmitsBatchesAsBuffersFill() {
+        // Given: 25 example.com targets interleaved with 3 other.com targets (default session size 10)
+        EmailDomainManager emailDomainManager = EmailSendRunnerTestHelper.getEmailDomainManager();
+        EmailSendEngine engine = mock(EmailSendEngine.class);
+        List<EmailBatchSpec> submitted = new ArrayList<>();
+        when(engine.submitBatchAsync(any(EmailBatchSpec.class))).thenAnswer(invocation -> {
+            EmailBatchSpec spec = invocation.getArgument(0);
+            submitted.add(spec);
+            return CompletableFuture.completedFuture(
+                    EmailBatchResult.success(spec.getBatchId(), spec.getDomain(), spec.getEmailSendTargetList().size(), 0)
+            );
+        });
+
+        Map<String, Object> message = EmailSendRunnerTestHelper.getMessage(123456789012345L);
+        Map<String, Object> sendRequest = EmailSendRunnerTestHelper.getSendRequest(123456789012345L, 1234567890123456L, 1);
+        EmailSendContext context = EmailSendRunnerTestHelper.getContext(message, sendRequest);
+
+        List<Map<String, Object>> targetDataList = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            targetDataList.add(EmailSendRunnerTestHelper.getTarget("user" + i + "@example.com", "User" + i));
+            if (i % 10 == 0) {
+                targetDataList.add(EmailSendRunnerTestHelper.getTarget("user" + i + "@other.com", "Other" + i));
+            }
+        }
+
+        EmailSendRunner runner = new EmailSendRunner(EmailSendRunnerTestHelper.toTargets(targetDataList).iterator(), 100, 1,
+                context, emailDomainManager, engine, null);
+
+        // When: Execute
+        EmailBatchRunSummary summary = runner.execute();
+
+        // Then: Two full example.com batches while reading, then the partial buffers, oldest first
+        assertThat(summary.totalBatches()).isEqualTo(4);
+        assertThat(summary.successBatches()).isEqualTo(4);
+        assertThat(submitted).extracting(EmailBatchSpec::getDomain)
+                .containsExactly("example.com", "example.com", "other.com", "example.com");
+        assertThat(submitted).extracting(spec -> spec.getEmailSendTargetList().size())
+                .containsExactly(10, 10, 3, 5);
+    }
+
+    @DisplayName("Streaming mode hands buffers over early as partial batches once the buffer limit is reached")
+    @Test
+    void testExecuteStreamingBoundsBufferedTargets() {
+        // Given: One target for each of 9 domains and a buffer limit of 4
+        EmailDomainManager emailDomainManager = EmailSendRunnerTestHelper.getEmailDomainManager();
+        EmailSendEngine engine = mock(EmailSendEngine.class);
+        List<EmailBatchSpec> submitted = new ArrayList<>();
+        when(engine.submitBatchAsync(any(EmailBatchSpec.class))).thenAnswer(invocation -> {
+            EmailBatchSpec spec = invocation.getArgument(0);
+            submitted.add(spec);
+            return CompletableFuture.completedFuture(
+                    EmailBatchResult.success(spec.getBatchId(), spec.getDomain(), spec.getEmailSendTargetList().size(), 0)
+            );
+        });
+
+        Map<String, Object> message = EmailSendRunnerTestHelper.getMessage(123456789012345L);
+        Map<String, Object> sendRequest = EmailSendRunnerTestHelper.getSendRequest(123456789012345L, 1234567890123456L, 1);
+        EmailSendContext context = EmailSendRunnerTestHelper.getContext(message, sendRequest);
+
+        List<Map<String, Object>> targetDataList = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            targetDataList.add(EmailSendRunnerTestHelper.getTarget("user@domain" + i + ".com", "User" + i));
+        }
+
+        EmailSendRunner runner = new EmailSendRunner(EmailSendRunnerTestHelper.toTargets(targetDataList).iterator(), 4, 2,
+                context, emailDomainManager, engine, null);
+
+        // When: Execute
+        EmailBatchRunSummary summary = runner.execute();
+
+        // Then: Every target is submitted exactly once, oldest buffers first
+        assertThat(summary.totalBatches()).isEqualTo(9);
+        assertThat(submitted).extracting(EmailBatchSpec::getDomain)
+                .containsExactly("domain0.com", "domain1.com", "domain2.com", "domain3.com", "domain4.com",
+                        "domain5.com", "domain6.com", "domain7.com", "domain8.com");
+    }
+
     @DisplayName("Should propagate exception and stop when engine throws exception (verify EmailSendRunner behavior)")
     @Test
     void testExecuteWhenEngineThrowsException() {
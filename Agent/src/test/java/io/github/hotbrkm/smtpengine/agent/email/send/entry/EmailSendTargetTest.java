@@ -0,0 +1,151 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.entry;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.SendResult;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("EmailSendTarget test")
+class EmailSendTargetTest {
+
+    @Test
+    @DisplayName("Targets built from one registry share a single content instance")
+    void targetsShouldShareInternedContent() {
+        // Given
+        EmailContentRegistry registry = new EmailContentRegistry();
+
+        // When
+        EmailSendTarget first = target("a@example.com", registry.intern("Title", new String("<p>Body</p>")), Map.of());
+        EmailSendTarget second = target("b@example.com", registry.intern("Title", new String("<p>Body</p>")), Map.of());
+
+        // Then
+        assertThat(first.getContent()).isSameAs(second.getContent());
+        assertThat(registry.size()).isEqualTo(1);
+        assertThat(registry.get(first.getContent().id())).isSameAs(first.getContent());
+        assertThat(second.getTitle()).isEqualTo("Title");
+        assertThat(second.getBody()).isEqualTo("<p>Body</p>");
+    }
+
+    @Test
+    @DisplayName("Attributes are read from the flat store, listSeq included, and removed attributes are absent")
+    void attributesShouldBeReadableAndRemovable() {
+        // Given
+        Map<String, Object> targetData = new HashMap<>();
+        targetData.put("message", "legacy-message");
+        targetData.put("count", "7");
+        targetData.put("nothing", null);
+        EmailSendTarget target = target("a@example.com", null, targetData);
+
+        // When
+        target.removeAttribute("message");
+
+        // Then
+        assertThat(target.hasAttribute("message")).isFalse();
+        assertThat(target.getAttributeInt("count", 0)).isEqualTo(7);
+        assertThat(target.hasAttribute("nothing")).isTrue();
+        assertThat(target.getAttribute("nothing")).isNull();
+        assertThat(target.getAttributeInt(EmailSendTarget.ATTR_LIST_SEQ, 0)).isEqualTo(3);
+        assertThat(target.getAttributeString(EmailSendTarget.ATTR_REJECT_URL)).isEqualTo("https://example.com/reject");
+        assertThat(target.attributesView()).containsEntry("count", "7").containsEntry(EmailSendTarget.ATTR_LIST_SEQ, 3)
+                .doesNotContainKey("message");
+    }
+
+    @Test
+    @DisplayName("Packed result fields are reported in the usual string form")
+    void sendResultShouldBeReportedAsStrings() {
+        // Given
+        EmailSendTarget target = target("a@example.com", null, Map.of());
+        assertThat(target.isUnprocessed()).isTrue();
+
+        // When
+        target.applySendResult(SendResult.failure(550, "550 5.1.1 User unknown"),
+                EmailSendTarget.packDateTime(LocalDateTime.of(2026, 3, 4, 5, 6, 7)), "example.com");
+
+        // Then
+        EmailSendProgress progress = target.toProgress();
+        assertThat(target.getSendCode()).isEqualTo("550");
+        assertThat(target.getSendCodeValue()).isEqualTo(550);
+        assertThat(target.isUnprocessed()).isFalse();
+        assertThat(progress.listSeq()).isEqualTo(3);
+        assertThat(progress.sendStatus()).isEqualTo("FAILURE");
+        assertThat(progress.endDateTime()).isEqualTo("20260304050607");
+        assertThat(progress.errorMessage()).isEqualTo("550 5.1.1 User unknown");
+    }
+
+    @Test
+    @DisplayName("internContent swaps in the registry's shared instance of equal content")
+    void internContentShouldShareEqualContent() {
+        // Given
+        EmailContentRegistry registry = new EmailContentRegistry();
+        EmailSendTarget first = target("a@example.com", null, Map.of());
+        EmailSendTarget second = target("b@example.com", null, Map.of());
+
+        // When
+        first.internContent(registry);
+        second.internContent(registry);
+        second.internContent(registry);
+
+        // Then
+        assertThat(first.getContent()).isSameAs(second.getContent());
+        assertThat(first.getTitle()).isEqualTo("Fallback title");
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Equality compares attribute values, not layouts; a removed attribute equals an absent one")
+    void equalityShouldFollowAttributeValues() {
+        // Given
+        Map<String, Object> withExtra = new HashMap<>();
+        withExtra.put("count", "7");
+        withExtra.put("extra", "x");
+        EmailSendTarget removed = target("a@example.com", null, withExtra);
+        removed.removeAttribute("extra");
+
+        // When
+        EmailSendTarget plain = target("a@example.com", null, Map.of("count", "7"));
+        EmailSendTarget other = target("a@example.com", null, Map.of("count", "8"));
+
+        // Then
+        assertThat(removed).isEqualTo(plain).hasSameHashCodeAs(plain);
+        assertThat(plain).isNotEqualTo(other);
+    }
+
+    @Test
+    @DisplayName("A null targetData key is rejected and a non-numeric send code is kept as given")
+    void builderShouldRejectNullKeysAndKeepSendCode() {
+        // Given
+        Map<String, Object> targetData = new HashMap<>();
+        targetData.put(null, "value");
+
+        // When / Then
+        assertThatThrownBy(() -> target("a@example.com", null, targetData)).isInstanceOf(IllegalArgumentException.class);
+
+        EmailSendTarget target = EmailSendTarget.builder().targetEmail("a@example.com").sendCode("TIMEOUT").build();
+        assertThat(target.getSendCode()).isEqualTo("TIMEOUT");
+        assertThat(target.getSendCodeValue()).isEqualTo(-1);
+        assertThat(target.isUnprocessed()).isFalse();
+    }
+
+    private EmailSendTarget target(String targetEmail, EmailContent content, Map<String, Object> targetData) {
+        return EmailSendTarget.builder()
+                .targetId("user-1")
+                .targetEmail(targetEmail)
+                .senderEmail("sender@example.com")
+                .title("Fallback title")
+                .body("Fallback body")
+                .content(content)
+                .rejectUrl("https://example.com/reject")
+                .listSeq(3)
+                .sendCode("701")
+                .sendStatus("PENDING")
+                .targetData(targetData)
+                .build();
+    }
+}
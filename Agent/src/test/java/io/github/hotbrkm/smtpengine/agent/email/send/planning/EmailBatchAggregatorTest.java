@@ -0,0 +1,81 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.planning;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchResult;
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailBatchRunSummary;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("EmailBatchAggregator test")
+class EmailBatchAggregatorTest {
+
+    @Test
+    @DisplayName("Aggregates each batch as it completes and exposes the counts through snapshot")
+    void snapshotShouldReflectCompletedBatchesOnly() {
+        // Given
+        List<Integer> progress = new ArrayList<>();
+        EmailBatchAggregator aggregator = new EmailBatchAggregator("runner-1", 5,
+                (result, completed, tracked) -> progress.add(completed));
+        CompletableFuture<EmailBatchResult> first = new CompletableFuture<>();
+        CompletableFuture<EmailBatchResult> second = new CompletableFuture<>();
+        aggregator.track(first);
+        aggregator.track(second);
+
+        // When
+        first.complete(EmailBatchResult.success("b-0", "example.com", 10, 8));
+
+        // Then
+        EmailBatchRunSummary snapshot = aggregator.snapshot();
+        assertThat(snapshot.totalBatches()).isEqualTo(2);
+        assertThat(snapshot.successBatches()).isEqualTo(1);
+        assertThat(snapshot.failedBatches()).isZero();
+        assertThat(snapshot.domainStatsView()).isEmpty();
+        assertThat(aggregator.getDomainStats().get("example.com")).isEqualTo(new EmailBatchRunSummary.DomainStats(10, 8));
+        assertThat(aggregator.getCompletedBatches()).isEqualTo(1);
+        assertThat(progress).containsExactly(1);
+    }
+
+    @Test
+    @DisplayName("Final summary sums per-domain counters and counts failed and exceptional batches as failures")
+    void awaitCompletionShouldSumDomainsAndFailures() {
+        // Given
+        EmailBatchAggregator aggregator = new EmailBatchAggregator("runner-1", 5);
+
+        // When
+        EmailBatchRunSummary summary = aggregator.aggregate(List.of(
+                CompletableFuture.completedFuture(EmailBatchResult.success("b-0", "example.com", 10, 10)),
+                CompletableFuture.completedFuture(EmailBatchResult.success("b-1", "example.com", 5, 3)),
+                CompletableFuture.completedFuture(EmailBatchResult.failure("b-2", "other.com", 4, new IllegalStateException("boom"))),
+                CompletableFuture.failedFuture(new IllegalStateException("lost"))
+        ), 1_000L);
+
+        // Then
+        assertThat(summary.totalBatches()).isEqualTo(4);
+        assertThat(summary.successBatches()).isEqualTo(2);
+        assertThat(summary.failedBatches()).isEqualTo(2);
+        assertThat(summary.domainStatsView().get("example.com")).isEqualTo(new EmailBatchRunSummary.DomainStats(15, 13));
+        assertThat(summary.domainStatsView().get("other.com")).isEqualTo(new EmailBatchRunSummary.DomainStats(4, 0));
+    }
+
+    @Test
+    @DisplayName("Batches still running at the timeout are counted as failed in the final summary")
+    void awaitCompletionShouldCountUnfinishedBatchesAsFailedOnTimeout() {
+        // Given
+        EmailBatchAggregator aggregator = new EmailBatchAggregator("runner-1", 5);
+        aggregator.track(CompletableFuture.completedFuture(EmailBatchResult.success("b-0", "example.com", 1, 1)));
+        aggregator.track(new CompletableFuture<>());
+
+        // When
+        EmailBatchRunSummary summary = aggregator.awaitCompletion(50L);
+
+        // Then
+        assertThat(summary.totalBatches()).isEqualTo(2);
+        assertThat(summary.successBatches()).isEqualTo(1);
+        assertThat(summary.failedBatches()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,128 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.recipient;
+
+import io.github.hotbrkm.smtpengine.agent.email.mime.AttachmentMedia;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailContent;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailContentRegistry;
+import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("MappedRecipientStore test")
+class MappedRecipientStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Stored ranges read back equal targets once, sharing content, and answer attachments without reading")
+    void rangeShouldRoundTripTargets() throws IOException {
+        // Given
+        EmailContent content = new EmailContentRegistry().intern("Title", "<p>Body</p>");
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("name", "Kim");
+        attributes.put("count", 7);
+        attributes.put("points", 12L);
+        attributes.put("nothing", null);
+        EmailSendTarget plain = target("a@example.com", content, attributes, null);
+        EmailSendTarget withFile = target("b@example.com", content, Map.of(),
+                List.of(new AttachmentMedia("a.txt", "/tmp/a.txt")));
+
+        try (MappedRecipientStore store = new MappedRecipientStore(tempDir)) {
+            // When
+            StoredTargetRange first = store.append(List.of(plain));
+            StoredTargetRange second = store.append(List.of(plain, withFile));
+
+            // Then
+            assertThat(store.size()).isEqualTo(3);
+            assertThat(first.size()).isEqualTo(1);
+            assertThat(first.hasAttachment()).isFalse();
+            assertThat(second.hasAttachment()).isTrue();
+            assertThat(second.isMaterialized()).isFalse();
+
+            assertThat(second).containsExactly(plain, withFile);
+            assertThat(second.isMaterialized()).isTrue();
+            assertThat(second.get(0)).isSameAs(second.get(0));
+            assertThat(second.get(0).getContent()).isSameAs(second.get(1).getContent());
+            assertThat(second.get(0).getAttribute("count")).isEqualTo(7);
+            assertThat(second.get(0).getAttribute("points")).isEqualTo(12L);
+            assertThat(second.get(0).getSendCode()).isEqualTo("701");
+            assertThat(first.getFirst()).isEqualTo(plain);
+        }
+    }
+
+    @Test
+    @DisplayName("Closing keeps the files until every handed-out range has been read")
+    void closeShouldWaitForPendingRanges() throws IOException {
+        // Given
+        MappedRecipientStore store = new MappedRecipientStore(tempDir);
+        StoredTargetRange range = store.append(List.of(target("a@example.com", null, Map.of(), null)));
+
+        // When
+        store.close();
+
+        // Then
+        assertThat(listFiles()).hasSize(2);
+        assertThat(range.getFirst().getTargetEmail()).isEqualTo("a@example.com");
+        assertThat(listFiles()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("A range released unread no longer holds the files open")
+    void releasedRangeShouldNotHoldTheFiles() throws IOException {
+        // Given
+        MappedRecipientStore store = new MappedRecipientStore(tempDir);
+        StoredTargetRange cancelled = store.append(List.of(target("a@example.com", null, Map.of(), null)));
+        StoredTargetRange sent = store.append(List.of(target("b@example.com", null, Map.of(), null)));
+        assertThat(sent.getFirst().getTargetEmail()).isEqualTo("b@example.com");
+
+        // When
+        store.close();
+        cancelled.release();
+        cancelled.release();
+        sent.release();
+
+        // Then
+        assertThat(listFiles()).isEmpty();
+        assertThat(cancelled.hasAttachment()).isFalse();
+        assertThatThrownBy(cancelled::getFirst).isInstanceOf(IllegalStateException.class);
+        assertThat(sent.getFirst().getTargetEmail()).isEqualTo("b@example.com");
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.toList();
+        }
+    }
+
+    private EmailSendTarget target(String targetEmail, EmailContent content, Map<String, Object> targetData,
+                                   List<AttachmentMedia> attachments) {
+        return EmailSendTarget.builder()
+                .targetId("user-1")
+                .targetEmail(targetEmail)
+                .targetName("홍길동")
+                .senderEmail("sender@example.com")
+                .title("Fallback title")
+                .body("Fallback body")
+                .content(content)
+                .rejectUrl("https://example.com/reject")
+                .listSeq(3)
+                .sendCode("701")
+                .sendStatus("PENDING")
+                .emailDomain("example.com")
+                .targetData(targetData)
+                .attachments(attachments)
+                .build();
+    }
+}
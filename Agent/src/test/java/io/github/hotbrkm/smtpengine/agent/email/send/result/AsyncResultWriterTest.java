@@ -0,0 +1,139 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("AsyncResultWriter test")
+class AsyncResultWriterTest {
+
+    @Test
+    @DisplayName("Results are committed in groups, in order, exactly once, and flush waits for the commit")
+    void flushShouldWaitForGroupCommit() {
+        // Given
+        RecordingWriter delegate = new RecordingWriter();
+        AsyncResultWriter writer = new AsyncResultWriter(delegate, 64, 8, 1_000L, 1_000L);
+
+        // When
+        for (int i = 0; i < 20; i++) {
+            writer.writeResult(progress(i));
+        }
+        writer.flush();
+
+        // Then
+        assertThat(delegate.written).extracting(EmailSendProgress::listSeq).containsExactlyElementsOf(range(20));
+        assertThat(delegate.groupSizes).allMatch(size -> size <= 8);
+        assertThat(delegate.flushes).isEqualTo(delegate.groupSizes.size());
+
+        writer.close();
+        assertThat(delegate.written).hasSize(20);
+        assertThat(delegate.closed).isTrue();
+    }
+
+    @Test
+    @DisplayName("A failed group commit is reported as ResultPersistenceException to the next flush and write")
+    void commitFailureShouldBeReportedToProducers() {
+        // Given
+        RecordingWriter delegate = new RecordingWriter();
+        delegate.failOnWrite = true;
+        AsyncResultWriter writer = new AsyncResultWriter(delegate, 64, 8, 1_000L, 1_000L);
+        writer.writeResult(progress(1));
+
+        // When / Then
+        assertThatThrownBy(writer::flush).isInstanceOf(ResultPersistenceException.class);
+        assertThatThrownBy(() -> writer.writeResult(progress(2))).isInstanceOf(ResultPersistenceException.class);
+        assertThat(delegate.written).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Every result accepted while close races with writers is committed; later ones are rejected")
+    void closeShouldCommitEveryAcceptedResult() throws Exception {
+        // Given
+        RecordingWriter delegate = new RecordingWriter();
+        AsyncResultWriter writer = new AsyncResultWriter(delegate, 1_024, 8, 1_000L, 1_000L);
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int p = 0; p < 4; p++) {
+                futures.add(producers.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        try {
+                            writer.writeResult(progress(i));
+                            accepted.incrementAndGet();
+                        } catch (ResultPersistenceException e) {
+                            return;
+                        }
+                    }
+                }));
+            }
+
+            // When
+            writer.close();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            producers.shutdownNow();
+        }
+
+        // Then
+        assertThat(delegate.written).hasSize(accepted.get());
+        assertThatThrownBy(() -> writer.writeResult(progress(1))).isInstanceOf(ResultPersistenceException.class);
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    private static EmailSendProgress progress(int listSeq) {
+        return new EmailSendProgress(listSeq, "user" + listSeq + "@example.com", "250", "SUCCESS", null,
+                "20260304050607", "example.com", 0);
+    }
+
+    private static final class RecordingWriter implements EmailBatchResultWriter {
+        private final List<EmailSendProgress> written = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> groupSizes = Collections.synchronizedList(new ArrayList<>());
+        private volatile int flushes;
+        private volatile boolean closed;
+        private volatile boolean failOnWrite;
+
+        @Override
+        public void writeResult(EmailSendProgress progress) {
+            writeResults(List.of(progress));
+        }
+
+        @Override
+        public void writeResults(List<EmailSendProgress> progresses) {
+            if (failOnWrite) {
+                throw new IllegalStateException("disk full");
+            }
+            groupSizes.add(progresses.size());
+            written.addAll(progresses);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("NdjsonResultWriter test")
+class NdjsonResultWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Writes one escaped JSON object per result and appends to an existing file")
+    void shouldWriteOneJsonLinePerResult() throws IOException {
+        // Given
+        Path file = tempDir.resolve("results/run-1.ndjson");
+        NdjsonResultWriter writer = new NdjsonResultWriter(file, true);
+
+        // When
+        writer.writeResults(List.of(
+                new EmailSendProgress(1, "a@example.com", "250", "SUCCESS", null, "20260304050607", "example.com", 0),
+                new EmailSendProgress(2, "b@example.com", "550", "FAILURE", "550 \"User\" unknown\r\n", "20260304050608",
+                        "example.com", 1)));
+        writer.flush();
+        writer.close();
+        NdjsonResultWriter reopened = new NdjsonResultWriter(file, false);
+        reopened.writeResult(new EmailSendProgress(3, "c@example.com", "250", "SUCCESS", null, null, "example.com", 0));
+        reopened.close();
+
+        // Then
+        assertThat(Files.readAllLines(file)).containsExactly(
+                "{\"listSeq\":1,\"targetEmail\":\"a@example.com\",\"sendCode\":\"250\",\"sendStatus\":\"SUCCESS\","
+                        + "\"errorMessage\":null,\"endDateTime\":\"20260304050607\",\"emailDomain\":\"example.com\",\"retryCount\":0}",
+                "{\"listSeq\":2,\"targetEmail\":\"b@example.com\",\"sendCode\":\"550\",\"sendStatus\":\"FAILURE\","
+                        + "\"errorMessage\":\"550 \\\"User\\\" unknown\\r\\n\",\"endDateTime\":\"20260304050608\","
+                        + "\"emailDomain\":\"example.com\",\"retryCount\":1}",
+                "{\"listSeq\":3,\"targetEmail\":\"c@example.com\",\"sendCode\":\"250\",\"sendStatus\":\"SUCCESS\","
+                        + "\"errorMessage\":null,\"endDateTime\":null,\"emailDomain\":\"example.com\",\"retryCount\":0}");
+    }
+}
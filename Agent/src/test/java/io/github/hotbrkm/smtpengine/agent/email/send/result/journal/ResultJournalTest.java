@@ -0,0 +1,84 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.result.journal;
+
+import io.github.hotbrkm.smtpengine.agent.email.send.result.EmailSendProgress;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Result journal test")
+class ResultJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Records roll over compressed segments, read back in order and export to NDJSON")
+    void shouldReadBackRecordsAcrossCompressedSegments() throws IOException {
+        // Given
+        Path journal = tempDir.resolve("journal");
+        ResultJournalWriter writer = new ResultJournalWriter(journal, 1024, true);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            writer.writeResult(progress(i, "250", "SUCCESS", i % 10 == 0 ? "line \"one\"\nline two" : null, 0));
+        }
+        writer.close();
+
+        // Then
+        assertThat(fileNames(journal)).anyMatch(name -> name.endsWith(".journal.gz")).noneMatch(name -> name.endsWith(".journal"));
+        List<EmailSendProgress> read = new ArrayList<>();
+        ResultJournalReader reader = new ResultJournalReader(journal);
+        assertThat(reader.forEach(read::add)).isEqualTo(100);
+        assertThat(read.get(10)).isEqualTo(progress(10, "250", "SUCCESS", "line \"one\"\nline two", 0));
+        assertThat(read).extracting(EmailSendProgress::listSeq).isSorted();
+
+        Path exported = tempDir.resolve("results.ndjson");
+        assertThat(reader.exportNdjson(exported)).isEqualTo(100);
+        assertThat(Files.readAllLines(exported)).hasSize(100)
+                .first().asString().startsWith("{\"listSeq\":0,\"targetEmail\":\"user0@example.com\"");
+    }
+
+    @Test
+    @DisplayName("Lookup by listSeq returns the last record, from sealed segments and from the segment still being written")
+    void findLatestShouldReturnFinalStatus() throws IOException {
+        // Given
+        Path journal = tempDir.resolve("journal");
+        ResultJournalWriter first = new ResultJournalWriter(journal, 1024, false);
+        first.writeResult(progress(1, "421", "FAILURE", "try later", 0));
+        first.writeResult(progress(2, "250", "SUCCESS", null, 0));
+        first.writeResult(progress(1, "250", "SUCCESS", null, 1));
+        first.close();
+
+        // When
+        ResultJournalWriter second = new ResultJournalWriter(journal, 1024, false);
+        second.writeResult(progress(2, "550", "FAILURE", "bounced later", 1));
+        second.flush();
+
+        // Then
+        ResultJournalReader reader = new ResultJournalReader(journal);
+        assertThat(reader.findLatest(1)).contains(progress(1, "250", "SUCCESS", null, 1));
+        assertThat(reader.findLatest(2)).contains(progress(2, "550", "FAILURE", "bounced later", 1));
+        assertThat(reader.findLatest(3)).isEmpty();
+        second.close();
+    }
+
+    private List<String> fileNames(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString()).toList();
+        }
+    }
+
+    private static EmailSendProgress progress(int listSeq, String sendCode, String sendStatus, String errorMessage, int retryCount) {
+        return new EmailSendProgress(listSeq, "user" + listSeq + "@example.com", sendCode, sendStatus, errorMessage,
+                "20260304050607", "example.com", retryCount);
+    }
+}
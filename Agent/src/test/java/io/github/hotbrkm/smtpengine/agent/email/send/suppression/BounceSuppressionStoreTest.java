@@ -0,0 +1,150 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.suppression;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("BounceSuppressionStore behavior verification")
+class BounceSuppressionStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Hard bounces are suppressed regardless of address case; other failures are not")
+    void recordsOnlyHardBounces() throws IOException {
+        // Given
+        try (BounceSuppressionStore store = openStore(100)) {
+            // When
+            store.recordResult("Gone@Example.com", 550, "550 5.1.1 <gone@example.com>: Recipient address rejected");
+            store.recordResult("full@example.com", 552, "552 5.2.2 Mailbox full");
+            store.recordResult("later@example.com", 450, "450 4.1.1 Try again later");
+            store.recordResult("legacy@example.com", 550, "550 User unknown");
+
+            // Then
+            assertThat(store.isSuppressed("gone@example.com")).isTrue();
+            assertThat(store.isSuppressed(" GONE@example.com ")).isTrue();
+            assertThat(store.isSuppressed("legacy@example.com")).isTrue();
+            assertThat(store.isSuppressed("full@example.com")).isFalse();
+            assertThat(store.isSuppressed("later@example.com")).isFalse();
+            assertThat(store.isSuppressed("never@example.com")).isFalse();
+        }
+    }
+
+    @Test
+    @DisplayName("Journaled entries survive a reopen without writing plaintext addresses")
+    void replaysJournalOnReopen() throws IOException {
+        // Given
+        try (BounceSuppressionStore store = openStore(100)) {
+            store.recordResult("gone@example.com", 550, "550 5.1.1 No such user");
+        }
+
+        // When
+        try (BounceSuppressionStore reopened = openStore(100)) {
+            // Then
+            assertThat(reopened.isSuppressed("gone@example.com")).isTrue();
+            assertThat(reopened.isSuppressed("other@example.com")).isFalse();
+        }
+        try (var files = Files.list(tempDir)) {
+            for (Path file : files.toList()) {
+                assertThat(new String(Files.readAllBytes(file))).doesNotContain("gone@example.com");
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction merges the journal into the sorted file")
+    void compactsIntoSortedFile() throws IOException {
+        // Given
+        try (BounceSuppressionStore store = openStore(2)) {
+            // When
+            store.recordResult("a@example.com", 550, "550 5.1.1 Unknown");
+            store.recordResult("b@example.com", 550, "550 5.1.1 Unknown");
+            store.recordResult("c@example.com", 550, "550 5.1.1 Unknown");
+
+            // Then
+            assertThat(store.suppressedCountOnDisk()).isEqualTo(2);
+            assertThat(store.pendingCount()).isEqualTo(1);
+            assertThat(store.isSuppressed("a@example.com")).isTrue();
+            assertThat(store.isSuppressed("c@example.com")).isTrue();
+        }
+
+        try (BounceSuppressionStore reopened = openStore(2)) {
+            assertThat(reopened.suppressedCountOnDisk()).isEqualTo(3);
+            assertThat(reopened.pendingCount()).isZero();
+            assertThat(reopened.isSuppressed("b@example.com")).isTrue();
+            assertThat(reopened.isSuppressed("d@example.com")).isFalse();
+        }
+    }
+
+    @Test
+    @DisplayName("Threshold compaction runs on the compaction executor, not on the recording thread")
+    void compactsOnExecutor() throws IOException {
+        // Given
+        List<Runnable> scheduled = new ArrayList<>();
+        try (BounceSuppressionStore store = new BounceSuppressionStore(tempDir, List.of("5.1.1"), 1_000, 0.01d, 2, scheduled::add)) {
+            // When
+            store.recordResult("a@example.com", 550, "550 5.1.1 Unknown");
+            store.recordResult("b@example.com", 550, "550 5.1.1 Unknown");
+            store.recordResult("c@example.com", 550, "550 5.1.1 Unknown");
+
+            // Then
+            assertThat(scheduled).hasSize(1);
+            assertThat(store.suppressedCountOnDisk()).isZero();
+            assertThat(store.pendingCount()).isEqualTo(3);
+
+            scheduled.getFirst().run();
+            assertThat(store.suppressedCountOnDisk()).isEqualTo(3);
+            assertThat(store.pendingCount()).isZero();
+            assertThat(store.isSuppressed("b@example.com")).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("A failed merge keeps the rotated journal and the next rotation appends to it")
+    void keepsRotatedJournalUntilMerged() throws IOException {
+        // Given
+        Path rotated = tempDir.resolve(BounceSuppressionStore.ROTATED_JOURNAL_FILE_NAME);
+        Path blockedMerge = Files.createDirectory(tempDir.resolve(BounceSuppressionStore.SORTED_FILE_NAME + ".tmp"));
+        try (BounceSuppressionStore store = openStore(100)) {
+            store.recordResult("a@example.com", 550, "550 5.1.1 Unknown");
+            store.compact();
+            store.recordResult("b@example.com", 550, "550 5.1.1 Unknown");
+
+            // When
+            store.compact();
+
+            // Then
+            assertThat(Files.readString(rotated))
+                    .contains(BounceSuppressionStore.Fingerprint.of("a@example.com").toHex())
+                    .contains(BounceSuppressionStore.Fingerprint.of("b@example.com").toHex());
+            assertThat(store.suppressedCountOnDisk()).isZero();
+
+            Files.delete(blockedMerge);
+            store.compact();
+            assertThat(store.suppressedCountOnDisk()).isEqualTo(2);
+            assertThat(rotated).doesNotExist();
+        }
+    }
+
+    @Test
+    @DisplayName("A disabled store suppresses nothing")
+    void disabledStoreSuppressesNothing() {
+        BounceSuppressionStore store = BounceSuppressionStore.disabled();
+
+        assertThat(store.recordResult("gone@example.com", 550, "550 5.1.1 Unknown")).isFalse();
+        assertThat(store.isSuppressed("gone@example.com")).isFalse();
+    }
+
+    private BounceSuppressionStore openStore(int compactThreshold) throws IOException {
+        return new BounceSuppressionStore(tempDir, List.of("5.1.1"), 1_000, 0.01d, compactThreshold, Runnable::run);
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.transport.routing;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Verify MxGroupResolver behavior")
+class MxGroupResolverTest {
+
+    private static final Map<String, List<String>> MX_HOSTS = Map.of(
+            "gmail.com", List.of("gmail-smtp-in.l.google.com."),
+            "customer.com", List.of("ASPMX.L.GOOGLE.COM"),
+            "hanmail.net", List.of("mx1.hanmail.daum.co.kr"),
+            "daum.net", List.of("mx2.hanmail.daum.co.kr"),
+            "solo.org", List.of()
+    );
+
+    @Test
+    @DisplayName("Should map domains whose MX matches a configured suffix to the group name")
+    void testResolveGroup_configuredGroup() {
+        // Given
+        MxGroupResolver sut = new MxGroupResolver(lookup(), true, Map.of("Google", List.of("google.com")), true, false, 60_000L);
+
+        // When & Then
+        assertThat(sut.resolveGroup("gmail.com")).isEqualTo("google");
+        assertThat(sut.resolveGroup("customer.com")).isEqualTo("google");
+    }
+
+    @Test
+    @DisplayName("Should derive the group from the registrable domain of the primary MX host")
+    void testResolveGroup_derivedFromMxHost() {
+        // Given
+        MxGroupResolver sut = new MxGroupResolver(lookup(), true, Map.of(), true, false, 60_000L);
+
+        // When & Then
+        assertThat(sut.resolveGroup("hanmail.net")).isEqualTo("daum.co.kr");
+        assertThat(sut.resolveGroup("daum.net")).isEqualTo("daum.co.kr");
+        assertThat(sut.resolveGroup("gmail.com")).isEqualTo("google.com");
+    }
+
+    @Test
+    @DisplayName("Should keep the domain when disabled, not derivable, or MX lookup is empty")
+    void testResolveGroup_fallsBackToDomain() {
+        // Given
+        MxGroupResolver disabled = MxGroupResolver.disabled();
+        MxGroupResolver notDerived = new MxGroupResolver(lookup(), true, Map.of(), false, false, 60_000L);
+        MxGroupResolver failing = new MxGroupResolver(domain -> {
+            throw new IllegalStateException("dns down");
+        }, true, Map.of(), true, false, 60_000L);
+
+        // When & Then
+        assertThat(disabled.resolveGroup("gmail.com")).isEqualTo("gmail.com");
+        assertThat(notDerived.resolveGroup("hanmail.net")).isEqualTo("hanmail.net");
+        assertThat(notDerived.resolveGroup("solo.org")).isEqualTo("solo.org");
+        assertThat(failing.resolveGroup("gmail.com")).isEqualTo("gmail.com");
+    }
+
+    @Test
+    @DisplayName("Should share sessions only for configured groups when enabled")
+    void testResolveSharedSessionGroup() {
+        // Given
+        Map<String, List<String>> groups = Map.of("google", List.of("google.com"));
+        MxGroupResolver shared = new MxGroupResolver(lookup(), true, groups, true, true, 60_000L);
+        MxGroupResolver notShared = new MxGroupResolver(lookup(), true, groups, true, false, 60_000L);
+
+        // When & Then
+        assertThat(shared.resolveSharedSessionGroup("gmail.com")).isEqualTo("google");
+        assertThat(shared.resolveSharedSessionGroup("hanmail.net")).isNull();
+        assertThat(notShared.resolveSharedSessionGroup("gmail.com")).isNull();
+    }
+
+    @Test
+    @DisplayName("Should cache resolutions within the TTL")
+    void testResolveGroup_cached() {
+        // Given
+        AtomicInteger lookups = new AtomicInteger();
+        Function<String, List<String>> countingLookup = domain -> {
+            lookups.incrementAndGet();
+            return MX_HOSTS.get(domain);
+        };
+        MxGroupResolver sut = new MxGroupResolver(countingLookup, true, Map.of(), true, false, 60_000L);
+
+        // When
+        sut.resolveGroup("gmail.com");
+        sut.resolveGroup("gmail.com");
+
+        // Then
+        assertThat(lookups).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Should not block the caller on the MX lookup and use the group once it is resolved")
+    void testResolveGroup_resolvesOnExecutor() {
+        // Given
+        List<Runnable> scheduled = new ArrayList<>();
+        MxGroupResolver sut = new MxGroupResolver(lookup(), true, Map.of(), true, false, 60_000L, 100, scheduled::add);
+
+        // When & Then
+        assertThat(sut.resolveGroup("gmail.com")).isEqualTo("gmail.com");
+        assertThat(sut.resolveGroup("gmail.com")).isEqualTo("gmail.com");
+        assertThat(scheduled).hasSize(1);
+
+        scheduled.getFirst().run();
+        assertThat(sut.resolveGroup("gmail.com")).isEqualTo("google.com");
+    }
+
+    @Test
+    @DisplayName("Should keep at most the configured number of cached domains")
+    void testResolveGroup_boundedCache() {
+        // Given
+        AtomicInteger lookups = new AtomicInteger();
+        Function<String, List<String>> countingLookup = domain -> {
+            lookups.incrementAndGet();
+            return MX_HOSTS.getOrDefault(domain, List.of());
+        };
+        MxGroupResolver sut = new MxGroupResolver(countingLookup, true, Map.of(), true, false, 60_000L, 2, Runnable::run);
+
+        // When
+        sut.resolveGroup("gmail.com");
+        sut.resolveGroup("hanmail.net");
+        sut.resolveGroup("daum.net");
+        sut.resolveGroup("gmail.com");
+        sut.resolveGroup("hanmail.net");
+        sut.resolveGroup("daum.net");
+
+        // Then
+        assertThat(lookups.get()).isGreaterThan(3);
+    }
+
+    private static Function<String, List<String>> lookup() {
+        return domain -> MX_HOSTS.getOrDefault(domain, List.of());
+    }
+}
@@ -2,24 +2,33 @@ package io.github.hotbrkm.smtpengine.agent.email.send.worker;
 
 import io.github.hotbrkm.smtpengine.agent.email.mime.EmailMimeComposer;
 import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.retry.RetryPolicy;
 import io.github.hotbrkm.smtpengine.agent.email.send.entry.EmailSendTarget;
 import io.github.hotbrkm.smtpengine.agent.email.send.result.ResultPersistenceException;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommandResponse;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManager;
 import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionOpenException;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpStatus;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -145,6 +154,233 @@ class EmailBatchSenderTest {
         verify(smtpSessionManager).closeSession();
     }
 
+    @DisplayName("When a message exceeds the degradation threshold, hands the unprocessed tail off instead of sending it")
+    @Test
+    void callShouldHandOffRemainingTargetsWhenSessionDegrades() throws Exception {
+        SmtpSessionManager smtpSessionManager = mock(SmtpSessionManager.class);
+        EmailMimeComposer emailMimeComposer = mock(EmailMimeComposer.class);
+        ResultApplier resultApplier = new ResultApplier(null, null, new DomainSendMetrics(5, 60));
+
+        EmailSendTarget first = createTarget("user-1@example.com");
+        EmailSendTarget second = createTarget("user-2@example.com");
+        EmailSendTarget third = createTarget("user-3@example.com");
+        EmailBatchSender sender = new EmailBatchSender(
+                List.of(first, second, third),
+                "example.com",
+                "127.0.0.1",
+                smtpSessionManager,
+                emailMimeComposer,
+                resultApplier,
+                new DomainSendMetrics(5, 60),
+                EmailBatchSenderOptions.builder()
+                        .retryPolicy(RetryPolicy.ofExcludedCodes(List.of("250")))
+                        .degradationPolicy(new SessionDegradationPolicy(true, 5, 20L, 1, 60))
+                        .build()
+        );
+
+        when(smtpSessionManager.isSessionValid()).thenReturn(true);
+        when(smtpSessionManager.sendMailFrom(anyString())).thenReturn(response(SmtpCommand.MAIL_FROM, "250 OK"));
+        when(smtpSessionManager.sendRcptTo(anyString())).thenReturn(response(SmtpCommand.RCPT_TO, "250 OK"));
+        when(smtpSessionManager.sendData()).thenReturn(response(SmtpCommand.DATA, "354 Start mail input"));
+        when(smtpSessionManager.sendMessage(anyString(), anyString())).thenAnswer(invocation -> {
+            Thread.sleep(100L);
+            return response(SmtpCommand.DATA_END, "250 Accepted");
+        });
+        when(smtpSessionManager.sendRset()).thenReturn(response(SmtpCommand.RSET, "250 Reset"));
+        when(smtpSessionManager.sendQuit()).thenReturn(response(SmtpCommand.QUIT, "221 Bye"));
+        when(emailMimeComposer.makeMime(any(EmailSendTarget.class))).thenReturn("mime-content");
+
+        int successCount = sender.call();
+
+        assertThat(successCount).isEqualTo(1);
+        assertThat(first.getSendStatus()).isEqualTo("SUCCESS");
+        assertThat(sender.extractHandoffTargets()).containsExactly(second, third);
+        assertThat(sender.extractRetryTargets()).isEmpty();
+        assertThat(second.getSendCode()).isEqualTo("701");
+        verify(smtpSessionManager).sendMailFrom(anyString());
+        verify(smtpSessionManager).closeSession();
+    }
+
+    @DisplayName("Slow MIME composition does not count toward the degradation threshold")
+    @Test
+    void callShouldNotHandOffWhenOnlyCompositionIsSlow() throws Exception {
+        SmtpSessionManager smtpSessionManager = mock(SmtpSessionManager.class);
+        EmailMimeComposer emailMimeComposer = mock(EmailMimeComposer.class);
+        ResultApplier resultApplier = new ResultApplier(null, null, new DomainSendMetrics(5, 60));
+
+        EmailSendTarget first = createTarget("user-1@example.com");
+        EmailSendTarget second = createTarget("user-2@example.com");
+        EmailSendTarget third = createTarget("user-3@example.com");
+        EmailBatchSender sender = new EmailBatchSender(
+                List.of(first, second, third),
+                "example.com",
+                "127.0.0.1",
+                smtpSessionManager,
+                emailMimeComposer,
+                resultApplier,
+                new DomainSendMetrics(5, 60),
+                EmailBatchSenderOptions.builder()
+                        .retryPolicy(RetryPolicy.ofExcludedCodes(List.of("250")))
+                        .degradationPolicy(new SessionDegradationPolicy(true, 5, 20L, 1, 60))
+                        .build()
+        );
+
+        when(smtpSessionManager.isSessionValid()).thenReturn(true);
+        when(smtpSessionManager.sendMailFrom(anyString())).thenReturn(response(SmtpCommand.MAIL_FROM, "250 OK"));
+        when(smtpSessionManager.sendRcptTo(anyString())).thenReturn(response(SmtpCommand.RCPT_TO, "250 OK"));
+        when(smtpSessionManager.sendData()).thenReturn(response(SmtpCommand.DATA, "354 Start mail input"));
+        when(smtpSessionManager.sendMessage(anyString(), anyString())).thenReturn(response(SmtpCommand.DATA_END, "250 Accepted"));
+        when(smtpSessionManager.sendRset()).thenReturn(response(SmtpCommand.RSET, "250 Reset"));
+        when(smtpSessionManager.sendQuit()).thenReturn(response(SmtpCommand.QUIT, "221 Bye"));
+        when(emailMimeComposer.makeMime(any(EmailSendTarget.class))).thenAnswer(invocation -> {
+            Thread.sleep(100L);
+            return "mime-content";
+        });
+
+        int successCount = sender.call();
+
+        assertThat(successCount).isEqualTo(3);
+        assertThat(sender.extractHandoffTargets()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("When the session breaks mid-batch, reopens it on another MX address and sends the remaining targets")
+    void callShouldFailOverToNewSessionWhenSessionBreaks() throws Exception {
+        SmtpSessionManager smtpSessionManager = mock(SmtpSessionManager.class);
+        EmailMimeComposer emailMimeComposer = mock(EmailMimeComposer.class);
+        ResultApplier resultApplier = new ResultApplier(null, null, new DomainSendMetrics(5, 60));
+
+        EmailSendTarget first = createTarget("user-1@example.com");
+        EmailSendTarget second = createTarget("user-2@example.com");
+        EmailSendTarget third = createTarget("user-3@example.com");
+        EmailBatchSender sender = new EmailBatchSender(
+                List.of(first, second, third),
+                "example.com",
+                "127.0.0.1",
+                smtpSessionManager,
+                emailMimeComposer,
+                resultApplier,
+                new DomainSendMetrics(5, 60),
+                EmailBatchSenderOptions.builder()
+                        .retryPolicy(RetryPolicy.ofExcludedCodes(List.of("250")))
+                        .failoverPolicy(new SessionFailoverPolicy(2, 10_000L))
+                        .build()
+        );
+
+        when(smtpSessionManager.isSessionValid()).thenReturn(true);
+        when(smtpSessionManager.sendMailFrom(anyString()))
+                .thenReturn(response(SmtpCommand.MAIL_FROM, "421 Service not available"))
+                .thenReturn(response(SmtpCommand.MAIL_FROM, "250 OK"));
+        when(smtpSessionManager.sendRcptTo(anyString())).thenReturn(response(SmtpCommand.RCPT_TO, "250 OK"));
+        when(smtpSessionManager.sendData()).thenReturn(response(SmtpCommand.DATA, "354 Start mail input"));
+        when(smtpSessionManager.sendMessage(anyString(), anyString())).thenReturn(response(SmtpCommand.DATA_END, "250 Accepted"));
+        when(smtpSessionManager.sendRset())
+                .thenReturn(response(SmtpCommand.RSET, "421 Closing connection"))
+                .thenReturn(response(SmtpCommand.RSET, "250 Reset"));
+        when(smtpSessionManager.sendQuit()).thenReturn(response(SmtpCommand.QUIT, "221 Bye"));
+        when(emailMimeComposer.makeMime(any(EmailSendTarget.class))).thenReturn("mime-content");
+
+        int successCount = sender.call();
+
+        assertThat(successCount).isEqualTo(2);
+        assertThat(sender.getFailoverCount()).isEqualTo(1);
+        assertThat(first.getSendCode()).isEqualTo("421");
+        assertThat(second.getSendStatus()).isEqualTo("SUCCESS");
+        assertThat(third.getSendStatus()).isEqualTo("SUCCESS");
+        assertThat(sender.extractRetryTargets()).containsExactly(first);
+        verify(smtpSessionManager).reopenSession(eq("example.com"), eq("127.0.0.1"), longThat(timeout -> timeout > 0 && timeout <= 10_000L));
+        verify(smtpSessionManager).closeSession();
+    }
+
+    @Test
+    @DisplayName("When failover cannot open a new session, defers the remaining targets with the original error")
+    void callShouldPropagateFailureWhenFailoverFails() throws Exception {
+        SmtpSessionManager smtpSessionManager = mock(SmtpSessionManager.class);
+        EmailMimeComposer emailMimeComposer = mock(EmailMimeComposer.class);
+        ResultApplier resultApplier = new ResultApplier(null, null, new DomainSendMetrics(5, 60));
+
+        EmailSendTarget first = createTarget("user-1@example.com");
+        EmailSendTarget second = createTarget("user-2@example.com");
+        EmailBatchSender sender = new EmailBatchSender(
+                List.of(first, second),
+                "example.com",
+                "127.0.0.1",
+                smtpSessionManager,
+                emailMimeComposer,
+                resultApplier,
+                new DomainSendMetrics(5, 60),
+                EmailBatchSenderOptions.builder()
+                        .failoverPolicy(new SessionFailoverPolicy(1, 10_000L))
+                        .build()
+        );
+
+        when(smtpSessionManager.isSessionValid()).thenReturn(true);
+        when(smtpSessionManager.sendMailFrom(anyString())).thenReturn(response(SmtpCommand.MAIL_FROM, "421 Service not available"));
+        when(smtpSessionManager.sendRset()).thenReturn(response(SmtpCommand.RSET, "421 Closing connection"));
+        when(smtpSessionManager.sendQuit()).thenReturn(response(SmtpCommand.QUIT, "221 Bye"));
+        when(emailMimeComposer.makeMime(any(EmailSendTarget.class))).thenReturn("mime-content");
+        doThrow(new SmtpSessionOpenException(421, "421 Too many connections", "127.0.0.1", false))
+                .when(smtpSessionManager).reopenSession(eq("example.com"), eq("127.0.0.1"), anyLong());
+
+        int successCount = sender.call();
+
+        assertThat(successCount).isZero();
+        assertThat(sender.getFailoverCount()).isEqualTo(1);
+        assertThat(second.getSendCode()).isEqualTo("421");
+        assertThat(sender.extractRetryTargets()).containsExactly(first, second);
+        verify(smtpSessionManager).sendMailFrom(anyString());
+    }
+
+    @Test
+    @DisplayName("With a compose pool, sends each target its own precomposed message and fails only the target whose MIME build failed")
+    void callShouldSendPrecomposedMessagesInBatchOrder() throws Exception {
+        SmtpSessionManager smtpSessionManager = mock(SmtpSessionManager.class);
+        EmailMimeComposer emailMimeComposer = mock(EmailMimeComposer.class);
+        ResultApplier resultApplier = new ResultApplier(null, null, new DomainSendMetrics(5, 60));
+        ExecutorService composePool = Executors.newFixedThreadPool(2);
+
+        EmailSendTarget first = createTarget("user-1@example.com");
+        EmailSendTarget second = createTarget("user-2@example.com");
+        EmailSendTarget third = createTarget("user-3@example.com");
+        EmailBatchSender sender = new EmailBatchSender(
+                List.of(first, second, third),
+                "example.com",
+                "127.0.0.1",
+                smtpSessionManager,
+                emailMimeComposer,
+                resultApplier,
+                new DomainSendMetrics(5, 60),
+                EmailBatchSenderOptions.builder()
+                        .composeExecutor(composePool)
+                        .composeLookahead(2)
+                        .build()
+        );
+
+        when(smtpSessionManager.isSessionValid()).thenReturn(true);
+        when(smtpSessionManager.sendMailFrom(anyString())).thenReturn(response(SmtpCommand.MAIL_FROM, "250 OK"));
+        when(smtpSessionManager.sendRcptTo(anyString())).thenReturn(response(SmtpCommand.RCPT_TO, "250 OK"));
+        when(smtpSessionManager.sendData()).thenReturn(response(SmtpCommand.DATA, "354 Start mail input"));
+        when(smtpSessionManager.sendMessage(anyString(), anyString())).thenReturn(response(SmtpCommand.DATA_END, "250 Accepted"));
+        when(smtpSessionManager.sendRset()).thenReturn(response(SmtpCommand.RSET, "250 Reset"));
+        when(smtpSessionManager.sendQuit()).thenReturn(response(SmtpCommand.QUIT, "221 Bye"));
+        when(emailMimeComposer.makeMime(first)).thenReturn("mime-1");
+        when(emailMimeComposer.makeMime(second)).thenThrow(new IllegalStateException("template error"));
+        when(emailMimeComposer.makeMime(third)).thenReturn("mime-3");
+
+        try {
+            int successCount = sender.call();
+
+            assertThat(successCount).isEqualTo(2);
+            assertThat(second.getSendCode()).isEqualTo(String.valueOf(SmtpStatus.MIME_BUILD_FAILED));
+            assertThat(third.getSendStatus()).isEqualTo("SUCCESS");
+            InOrder inOrder = inOrder(smtpSessionManager);
+            inOrder.verify(smtpSessionManager).sendMessage("mime-1", "example.com");
+            inOrder.verify(smtpSessionManager).sendMessage("mime-3", "example.com");
+        } finally {
+            composePool.shutdownNow();
+        }
+    }
+
     private EmailSendTarget createTarget(String targetEmail) {
         Map<String, Object> targetData = new HashMap<>();
         targetData.put("message", "legacy-message");
@@ -0,0 +1,181 @@
+package io.github.hotbrkm.smtpengine.agent.email.send.worker;
+
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomain;
+import io.github.hotbrkm.smtpengine.agent.email.domain.EmailDomainManager;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.metrics.DomainSendMetrics;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpLease;
+import io.github.hotbrkm.smtpengine.agent.email.send.engine.resource.BindIpSessionAllocator;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommand;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpCommandResponse;
+import io.github.hotbrkm.smtpengine.agent.email.send.transport.smtp.SmtpSessionManager;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DisplayName("StandbySessionPool test")
+class StandbySessionPoolTest {
+
+    private final DomainSendMetrics metrics = new DomainSendMetrics(5, 60);
+    private final AtomicLong now = new AtomicLong(1_000L);
+    private final List<SmtpSessionManager> opened = new ArrayList<>();
+    private BindIpSessionAllocator allocator = allocator(10);
+
+    @DisplayName("Keeps standby sessions only for the top realtime domains by send volume, on their last bind IP")
+    @Test
+    void maintainShouldOpenSessionsForTopRealtimeDomains() {
+        StandbySessionPool pool = pool(2, 1);
+        record("hot.com", 5);
+        record("cold.com", 1);
+        record("batch-only.com", 50);
+        pool.take("hot.com", "10.0.0.1", 1);
+        pool.take("cold.com", "10.0.0.1", 1);
+
+        pool.maintain();
+
+        assertThat(pool.getHotDomains()).containsExactly("hot.com");
+        assertThat(pool.getStandbyCount()).isEqualTo(2);
+        assertThat(opened).hasSize(2);
+        opened.forEach(manager -> verify(manager).openSession("hot.com", "10.0.0.1"));
+        assertThat(pool.take("hot.com", "10.0.0.2", 1)).isNull();
+        assertThat(pool.take("hot.com", "10.0.0.1", 1)).isIn(opened);
+        assertThat(pool.getStandbyCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Takes back a finished session only for a hot domain with room")
+    @Test
+    void offerShouldRespectHotDomainsAndCapacity() {
+        StandbySessionPool pool = pool(1, 1);
+        record("hot.com", 3);
+        pool.take("hot.com", "10.0.0.1", 1);
+        pool.maintain();
+        SmtpSessionManager taken = pool.take("hot.com", "10.0.0.1", 1);
+
+        assertThat(pool.offer("other.com", "10.0.0.1", validSession())).isFalse();
+        assertThat(pool.offer("hot.com", "10.0.0.1", taken)).isTrue();
+        assertThat(pool.offer("hot.com", "10.0.0.1", validSession())).isFalse();
+        assertThat(pool.getStandbyCount()).isEqualTo(1);
+    }
+
+    @DisplayName("Idle sessions get NOOP; a session failing it is closed and replaced")
+    @Test
+    void maintainShouldKeepAliveAndReplaceDeadSessions() {
+        StandbySessionPool pool = pool(1, 1);
+        record("hot.com", 3);
+        pool.take("hot.com", "10.0.0.1", 1);
+        pool.maintain();
+        SmtpSessionManager first = opened.getFirst();
+        when(first.sendNoop()).thenReturn(new SmtpCommandResponse(SmtpCommand.NOOP, List.of("421 Timeout")));
+
+        now.addAndGet(30_000L);
+        pool.maintain();
+
+        verify(first).sendNoop();
+        verify(first).closeSession();
+        assertThat(opened).hasSize(2);
+        assertThat(pool.take("hot.com", "10.0.0.1", 1)).isSameAs(opened.get(1));
+    }
+
+    @DisplayName("Close quits every standby session and refuses later offers")
+    @Test
+    void closeShouldQuitAllSessions() {
+        StandbySessionPool pool = pool(2, 1);
+        record("hot.com", 3);
+        pool.take("hot.com", "10.0.0.1", 1);
+        pool.maintain();
+
+        pool.close();
+
+        assertThat(pool.getStandbyCount()).isZero();
+        opened.forEach(manager -> {
+            verify(manager).sendQuit();
+            verify(manager).closeSession();
+        });
+        SmtpSessionManager late = validSession();
+        assertThat(pool.offer("hot.com", "10.0.0.1", late)).isFalse();
+        verify(late, never()).closeSession();
+    }
+
+    @DisplayName("Standby sessions hold slots of the domain's per-IP session limit, leaving one for dispatch")
+    @Test
+    void standbySessionsShouldCountAgainstSessionLimit() {
+        allocator = allocator(3);
+        StandbySessionPool pool = pool(5, 1);
+        record("hot.com", 3);
+        pool.take("hot.com", "10.0.0.1", 1);
+
+        pool.maintain();
+
+        assertThat(pool.getStandbyCount()).isEqualTo(2);
+        BindIpLease lease = allocator.tryAcquire("hot.com").orElseThrow();
+        assertThat(allocator.tryAcquire("hot.com")).isEmpty();
+        assertThat(pool.offer("hot.com", "10.0.0.1", validSession())).isFalse();
+
+        SmtpSessionManager taken = pool.take("hot.com", "10.0.0.1", 1);
+        assertThat(pool.offer("hot.com", "10.0.0.1", taken)).isTrue();
+        allocator.release(lease);
+
+        pool.close();
+        assertThat(allocator.getTotalActiveSessionCount()).isZero();
+        assertThat(allocator.tryAcquire("hot.com")).isPresent();
+    }
+
+    @DisplayName("Sessions are only taken and kept within the domain's messages per session")
+    @Test
+    void sessionsShouldStayWithinMessagesPerSession() {
+        StandbySessionPool pool = pool(1, 1);
+        record("hot.com", 3);
+        pool.take("hot.com", "10.0.0.1", 1);
+        pool.maintain();
+        SmtpSessionManager standby = opened.getFirst();
+        when(standby.hasTransactionsLeft("hot.com", 5)).thenReturn(false);
+
+        assertThat(pool.take("hot.com", "10.0.0.1", 5)).isNull();
+        assertThat(pool.getStandbyCount()).isEqualTo(1);
+        assertThat(pool.take("hot.com", "10.0.0.1", 1)).isSameAs(standby);
+
+        when(standby.hasTransactionsLeft(eq("hot.com"), anyInt())).thenReturn(false);
+        assertThat(pool.offer("hot.com", "10.0.0.1", standby)).isFalse();
+        assertThat(pool.getStandbyCount()).isZero();
+    }
+
+    private StandbySessionPool pool(int sessionsPerDomain, int topDomains) {
+        return new StandbySessionPool(() -> {
+            SmtpSessionManager manager = validSession();
+            opened.add(manager);
+            return manager;
+        }, metrics, allocator, domain -> domain, sessionsPerDomain, topDomains, 300, 30_000L, 300_000L, now::get);
+    }
+
+    private static BindIpSessionAllocator allocator(int sessionCount) {
+        EmailDomain defaultDomain = new EmailDomain("default", sessionCount, 10, 60, 60, "");
+        return new BindIpSessionAllocator(List.of("10.0.0.1", "10.0.0.2"), new EmailDomainManager(List.of(defaultDomain), LocalDateTime.now()));
+    }
+
+    private void record(String domain, int count) {
+        for (int i = 0; i < count; i++) {
+            metrics.recordSuccess(domain);
+        }
+    }
+
+    private static SmtpSessionManager validSession() {
+        SmtpSessionManager manager = mock(SmtpSessionManager.class);
+        when(manager.isSessionValid()).thenReturn(true);
+        when(manager.hasTransactionsLeft(anyString(), anyInt())).thenReturn(true);
+        when(manager.sendNoop()).thenReturn(new SmtpCommandResponse(SmtpCommand.NOOP, List.of("250 OK")));
+        when(manager.sendQuit()).thenReturn(new SmtpCommandResponse(SmtpCommand.QUIT, List.of("221 Bye")));
+        return manager;
+    }
+}